@@ -0,0 +1,92 @@
+package com.jpmorgan.exercise.analytics;
+
+import java.util.Arrays;
+
+import com.jpmorgan.exercise.window.OffHeapWindowStore;
+import com.jpmorgan.exercise.window.WindowAnalytic;
+
+/**
+ * Base class for statistics that are a sum of a term over each pair of consecutive trades of
+ * a stock within the window, in time order.
+ * 
+ * Adding a trade between two others replaces their pair's term with two new terms, and
+ * removing a trade does the reverse, so the sum is kept in constant time, whether trades are
+ * added and removed at the ends of the window or, when late, within it.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public abstract class ConsecutiveTradeAnalytic implements WindowAnalytic
+{
+
+    private double[] sums = new double[SymbolArrays.INITIAL_CAPACITY];
+
+    /**
+     * @return The term for a pair of consecutive trades.
+     */
+    protected abstract double term (final OffHeapWindowStore store, final long earlier, final long later);
+
+    @Override
+    public void tradeAdded (final OffHeapWindowStore store, final int symbolId, final long sequence)
+    {
+        sums = SymbolArrays.ensure (sums, symbolId);
+
+        long previous = store.getPreviousTrade (sequence);
+        long next = store.getNextTrade (sequence);
+        if (previous != OffHeapWindowStore.NO_TRADE && next != OffHeapWindowStore.NO_TRADE)
+        {
+            sums[symbolId] -= term (store, previous, next);
+        }
+        if (previous != OffHeapWindowStore.NO_TRADE)
+        {
+            sums[symbolId] += term (store, previous, sequence);
+        }
+        if (next != OffHeapWindowStore.NO_TRADE)
+        {
+            sums[symbolId] += term (store, sequence, next);
+        }
+    }
+
+    @Override
+    public void tradeRemoved (final OffHeapWindowStore store, final int symbolId, final long sequence)
+    {
+        /*
+         * Reset, rather than subtract, once no pairs remain, so that rounding errors don't
+         * accumulate.
+         */
+        if (store.getTradeCount (symbolId) <= 2)
+        {
+            sums[symbolId] = 0;
+            return;
+        }
+
+        long previous = store.getPreviousTrade (sequence);
+        long next = store.getNextTrade (sequence);
+        if (previous != OffHeapWindowStore.NO_TRADE)
+        {
+            sums[symbolId] -= term (store, previous, sequence);
+        }
+        if (next != OffHeapWindowStore.NO_TRADE)
+        {
+            sums[symbolId] -= term (store, sequence, next);
+        }
+        if (previous != OffHeapWindowStore.NO_TRADE && next != OffHeapWindowStore.NO_TRADE)
+        {
+            sums[symbolId] += term (store, previous, next);
+        }
+    }
+
+    @Override
+    public void reset ()
+    {
+        Arrays.fill (sums, 0);
+    }
+
+    /**
+     * @return The sum of the terms of the symbol's consecutive trades.
+     */
+    protected double getSum (final int symbolId)
+    {
+        return (symbolId < sums.length) ? sums[symbolId] : 0;
+    }
+}
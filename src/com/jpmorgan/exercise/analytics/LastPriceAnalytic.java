@@ -0,0 +1,58 @@
+package com.jpmorgan.exercise.analytics;
+
+import java.util.Arrays;
+
+import com.jpmorgan.exercise.window.OffHeapWindowStore;
+import com.jpmorgan.exercise.window.WindowAnalytic;
+
+/**
+ * Price of the latest trade of each stock within the window, by timestamp.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public class LastPriceAnalytic implements WindowAnalytic
+{
+
+    public static final String NAME       = "LAST_PRICE";
+
+    private double[]           lastPrices = new double[SymbolArrays.INITIAL_CAPACITY];
+
+    @Override
+    public String getName ()
+    {
+        return NAME;
+    }
+
+    @Override
+    public void tradeAdded (final OffHeapWindowStore store, final int symbolId, final long sequence)
+    {
+        lastPrices = SymbolArrays.ensure (lastPrices, symbolId);
+        if (store.getNextTrade (sequence) == OffHeapWindowStore.NO_TRADE)
+        {
+            lastPrices[symbolId] = store.getTradePrice (sequence);
+        }
+    }
+
+    @Override
+    public void tradeRemoved (final OffHeapWindowStore store, final int symbolId, final long sequence)
+    {
+        if (store.getNextTrade (sequence) == OffHeapWindowStore.NO_TRADE)
+        {
+            long previous = store.getPreviousTrade (sequence);
+            lastPrices[symbolId] = (previous == OffHeapWindowStore.NO_TRADE) ? 0 : store.getTradePrice (previous);
+        }
+    }
+
+    @Override
+    public void reset ()
+    {
+        Arrays.fill (lastPrices, 0);
+    }
+
+    @Override
+    public double getValue (final OffHeapWindowStore store, final int symbolId)
+    {
+        return (symbolId < lastPrices.length) ? lastPrices[symbolId] : 0;
+    }
+}
@@ -0,0 +1,48 @@
+package com.jpmorgan.exercise.analytics;
+
+import com.jpmorgan.exercise.window.OffHeapWindowStore;
+import com.jpmorgan.exercise.window.WindowAnalytic;
+
+/**
+ * Total notional, price * quantity, of the trades of each stock within the window.
+ * 
+ * The store already keeps the notional of each symbol, so this holds no state of its own.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public class NotionalAnalytic implements WindowAnalytic
+{
+
+    public static final String NAME = "NOTIONAL";
+
+    @Override
+    public String getName ()
+    {
+        return NAME;
+    }
+
+    @Override
+    public void tradeAdded (final OffHeapWindowStore store, final int symbolId, final long sequence)
+    {
+
+    }
+
+    @Override
+    public void tradeRemoved (final OffHeapWindowStore store, final int symbolId, final long sequence)
+    {
+
+    }
+
+    @Override
+    public void reset ()
+    {
+
+    }
+
+    @Override
+    public double getValue (final OffHeapWindowStore store, final int symbolId)
+    {
+        return store.getNotional (symbolId);
+    }
+}
@@ -0,0 +1,359 @@
+package com.jpmorgan.exercise.analytics;
+
+import java.util.Arrays;
+
+/**
+ * Mergeable, bounded memory sketch of a distribution of values, used to estimate quantiles
+ * (e.g. the median price) without holding, and sorting, every value.
+ * 
+ * The sketch is a KLL sketch: values are held in a stack of compactors, where a value at
+ * level <i>h</i> stands in for 2<sup><i>h</i></sup> of the original values. When a level
+ * exceeds its capacity it's sorted, and every other value is promoted to the next level,
+ * halving its size. The capacity shrinks geometrically for the lower levels, so the memory
+ * used grows only logarithmically with the number of values. The minimum, maximum and
+ * count are held exactly.
+ * 
+ * The choice of which half of a level to promote is made by a pseudo random generator with
+ * a fixed seed, so the results are reproducible for the same sequence of values.
+ * 
+ * Note that the sketch is not thread-safe.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public class QuantileSketch
+{
+
+    /**
+     * Default size of the top level, giving a rank error of around 1%.
+     */
+    public static final int  DEFAULT_K          = 200;
+
+    /**
+     * Ratio of the capacity of each level to the level above.
+     */
+    private static final double CAPACITY_RATIO  = 2.0 / 3.0;
+
+    /**
+     * Minimum capacity of any level.
+     */
+    private static final int MIN_LEVEL_CAPACITY = 8;
+
+    /**
+     * Seed of the generator choosing which half of a level to promote.
+     */
+    private static final long RANDOM_SEED       = 0x9E3779B97F4A7C15L;
+
+    private final int        k;
+
+    /**
+     * Compactor levels, of which the first <code>levelCount</code> are in use. Each level's
+     * array starts small and grows as values are added, so a sketch of a few values holds
+     * little memory. The arrays of levels no longer in use are kept after a reset, to be
+     * reused.
+     */
+    private double[][]       levels             = new double[1][];
+    private int[]            sizes              = new int[1];
+    private int              levelCount         = 1;
+
+    private long             count;
+    private double           min                = Double.NaN;
+    private double           max                = Double.NaN;
+
+    private long             random             = RANDOM_SEED;
+
+    public QuantileSketch ()
+    {
+        this (DEFAULT_K);
+    }
+
+    /**
+     * @param k
+     *            Size of the top level. Larger values reduce the error, at the cost of memory.
+     */
+    public QuantileSketch (final int k)
+    {
+        if (k < MIN_LEVEL_CAPACITY)
+        {
+            throw new IllegalArgumentException ("invalid k " + k);
+        }
+        this.k = k;
+        levels[0] = new double[MIN_LEVEL_CAPACITY];
+    }
+
+    /**
+     * @return A copy of this sketch.
+     */
+    public QuantileSketch copy ()
+    {
+        QuantileSketch copy = new QuantileSketch (k);
+        copy.merge (this);
+        return copy;
+    }
+
+    /**
+     * Empty the sketch, keeping the memory it holds, so that it can be reused as a new sketch.
+     */
+    public void reset ()
+    {
+        Arrays.fill (sizes, 0);
+        levelCount = 1;
+        count = 0;
+        min = Double.NaN;
+        max = Double.NaN;
+        random = RANDOM_SEED;
+    }
+
+    /**
+     * @param value
+     *            Value to add to the distribution.
+     */
+    public void update (final double value)
+    {
+        if (count == 0)
+        {
+            min = value;
+            max = value;
+        }
+        else
+        {
+            min = Math.min (min, value);
+            max = Math.max (max, value);
+        }
+        count++;
+
+        append (0, value);
+        if (sizes[0] >= capacity (0))
+        {
+            compress ();
+        }
+    }
+
+    /**
+     * Merge another sketch into this sketch, so that it estimates the distribution of the
+     * values of both.
+     * 
+     * @param other
+     *            The sketch to merge in, which is unchanged.
+     */
+    public void merge (final QuantileSketch other)
+    {
+        if (other.count == 0)
+        {
+            return;
+        }
+        if (count == 0)
+        {
+            min = other.min;
+            max = other.max;
+        }
+        else
+        {
+            min = Math.min (min, other.min);
+            max = Math.max (max, other.max);
+        }
+        count += other.count;
+
+        for (int level = 0; level < other.levelCount; level++)
+        {
+            for (int i = 0; i < other.sizes[level]; i++)
+            {
+                append (level, other.levels[level][i]);
+            }
+        }
+        compress ();
+    }
+
+    public boolean isEmpty ()
+    {
+        return count == 0;
+    }
+
+    /**
+     * @return The number of values added to the distribution.
+     */
+    public long getCount ()
+    {
+        return count;
+    }
+
+    /**
+     * @return The lowest value, or 0 if the sketch is empty.
+     */
+    public double getMin ()
+    {
+        return (count == 0) ? 0 : min;
+    }
+
+    /**
+     * @return The highest value, or 0 if the sketch is empty.
+     */
+    public double getMax ()
+    {
+        return (count == 0) ? 0 : max;
+    }
+
+    public double getMedian ()
+    {
+        return getQuantile (0.5);
+    }
+
+    /**
+     * Estimate a quantile of the distribution.
+     * 
+     * @param fraction
+     *            The fraction of values below the quantile, from 0 to 1 inclusive. E.g. 0.05
+     *            for the 5th percentile.
+     * @return The estimated quantile, or 0 if the sketch is empty.
+     */
+    public double getQuantile (final double fraction)
+    {
+        if (fraction < 0 || fraction > 1)
+        {
+            throw new IllegalArgumentException ("invalid fraction " + fraction);
+        }
+        if (count == 0)
+        {
+            return 0;
+        }
+        if (fraction == 0)
+        {
+            return min;
+        }
+        if (fraction == 1)
+        {
+            return max;
+        }
+
+        /*
+         * Sort a copy of each level, in which every value has the same weight, then merge the
+         * levels in value order, walking through the cumulative weights.
+         */
+        double[][] sorted = new double[levelCount][];
+        long totalWeight = 0;
+        for (int level = 0; level < levelCount; level++)
+        {
+            sorted[level] = Arrays.copyOf (levels[level], sizes[level]);
+            Arrays.sort (sorted[level]);
+            totalWeight += (long)sizes[level] << level;
+        }
+
+        double target = fraction * totalWeight;
+        long cumulative = 0;
+        int[] positions = new int[levelCount];
+        while (true)
+        {
+            int next = -1;
+            for (int level = 0; level < levelCount; level++)
+            {
+                if (positions[level] < sorted[level].length
+                    && (next < 0 || sorted[level][positions[level]] < sorted[next][positions[next]]))
+                {
+                    next = level;
+                }
+            }
+            if (next < 0)
+            {
+                return max;
+            }
+            cumulative += 1L << next;
+            if (cumulative >= target)
+            {
+                return sorted[next][positions[next]];
+            }
+            positions[next]++;
+        }
+    }
+
+    /**
+     * @return The number of values held, a measure of the memory used.
+     */
+    public int getRetainedCount ()
+    {
+        int retained = 0;
+        for (int level = 0; level < levelCount; level++)
+        {
+            retained += sizes[level];
+        }
+        return retained;
+    }
+
+    private int capacity (final int level)
+    {
+        int depth = levelCount - 1 - level;
+        return Math.max (MIN_LEVEL_CAPACITY, (int)Math.ceil (k * Math.pow (CAPACITY_RATIO, depth)));
+    }
+
+    private void append (final int level, final double value)
+    {
+        while (level >= levelCount)
+        {
+            if (levelCount == levels.length)
+            {
+                levels = Arrays.copyOf (levels, levelCount + 1);
+                sizes = Arrays.copyOf (sizes, levelCount + 1);
+                levels[levelCount] = new double[MIN_LEVEL_CAPACITY];
+            }
+            levelCount++;
+        }
+        if (sizes[level] == levels[level].length)
+        {
+            levels[level] = Arrays.copyOf (levels[level], levels[level].length * 2);
+        }
+        levels[level][sizes[level]++] = value;
+    }
+
+    /**
+     * Compact each level that exceeds its capacity, from the bottom up.
+     */
+    private void compress ()
+    {
+        for (int level = 0; level < levelCount; level++)
+        {
+            if (sizes[level] >= capacity (level))
+            {
+                compact (level);
+            }
+        }
+    }
+
+    /**
+     * Sort a level, and promote every other value to the next level, keeping any odd value.
+     */
+    private void compact (final int level)
+    {
+        double[] items = levels[level];
+        int size = sizes[level];
+        Arrays.sort (items, 0, size);
+
+        int keep = size % 2;
+        int offset = nextBit () + keep;
+        for (int i = offset; i < size; i += 2)
+        {
+            append (level + 1, items[i]);
+        }
+
+        /*
+         * Retain the lowest value when the size is odd, so the promoted pairs stay balanced.
+         * The capacity of a level shrinks as levels are added above it, so its array is
+         * trimmed once it's well beyond the capacity, e.g. after a merge.
+         */
+        sizes[level] = keep;
+        int capacity = capacity (level);
+        if (items.length > 2 * capacity)
+        {
+            levels[level] = Arrays.copyOf (items, capacity);
+        }
+    }
+
+    /**
+     * xorshift generator, choosing which of each pair of values is promoted.
+     */
+    private int nextBit ()
+    {
+        random ^= random << 13;
+        random ^= random >>> 7;
+        random ^= random << 17;
+        return (int)(random & 1);
+    }
+}
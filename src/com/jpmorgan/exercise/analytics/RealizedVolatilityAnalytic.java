@@ -0,0 +1,35 @@
+package com.jpmorgan.exercise.analytics;
+
+import com.jpmorgan.exercise.window.OffHeapWindowStore;
+
+/**
+ * Realized volatility of each stock within the window: the square root of the sum of the
+ * squared log returns between consecutive trades.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public class RealizedVolatilityAnalytic extends ConsecutiveTradeAnalytic
+{
+
+    public static final String NAME = "VOLATILITY";
+
+    @Override
+    public String getName ()
+    {
+        return NAME;
+    }
+
+    @Override
+    protected double term (final OffHeapWindowStore store, final long earlier, final long later)
+    {
+        double logReturn = Math.log (store.getTradePrice (later) / store.getTradePrice (earlier));
+        return logReturn * logReturn;
+    }
+
+    @Override
+    public double getValue (final OffHeapWindowStore store, final int symbolId)
+    {
+        return Math.sqrt (Math.max (0, getSum (symbolId)));
+    }
+}
@@ -0,0 +1,37 @@
+package com.jpmorgan.exercise.analytics;
+
+import java.util.Arrays;
+
+/**
+ * Growth of the per-symbol arrays of the window analytics, indexed by symbol id.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+final class SymbolArrays
+{
+
+    static final int INITIAL_CAPACITY = 16;
+
+    private SymbolArrays ()
+    {
+    }
+
+    /**
+     * @return The array, or a copy grown by half, or to fit the symbol id if larger.
+     */
+    static double[] ensure (final double[] values, final int symbolId)
+    {
+        return (symbolId < values.length) ? values : Arrays.copyOf (values, capacity (values.length, symbolId));
+    }
+
+    static long[] ensure (final long[] values, final int symbolId)
+    {
+        return (symbolId < values.length) ? values : Arrays.copyOf (values, capacity (values.length, symbolId));
+    }
+
+    private static int capacity (final int length, final int symbolId)
+    {
+        return Math.max (symbolId + 1, length + (length >> 1));
+    }
+}
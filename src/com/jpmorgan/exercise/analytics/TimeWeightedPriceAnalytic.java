@@ -0,0 +1,97 @@
+package com.jpmorgan.exercise.analytics;
+
+import java.util.Arrays;
+
+import com.jpmorgan.exercise.window.OffHeapWindowStore;
+
+/**
+ * Time weighted average price (TWAP) of each stock within the window, from its first to its
+ * latest trade. Each trade's price is weighted by the time until the stock's next trade;
+ * where all the trades are at the same time, the prices are weighted equally.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public class TimeWeightedPriceAnalytic extends ConsecutiveTradeAnalytic
+{
+
+    public static final String NAME            = "TWAP";
+
+    private long[]             firstTimestamps = new long[SymbolArrays.INITIAL_CAPACITY];
+    private long[]             lastTimestamps  = new long[SymbolArrays.INITIAL_CAPACITY];
+    private double[]           priceSums       = new double[SymbolArrays.INITIAL_CAPACITY];
+    private long[]             counts          = new long[SymbolArrays.INITIAL_CAPACITY];
+
+    @Override
+    public String getName ()
+    {
+        return NAME;
+    }
+
+    @Override
+    protected double term (final OffHeapWindowStore store, final long earlier, final long later)
+    {
+        return store.getTradePrice (earlier) * (store.getTradeTimestamp (later) - store.getTradeTimestamp (earlier));
+    }
+
+    @Override
+    public void tradeAdded (final OffHeapWindowStore store, final int symbolId, final long sequence)
+    {
+        super.tradeAdded (store, symbolId, sequence);
+
+        firstTimestamps = SymbolArrays.ensure (firstTimestamps, symbolId);
+        lastTimestamps = SymbolArrays.ensure (lastTimestamps, symbolId);
+        priceSums = SymbolArrays.ensure (priceSums, symbolId);
+        counts = SymbolArrays.ensure (counts, symbolId);
+
+        firstTimestamps[symbolId] = store.getTradeTimestamp (store.getOldestTrade (symbolId));
+        lastTimestamps[symbolId] = store.getTradeTimestamp (store.getNewestTrade (symbolId));
+        priceSums[symbolId] += store.getTradePrice (sequence);
+        counts[symbolId]++;
+    }
+
+    @Override
+    public void tradeRemoved (final OffHeapWindowStore store, final int symbolId, final long sequence)
+    {
+        super.tradeRemoved (store, symbolId, sequence);
+
+        if (--counts[symbolId] == 0)
+        {
+            priceSums[symbolId] = 0;
+            return;
+        }
+        priceSums[symbolId] -= store.getTradePrice (sequence);
+
+        long previous = store.getPreviousTrade (sequence);
+        long next = store.getNextTrade (sequence);
+        if (previous == OffHeapWindowStore.NO_TRADE)
+        {
+            firstTimestamps[symbolId] = store.getTradeTimestamp (next);
+        }
+        if (next == OffHeapWindowStore.NO_TRADE)
+        {
+            lastTimestamps[symbolId] = store.getTradeTimestamp (previous);
+        }
+    }
+
+    @Override
+    public void reset ()
+    {
+        super.reset ();
+        Arrays.fill (firstTimestamps, 0);
+        Arrays.fill (lastTimestamps, 0);
+        Arrays.fill (priceSums, 0);
+        Arrays.fill (counts, 0);
+    }
+
+    @Override
+    public double getValue (final OffHeapWindowStore store, final int symbolId)
+    {
+        if (symbolId >= counts.length || counts[symbolId] == 0)
+        {
+            return 0;
+        }
+        long duration = lastTimestamps[symbolId] - firstTimestamps[symbolId];
+        return (duration == 0) ? priceSums[symbolId] / counts[symbolId] : getSum (symbolId) / duration;
+    }
+}
@@ -0,0 +1,201 @@
+package com.jpmorgan.exercise.analytics;
+
+/**
+ * Quantile sketch over a sliding time window, e.g. of the prices of one stock over the
+ * horizon of the VWSP.
+ * 
+ * A sketch can't remove a value once added, so the window is split into a fixed number of
+ * coarse buckets, each covering a span of seconds and holding its own sketch, in a ring
+ * indexed by the bucket. A bucket is retired when the window moves past its last second, and
+ * its sketch reset and reused for a later bucket. The distribution over the window is found
+ * by merging the sketches of the live buckets. The window is rounded to whole buckets: the
+ * oldest bucket counts while any of its seconds is within the window, so a value may be
+ * included for up to a bucket's span longer than the window.
+ * 
+ * The memory used is bounded by the number of buckets, whatever the length of the window or
+ * the trade rate, and each bucket's sketch grows only with the values added to it. With the
+ * default k, a busy bucket holds at most around 8 KB, so a busy stock costs at most around
+ * 160 KB over the 21 buckets of the ring and the merged distribution, whereas a stock
+ * trading once a second costs around 6 KB.
+ * 
+ * The merged distribution is kept for the time it was last found, and values added within
+ * its window are added to it too, so it's only merged again from the buckets when the time
+ * moves on, or a bucket within it is retired.
+ * 
+ * Note that the sketch is not thread-safe.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public class WindowedQuantileSketch
+{
+
+    /**
+     * Number of buckets the window is split into.
+     */
+    public static final int        BUCKET_COUNT = 20;
+
+    private final int              k;
+
+    private final long             windowSeconds;
+
+    /**
+     * Number of seconds covered by each bucket.
+     */
+    private final long             bucketSpan;
+
+    /**
+     * Ring of buckets, with one more than is needed to cover the window, for the bucket
+     * partly within it.
+     */
+    private final QuantileSketch[] buckets;
+
+    /**
+     * The index of the bucket held in each slot, i.e. the time divided by the span.
+     */
+    private final long[]           bucketIndexes;
+
+    /**
+     * Distribution over the window ending at <code>mergedAt</code>, valid if
+     * <code>mergedValid</code>.
+     */
+    private final QuantileSketch   merged;
+
+    private long                   mergedAt;
+
+    private boolean                mergedValid;
+
+    /**
+     * @param windowSeconds
+     *            Length of the window, in seconds.
+     */
+    public WindowedQuantileSketch (final long windowSeconds)
+    {
+        this (windowSeconds, QuantileSketch.DEFAULT_K);
+    }
+
+    /**
+     * @param windowSeconds
+     *            Length of the window, in seconds.
+     * @param k
+     *            Size of the top level of each bucket's sketch.
+     */
+    public WindowedQuantileSketch (final long windowSeconds, final int k)
+    {
+        if (windowSeconds <= 0 || windowSeconds > Integer.MAX_VALUE)
+        {
+            throw new IllegalArgumentException ("invalid window " + windowSeconds);
+        }
+        this.k = k;
+        this.windowSeconds = windowSeconds;
+        bucketSpan = (windowSeconds + BUCKET_COUNT - 1) / BUCKET_COUNT;
+        int slotCount = (int)((windowSeconds + bucketSpan - 1) / bucketSpan) + 1;
+        buckets = new QuantileSketch[slotCount];
+        bucketIndexes = new long[slotCount];
+        merged = new QuantileSketch (k);
+    }
+
+    /**
+     * @return The number of seconds covered by each bucket.
+     */
+    public long getBucketSpan ()
+    {
+        return bucketSpan;
+    }
+
+    /**
+     * Add a value to the bucket for its timestamp. Values for a bucket that has already been
+     * retired are ignored.
+     * 
+     * @param timestamp
+     *            Time of the value, in seconds.
+     * @param value
+     *            The value.
+     */
+    public void update (final long timestamp, final double value)
+    {
+        long index = Math.floorDiv (timestamp, bucketSpan);
+        int slot = (int)Math.floorMod (index, (long)buckets.length);
+        QuantileSketch bucket = buckets[slot];
+
+        if (bucket == null)
+        {
+            bucket = new QuantileSketch (k);
+            buckets[slot] = bucket;
+            bucketIndexes[slot] = index;
+        }
+        else if (bucketIndexes[slot] < index)
+        {
+            /*
+             * Retire the slot's previous bucket, which is at least a window older.
+             */
+            if (mergedValid && bucketIndexes[slot] >= firstIndex (mergedAt))
+            {
+                mergedValid = false;
+            }
+            bucket.reset ();
+            bucketIndexes[slot] = index;
+        }
+        else if (bucketIndexes[slot] > index)
+        {
+            return;
+        }
+        bucket.update (value);
+
+        if (mergedValid && index >= firstIndex (mergedAt))
+        {
+            merged.update (value);
+        }
+    }
+
+    /**
+     * Merge the buckets within the window ending at the current time.
+     * 
+     * @param now
+     *            The current time, in seconds. Values in a bucket with any second after
+     *            <code>now - windowSeconds</code> are included.
+     * @return Sketch of the values within the window.
+     */
+    public QuantileSketch snapshot (final long now)
+    {
+        QuantileSketch snapshot = new QuantileSketch (k);
+        mergeInto (snapshot, now);
+        return snapshot;
+    }
+
+    /**
+     * Merge the buckets within the window ending at the current time into a sketch, e.g. to
+     * combine the distributions of several stocks.
+     * 
+     * @param sketch
+     *            The sketch to merge into.
+     * @param now
+     *            The current time, in seconds.
+     */
+    public void mergeInto (final QuantileSketch sketch, final long now)
+    {
+        if (!mergedValid || mergedAt != now)
+        {
+            merged.reset ();
+            long first = firstIndex (now);
+            for (int slot = 0; slot < buckets.length; slot++)
+            {
+                if (buckets[slot] != null && bucketIndexes[slot] >= first)
+                {
+                    merged.merge (buckets[slot]);
+                }
+            }
+            mergedAt = now;
+            mergedValid = true;
+        }
+        sketch.merge (merged);
+    }
+
+    /**
+     * @return The index of the oldest bucket within the window ending at the time.
+     */
+    private long firstIndex (final long now)
+    {
+        return Math.floorDiv (now - windowSeconds + 1, bucketSpan);
+    }
+}
@@ -0,0 +1,88 @@
+package com.jpmorgan.exercise.archive;
+
+import java.nio.ByteBuffer;
+
+import com.jpmorgan.exercise.market.TradeType;
+
+/**
+ * Decodes the columns of an archive block written by a <code>BlockEncoder</code>. Each
+ * column is decoded independently, so only the columns needed are read.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+class BlockDecoder
+{
+
+    private static final TradeType[] TRADE_TYPES = TradeType.values ();
+
+    private BlockDecoder ()
+    {
+
+    }
+
+    static void decodeTimestamps (final ByteBuffer buffer, final int position, final int count, final long[] timestamps)
+    {
+        ColumnReader reader = new ColumnReader (buffer, position);
+        long timestamp = 0;
+        long delta = 0;
+        for (int i = 0; i < count; i++)
+        {
+            if (i == 0)
+            {
+                timestamp = reader.readSignedVarLong ();
+            }
+            else
+            {
+                delta = (i == 1) ? reader.readSignedVarLong () : delta + reader.readSignedVarLong ();
+                timestamp += delta;
+            }
+            timestamps[i] = timestamp;
+        }
+    }
+
+    static void decodeQuantities (final ByteBuffer buffer, final int position, final int count, final int[] quantities)
+    {
+        ColumnReader reader = new ColumnReader (buffer, position);
+        for (int i = 0; i < count; i++)
+        {
+            quantities[i] = (int)reader.readVarLong ();
+        }
+    }
+
+    static void decodePrices (final ByteBuffer buffer, final int position, final int count, final double[] prices)
+    {
+        ColumnReader reader = new ColumnReader (buffer, position);
+        long bits = 0;
+        int leading = 0;
+        int trailing = 0;
+        for (int i = 0; i < count; i++)
+        {
+            if (i == 0)
+            {
+                bits = reader.readBits (64);
+            }
+            else if (reader.readBit () != 0)
+            {
+                if (reader.readBit () != 0)
+                {
+                    leading = (int)reader.readBits (5);
+                    int meaningful = (int)reader.readBits (6) + 1;
+                    trailing = 64 - leading - meaningful;
+                }
+                bits ^= reader.readBits (64 - leading - trailing) << trailing;
+            }
+            prices[i] = Double.longBitsToDouble (bits);
+        }
+    }
+
+    static void decodeTypes (final ByteBuffer buffer, final int position, final int count, final TradeType[] types)
+    {
+        ColumnReader reader = new ColumnReader (buffer, position);
+        for (int i = 0; i < count; i++)
+        {
+            int code = (int)reader.readBits (2);
+            types[i] = (code == 0) ? null : TRADE_TYPES[code - 1];
+        }
+    }
+}
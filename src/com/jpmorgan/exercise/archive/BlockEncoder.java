@@ -0,0 +1,158 @@
+package com.jpmorgan.exercise.archive;
+
+import com.jpmorgan.exercise.market.TradeType;
+
+/**
+ * Builds the columns of one archive block, holding the trades of a single stock:
+ * <ul>
+ * <li>Timestamps: the first timestamp, then the first delta, then the delta of each
+ * delta, as zigzag variable length integers. Regular trading gives deltas of deltas of 0,
+ * taking a byte each.</li>
+ * <li>Quantities: variable length integers.</li>
+ * <li>Prices: XOR of each price's bits with the previous price's, as a bit stream. Repeated
+ * prices take a single bit, and nearby prices share their sign, exponent and leading
+ * mantissa bits, leaving a short run of meaningful bits.</li>
+ * <li>Trade types: two bits each (none, buy, sell).</li>
+ * </ul>
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+class BlockEncoder
+{
+
+    static final int           TIMESTAMPS     = 0;
+    static final int           QUANTITIES     = 1;
+    static final int           PRICES         = 2;
+    static final int           TYPES          = 3;
+    static final int           COLUMN_COUNT   = 4;
+
+    private final String       stockIdentifier;
+
+    private final ColumnWriter[] columns      = new ColumnWriter[COLUMN_COUNT];
+
+    private int                count;
+    private long               minTimestamp;
+    private long               maxTimestamp;
+
+    private long               previousTimestamp;
+    private long               previousDelta;
+    private long               previousPriceBits;
+    private int                previousLeading;
+    private int                previousTrailing;
+
+    BlockEncoder (final String stockIdentifier)
+    {
+        this.stockIdentifier = stockIdentifier;
+        for (int i = 0; i < COLUMN_COUNT; i++)
+        {
+            columns[i] = new ColumnWriter ();
+        }
+        clear ();
+    }
+
+    void add (final long timestamp, final int quantity, final double price, final TradeType tradeType)
+    {
+        ColumnWriter timestamps = columns[TIMESTAMPS];
+        if (count == 0)
+        {
+            timestamps.writeSignedVarLong (timestamp);
+            minTimestamp = timestamp;
+            maxTimestamp = timestamp;
+        }
+        else
+        {
+            long delta = timestamp - previousTimestamp;
+            timestamps.writeSignedVarLong ((count == 1) ? delta : delta - previousDelta);
+            previousDelta = delta;
+            minTimestamp = Math.min (minTimestamp, timestamp);
+            maxTimestamp = Math.max (maxTimestamp, timestamp);
+        }
+        previousTimestamp = timestamp;
+
+        columns[QUANTITIES].writeVarLong (quantity);
+
+        writePrice (columns[PRICES], Double.doubleToRawLongBits (price));
+
+        columns[TYPES].writeBits ((tradeType == null) ? 0 : tradeType.ordinal () + 1, 2);
+
+        count++;
+    }
+
+    private void writePrice (final ColumnWriter prices, final long bits)
+    {
+        if (count == 0)
+        {
+            prices.writeBits (bits, 64);
+        }
+        else
+        {
+            long xor = bits ^ previousPriceBits;
+            if (xor == 0)
+            {
+                prices.writeBit (0);
+            }
+            else
+            {
+                prices.writeBit (1);
+                int leading = Math.min (Long.numberOfLeadingZeros (xor), 31);
+                int trailing = Long.numberOfTrailingZeros (xor);
+                if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing)
+                {
+                    /*
+                     * Meaningful bits fit within the previous window.
+                     */
+                    prices.writeBit (0);
+                    prices.writeBits (xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+                }
+                else
+                {
+                    int meaningful = 64 - leading - trailing;
+                    prices.writeBit (1);
+                    prices.writeBits (leading, 5);
+                    prices.writeBits (meaningful - 1, 6);
+                    prices.writeBits (xor >>> trailing, meaningful);
+                    previousLeading = leading;
+                    previousTrailing = trailing;
+                }
+            }
+        }
+        previousPriceBits = bits;
+    }
+
+    String getStockIdentifier ()
+    {
+        return stockIdentifier;
+    }
+
+    int getCount ()
+    {
+        return count;
+    }
+
+    long getMinTimestamp ()
+    {
+        return minTimestamp;
+    }
+
+    long getMaxTimestamp ()
+    {
+        return maxTimestamp;
+    }
+
+    ColumnWriter getColumn (final int column)
+    {
+        return columns[column];
+    }
+
+    void clear ()
+    {
+        for (ColumnWriter column : columns)
+        {
+            column.clear ();
+        }
+        count = 0;
+        previousLeading = -1;
+        previousTrailing = 0;
+    }
+}
@@ -0,0 +1,127 @@
+package com.jpmorgan.exercise.archive;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Immutable bean to hold the index entry of an archive block.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+class BlockIndexEntry
+{
+
+    private final String stockIdentifier;
+    private final int    count;
+    private final long   minTimestamp;
+    private final long   maxTimestamp;
+    private final long   position;
+    private final int[]  columnLengths;
+
+    BlockIndexEntry (final String stockIdentifier,
+                     final int count,
+                     final long minTimestamp,
+                     final long maxTimestamp,
+                     final long position,
+                     final int[] columnLengths)
+    {
+        this.stockIdentifier = stockIdentifier;
+        this.count = count;
+        this.minTimestamp = minTimestamp;
+        this.maxTimestamp = maxTimestamp;
+        this.position = position;
+        this.columnLengths = columnLengths;
+    }
+
+    static BlockIndexEntry read (final DataInput in) throws IOException
+    {
+        String stockIdentifier = in.readUTF ();
+        int count = in.readInt ();
+        long minTimestamp = in.readLong ();
+        long maxTimestamp = in.readLong ();
+        long position = in.readLong ();
+        int[] columnLengths = new int[BlockEncoder.COLUMN_COUNT];
+        for (int column = 0; column < columnLengths.length; column++)
+        {
+            columnLengths[column] = in.readInt ();
+        }
+        return new BlockIndexEntry (stockIdentifier, count, minTimestamp, maxTimestamp, position, columnLengths);
+    }
+
+    void write (final DataOutput out) throws IOException
+    {
+        out.writeUTF (stockIdentifier);
+        out.writeInt (count);
+        out.writeLong (minTimestamp);
+        out.writeLong (maxTimestamp);
+        out.writeLong (position);
+        for (int length : columnLengths)
+        {
+            out.writeInt (length);
+        }
+    }
+
+    String getStockIdentifier ()
+    {
+        return stockIdentifier;
+    }
+
+    int getCount ()
+    {
+        return count;
+    }
+
+    long getMinTimestamp ()
+    {
+        return minTimestamp;
+    }
+
+    long getMaxTimestamp ()
+    {
+        return maxTimestamp;
+    }
+
+    long getPosition ()
+    {
+        return position;
+    }
+
+    /**
+     * @return Offset of a column from the start of the block.
+     */
+    int getColumnOffset (final int column)
+    {
+        int offset = 0;
+        for (int i = 0; i < column; i++)
+        {
+            offset += columnLengths[i];
+        }
+        return offset;
+    }
+
+    /**
+     * @return Total length of the block's columns.
+     */
+    int getLength ()
+    {
+        return getColumnOffset (columnLengths.length);
+    }
+
+    /**
+     * @return Whether any of the block's trades may be within the window (from, to].
+     */
+    boolean overlaps (final long from, final long to)
+    {
+        return maxTimestamp > from && minTimestamp <= to;
+    }
+
+    /**
+     * @return Whether all of the block's trades are within the window (from, to].
+     */
+    boolean within (final long from, final long to)
+    {
+        return minTimestamp > from && maxTimestamp <= to;
+    }
+}
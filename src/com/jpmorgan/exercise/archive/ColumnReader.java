@@ -0,0 +1,72 @@
+package com.jpmorgan.exercise.archive;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reader of one column of an archive block, written by a <code>ColumnWriter</code>, directly
+ * from the bytes of the block read from the archive file.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+class ColumnReader
+{
+
+    private final ByteBuffer buffer;
+
+    private int              position;
+
+    /**
+     * Bits read from the current byte; 0 if byte aligned.
+     */
+    private int              bitCount;
+
+    ColumnReader (final ByteBuffer buffer, final int position)
+    {
+        this.buffer = buffer;
+        this.position = position;
+    }
+
+    long readVarLong ()
+    {
+        long value = 0;
+        int shift = 0;
+        while (true)
+        {
+            int b = buffer.get (position++);
+            value |= (long)(b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+            {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+
+    long readSignedVarLong ()
+    {
+        long value = readVarLong ();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    long readBits (final int count)
+    {
+        long value = 0;
+        for (int i = 0; i < count; i++)
+        {
+            value = (value << 1) | readBit ();
+        }
+        return value;
+    }
+
+    int readBit ()
+    {
+        int bit = (buffer.get (position) >>> (7 - bitCount)) & 1;
+        bitCount = (bitCount + 1) & 7;
+        if (bitCount == 0)
+        {
+            position++;
+        }
+        return bit;
+    }
+}
@@ -0,0 +1,95 @@
+package com.jpmorgan.exercise.archive;
+
+import java.util.Arrays;
+
+/**
+ * Growable byte buffer used to build one column of an archive block, written either as
+ * variable length integers, or as a stream of bits.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+class ColumnWriter
+{
+
+    private byte[] bytes = new byte[256];
+
+    private int    size;
+
+    /**
+     * Bits written to the current byte, most significant first; 0 if byte aligned.
+     */
+    private int    bitCount;
+
+    /**
+     * Write an unsigned variable length integer, 7 bits per byte, least significant first.
+     */
+    void writeVarLong (final long value)
+    {
+        long remaining = value;
+        while ((remaining & ~0x7FL) != 0)
+        {
+            writeByte ((int)((remaining & 0x7F) | 0x80));
+            remaining >>>= 7;
+        }
+        writeByte ((int)remaining);
+    }
+
+    /**
+     * Write a signed variable length integer, zigzag encoded so small negative values are
+     * short.
+     */
+    void writeSignedVarLong (final long value)
+    {
+        writeVarLong ((value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Write the low bits of a value, most significant first.
+     */
+    void writeBits (final long value, final int count)
+    {
+        for (int i = count - 1; i >= 0; i--)
+        {
+            writeBit ((int)(value >>> i) & 1);
+        }
+    }
+
+    void writeBit (final int bit)
+    {
+        if (bitCount == 0)
+        {
+            writeByte (0);
+        }
+        if (bit != 0)
+        {
+            bytes[size - 1] |= (byte)(0x80 >>> bitCount);
+        }
+        bitCount = (bitCount + 1) & 7;
+    }
+
+    int size ()
+    {
+        return size;
+    }
+
+    byte[] toByteArray ()
+    {
+        return Arrays.copyOf (bytes, size);
+    }
+
+    void clear ()
+    {
+        size = 0;
+        bitCount = 0;
+    }
+
+    private void writeByte (final int value)
+    {
+        if (size == bytes.length)
+        {
+            bytes = Arrays.copyOf (bytes, size * 2);
+        }
+        bytes[size++] = (byte)value;
+    }
+}
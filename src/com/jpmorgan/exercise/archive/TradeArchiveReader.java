@@ -0,0 +1,318 @@
+package com.jpmorgan.exercise.archive;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.jpmorgan.exercise.market.TradeType;
+
+/**
+ * Reader of an archive written by a <code>TradeArchiveWriter</code>, used to recalculate
+ * the VWSP/GBCE over historical windows.
+ * 
+ * The block index is read when the archive is opened. Calculations then use the minimum
+ * and maximum timestamps of each block to skip blocks outside the window, and decode only
+ * the columns they need: the VWSP needs no trade types, and needs no timestamps for a block
+ * that lies wholly within the window. Each block is read from the file into a buffer, reused
+ * for every block, rather than mapped, as mappings are only released by the garbage
+ * collector, so mapping each block read would accumulate mappings.
+ * 
+ * Note that the reader is not thread-safe.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public class TradeArchiveReader implements AutoCloseable
+{
+
+    private final FileChannel                  channel;
+
+    /**
+     * Blocks of each stock, in file order, keyed by upper case stock identifier.
+     */
+    private final Map<String, List<BlockIndexEntry>> blocks = new LinkedHashMap<String, List<BlockIndexEntry>> ();
+
+    private int                                blockCount;
+
+    private long                               tradeCount;
+
+    private long                               decodedBlockCount;
+
+    /**
+     * Buffer for the bytes of a block, sized to the longest block.
+     */
+    private ByteBuffer                         blockBuffer;
+
+    /*
+     * Buffers for the decoded columns of a block.
+     */
+    private long[]                             timestamps;
+    private int[]                              quantities;
+    private double[]                           prices;
+    private TradeType[]                        types;
+
+    /**
+     * @param file
+     *            The archive file.
+     * @throws IOException
+     *             If the file can't be read, or isn't an archive.
+     */
+    public TradeArchiveReader (final Path file) throws IOException
+    {
+        channel = FileChannel.open (file, StandardOpenOption.READ);
+        try
+        {
+            long size = channel.size ();
+            if (size < 20)
+            {
+                throw new IOException ("not a trade archive " + file);
+            }
+
+            ByteBuffer trailer = ByteBuffer.allocate (12);
+            channel.read (trailer, size - 12);
+            long indexPosition = trailer.getLong (0);
+            if (trailer.getInt (8) != TradeArchiveWriter.MAGIC || indexPosition < 8 || indexPosition > size - 12)
+            {
+                throw new IOException ("not a trade archive " + file);
+            }
+
+            ByteBuffer header = ByteBuffer.allocate (8);
+            channel.read (header, 0);
+            if (header.getInt (0) != TradeArchiveWriter.MAGIC || header.getInt (4) != TradeArchiveWriter.VERSION)
+            {
+                throw new IOException ("unsupported trade archive " + file);
+            }
+
+            ByteBuffer indexBytes = ByteBuffer.allocate ((int)(size - 12 - indexPosition));
+            channel.read (indexBytes, indexPosition);
+            DataInputStream in = new DataInputStream (new ByteArrayInputStream (indexBytes.array ()));
+
+            int maxCount = 0;
+            int maxLength = 0;
+            blockCount = in.readInt ();
+            for (int i = 0; i < blockCount; i++)
+            {
+                BlockIndexEntry entry = BlockIndexEntry.read (in);
+                List<BlockIndexEntry> stockBlocks = blocks.get (entry.getStockIdentifier ());
+                if (stockBlocks == null)
+                {
+                    stockBlocks = new ArrayList<BlockIndexEntry> ();
+                    blocks.put (entry.getStockIdentifier (), stockBlocks);
+                }
+                stockBlocks.add (entry);
+                tradeCount += entry.getCount ();
+                maxCount = Math.max (maxCount, entry.getCount ());
+                maxLength = Math.max (maxLength, entry.getLength ());
+            }
+
+            blockBuffer = ByteBuffer.allocate (maxLength);
+            timestamps = new long[maxCount];
+            quantities = new int[maxCount];
+            prices = new double[maxCount];
+            types = new TradeType[maxCount];
+        }
+        catch (IOException | RuntimeException e)
+        {
+            channel.close ();
+            throw e;
+        }
+    }
+
+    /**
+     * @return The stocks in the archive, as upper case identifiers.
+     */
+    public List<String> getStockIdentifiers ()
+    {
+        return Collections.unmodifiableList (new ArrayList<String> (blocks.keySet ()));
+    }
+
+    public int getBlockCount ()
+    {
+        return blockCount;
+    }
+
+    public long getTradeCount ()
+    {
+        return tradeCount;
+    }
+
+    /**
+     * @return The number of blocks decoded since the archive was opened, a measure of the
+     *         blocks skipped by the calculations.
+     */
+    public long getDecodedBlockCount ()
+    {
+        return decodedBlockCount;
+    }
+
+    /**
+     * Calculate the volume weighted stock price of a stock over a window.
+     * 
+     * @param stockIdentifier
+     *            Identifier for the stock.
+     * @param from
+     *            Start of the window; trades at or before this time are excluded.
+     * @param to
+     *            End of the window; trades at or before this time are included.
+     * @return Volume weighted stock price. Note this will be 0 if there are no trades within
+     *         the window.
+     * @throws IOException
+     *             If the archive can't be read.
+     */
+    public double calculateVolumeWeightedStockPrice (final String stockIdentifier,
+                                                     final long from,
+                                                     final long to) throws IOException
+    {
+        List<BlockIndexEntry> stockBlocks = blocks.get (stockIdentifier.toUpperCase ());
+        if (stockBlocks == null)
+        {
+            return 0;
+        }
+
+        double vwspNominator = 0;
+        long vwspDenominator = 0;
+        for (BlockIndexEntry entry : stockBlocks)
+        {
+            if (!entry.overlaps (from, to))
+            {
+                continue;
+            }
+
+            ByteBuffer block = read (entry);
+            int count = entry.getCount ();
+            boolean within = entry.within (from, to);
+            if (!within)
+            {
+                BlockDecoder.decodeTimestamps (block, entry.getColumnOffset (BlockEncoder.TIMESTAMPS), count, timestamps);
+            }
+            BlockDecoder.decodeQuantities (block, entry.getColumnOffset (BlockEncoder.QUANTITIES), count, quantities);
+            BlockDecoder.decodePrices (block, entry.getColumnOffset (BlockEncoder.PRICES), count, prices);
+
+            for (int i = 0; i < count; i++)
+            {
+                if (within || (timestamps[i] > from && timestamps[i] <= to))
+                {
+                    vwspNominator += prices[i] * quantities[i];
+                    vwspDenominator += quantities[i];
+                }
+            }
+        }
+
+        return (vwspDenominator == 0) ? 0 : vwspNominator / vwspDenominator;
+    }
+
+    /**
+     * Calculate the GBCE all share index over a window, using the volume weighted stock
+     * price of each stock traded within the window.
+     * 
+     * @param from
+     *            Start of the window; trades at or before this time are excluded.
+     * @param to
+     *            End of the window; trades at or before this time are included.
+     * @return GBCE all share index. Note that this will be 0 if there are no trades within the
+     *         window.
+     * @throws IOException
+     *             If the archive can't be read.
+     */
+    public double calculateGBCE (final long from, final long to) throws IOException
+    {
+        List<Double> vwsps = new ArrayList<Double> ();
+        for (String stockIdentifier : blocks.keySet ())
+        {
+            double vwsp = calculateVolumeWeightedStockPrice (stockIdentifier, from, to);
+            if (vwsp > 0)
+            {
+                vwsps.add (vwsp);
+            }
+        }
+
+        double gbce = 0;
+        if (!vwsps.isEmpty ())
+        {
+            double root = 1 / (double)vwsps.size ();
+            gbce = 1;
+            for (double vwsp : vwsps)
+            {
+                gbce *= Math.pow (vwsp, root);
+            }
+        }
+        return gbce;
+    }
+
+    /**
+     * Visit the trades within a window, decoding all columns. Trades are visited stock by
+     * stock, in the order they were archived for each stock.
+     * 
+     * @param from
+     *            Start of the window; trades at or before this time are excluded.
+     * @param to
+     *            End of the window; trades at or before this time are included.
+     * @param visitor
+     *            Visitor of the trades.
+     * @throws IOException
+     *             If the archive can't be read.
+     */
+    public void forEachTrade (final long from, final long to, final TradeVisitor visitor) throws IOException
+    {
+        for (Map.Entry<String, List<BlockIndexEntry>> stockBlocks : blocks.entrySet ())
+        {
+            for (BlockIndexEntry entry : stockBlocks.getValue ())
+            {
+                if (!entry.overlaps (from, to))
+                {
+                    continue;
+                }
+
+                ByteBuffer block = read (entry);
+                int count = entry.getCount ();
+                BlockDecoder.decodeTimestamps (block, entry.getColumnOffset (BlockEncoder.TIMESTAMPS), count, timestamps);
+                BlockDecoder.decodeQuantities (block, entry.getColumnOffset (BlockEncoder.QUANTITIES), count, quantities);
+                BlockDecoder.decodePrices (block, entry.getColumnOffset (BlockEncoder.PRICES), count, prices);
+                BlockDecoder.decodeTypes (block, entry.getColumnOffset (BlockEncoder.TYPES), count, types);
+
+                for (int i = 0; i < count; i++)
+                {
+                    if (timestamps[i] > from && timestamps[i] <= to)
+                    {
+                        visitor.visit (stockBlocks.getKey (), timestamps[i], quantities[i], prices[i], types[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close () throws IOException
+    {
+        channel.close ();
+    }
+
+    /**
+     * @return The bytes of a block, in the block buffer, from position 0.
+     */
+    private ByteBuffer read (final BlockIndexEntry entry) throws IOException
+    {
+        decodedBlockCount++;
+        blockBuffer.clear ();
+        blockBuffer.limit (entry.getLength ());
+        while (blockBuffer.hasRemaining ())
+        {
+            if (channel.read (blockBuffer, entry.getPosition () + blockBuffer.position ()) < 0)
+            {
+                throw new EOFException ("truncated block at " + entry.getPosition ());
+            }
+        }
+        blockBuffer.flip ();
+        return blockBuffer;
+    }
+}
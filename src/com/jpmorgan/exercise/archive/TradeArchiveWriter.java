@@ -0,0 +1,197 @@
+package com.jpmorgan.exercise.archive;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.jpmorgan.exercise.market.Trade;
+import com.jpmorgan.exercise.market.TradeListener;
+import com.jpmorgan.exercise.market.TradeType;
+
+/**
+ * Writer of a compressed, columnar archive of trades, for audit and backtesting.
+ * 
+ * Trades are collected per stock, and written as blocks of up to <code>blockSize</code>
+ * trades of one stock, each block holding its trades as separately compressed columns (see
+ * <code>BlockEncoder</code>). The file ends with an index of the blocks, giving each
+ * block's stock, trade count, minimum and maximum timestamp, and the position of each
+ * column, so that a reader can skip blocks outside a time range, and decode only the
+ * columns it needs.
+ * 
+ * File layout: magic, version, blocks, index (block count, then per block: stock, count,
+ * minimum timestamp, maximum timestamp, position, column lengths), then the position of
+ * the index and the magic again.
+ * 
+ * The writer listens for trades, so it can archive the trades of a market as they're
+ * recorded. The archive is only readable once the writer is closed.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public class TradeArchiveWriter implements TradeListener, AutoCloseable
+{
+
+    static final int                       MAGIC              = 0x54415243;   // "TARC"
+
+    static final int                       VERSION            = 1;
+
+    /**
+     * Default maximum number of trades per block.
+     */
+    public static final int                DEFAULT_BLOCK_SIZE = 4096;
+
+    private final DataOutputStream         out;
+
+    private final int                      blockSize;
+
+    private final Map<String, BlockEncoder> encoders          = new HashMap<String, BlockEncoder> ();
+
+    private final List<BlockIndexEntry>    index              = new ArrayList<BlockIndexEntry> ();
+
+    private long                           position;
+
+    private boolean                        closed;
+
+    public TradeArchiveWriter (final Path file) throws IOException
+    {
+        this (file, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param file
+     *            The archive file to create.
+     * @param blockSize
+     *            Maximum number of trades per block.
+     * @throws IOException
+     *             If the file can't be created.
+     */
+    public TradeArchiveWriter (final Path file, final int blockSize) throws IOException
+    {
+        if (blockSize <= 0)
+        {
+            throw new IllegalArgumentException ("invalid block size " + blockSize);
+        }
+        this.blockSize = blockSize;
+        out = new DataOutputStream (new BufferedOutputStream (Files.newOutputStream (file), 1 << 16));
+        out.writeInt (MAGIC);
+        out.writeInt (VERSION);
+        position = 8;
+    }
+
+    /**
+     * Add a trade to the archive.
+     * 
+     * @throws IOException
+     *             If a block fails to be written.
+     */
+    public void append (final String stockIdentifier,
+                        final long timestamp,
+                        final int quantity,
+                        final double price,
+                        final TradeType tradeType) throws IOException
+    {
+        if (closed)
+        {
+            throw new IllegalStateException ("archive is closed");
+        }
+
+        String symbol = stockIdentifier.toUpperCase ();
+        BlockEncoder encoder = encoders.get (symbol);
+        if (encoder == null)
+        {
+            encoder = new BlockEncoder (symbol);
+            encoders.put (symbol, encoder);
+        }
+
+        encoder.add (timestamp, quantity, price, tradeType);
+        if (encoder.getCount () == blockSize)
+        {
+            writeBlock (encoder);
+        }
+    }
+
+    /**
+     * Add a trade recorded by a market to the archive.
+     * 
+     * @throws UncheckedIOException
+     *             If a block fails to be written.
+     */
+    @Override
+    public void tradeRecorded (final Trade trade)
+    {
+        try
+        {
+            append (trade.getStockIdentifier (), trade.getTimestamp (), trade.getQuantity (), trade.getPrice (),
+                    trade.getType ());
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException (e);
+        }
+    }
+
+    /**
+     * Write the partly filled blocks, and the index.
+     */
+    @Override
+    public void close () throws IOException
+    {
+        if (closed)
+        {
+            return;
+        }
+        closed = true;
+
+        try
+        {
+            for (BlockEncoder encoder : encoders.values ())
+            {
+                if (encoder.getCount () > 0)
+                {
+                    writeBlock (encoder);
+                }
+            }
+
+            long indexPosition = position;
+            out.writeInt (index.size ());
+            for (BlockIndexEntry entry : index)
+            {
+                entry.write (out);
+            }
+            out.writeLong (indexPosition);
+            out.writeInt (MAGIC);
+        }
+        finally
+        {
+            out.close ();
+        }
+    }
+
+    private void writeBlock (final BlockEncoder encoder) throws IOException
+    {
+        int[] lengths = new int[BlockEncoder.COLUMN_COUNT];
+        long blockPosition = position;
+        for (int column = 0; column < BlockEncoder.COLUMN_COUNT; column++)
+        {
+            byte[] bytes = encoder.getColumn (column).toByteArray ();
+            out.write (bytes);
+            lengths[column] = bytes.length;
+            position += bytes.length;
+        }
+
+        index.add (new BlockIndexEntry (encoder.getStockIdentifier (),
+                                        encoder.getCount (),
+                                        encoder.getMinTimestamp (),
+                                        encoder.getMaxTimestamp (),
+                                        blockPosition,
+                                        lengths));
+        encoder.clear ();
+    }
+}
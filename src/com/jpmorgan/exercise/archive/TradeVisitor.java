@@ -0,0 +1,14 @@
+package com.jpmorgan.exercise.archive;
+
+import com.jpmorgan.exercise.market.TradeType;
+
+/**
+ * Visitor of the trades read from an archive.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public interface TradeVisitor
+{
+    public void visit (String stockIdentifier, long timestamp, int quantity, double price, TradeType tradeType);
+}
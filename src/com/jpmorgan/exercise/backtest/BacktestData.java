@@ -0,0 +1,109 @@
+package com.jpmorgan.exercise.backtest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+import com.jpmorgan.exercise.archive.TradeArchiveReader;
+import com.jpmorgan.exercise.market.Trade;
+
+/**
+ * Immutable copy of the trades over a period of history, decoded once and shared by all the
+ * runs of a backtest. The trades are held in time order, trades at the same time keeping the
+ * order they were given in.
+ * 
+ * As <code>Trade</code>s are immutable, the same trade objects are placed in the ledger of
+ * each run's market, rather than each run creating its own.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public class BacktestData
+{
+
+    private final long    from;
+    private final long    to;
+    private final Trade[] trades;
+
+    /**
+     * @param from
+     *            Start of the period; trades at or before this time are excluded.
+     * @param to
+     *            End of the period; trades at or before this time are included.
+     * @param trades
+     *            The trades, in any order.
+     */
+    public BacktestData (final long from, final long to, final Collection<Trade> trades)
+    {
+        if (to <= from)
+        {
+            throw new IllegalArgumentException ("invalid period " + from + " to " + to);
+        }
+        this.from = from;
+        this.to = to;
+
+        List<Trade> inPeriod = new ArrayList<Trade> (trades.size ());
+        for (Trade trade : trades)
+        {
+            if (trade.getTimestamp () > from && trade.getTimestamp () <= to)
+            {
+                inPeriod.add (trade);
+            }
+        }
+        this.trades = inPeriod.toArray (new Trade[inPeriod.size ()]);
+
+        /*
+         * Object sort is stable, so trades at the same time keep their order.
+         */
+        Arrays.sort (this.trades, Comparator.comparingLong (Trade::getTimestamp));
+    }
+
+    /**
+     * Decode the trades over a period from an archive.
+     * 
+     * @param reader
+     *            The archive.
+     * @param from
+     *            Start of the period; trades at or before this time are excluded.
+     * @param to
+     *            End of the period; trades at or before this time are included.
+     * @return The trades over the period.
+     * @throws IOException
+     *             If the archive can't be read.
+     */
+    public static BacktestData fromArchive (final TradeArchiveReader reader, final long from, final long to) throws IOException
+    {
+        List<Trade> trades = new ArrayList<Trade> ();
+        reader.forEachTrade (from, to, (stockIdentifier, timestamp, quantity, price, tradeType) -> trades
+                        .add (new Trade (stockIdentifier, timestamp, quantity, price, tradeType)));
+        return new BacktestData (from, to, trades);
+    }
+
+    public long getFrom ()
+    {
+        return from;
+    }
+
+    public long getTo ()
+    {
+        return to;
+    }
+
+    public int getTradeCount ()
+    {
+        return trades.length;
+    }
+
+    /**
+     * @param index
+     *            Position of the trade in time order.
+     * @return The trade.
+     */
+    public Trade getTrade (final int index)
+    {
+        return trades[index];
+    }
+}
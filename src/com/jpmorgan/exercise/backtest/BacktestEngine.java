@@ -0,0 +1,209 @@
+package com.jpmorgan.exercise.backtest;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import com.jpmorgan.exercise.environment.ArtificialClock;
+import com.jpmorgan.exercise.environment.Environment;
+import com.jpmorgan.exercise.exception.InvalidParameterException;
+import com.jpmorgan.exercise.index.IndexDefinition;
+import com.jpmorgan.exercise.market.Market;
+import com.jpmorgan.exercise.market.MarketConfiguration;
+import com.jpmorgan.exercise.market.Trade;
+import com.jpmorgan.exercise.stock.StockData;
+
+/**
+ * Replays a period of history through <code>Market</code>s as fast as possible, to see how
+ * the VWSP/GBCE and indices would have behaved under different parameters (horizons, index
+ * definitions, price arithmetic).
+ * 
+ * Each run has its own market, with its own <code>Environment</code> and
+ * <code>ArtificialClock</code>, which is moved on to the timestamp of each trade as it's
+ * replayed, rather than following the wall clock. The runs are independent, so they're run
+ * in parallel on a fork-join pool, all reading the one shared <code>BacktestData</code>.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public class BacktestEngine
+{
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Engine running on the common fork-join pool.
+     */
+    public BacktestEngine ()
+    {
+        this (ForkJoinPool.commonPool ());
+    }
+
+    /**
+     * @param pool
+     *            Pool the runs are run on.
+     */
+    public BacktestEngine (final ForkJoinPool pool)
+    {
+        this.pool = pool;
+    }
+
+    /**
+     * Run a number of backtests over the same data, in parallel.
+     * 
+     * @param data
+     *            The trades to replay.
+     * @param runs
+     *            Parameters of each run.
+     * @return Result of each run, in the order of the runs.
+     * @throws InvalidParameterException
+     *             For an invalid sample interval, horizon or index definition.
+     */
+    public List<BacktestResult> run (final BacktestData data, final List<BacktestRun> runs) throws InvalidParameterException
+    {
+        for (BacktestRun run : runs)
+        {
+            checkRun (run);
+        }
+
+        List<ForkJoinTask<BacktestResult>> tasks = new ArrayList<ForkJoinTask<BacktestResult>> (runs.size ());
+        for (BacktestRun run : runs)
+        {
+            tasks.add (pool.submit (() -> replay (data, run)));
+        }
+
+        List<BacktestResult> results = new ArrayList<BacktestResult> (runs.size ());
+        try
+        {
+            for (ForkJoinTask<BacktestResult> task : tasks)
+            {
+                results.add (task.get ());
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread ().interrupt ();
+            throw new IllegalStateException ("interrupted running backtest", e);
+        }
+        catch (ExecutionException e)
+        {
+            /*
+             * The pool wraps the checked exceptions of a task, so look through the causes for
+             * an invalid index definition.
+             */
+            for (Throwable cause = e.getCause (); cause != null; cause = cause.getCause ())
+            {
+                if (cause instanceof InvalidParameterException)
+                {
+                    throw (InvalidParameterException)cause;
+                }
+            }
+            throw new IllegalStateException ("failed running backtest", e.getCause ());
+        }
+        return results;
+    }
+
+    /**
+     * Run one backtest, on the calling thread.
+     * 
+     * @param data
+     *            The trades to replay.
+     * @param run
+     *            Parameters of the run.
+     * @return Result of the run.
+     * @throws InvalidParameterException
+     *             For an invalid sample interval, horizon or index definition.
+     */
+    public static BacktestResult replay (final BacktestData data, final BacktestRun run) throws InvalidParameterException
+    {
+        checkRun (run);
+
+        long interval = run.getSampleIntervalSeconds ();
+        long start = System.nanoTime ();
+
+        ArtificialClock clock = new ArtificialClock (data.getFrom ());
+        MarketConfiguration configuration = run.toConfiguration (new Environment (clock));
+        Map<String, StockData> universe = configuration.getUniverse ();
+        List<String> stockIdentifiers = new ArrayList<String> (universe.keySet ());
+
+        int sampleCount = (int)((data.getTo () - data.getFrom () + interval - 1) / interval);
+        long[] sampleTimes = new long[sampleCount];
+        double[][] prices = new double[stockIdentifiers.size ()][sampleCount];
+        double[] gbce = new double[sampleCount];
+        double[][] indexValues = new double[run.getIndices ().size ()][sampleCount];
+
+        long tradeCount = 0;
+        try (Market market = new Market (configuration))
+        {
+            for (IndexDefinition definition : run.getIndices ())
+            {
+                market.defineIndex (definition);
+            }
+
+            int next = 0;
+            for (int sample = 0; sample < sampleCount; sample++)
+            {
+                long sampleTime = Math.min (data.getFrom () + (sample + 1) * interval, data.getTo ());
+
+                for (; next < data.getTradeCount () && data.getTrade (next).getTimestamp () <= sampleTime; next++)
+                {
+                    Trade trade = data.getTrade (next);
+                    if (!universe.containsKey (trade.getStockIdentifier ()))
+                    {
+                        continue;
+                    }
+                    clock.tick (trade.getTimestamp () - clock.getTime ());
+                    market.replayTrade (trade);
+                    tradeCount++;
+                }
+                clock.tick (sampleTime - clock.getTime ());
+
+                sampleTimes[sample] = sampleTime;
+                for (int stock = 0; stock < stockIdentifiers.size (); stock++)
+                {
+                    prices[stock][sample] = market.calculateVolumeWeightedStockPrice (stockIdentifiers.get (stock));
+                }
+                gbce[sample] = market.calculateGBCE ();
+                for (int index = 0; index < indexValues.length; index++)
+                {
+                    indexValues[index][sample] = market.calculateIndex (run.getIndices ().get (index).getName ());
+                }
+            }
+        }
+
+        Map<String, double[]> priceSeries = new LinkedHashMap<String, double[]> ();
+        for (int stock = 0; stock < stockIdentifiers.size (); stock++)
+        {
+            priceSeries.put (stockIdentifiers.get (stock), prices[stock]);
+        }
+        Map<String, double[]> indexSeries = new LinkedHashMap<String, double[]> ();
+        for (int index = 0; index < indexValues.length; index++)
+        {
+            indexSeries.put (run.getIndices ().get (index).getName (), indexValues[index]);
+        }
+
+        return new BacktestResult (run.getName (),
+                                   sampleTimes,
+                                   priceSeries,
+                                   gbce,
+                                   indexSeries,
+                                   tradeCount,
+                                   System.nanoTime () - start);
+    }
+
+    private static void checkRun (final BacktestRun run) throws InvalidParameterException
+    {
+        if (run.getSampleIntervalSeconds () <= 0)
+        {
+            throw new InvalidParameterException ("invalid sample interval " + run.getSampleIntervalSeconds ());
+        }
+        if (run.getHorizonSeconds () <= 0)
+        {
+            throw new InvalidParameterException ("invalid horizon " + run.getHorizonSeconds ());
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.jpmorgan.exercise.backtest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.jpmorgan.exercise.exception.InvalidParameterException;
+
+/**
+ * Immutable bean to hold the results of one run of a backtest: the time series of the VWSP
+ * of each stock, the GBCE, and each index, sampled at the end of each interval.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public class BacktestResult
+{
+
+    private final String                  name;
+    private final long[]                  sampleTimes;
+    private final Map<String, double[]>   volumeWeightedStockPrices;
+    private final double[]                gbce;
+    private final Map<String, double[]>   indices;
+    private final long                    tradeCount;
+    private final long                    elapsedNanos;
+
+    /**
+     * @param name
+     *            Name of the run.
+     * @param sampleTimes
+     *            Time of each sample.
+     * @param volumeWeightedStockPrices
+     *            VWSP of each stock at each sample, keyed by stock identifier.
+     * @param gbce
+     *            GBCE at each sample.
+     * @param indices
+     *            Value of each index at each sample, keyed by name.
+     * @param tradeCount
+     *            Number of trades replayed.
+     * @param elapsedNanos
+     *            Wall clock time taken by the run.
+     */
+    BacktestResult (final String name,
+                    final long[] sampleTimes,
+                    final Map<String, double[]> volumeWeightedStockPrices,
+                    final double[] gbce,
+                    final Map<String, double[]> indices,
+                    final long tradeCount,
+                    final long elapsedNanos)
+    {
+        this.name = name;
+        this.sampleTimes = sampleTimes;
+        this.volumeWeightedStockPrices = caseInsensitive (volumeWeightedStockPrices);
+        this.gbce = gbce;
+        this.indices = caseInsensitive (indices);
+        this.tradeCount = tradeCount;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    private static Map<String, double[]> caseInsensitive (final Map<String, double[]> series)
+    {
+        Map<String, double[]> map = new TreeMap<String, double[]> (String.CASE_INSENSITIVE_ORDER);
+        map.putAll (series);
+        return Collections.unmodifiableMap (map);
+    }
+
+    public String getName ()
+    {
+        return name;
+    }
+
+    public int getSampleCount ()
+    {
+        return sampleTimes.length;
+    }
+
+    public long getSampleTime (final int sample)
+    {
+        return sampleTimes[sample];
+    }
+
+    /**
+     * @return The stocks sampled, i.e. the universe of the run.
+     */
+    public List<String> getStockIdentifiers ()
+    {
+        return Collections.unmodifiableList (new ArrayList<String> (volumeWeightedStockPrices.keySet ()));
+    }
+
+    /**
+     * @param stockIdentifier
+     *            Three letter identifier for the stock.
+     * @param sample
+     *            Index of the sample.
+     * @return The VWSP of the stock at the sample, or 0 if it hadn't traded within the
+     *         horizon.
+     * @throws InvalidParameterException
+     *             For a stock not in the universe of the run.
+     */
+    public double getVolumeWeightedStockPrice (final String stockIdentifier, final int sample) throws InvalidParameterException
+    {
+        return lookup (volumeWeightedStockPrices, "stock", stockIdentifier)[sample];
+    }
+
+    public double getGBCE (final int sample)
+    {
+        return gbce[sample];
+    }
+
+    /**
+     * @param name
+     *            Name of the index.
+     * @param sample
+     *            Index of the sample.
+     * @return The value of the index at the sample.
+     * @throws InvalidParameterException
+     *             For an index not defined on the run.
+     */
+    public double getIndex (final String name, final int sample) throws InvalidParameterException
+    {
+        return lookup (indices, "index", name)[sample];
+    }
+
+    public long getTradeCount ()
+    {
+        return tradeCount;
+    }
+
+    public long getElapsedNanos ()
+    {
+        return elapsedNanos;
+    }
+
+    private static double[] lookup (final Map<String, double[]> series, final String kind, final String key) throws InvalidParameterException
+    {
+        double[] values = series.get (key);
+        if (values == null)
+        {
+            throw new InvalidParameterException ("invalid " + kind + " " + key);
+        }
+        return values;
+    }
+
+    @Override
+    public String toString ()
+    {
+        StringBuilder builder = new StringBuilder ();
+
+        builder.append ("BacktestResult:[name: ");
+        builder.append (name);
+        builder.append (", samples: ");
+        builder.append (sampleTimes.length);
+        builder.append (", trades: ");
+        builder.append (tradeCount);
+        builder.append (", elapsedNanos: ");
+        builder.append (elapsedNanos);
+        builder.append (", finalGBCE: ");
+        builder.append ((gbce.length > 0) ? gbce[gbce.length - 1] : 0);
+        builder.append ("]");
+
+        return builder.toString ();
+    }
+}
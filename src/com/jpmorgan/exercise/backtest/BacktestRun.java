@@ -0,0 +1,124 @@
+package com.jpmorgan.exercise.backtest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.jpmorgan.exercise.environment.Environment;
+import com.jpmorgan.exercise.index.IndexDefinition;
+import com.jpmorgan.exercise.market.MarketConfiguration;
+import com.jpmorgan.exercise.market.PriceArithmetic;
+import com.jpmorgan.exercise.stock.StockData;
+
+/**
+ * Bean to hold the parameters of one run of a backtest: the configuration of the market the
+ * trades are replayed through, the indices defined on it, and how often the VWSP/GBCE are
+ * sampled. The defaults give the market used for the exercise, sampled every minute.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public class BacktestRun
+{
+
+    private final String                  name;
+    private Iterable<? extends StockData> universe;
+    private long                          horizonSeconds        = 5 * 60;
+    private PriceArithmetic               priceArithmetic       = PriceArithmetic.DOUBLE;
+    private long                          sampleIntervalSeconds = 60;
+    private final List<IndexDefinition>   indices               = new ArrayList<IndexDefinition> ();
+
+    /**
+     * @param name
+     *            Name of the run, identifying its results.
+     */
+    public BacktestRun (final String name)
+    {
+        this.name = name;
+    }
+
+    public String getName ()
+    {
+        return name;
+    }
+
+    /**
+     * @param stocks
+     *            The stocks traded on the market. Trades in other stocks are skipped.
+     */
+    public void setUniverse (final Iterable<? extends StockData> stocks)
+    {
+        this.universe = stocks;
+    }
+
+    public long getHorizonSeconds ()
+    {
+        return horizonSeconds;
+    }
+
+    /**
+     * @param horizonSeconds
+     *            Horizon for the calculation of the VWSP/GBCE, in seconds.
+     */
+    public void setHorizonSeconds (final long horizonSeconds)
+    {
+        this.horizonSeconds = horizonSeconds;
+    }
+
+    public PriceArithmetic getPriceArithmetic ()
+    {
+        return priceArithmetic;
+    }
+
+    public void setPriceArithmetic (final PriceArithmetic priceArithmetic)
+    {
+        this.priceArithmetic = priceArithmetic;
+    }
+
+    public long getSampleIntervalSeconds ()
+    {
+        return sampleIntervalSeconds;
+    }
+
+    /**
+     * @param sampleIntervalSeconds
+     *            Time between the samples of the VWSP/GBCE, in seconds. Must be greater than 0.
+     */
+    public void setSampleIntervalSeconds (final long sampleIntervalSeconds)
+    {
+        this.sampleIntervalSeconds = sampleIntervalSeconds;
+    }
+
+    /**
+     * @return The indices sampled alongside the GBCE.
+     */
+    public List<IndexDefinition> getIndices ()
+    {
+        return Collections.unmodifiableList (indices);
+    }
+
+    public void addIndex (final IndexDefinition definition)
+    {
+        indices.add (definition);
+    }
+
+    /**
+     * @param environment
+     *            Environment of the run, giving the time of the trades replayed.
+     * @return Configuration of the market for the run. The query cache is left out, as each
+     *         sample follows new trades.
+     */
+    MarketConfiguration toConfiguration (final Environment environment)
+    {
+        MarketConfiguration configuration = new MarketConfiguration ();
+        if (universe != null)
+        {
+            configuration.setUniverse (universe);
+        }
+        configuration.setHorizonSeconds (horizonSeconds);
+        configuration.setPriceArithmetic (priceArithmetic);
+        configuration.setQueryCacheEnabled (false);
+        configuration.setEnvironment (environment);
+        return configuration;
+    }
+}
@@ -0,0 +1,99 @@
+package com.jpmorgan.exercise.cache;
+
+/**
+ * Cache of the result of a query over the whole market, i.e. the GBCE, the one query that
+ * passes over every stock. The VWSP and indices are kept as trades enter and leave the
+ * window, and the dividend yield and P/E ratio are a division, so there's nothing to gain
+ * from caching them per stock.
+ * 
+ * The result is held with the version stamp of the data it was calculated from, e.g. a
+ * version of the market that's bumped as trades enter and leave the window. It's only
+ * returned for the current version, so a stale result doesn't need to be removed when the
+ * data changes; it's replaced.
+ * 
+ * The hit and miss counts show whether the cache is paying off.
+ * 
+ * Note that the cache is not thread-safe.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public class QueryCache
+{
+
+    private long    version;
+
+    private double  value;
+
+    private boolean valid;
+
+    private long    hitCount;
+
+    private long    missCount;
+
+    /**
+     * Look up the result.
+     * 
+     * @param currentVersion
+     *            The current version of the data the query depends on.
+     * @return The result, or NaN if there's no result for the version.
+     */
+    public double get (final long currentVersion)
+    {
+        if (!valid || version != currentVersion)
+        {
+            missCount++;
+            return Double.NaN;
+        }
+        hitCount++;
+        return value;
+    }
+
+    /**
+     * Hold a result, replacing any held.
+     * 
+     * @param resultVersion
+     *            The version of the data the result was calculated from.
+     * @param result
+     *            The result.
+     */
+    public void put (final long resultVersion, final double result)
+    {
+        version = resultVersion;
+        value = result;
+        valid = true;
+    }
+
+    public long getHitCount ()
+    {
+        return hitCount;
+    }
+
+    public long getMissCount ()
+    {
+        return missCount;
+    }
+
+    /**
+     * @return The proportion of look ups that found a result, or 0 if there have been none.
+     */
+    public double getHitRate ()
+    {
+        long lookups = hitCount + missCount;
+        return (lookups == 0) ? 0 : hitCount / (double)lookups;
+    }
+
+    @Override
+    public String toString ()
+    {
+        StringBuilder builder = new StringBuilder ();
+
+        builder.append ("QueryCache:[hits: ");
+        builder.append (hitCount);
+        builder.append (", misses: ");
+        builder.append (missCount);
+        builder.append ("]");
+
+        return builder.toString ();
+    }
+}
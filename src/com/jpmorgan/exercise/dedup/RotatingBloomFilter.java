@@ -0,0 +1,194 @@
+package com.jpmorgan.exercise.dedup;
+
+import java.util.Arrays;
+
+/**
+ * Bloom filter over a sliding period of time, used to find possible duplicates of recently
+ * seen keys (such as trade ids) without keeping the keys.
+ * 
+ * The filter is split into two generations, each covering a period of the retention: keys
+ * are added to the current generation, and both generations are checked. As time moves into
+ * a new period, the older generation is cleared and becomes the current one. So a key is
+ * found for at least the retention after it was added, and the memory is fixed, however
+ * many keys are seen over time.
+ * 
+ * As with any Bloom filter, a key not added may be found (a false positive), but a key added
+ * within the retention is always found. The filter is not thread-safe.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public class RotatingBloomFilter
+{
+
+    private final long   retention;
+    private final int    hashCount;
+    private final int    bitMask;
+
+    private long[]       current;
+    private long[]       previous;
+
+    /**
+     * Period of the current generation, i.e. time / retention.
+     */
+    private long         currentPeriod = Long.MIN_VALUE;
+
+    /**
+     * @param retention
+     *            Time for which a key is found after being added. Must be greater than 0.
+     * @param expectedKeys
+     *            Expected number of keys added within the retention.
+     * @param falsePositiveRate
+     *            Target rate of keys found that weren't added, between 0 and 1.
+     */
+    public RotatingBloomFilter (final long retention, final int expectedKeys, final double falsePositiveRate)
+    {
+        if (retention <= 0 || expectedKeys <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1)
+        {
+            throw new IllegalArgumentException ("invalid retention " + retention + ", expected keys " + expectedKeys
+                                                + " or false positive rate " + falsePositiveRate);
+        }
+        this.retention = retention;
+
+        /*
+         * The optimal number of bits is -n ln p / (ln 2)^2, rounded up to a power of 2 so that
+         * the bit index is a mask, and the optimal number of hashes is (bits / n) ln 2.
+         */
+        double bits = -expectedKeys * Math.log (falsePositiveRate) / (Math.log (2) * Math.log (2));
+        int bitCount = Integer.highestOneBit ((int)Math.min (Math.ceil (bits), 1 << 30) - 1) << 1;
+        bitCount = Math.max (64, bitCount);
+        this.bitMask = bitCount - 1;
+        this.hashCount = Math.max (1, (int)Math.round ((double)bitCount / expectedKeys * Math.log (2)));
+
+        current = new long[bitCount / 64];
+        previous = new long[bitCount / 64];
+    }
+
+    /**
+     * @param key
+     *            The key, e.g. a trade id.
+     * @return 64 bit hash of the key (FNV-1a of the characters, then mixed), to pass to
+     *         <code>add</code> and <code>mightContain</code>.
+     */
+    public static long hash (final CharSequence key)
+    {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length (); i++)
+        {
+            hash = (hash ^ key.charAt (i)) * 0x100000001b3L;
+        }
+        return mix (hash);
+    }
+
+    /**
+     * Add a key.
+     * 
+     * @param hash
+     *            Hash of the key.
+     * @param time
+     *            Current time. Time earlier than previously given is taken as the latest.
+     */
+    public void add (final long hash, final long time)
+    {
+        rotate (time);
+
+        long probe = hash;
+        long step = mix (hash) | 1;
+        for (int i = 0; i < hashCount; i++)
+        {
+            int bit = (int)probe & bitMask;
+            current[bit >>> 6] |= 1L << bit;
+            probe += step;
+        }
+    }
+
+    /**
+     * @param hash
+     *            Hash of the key.
+     * @param time
+     *            Current time. Time earlier than previously given is taken as the latest.
+     * @return False if the key hasn't been added within the retention; true if it may have
+     *         been.
+     */
+    public boolean mightContain (final long hash, final long time)
+    {
+        rotate (time);
+        return contains (current, hash) || contains (previous, hash);
+    }
+
+    public long getRetention ()
+    {
+        return retention;
+    }
+
+    public int getHashCount ()
+    {
+        return hashCount;
+    }
+
+    /**
+     * @return The bits in each generation.
+     */
+    public int getBitCount ()
+    {
+        return bitMask + 1;
+    }
+
+    public long getMemoryBytes ()
+    {
+        return 2L * current.length * Long.BYTES;
+    }
+
+    private boolean contains (final long[] bits, final long hash)
+    {
+        long probe = hash;
+        long step = mix (hash) | 1;
+        for (int i = 0; i < hashCount; i++)
+        {
+            int bit = (int)probe & bitMask;
+            if ((bits[bit >>> 6] & (1L << bit)) == 0)
+            {
+                return false;
+            }
+            probe += step;
+        }
+        return true;
+    }
+
+    private void rotate (final long time)
+    {
+        long period = Math.floorDiv (time, retention);
+        if (period <= currentPeriod)
+        {
+            return;
+        }
+
+        if (period == currentPeriod + 1)
+        {
+            long[] cleared = previous;
+            previous = current;
+            current = cleared;
+            Arrays.fill (current, 0);
+        }
+        else
+        {
+            Arrays.fill (current, 0);
+            Arrays.fill (previous, 0);
+        }
+        currentPeriod = period;
+    }
+
+    /**
+     * Finalisation step of MurmurHash3, spreading the bits of the hash.
+     */
+    private static long mix (final long value)
+    {
+        long hash = value;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -10,7 +10,9 @@ package com.jpmorgan.exercise.environment;
  * (in this case the time of trade and window for calculate the VWSP/GBCE) is
  * injected into the class.
  * 
- * The environment is set up as an immutable singleton.
+ * The environment is set up as an immutable singleton. Further environments can be created
+ * with their own clock, such as for a backtest, which moves the time on with the trades
+ * replayed rather than the wall clock.
  * 
  * @author Tony Cruickshank
  *
@@ -19,11 +21,20 @@ public class Environment
 {
     private static final Environment environment = new Environment ();
 
-    private Clock                    clock       = new ArtificialClock ();
+    private final Clock              clock;
 
     private Environment ()
     {
+        this (new ArtificialClock ());
+    }
 
+    /**
+     * @param clock
+     *            The clock giving the time of the environment.
+     */
+    public Environment (final Clock clock)
+    {
+        this.clock = clock;
     }
 
     public static Environment getEnvironment ()
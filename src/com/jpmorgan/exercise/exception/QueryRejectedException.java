@@ -0,0 +1,20 @@
+package com.jpmorgan.exercise.exception;
+
+/**
+ * Exception raised when a query isn't answered, for example as the client has exceeded its
+ * rate limit.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public class QueryRejectedException extends Exception
+{
+
+    private static final long serialVersionUID = 6027394812046133857L;
+
+    public QueryRejectedException (String message)
+    {
+        super (message);
+    }
+
+}
@@ -0,0 +1,122 @@
+package com.jpmorgan.exercise.gateway;
+
+/**
+ * Bean to hold the configuration of a <code>MarketGateway</code>.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public class GatewayConfiguration
+{
+
+    private int    tradeQueueCapacity      = 65536;
+    private int    queryQueueCapacity      = 1024;
+    private int    overloadTradeQueueDepth = 1024;
+    private double clientQueriesPerSecond  = 100;
+    private int    clientQueryBurst        = 100;
+    private long   publishIntervalMillis   = 100;
+    private long   queryTimeoutMillis      = 1000;
+
+    public int getTradeQueueCapacity ()
+    {
+        return tradeQueueCapacity;
+    }
+
+    /**
+     * @param tradeQueueCapacity
+     *            Maximum number of trades waiting to be recorded. Trades beyond this are
+     *            rejected.
+     */
+    public void setTradeQueueCapacity (final int tradeQueueCapacity)
+    {
+        this.tradeQueueCapacity = tradeQueueCapacity;
+    }
+
+    public int getQueryQueueCapacity ()
+    {
+        return queryQueueCapacity;
+    }
+
+    /**
+     * @param queryQueueCapacity
+     *            Maximum number of queries waiting to be run. Queries beyond this are
+     *            answered from the published aggregates.
+     */
+    public void setQueryQueueCapacity (final int queryQueueCapacity)
+    {
+        this.queryQueueCapacity = queryQueueCapacity;
+    }
+
+    public int getOverloadTradeQueueDepth ()
+    {
+        return overloadTradeQueueDepth;
+    }
+
+    /**
+     * @param overloadTradeQueueDepth
+     *            Number of trades waiting at which the market is overloaded, and queries are
+     *            answered from the published aggregates.
+     */
+    public void setOverloadTradeQueueDepth (final int overloadTradeQueueDepth)
+    {
+        this.overloadTradeQueueDepth = overloadTradeQueueDepth;
+    }
+
+    public double getClientQueriesPerSecond ()
+    {
+        return clientQueriesPerSecond;
+    }
+
+    /**
+     * @param clientQueriesPerSecond
+     *            Sustained rate of queries allowed for each client.
+     */
+    public void setClientQueriesPerSecond (final double clientQueriesPerSecond)
+    {
+        this.clientQueriesPerSecond = clientQueriesPerSecond;
+    }
+
+    public int getClientQueryBurst ()
+    {
+        return clientQueryBurst;
+    }
+
+    /**
+     * @param clientQueryBurst
+     *            Number of queries a client may make at once, above the sustained rate.
+     */
+    public void setClientQueryBurst (final int clientQueryBurst)
+    {
+        this.clientQueryBurst = clientQueryBurst;
+    }
+
+    public long getPublishIntervalMillis ()
+    {
+        return publishIntervalMillis;
+    }
+
+    /**
+     * @param publishIntervalMillis
+     *            Minimum time between publishing the aggregates, which are published after
+     *            recording trades, and once per interval while the gateway is idle.
+     */
+    public void setPublishIntervalMillis (final long publishIntervalMillis)
+    {
+        this.publishIntervalMillis = publishIntervalMillis;
+    }
+
+    public long getQueryTimeoutMillis ()
+    {
+        return queryTimeoutMillis;
+    }
+
+    /**
+     * @param queryTimeoutMillis
+     *            Maximum time a caller waits for the result of a query queued. A query not
+     *            run in time is rejected.
+     */
+    public void setQueryTimeoutMillis (final long queryTimeoutMillis)
+    {
+        this.queryTimeoutMillis = queryTimeoutMillis;
+    }
+}
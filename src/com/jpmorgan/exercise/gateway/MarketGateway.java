@@ -0,0 +1,513 @@
+package com.jpmorgan.exercise.gateway;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.jpmorgan.exercise.exception.InvalidParameterException;
+import com.jpmorgan.exercise.exception.QueryRejectedException;
+import com.jpmorgan.exercise.host.MarketTask;
+import com.jpmorgan.exercise.market.Market;
+import com.jpmorgan.exercise.market.TradeType;
+import com.jpmorgan.exercise.window.SymbolTable;
+
+/**
+ * Admission control in front of a <code>Market</code>, so that bursts of queries (e.g. from
+ * dashboards) don't hold up the recording of trades.
+ * 
+ * Trades and queries are queued separately, and run by one worker, so the market needn't be
+ * thread-safe. Trades always run before queries. Each client's queries are rate limited by
+ * a token bucket. While the market is overloaded, i.e. the trades waiting reach a threshold,
+ * or the query queue is full, queries are answered from the aggregates (VWSP of each stock,
+ * and GBCE) last published by the worker, rather than queued. The aggregates are published
+ * after recording trades, at most once per interval, so they're kept up to date under a
+ * steady flow of trades at a bounded cost, and once per interval while the worker is idle, so
+ * they follow trades leaving the horizon.
+ * 
+ * A trade, query or publish that fails is counted, and doesn't stop the worker. A caller
+ * waits for a query at most the query timeout.
+ * 
+ * Queue depths, and the counts of queries shed (answered from the published aggregates) and
+ * rejected, show whether the capacity is right.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public class MarketGateway implements AutoCloseable
+{
+
+    /**
+     * Interval at which the buckets of clients that have been idle long enough to refill are
+     * dropped, so the buckets are bounded by the clients active recently.
+     */
+    private static final long                    EVICTION_INTERVAL_NANOS = 1000000000L;
+
+    private final Market                         market;
+    private final GatewayConfiguration           configuration;
+
+    private final Queue<Runnable>                trades;
+    private final Queue<PendingQuery>            queries;
+
+    /**
+     * One permit for each trade or query queued, so the worker waits while both queues are
+     * empty.
+     */
+    private final Semaphore                      work               = new Semaphore (0);
+
+    private final Map<String, TokenBucket>       clientBuckets      = new ConcurrentHashMap<String, TokenBucket> ();
+
+    private volatile PublishedAggregates         published;
+    private long                                 lastPublishNanos;
+    private long                                 lastEvictionNanos;
+
+    private volatile boolean                     running            = true;
+    private final Thread                         worker;
+
+    private final AtomicLong                     rejectedTradeCount = new AtomicLong ();
+    private final AtomicLong                     failedTradeCount   = new AtomicLong ();
+    private final AtomicLong                     shedQueryCount     = new AtomicLong ();
+    private final AtomicLong                     rateLimitedCount   = new AtomicLong ();
+    private final AtomicLong                     timedOutQueryCount = new AtomicLong ();
+    private final AtomicLong                     failedPublishCount = new AtomicLong ();
+
+    /**
+     * Query waiting to be run, with the result to complete.
+     */
+    private static final class PendingQuery
+    {
+        private final MarketTask<Double>        task;
+        private final CompletableFuture<Double> result = new CompletableFuture<Double> ();
+
+        private PendingQuery (final MarketTask<Double> task)
+        {
+            this.task = task;
+        }
+    }
+
+    /**
+     * @param market
+     *            The market, which must only be used through the gateway from now on.
+     * @param configuration
+     *            Capacities and limits of the gateway.
+     * @throws InvalidParameterException
+     *             For an invalid capacity or limit.
+     */
+    public MarketGateway (final Market market, final GatewayConfiguration configuration) throws InvalidParameterException
+    {
+        if (configuration.getTradeQueueCapacity () <= 0 || configuration.getQueryQueueCapacity () <= 0
+            || configuration.getOverloadTradeQueueDepth () <= 0)
+        {
+            throw new InvalidParameterException ("invalid queue capacity or overload depth");
+        }
+        if (configuration.getClientQueriesPerSecond () < 0 || configuration.getClientQueryBurst () <= 0)
+        {
+            throw new InvalidParameterException ("invalid client query rate or burst");
+        }
+        if (configuration.getPublishIntervalMillis () < 0 || configuration.getQueryTimeoutMillis () <= 0)
+        {
+            throw new InvalidParameterException ("invalid publish interval or query timeout");
+        }
+        this.market = market;
+        this.configuration = configuration;
+        trades = new ArrayBlockingQueue<Runnable> (configuration.getTradeQueueCapacity ());
+        queries = new ArrayBlockingQueue<PendingQuery> (configuration.getQueryQueueCapacity ());
+
+        publish ();
+        lastEvictionNanos = System.nanoTime ();
+
+        worker = new Thread ( () -> work (), "market-gateway");
+        worker.setDaemon (true);
+        worker.start ();
+    }
+
+    /**
+     * Queue a trade, timestamped now by the market's clock.
+     * 
+     * @param stockIdentifier
+     *            Three letter identifier for the stock.
+     * @param quantity
+     *            The number of stocks in the trade.
+     * @param price
+     *            The price of the trade.
+     * @param tradeType
+     *            Buy or sell.
+     * @param tradeId
+     *            The id given to the trade by the venue, or null if it has none.
+     * @return Whether the trade was queued. False if the trade queue is full. An invalid
+     *         trade, or one that fails, is queued, and counted as failed when it's run.
+     */
+    public boolean recordTrade (final String stockIdentifier,
+                                final int quantity,
+                                final double price,
+                                final TradeType tradeType,
+                                final String tradeId)
+    {
+        long timestamp = market.getEnvironment ().getTime ();
+        boolean queued = running && trades.offer ( () -> {
+            try
+            {
+                market.recordTrade (stockIdentifier, quantity, price, tradeType, timestamp, tradeId);
+            }
+            catch (InvalidParameterException | RuntimeException e)
+            {
+                failedTradeCount.incrementAndGet ();
+            }
+        });
+        if (!queued)
+        {
+            rejectedTradeCount.incrementAndGet ();
+            return false;
+        }
+        work.release ();
+        return true;
+    }
+
+    /**
+     * Calculate the volume weighted stock price over the horizon, or take it from the
+     * published aggregates if the market is overloaded.
+     * 
+     * @param clientId
+     *            Identifier of the client, for the rate limit.
+     * @param stockIdentifier
+     *            Three letter identifier for the stock.
+     * @return Volume weighted stock price.
+     * @throws InvalidParameterException
+     *             For unrecognised stock identifier.
+     * @throws QueryRejectedException
+     *             If the client has exceeded its rate limit, the gateway is closed, or the
+     *             query isn't run within the query timeout.
+     */
+    public double calculateVolumeWeightedStockPrice (final String clientId,
+                                                     final String stockIdentifier) throws InvalidParameterException,
+                                                                                   QueryRejectedException
+    {
+        admit (clientId);
+        if (isOverloaded ())
+        {
+            return shed ().getVolumeWeightedStockPrice (stockIdentifier);
+        }
+        Double price = query (m -> m.calculateVolumeWeightedStockPrice (stockIdentifier));
+        return (price != null) ? price : shed ().getVolumeWeightedStockPrice (stockIdentifier);
+    }
+
+    /**
+     * Calculate the GBCE all share index, or take it from the published aggregates if the
+     * market is overloaded.
+     * 
+     * @param clientId
+     *            Identifier of the client, for the rate limit.
+     * @return GBCE all share index.
+     * @throws QueryRejectedException
+     *             If the client has exceeded its rate limit, the gateway is closed, or the
+     *             query isn't run within the query timeout.
+     */
+    public double calculateGBCE (final String clientId) throws QueryRejectedException
+    {
+        admit (clientId);
+        if (isOverloaded ())
+        {
+            return shed ().getGBCE ();
+        }
+        try
+        {
+            Double gbce = query (m -> m.calculateGBCE ());
+            return (gbce != null) ? gbce : shed ().getGBCE ();
+        }
+        catch (InvalidParameterException e)
+        {
+            throw new IllegalStateException ("GBCE has no parameters", e);
+        }
+    }
+
+    /**
+     * @return The aggregates last published, answering queries while the market is
+     *         overloaded.
+     */
+    public PublishedAggregates getPublishedAggregates ()
+    {
+        return published;
+    }
+
+    public int getTradeQueueDepth ()
+    {
+        return trades.size ();
+    }
+
+    public int getQueryQueueDepth ()
+    {
+        return queries.size ();
+    }
+
+    /**
+     * @return The number of trades rejected as the trade queue was full.
+     */
+    public long getRejectedTradeCount ()
+    {
+        return rejectedTradeCount.get ();
+    }
+
+    /**
+     * @return The number of invalid trades, or trades that failed.
+     */
+    public long getFailedTradeCount ()
+    {
+        return failedTradeCount.get ();
+    }
+
+    /**
+     * @return The number of queries answered from the published aggregates, as the market
+     *         was overloaded.
+     */
+    public long getShedQueryCount ()
+    {
+        return shedQueryCount.get ();
+    }
+
+    /**
+     * @return The number of queries rejected as the client exceeded its rate limit.
+     */
+    public long getRateLimitedCount ()
+    {
+        return rateLimitedCount.get ();
+    }
+
+    /**
+     * @return The number of queries rejected as they weren't run within the query timeout.
+     */
+    public long getTimedOutQueryCount ()
+    {
+        return timedOutQueryCount.get ();
+    }
+
+    /**
+     * @return The number of times publishing the aggregates failed, leaving the previous
+     *         aggregates published.
+     */
+    public long getFailedPublishCount ()
+    {
+        return failedPublishCount.get ();
+    }
+
+    /**
+     * @return The number of clients with a token bucket, i.e. active recently.
+     */
+    int getClientCount ()
+    {
+        return clientBuckets.size ();
+    }
+
+    /**
+     * Stop the worker. Trades and queries still queued are dropped; callers waiting on a
+     * query, or queuing one as the gateway closes, have it rejected. The market is left open.
+     */
+    @Override
+    public void close ()
+    {
+        running = false;
+        worker.interrupt ();
+        try
+        {
+            worker.join ();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread ().interrupt ();
+        }
+
+        PendingQuery query;
+        while ((query = queries.poll ()) != null)
+        {
+            query.result.completeExceptionally (new QueryRejectedException ("gateway closed"));
+        }
+        trades.clear ();
+    }
+
+    private void admit (final String clientId) throws QueryRejectedException
+    {
+        if (!running)
+        {
+            throw new QueryRejectedException ("gateway closed");
+        }
+        long now = System.nanoTime ();
+        TokenBucket bucket = clientBuckets.computeIfAbsent (clientId, id -> new TokenBucket (configuration
+                        .getClientQueriesPerSecond (), configuration.getClientQueryBurst (), now));
+        if (!bucket.tryAcquire (now))
+        {
+            rateLimitedCount.incrementAndGet ();
+            throw new QueryRejectedException ("rate limit exceeded for client " + clientId);
+        }
+    }
+
+    private boolean isOverloaded ()
+    {
+        return trades.size () >= configuration.getOverloadTradeQueueDepth ();
+    }
+
+    private PublishedAggregates shed ()
+    {
+        shedQueryCount.incrementAndGet ();
+        return published;
+    }
+
+    /**
+     * Queue a query, and wait for its result.
+     * 
+     * @return The result, or null if the query queue is full.
+     */
+    private Double query (final MarketTask<Double> task) throws InvalidParameterException, QueryRejectedException
+    {
+        PendingQuery query = new PendingQuery (task);
+        if (!queries.offer (query))
+        {
+            return null;
+        }
+
+        /*
+         * The gateway may have closed after admitting the query, and drained the queue
+         * before it was offered, so nothing else would complete it.
+         */
+        if (!running)
+        {
+            queries.remove (query);
+            throw new QueryRejectedException ("gateway closed");
+        }
+        work.release ();
+
+        try
+        {
+            return query.result.get (configuration.getQueryTimeoutMillis (), TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread ().interrupt ();
+            throw new QueryRejectedException ("interrupted waiting for query");
+        }
+        catch (TimeoutException e)
+        {
+            /*
+             * The worker skips the query if it's still queued.
+             */
+            query.result.cancel (false);
+            queries.remove (query);
+            timedOutQueryCount.incrementAndGet ();
+            throw new QueryRejectedException ("query timed out");
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause () instanceof InvalidParameterException)
+            {
+                throw (InvalidParameterException)e.getCause ();
+            }
+            if (e.getCause () instanceof QueryRejectedException)
+            {
+                throw (QueryRejectedException)e.getCause ();
+            }
+            throw new IllegalStateException ("failed query", e.getCause ());
+        }
+    }
+
+    /**
+     * Run the trades and queries queued, trades first, publishing the aggregates after
+     * trades, or while idle, when the interval has passed.
+     */
+    private void work ()
+    {
+        long publishIntervalNanos = configuration.getPublishIntervalMillis () * 1000000L;
+        long idleMillis = Math.max (1, configuration.getPublishIntervalMillis ());
+        while (running)
+        {
+            boolean acquired;
+            try
+            {
+                acquired = work.tryAcquire (idleMillis, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                return;
+            }
+
+            long now = System.nanoTime ();
+            if (now - lastEvictionNanos >= EVICTION_INTERVAL_NANOS)
+            {
+                clientBuckets.values ().removeIf (bucket -> bucket.isFull (now));
+                lastEvictionNanos = now;
+            }
+            if (!acquired)
+            {
+                if (now - lastPublishNanos >= publishIntervalNanos)
+                {
+                    tryPublish ();
+                }
+                continue;
+            }
+
+            Runnable trade = trades.poll ();
+            if (trade != null)
+            {
+                trade.run ();
+                if (System.nanoTime () - lastPublishNanos >= publishIntervalNanos)
+                {
+                    tryPublish ();
+                }
+                continue;
+            }
+
+            PendingQuery query = queries.poll ();
+            if (query != null && !query.result.isDone ())
+            {
+                try
+                {
+                    query.result.complete (query.task.run (market));
+                }
+                catch (Exception e)
+                {
+                    query.result.completeExceptionally (e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Publish the aggregates, keeping the previous aggregates if that fails.
+     */
+    private void tryPublish ()
+    {
+        try
+        {
+            publish ();
+        }
+        catch (RuntimeException e)
+        {
+            failedPublishCount.incrementAndGet ();
+            lastPublishNanos = System.nanoTime ();
+        }
+    }
+
+    private void publish ()
+    {
+        SymbolTable symbolTable = market.getSymbolTable ();
+        Map<String, Double> prices = new LinkedHashMap<String, Double> ();
+        try
+        {
+            for (int symbolId = 0; symbolId < symbolTable.size (); symbolId++)
+            {
+                String stockIdentifier = symbolTable.symbolOf (symbolId);
+                prices.put (stockIdentifier, market.calculateVolumeWeightedStockPrice (stockIdentifier));
+            }
+        }
+        catch (InvalidParameterException e)
+        {
+            throw new IllegalStateException ("symbol table doesn't match universe", e);
+        }
+        published = new PublishedAggregates (System.currentTimeMillis (), market.calculateGBCE (), prices);
+        lastPublishNanos = System.nanoTime ();
+    }
+}
@@ -0,0 +1,79 @@
+package com.jpmorgan.exercise.gateway;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.jpmorgan.exercise.exception.InvalidParameterException;
+
+/**
+ * Immutable bean to hold the VWSP of each stock and the GBCE, as published by a
+ * <code>MarketGateway</code>, used to answer queries while the market is overloaded.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public class PublishedAggregates
+{
+
+    private final long                publishedMillis;
+    private final double              gbce;
+    private final Map<String, Double> volumeWeightedStockPrices;
+
+    PublishedAggregates (final long publishedMillis,
+                         final double gbce,
+                         final Map<String, Double> volumeWeightedStockPrices)
+    {
+        this.publishedMillis = publishedMillis;
+        this.gbce = gbce;
+        Map<String, Double> prices = new TreeMap<String, Double> (String.CASE_INSENSITIVE_ORDER);
+        prices.putAll (volumeWeightedStockPrices);
+        this.volumeWeightedStockPrices = Collections.unmodifiableMap (prices);
+    }
+
+    /**
+     * @return Wall clock time the aggregates were published, in milliseconds.
+     */
+    public long getPublishedMillis ()
+    {
+        return publishedMillis;
+    }
+
+    public double getGBCE ()
+    {
+        return gbce;
+    }
+
+    /**
+     * @param stockIdentifier
+     *            Three letter identifier for the stock.
+     * @return The VWSP of the stock when published.
+     * @throws InvalidParameterException
+     *             For unrecognised stock identifier.
+     */
+    public double getVolumeWeightedStockPrice (final String stockIdentifier) throws InvalidParameterException
+    {
+        Double price = volumeWeightedStockPrices.get (stockIdentifier);
+        if (price == null)
+        {
+            throw new InvalidParameterException ("invalid stock " + stockIdentifier);
+        }
+        return price;
+    }
+
+    @Override
+    public String toString ()
+    {
+        StringBuilder builder = new StringBuilder ();
+
+        builder.append ("PublishedAggregates:[publishedMillis: ");
+        builder.append (publishedMillis);
+        builder.append (", gbce: ");
+        builder.append (gbce);
+        builder.append (", stocks: ");
+        builder.append (volumeWeightedStockPrices.size ());
+        builder.append ("]");
+
+        return builder.toString ();
+    }
+}
@@ -0,0 +1,62 @@
+package com.jpmorgan.exercise.gateway;
+
+/**
+ * Token bucket rate limiter for one client: holds up to a burst of tokens, refilled at a
+ * fixed rate, with one token taken by each query.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+class TokenBucket
+{
+
+    private final double capacity;
+    private final double tokensPerNano;
+
+    private double       tokens;
+    private long         lastRefillNanos;
+
+    /**
+     * @param tokensPerSecond
+     *            Rate at which tokens are added.
+     * @param capacity
+     *            Maximum number of tokens held, i.e. the largest burst.
+     * @param nowNanos
+     *            Current time, from <code>System.nanoTime</code>.
+     */
+    TokenBucket (final double tokensPerSecond, final int capacity, final long nowNanos)
+    {
+        this.capacity = capacity;
+        this.tokensPerNano = tokensPerSecond / 1e9;
+        this.tokens = capacity;
+        this.lastRefillNanos = nowNanos;
+    }
+
+    /**
+     * @param nowNanos
+     *            Current time, from <code>System.nanoTime</code>.
+     * @return Whether a token was taken.
+     */
+    synchronized boolean tryAcquire (final long nowNanos)
+    {
+        tokens = Math.min (capacity, tokens + (nowNanos - lastRefillNanos) * tokensPerNano);
+        lastRefillNanos = nowNanos;
+        if (tokens < 1)
+        {
+            return false;
+        }
+        tokens--;
+        return true;
+    }
+
+    /**
+     * @param nowNanos
+     *            Current time, from <code>System.nanoTime</code>.
+     * @return Whether the bucket would be full by now, so that it's no different from a new
+     *         bucket, and can be dropped.
+     */
+    synchronized boolean isFull (final long nowNanos)
+    {
+        return tokens + (nowNanos - lastRefillNanos) * tokensPerNano >= capacity;
+    }
+}
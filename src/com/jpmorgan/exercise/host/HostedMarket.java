@@ -0,0 +1,327 @@
+package com.jpmorgan.exercise.host;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.jpmorgan.exercise.environment.Environment;
+import com.jpmorgan.exercise.exception.InvalidParameterException;
+import com.jpmorgan.exercise.market.Market;
+import com.jpmorgan.exercise.market.MarketConfiguration;
+import com.jpmorgan.exercise.market.TradeType;
+
+/**
+ * A <code>Market</code> hosted by a <code>MarketHost</code>. Trades and queries are queued,
+ * and run on the host's shared worker pool, one at a time, so the market itself needn't be
+ * thread-safe.
+ * 
+ * The queue is bounded, so a venue that is flooded with trades has them rejected, rather
+ * than holding up, or using the memory of, the other venues on the host. When scheduled, the
+ * market runs at most a quantum of tasks before giving up its worker to the next market.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public class HostedMarket
+{
+
+    private final String                  name;
+    private final Market                  market;
+    private final Environment             environment;
+    private final Executor                pool;
+    private final int                     queueCapacity;
+    private final int                     quantum;
+
+    private final Queue<Runnable>         tasks         = new ConcurrentLinkedQueue<Runnable> ();
+    private final AtomicInteger           queueDepth    = new AtomicInteger ();
+
+    /**
+     * Whether the market is waiting for, or running on, a worker. At most one worker runs
+     * the market's tasks at a time.
+     */
+    private final AtomicBoolean           scheduled     = new AtomicBoolean ();
+
+    /**
+     * Whether a pass over the windows is waiting to run. Kept apart from the queue, so that
+     * at most one is pending, and maintenance never takes the capacity for trades.
+     */
+    private final AtomicBoolean           maintenancePending = new AtomicBoolean ();
+
+    private volatile boolean              closed;
+
+    private final AtomicLong              completedCount = new AtomicLong ();
+    private final AtomicLong              rejectedCount  = new AtomicLong ();
+    private final AtomicLong              failedCount    = new AtomicLong ();
+
+    HostedMarket (final String name,
+                  final MarketConfiguration configuration,
+                  final Executor pool,
+                  final int queueCapacity,
+                  final int quantum)
+    {
+        this.name = name;
+        this.market = new Market (configuration);
+        this.environment = configuration.getEnvironment ();
+        this.pool = pool;
+        this.queueCapacity = queueCapacity;
+        this.quantum = quantum;
+    }
+
+    public String getName ()
+    {
+        return name;
+    }
+
+    /**
+     * Queue a trade, timestamped now by the market's clock.
+     * 
+     * @param stockIdentifier
+     *            Three letter identifier for the stock.
+     * @param quantity
+     *            The number of stocks in the trade.
+     * @param price
+     *            The price of the trade.
+     * @param tradeType
+     *            Buy or sell.
+     * @return Whether the trade was queued. False if the market's queue is full. An invalid
+     *         trade is queued, and counted as failed when it's run.
+     */
+    public boolean recordTrade (final String stockIdentifier,
+                                final int quantity,
+                                final double price,
+                                final TradeType tradeType)
+    {
+        return recordTrade (stockIdentifier, quantity, price, tradeType, null);
+    }
+
+    /**
+     * Queue a trade with an id, timestamped now by the market's clock. A duplicate of a trade
+     * recorded within the horizon is dropped when it's run.
+     * 
+     * @param stockIdentifier
+     *            Three letter identifier for the stock.
+     * @param quantity
+     *            The number of stocks in the trade.
+     * @param price
+     *            The price of the trade.
+     * @param tradeType
+     *            Buy or sell.
+     * @param tradeId
+     *            The id given to the trade by the venue, or null if it has none.
+     * @return Whether the trade was queued. False if the market's queue is full. An invalid
+     *         trade is queued, and counted as failed when it's run.
+     */
+    public boolean recordTrade (final String stockIdentifier,
+                                final int quantity,
+                                final double price,
+                                final TradeType tradeType,
+                                final String tradeId)
+    {
+        long timestamp = environment.getTime ();
+        return enqueue (() -> {
+            try
+            {
+                market.recordTrade (stockIdentifier, quantity, price, tradeType, timestamp, tradeId);
+            }
+            catch (InvalidParameterException e)
+            {
+                throw new IllegalArgumentException (e.getMessage (), e);
+            }
+        });
+    }
+
+    /**
+     * Queue work, such as a query, against the market.
+     * 
+     * @param task
+     *            The work.
+     * @return The result of the work, completed exceptionally with a
+     *         <code>RejectedExecutionException</code> if the market's queue is full.
+     */
+    public <T> CompletableFuture<T> submit (final MarketTask<T> task)
+    {
+        CompletableFuture<T> result = new CompletableFuture<T> ();
+        boolean queued = enqueue (() -> {
+            try
+            {
+                result.complete (task.run (market));
+            }
+            catch (InvalidParameterException e)
+            {
+                result.completeExceptionally (e);
+                throw new IllegalArgumentException (e.getMessage (), e);
+            }
+            catch (RuntimeException e)
+            {
+                result.completeExceptionally (e);
+                throw e;
+            }
+        });
+        if (!queued)
+        {
+            result.completeExceptionally (new RejectedExecutionException ("queue full for market " + name));
+        }
+        return result;
+    }
+
+    /**
+     * @return The number of tasks waiting to be run.
+     */
+    public int getQueueDepth ()
+    {
+        return queueDepth.get ();
+    }
+
+    /**
+     * @return The number of tasks run without throwing, including passes over the windows.
+     */
+    public long getCompletedCount ()
+    {
+        return completedCount.get ();
+    }
+
+    /**
+     * @return The number of tasks rejected as the queue was full.
+     */
+    public long getRejectedCount ()
+    {
+        return rejectedCount.get ();
+    }
+
+    /**
+     * @return The number of tasks that threw, such as invalid trades, including passes over
+     *         the windows.
+     */
+    public long getFailedCount ()
+    {
+        return failedCount.get ();
+    }
+
+    boolean enqueue (final Runnable task)
+    {
+        if (closed)
+        {
+            rejectedCount.incrementAndGet ();
+            return false;
+        }
+        if (queueDepth.incrementAndGet () > queueCapacity)
+        {
+            queueDepth.decrementAndGet ();
+            rejectedCount.incrementAndGet ();
+            return false;
+        }
+        tasks.add (task);
+        schedule ();
+        return true;
+    }
+
+    /**
+     * Request a pass over the windows, expiring trades that have left the horizon, run before
+     * the next tasks queued. Not queued with the tasks, so it neither takes nor is refused
+     * the queue capacity; a request while one is pending is dropped.
+     */
+    void maintain ()
+    {
+        if (closed || !maintenancePending.compareAndSet (false, true))
+        {
+            return;
+        }
+        schedule ();
+    }
+
+    /**
+     * Stop queueing tasks. Tasks already queued may still run until the pool is shut down.
+     */
+    void stop ()
+    {
+        closed = true;
+    }
+
+    /**
+     * Release the market, once no worker is running its tasks.
+     */
+    void close ()
+    {
+        closed = true;
+        market.close ();
+    }
+
+    private void schedule ()
+    {
+        if (scheduled.compareAndSet (false, true))
+        {
+            try
+            {
+                pool.execute (this::drain);
+            }
+            catch (RejectedExecutionException e)
+            {
+                /*
+                 * The host has been closed; the tasks left are discarded.
+                 */
+                scheduled.set (false);
+            }
+        }
+    }
+
+    /**
+     * Run up to a quantum of tasks, then give up the worker, rescheduling behind the other
+     * markets waiting if there are more tasks.
+     */
+    private void drain ()
+    {
+        try
+        {
+            if (maintenancePending.getAndSet (false))
+            {
+                run (() -> market.expireTrades ());
+            }
+            for (int i = 0; i < quantum; i++)
+            {
+                Runnable task = tasks.poll ();
+                if (task == null)
+                {
+                    break;
+                }
+                queueDepth.decrementAndGet ();
+                run (task);
+            }
+        }
+        finally
+        {
+            scheduled.set (false);
+        }
+
+        /*
+         * A task added after the poll above, but before the flag was cleared, didn't
+         * schedule the market, so check again.
+         */
+        if (!tasks.isEmpty () || maintenancePending.get ())
+        {
+            schedule ();
+        }
+    }
+
+    /**
+     * Run a task, counting it as completed, or as failed if it throws, so that one task can't
+     * stop the market's other tasks being run. Tasks rethrow their failures, unchecked, to be
+     * counted here, so each task is counted once.
+     */
+    private void run (final Runnable task)
+    {
+        try
+        {
+            task.run ();
+            completedCount.incrementAndGet ();
+        }
+        catch (RuntimeException e)
+        {
+            failedCount.incrementAndGet ();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.jpmorgan.exercise.host;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.jpmorgan.exercise.exception.InvalidParameterException;
+import com.jpmorgan.exercise.market.MarketConfiguration;
+
+/**
+ * Hosts many independent markets (venues) in one process, each with its own clock, universe
+ * and horizon given by its <code>MarketConfiguration</code>, sharing a bounded pool of
+ * workers for recording trades, queries, and maintaining the windows.
+ * 
+ * Each market has its own bounded queue of tasks, and is run by at most one worker at a
+ * time, for a quantum of tasks, before going to the back of the pool's queue. So the workers
+ * are shared round robin between the markets with work waiting, and a busy market can't
+ * starve the others, nor can its backlog use up the memory of the host.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public class MarketHost implements AutoCloseable
+{
+
+    private final ExecutorService           pool;
+    private final int                       queueCapacity;
+    private final int                       quantum;
+
+    /**
+     * Hosted markets, keyed by name, ignoring case.
+     */
+    private final Map<String, HostedMarket> markets = Collections
+                    .synchronizedMap (new TreeMap<String, HostedMarket> (String.CASE_INSENSITIVE_ORDER));
+
+    /**
+     * @param threads
+     *            Number of workers shared by the markets.
+     * @param queueCapacity
+     *            Maximum number of tasks waiting for each market.
+     * @param quantum
+     *            Maximum number of tasks a market runs before giving up its worker.
+     * @throws InvalidParameterException
+     *             For an invalid number of workers, capacity, or quantum.
+     */
+    public MarketHost (final int threads, final int queueCapacity, final int quantum) throws InvalidParameterException
+    {
+        if (threads <= 0 || queueCapacity <= 0 || quantum <= 0)
+        {
+            throw new InvalidParameterException ("invalid threads " + threads + ", queue capacity " + queueCapacity
+                                                 + " or quantum " + quantum);
+        }
+        this.pool = Executors.newFixedThreadPool (threads);
+        this.queueCapacity = queueCapacity;
+        this.quantum = quantum;
+    }
+
+    /**
+     * Add a market to the host.
+     * 
+     * @param name
+     *            Name of the market.
+     * @param configuration
+     *            Configuration of the market, including its environment (clock).
+     * @return The hosted market.
+     * @throws InvalidParameterException
+     *             For a duplicate name.
+     */
+    public HostedMarket addMarket (final String name, final MarketConfiguration configuration) throws InvalidParameterException
+    {
+        synchronized (markets)
+        {
+            if (markets.containsKey (name))
+            {
+                throw new InvalidParameterException ("duplicate market " + name);
+            }
+            HostedMarket market = new HostedMarket (name, configuration, pool, queueCapacity, quantum);
+            markets.put (name, market);
+            return market;
+        }
+    }
+
+    /**
+     * @param name
+     *            Name of the market.
+     * @return The hosted market.
+     * @throws InvalidParameterException
+     *             For an unrecognised market.
+     */
+    public HostedMarket getMarket (final String name) throws InvalidParameterException
+    {
+        HostedMarket market = markets.get (name);
+        if (market == null)
+        {
+            throw new InvalidParameterException ("invalid market " + name);
+        }
+        return market;
+    }
+
+    /**
+     * @return The names of the hosted markets.
+     */
+    public List<String> getMarketNames ()
+    {
+        synchronized (markets)
+        {
+            return new ArrayList<String> (markets.keySet ());
+        }
+    }
+
+    /**
+     * Queue a pass over the windows of each market, expiring the trades that have left the
+     * horizon, so that quiet markets don't leave the work to their next trade or query. Run
+     * on the pool, alongside the markets' other tasks.
+     */
+    public void maintain ()
+    {
+        for (HostedMarket market : hostedMarkets ())
+        {
+            market.maintain ();
+        }
+    }
+
+    /**
+     * Stop the workers, waiting for those running, and release the markets. Tasks still
+     * queued are discarded. The host can't be used once closed. If a worker doesn't stop
+     * within a minute, the markets are left unreleased.
+     */
+    @Override
+    public void close ()
+    {
+        List<HostedMarket> hosted = hostedMarkets ();
+        for (HostedMarket market : hosted)
+        {
+            market.stop ();
+        }
+        pool.shutdownNow ();
+        try
+        {
+            /*
+             * A market's off heap state can't be released under a worker still running it.
+             */
+            if (!pool.awaitTermination (1, TimeUnit.MINUTES))
+            {
+                return;
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread ().interrupt ();
+            return;
+        }
+        for (HostedMarket market : hosted)
+        {
+            market.close ();
+        }
+    }
+
+    private List<HostedMarket> hostedMarkets ()
+    {
+        synchronized (markets)
+        {
+            return new ArrayList<HostedMarket> (markets.values ());
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.jpmorgan.exercise.host;
+
+import com.jpmorgan.exercise.exception.InvalidParameterException;
+import com.jpmorgan.exercise.market.Market;
+
+/**
+ * Work, such as a trade or query, run against a hosted <code>Market</code> on the host's
+ * worker pool.
+ * 
+ * @author Tony Cruickshank
+ *
+ * @param <T>
+ *            Type of the result.
+ */
+public interface MarketTask<T>
+{
+    public T run (Market market) throws InvalidParameterException;
+}
@@ -0,0 +1,28 @@
+package com.jpmorgan.exercise.importer;
+
+/**
+ * Layout of a trade file. Each line holds one trade, with the fields: stock identifier,
+ * timestamp (seconds), quantity, price, and trade type (<code>BUY</code>/<code>SELL</code>,
+ * or just <code>B</code>/<code>S</code>, ignoring case).
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public enum TradeFileFormat
+{
+    /**
+     * Fields separated by commas, e.g. <code>POP,1500000000,100,52.25,BUY</code>.
+     */
+    CSV,
+
+    /**
+     * Fields in fixed width columns, padded with spaces: stock identifier (8 characters),
+     * timestamp (12), quantity (10), price (16), trade type (4).
+     */
+    FIXED_WIDTH;
+
+    /**
+     * Widths of the fixed width columns, in field order.
+     */
+    static final int[] FIXED_WIDTHS = { 8, 12, 10, 16, 4 };
+}
@@ -0,0 +1,474 @@
+package com.jpmorgan.exercise.importer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.jpmorgan.exercise.exception.InvalidParameterException;
+import com.jpmorgan.exercise.market.Market;
+import com.jpmorgan.exercise.market.TradeBatch;
+import com.jpmorgan.exercise.market.TradeType;
+import com.jpmorgan.exercise.window.SymbolTable;
+
+/**
+ * Bulk importer of trade files, such as end of day and vendor files, into a market.
+ * 
+ * The file is memory mapped in chunks, and each chunk is parsed directly from the mapped
+ * bytes into a <code>TradeBatch</code>, without creating a <code>String</code> per line or
+ * field: stock identifiers are looked up in the market's symbol table from the bytes, and
+ * numbers are parsed in place. Chunks are parsed in parallel, and the batches recorded on the
+ * market in file order, keeping the timestamps from the file. The file must therefore be
+ * in time order, within the market's allowed lateness.
+ * 
+ * A chunk holds the lines that start within it; its first partial line belongs to the
+ * previous chunk, and its last line may run into the next chunk.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public class TradeFileImporter
+{
+
+    /**
+     * Default size of the chunks the file is split into for parsing.
+     */
+    public static final int       DEFAULT_CHUNK_BYTES = 32 * 1024 * 1024;
+
+    /**
+     * Longest line that can be parsed.
+     */
+    private static final int      MAX_LINE_BYTES      = 4096;
+
+    /**
+     * Field positions of the line being parsed, per thread, to avoid allocating per line.
+     */
+    private static final ThreadLocal<int[]> FIELDS = ThreadLocal.withInitial ( () -> new int[10]);
+
+    /**
+     * Decimal powers that are exactly representable as a <code>double</code>.
+     */
+    private static final double[]           POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+                                                              1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19,
+                                                              1e20, 1e21, 1e22 };
+
+    private final TradeFileFormat format;
+
+    private final boolean         header;
+
+    private final int             parallelism;
+
+    private final int             chunkBytes;
+
+    /**
+     * @param format
+     *            Layout of the file.
+     * @param header
+     *            Whether the first line of the file is a header, to be skipped.
+     */
+    public TradeFileImporter (final TradeFileFormat format, final boolean header)
+    {
+        this (format, header, Runtime.getRuntime ().availableProcessors (), DEFAULT_CHUNK_BYTES);
+    }
+
+    /**
+     * @param format
+     *            Layout of the file.
+     * @param header
+     *            Whether the first line of the file is a header, to be skipped.
+     * @param parallelism
+     *            Number of chunks to parse in parallel.
+     * @param chunkBytes
+     *            Size of the chunks the file is split into.
+     */
+    public TradeFileImporter (final TradeFileFormat format,
+                              final boolean header,
+                              final int parallelism,
+                              final int chunkBytes)
+    {
+        if (parallelism <= 0 || chunkBytes <= 0)
+        {
+            throw new IllegalArgumentException ("invalid parallelism " + parallelism + " or chunk size " + chunkBytes);
+        }
+        this.format = format;
+        this.header = header;
+        this.parallelism = parallelism;
+        this.chunkBytes = chunkBytes;
+    }
+
+    /**
+     * Import a trade file into a market.
+     * 
+     * @param file
+     *            The file to import.
+     * @param market
+     *            The market to record the trades on.
+     * @return The number of trades recorded.
+     * @throws IOException
+     *             If the file can't be read.
+     * @throws InvalidParameterException
+     *             For a malformed line, unrecognised stock identifier, quantity, or invalid
+     *             price. The trades in the file before the chunk holding the invalid line
+     *             are recorded.
+     */
+    public long importFile (final Path file, final Market market) throws IOException, InvalidParameterException
+    {
+        final SymbolTable symbolTable = market.getSymbolTable ();
+        ExecutorService pool = Executors.newFixedThreadPool (parallelism);
+
+        try (FileChannel channel = FileChannel.open (file, StandardOpenOption.READ))
+        {
+            final long size = channel.size ();
+            long chunkCount = (size + chunkBytes - 1) / chunkBytes;
+
+            /*
+             * Keep a bounded number of chunks in flight, recording each in file order.
+             */
+            Deque<Future<TradeBatch>> inFlight = new ArrayDeque<Future<TradeBatch>> ();
+            long nextChunk = 0;
+            long recorded = 0;
+            while (nextChunk < chunkCount || !inFlight.isEmpty ())
+            {
+                while (nextChunk < chunkCount && inFlight.size () < 2 * parallelism)
+                {
+                    final long chunkStart = nextChunk * chunkBytes;
+                    final long chunkEnd = Math.min (size, chunkStart + chunkBytes);
+                    inFlight.addLast (pool.submit ( () -> parseChunk (channel, size, chunkStart, chunkEnd, symbolTable)));
+                    nextChunk++;
+                }
+
+                TradeBatch batch = inFlight.removeFirst ().get ();
+                market.recordTrades (batch);
+                recorded += batch.size ();
+            }
+            return recorded;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread ().interrupt ();
+            throw new IOException ("interrupted importing " + file, e);
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause () instanceof InvalidParameterException)
+            {
+                throw (InvalidParameterException)e.getCause ();
+            }
+            if (e.getCause () instanceof IOException)
+            {
+                throw (IOException)e.getCause ();
+            }
+            throw new IOException ("failed importing " + file, e.getCause ());
+        }
+        finally
+        {
+            pool.shutdownNow ();
+        }
+    }
+
+    /**
+     * Parse the lines starting within a chunk of the file.
+     */
+    private TradeBatch parseChunk (final FileChannel channel,
+                                   final long size,
+                                   final long chunkStart,
+                                   final long chunkEnd,
+                                   final SymbolTable symbolTable) throws IOException, InvalidParameterException
+    {
+        /*
+         * Map from the byte before the chunk, to find whether the chunk starts on a new line,
+         * up to the longest line beyond the chunk, to finish its last line.
+         */
+        long mapStart = Math.max (0, chunkStart - 1);
+        long mapEnd = Math.min (size, chunkEnd + MAX_LINE_BYTES);
+        MappedByteBuffer buffer = channel.map (FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+
+        int limit = (int)(mapEnd - mapStart);
+        int end = (int)(chunkEnd - mapStart);
+        int position = (int)(chunkStart - mapStart);
+        if (chunkStart == 0 ? header : buffer.get (position - 1) != '\n')
+        {
+            position = lineEnd (buffer, position, limit, mapEnd == size, mapStart) + 1;
+        }
+
+        TradeBatch batch = new TradeBatch (Math.max (16, (end - position) / 32));
+        while (position < end)
+        {
+            int lineEnd = lineEnd (buffer, position, limit, mapEnd == size, mapStart);
+            int contentEnd = (lineEnd > position && buffer.get (lineEnd - 1) == '\r') ? lineEnd - 1 : lineEnd;
+            if (contentEnd > position)
+            {
+                parseLine (buffer, position, contentEnd, symbolTable, batch, mapStart);
+            }
+            position = lineEnd + 1;
+        }
+        return batch;
+    }
+
+    /**
+     * @return Position of the end of the line, i.e. the newline, or the limit if the line
+     *         is the last in the file.
+     */
+    private static int lineEnd (final ByteBuffer buffer,
+                                final int position,
+                                final int limit,
+                                final boolean endOfFile,
+                                final long mapStart) throws InvalidParameterException
+    {
+        for (int i = position; i < limit; i++)
+        {
+            if (buffer.get (i) == '\n')
+            {
+                return i;
+            }
+        }
+        if (!endOfFile)
+        {
+            throw new InvalidParameterException ("line too long at byte " + (mapStart + position));
+        }
+        return limit;
+    }
+
+    private void parseLine (final ByteBuffer buffer,
+                            final int start,
+                            final int end,
+                            final SymbolTable symbolTable,
+                            final TradeBatch batch,
+                            final long mapStart) throws InvalidParameterException
+    {
+        /*
+         * Find the start and end of each of the five fields.
+         */
+        int[] fields = FIELDS.get ();
+        if (format == TradeFileFormat.CSV)
+        {
+            int field = 0;
+            fields[0] = start;
+            for (int i = start; i < end; i++)
+            {
+                if (buffer.get (i) == ',')
+                {
+                    if (field == 4)
+                    {
+                        throw invalidLine (buffer, start, end, mapStart);
+                    }
+                    fields[2 * field + 1] = i;
+                    field++;
+                    fields[2 * field] = i + 1;
+                }
+            }
+            if (field != 4)
+            {
+                throw invalidLine (buffer, start, end, mapStart);
+            }
+            fields[9] = end;
+        }
+        else
+        {
+            int position = start;
+            for (int field = 0; field < 5; field++)
+            {
+                fields[2 * field] = Math.min (position, end);
+                position += TradeFileFormat.FIXED_WIDTHS[field];
+                fields[2 * field + 1] = Math.min (position, end);
+            }
+        }
+
+        /*
+         * Trim spaces from each field.
+         */
+        for (int field = 0; field < 5; field++)
+        {
+            while (fields[2 * field] < fields[2 * field + 1] && buffer.get (fields[2 * field]) == ' ')
+            {
+                fields[2 * field]++;
+            }
+            while (fields[2 * field + 1] > fields[2 * field] && buffer.get (fields[2 * field + 1] - 1) == ' ')
+            {
+                fields[2 * field + 1]--;
+            }
+            if (fields[2 * field] == fields[2 * field + 1])
+            {
+                throw invalidLine (buffer, start, end, mapStart);
+            }
+        }
+
+        int symbolId = symbolTable.idOf (buffer, fields[0], fields[1] - fields[0]);
+        if (symbolId < 0)
+        {
+            throw new InvalidParameterException ("invalid stock " + text (buffer, fields[0], fields[1]));
+        }
+
+        long timestamp = parseLong (buffer, fields[2], fields[3]);
+        long quantity = parseLong (buffer, fields[4], fields[5]);
+        double price = parsePrice (buffer, fields[6], fields[7]);
+        TradeType tradeType = parseTradeType (buffer, fields[8], fields[9]);
+        if (timestamp == Long.MIN_VALUE || quantity == Long.MIN_VALUE || Double.isNaN (price))
+        {
+            throw invalidLine (buffer, start, end, mapStart);
+        }
+        if (tradeType == null)
+        {
+            throw new InvalidParameterException ("invalid trade type " + text (buffer, fields[8], fields[9]));
+        }
+        if (quantity <= 0 || quantity > Integer.MAX_VALUE)
+        {
+            throw new InvalidParameterException ("invalid quantity " + text (buffer, fields[0], fields[1]));
+        }
+        if (price <= 0)
+        {
+            throw new InvalidParameterException ("invalid price " + price);
+        }
+
+        batch.add (symbolId, timestamp, (int)quantity, price, tradeType);
+    }
+
+    /**
+     * @return The integer, or <code>Long.MIN_VALUE</code> if malformed.
+     */
+    private static long parseLong (final ByteBuffer buffer, final int start, final int end)
+    {
+        boolean negative = buffer.get (start) == '-';
+        int i = negative ? start + 1 : start;
+        if (i == end || end - i > 18)
+        {
+            return Long.MIN_VALUE;
+        }
+
+        long value = 0;
+        for (; i < end; i++)
+        {
+            int digit = buffer.get (i) - '0';
+            if (digit < 0 || digit > 9)
+            {
+                return Long.MIN_VALUE;
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parse a decimal price. The digits are accumulated as an integer, which is then divided
+     * by the power of ten of the decimal places; as both are exact, the result is the correctly
+     * rounded value, the same as <code>Double.parseDouble</code>, for up to 15 significant digits.
+     * 
+     * @return The price, or NaN if malformed.
+     */
+    private static double parsePrice (final ByteBuffer buffer, final int start, final int end)
+    {
+        long mantissa = 0;
+        int digits = 0;
+        int decimals = -1;
+        for (int i = start; i < end; i++)
+        {
+            byte b = buffer.get (i);
+            if (b == '.' && decimals < 0)
+            {
+                decimals = 0;
+            }
+            else if (b >= '0' && b <= '9')
+            {
+                if (++digits > 15)
+                {
+                    return parseLongPrice (text (buffer, start, end));
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                if (decimals >= 0)
+                {
+                    decimals++;
+                }
+            }
+            else
+            {
+                return Double.NaN;
+            }
+        }
+        if (digits == 0)
+        {
+            return Double.NaN;
+        }
+        return (decimals <= 0) ? mantissa : mantissa / POWERS_OF_TEN[decimals];
+    }
+
+    private static double parseLongPrice (final String price)
+    {
+        try
+        {
+            return Double.parseDouble (price);
+        }
+        catch (NumberFormatException e)
+        {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * @return The trade type from the whole field, one of B, S, BUY or SELL ignoring case, or
+     *         null if not recognised.
+     */
+    private static TradeType parseTradeType (final ByteBuffer buffer, final int start, final int end)
+    {
+        TradeType tradeType;
+        String name;
+        switch (buffer.get (start) | 0x20)
+        {
+            case 'b':
+                tradeType = TradeType.BUY;
+                name = "buy";
+                break;
+            case 's':
+                tradeType = TradeType.SELL;
+                name = "sell";
+                break;
+            default:
+                return null;
+        }
+
+        int length = end - start;
+        if (length != 1 && length != name.length ())
+        {
+            return null;
+        }
+        for (int i = 1; i < length; i++)
+        {
+            if ((buffer.get (start + i) | 0x20) != name.charAt (i))
+            {
+                return null;
+            }
+        }
+        return tradeType;
+    }
+
+    private static InvalidParameterException invalidLine (final ByteBuffer buffer,
+                                                          final int start,
+                                                          final int end,
+                                                          final long mapStart)
+    {
+        return new InvalidParameterException ("invalid trade at byte " + (mapStart + start) + ": "
+                                              + text (buffer, start, end));
+    }
+
+    /**
+     * Copy bytes from the buffer to a <code>String</code>; only used for error messages, and
+     * unusually long prices.
+     */
+    private static String text (final ByteBuffer buffer, final int start, final int end)
+    {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++)
+        {
+            bytes[i] = buffer.get (start + i);
+        }
+        return new String (bytes, StandardCharsets.US_ASCII);
+    }
+}
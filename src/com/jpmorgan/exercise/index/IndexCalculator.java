@@ -0,0 +1,269 @@
+package com.jpmorgan.exercise.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.jpmorgan.exercise.exception.InvalidParameterException;
+import com.jpmorgan.exercise.window.SymbolTable;
+
+/**
+ * Maintains the values of many indices incrementally, from the changes to the volume
+ * weighted stock price of each stock.
+ * 
+ * Each index holds the weighted sum of its constituents' prices (of their logs, for a
+ * geometric index) and the total weight of the constituents that have a price. When the
+ * price of a stock changes, only the indices that contain the stock are updated, by
+ * replacing the stock's old contribution with its new one, so the cost of a trade doesn't
+ * grow with the number of indices.
+ * 
+ * Adding and removing contributions accumulates rounding errors, so each index is
+ * recalculated from its constituents after <code>REBUILD_INTERVAL</code> updates.
+ * 
+ * Note that the calculator is not thread-safe.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public class IndexCalculator
+{
+
+    /**
+     * Number of updates to an index after which it's recalculated from its constituents.
+     */
+    static final int                  REBUILD_INTERVAL = 1 << 16;
+
+    private static final int[]        NO_INDICES       = new int[0];
+
+    private static final double[]     NO_WEIGHTS       = new double[0];
+
+    private final SymbolTable         symbolTable;
+
+    private final Map<String, Integer> indexNumbers    = new HashMap<String, Integer> ();
+
+    private final List<IndexState>    indices          = new ArrayList<IndexState> ();
+
+    /**
+     * The current volume weighted stock price of each stock, indexed by symbol id.
+     */
+    private double[]                  prices;
+
+    /**
+     * The indices containing each stock, and the stock's weight in each, indexed by
+     * symbol id.
+     */
+    private int[][]                   memberships;
+    private double[][]                membershipWeights;
+
+    /**
+     * @param symbolTable
+     *            Symbol ids of the stocks that may be constituents.
+     */
+    public IndexCalculator (final SymbolTable symbolTable)
+    {
+        this.symbolTable = symbolTable;
+        prices = new double[symbolTable.size ()];
+        memberships = new int[symbolTable.size ()][];
+        membershipWeights = new double[symbolTable.size ()][];
+        Arrays.fill (memberships, NO_INDICES);
+        Arrays.fill (membershipWeights, NO_WEIGHTS);
+    }
+
+    /**
+     * Define a new index, calculated from the current prices.
+     * 
+     * @param definition
+     *            The definition of the index.
+     * @throws InvalidParameterException
+     *             For a duplicate name, no constituents, unrecognised constituent, or invalid
+     *             weight.
+     */
+    public void define (final IndexDefinition definition) throws InvalidParameterException
+    {
+        if (definition.getName () == null || indexNumbers.containsKey (definition.getName ()))
+        {
+            throw new InvalidParameterException ("invalid index name " + definition.getName ());
+        }
+        if (definition.getType () == null)
+        {
+            throw new InvalidParameterException ("invalid index type " + definition.getType ());
+        }
+        if (definition.getWeights ().isEmpty ())
+        {
+            throw new InvalidParameterException ("no constituents for index " + definition.getName ());
+        }
+
+        int[] constituents = new int[definition.getWeights ().size ()];
+        double[] weights = new double[constituents.length];
+        int n = 0;
+        for (Map.Entry<String, Double> weight : definition.getWeights ().entrySet ())
+        {
+            int symbolId = symbolTable.idOf (weight.getKey ());
+            if (symbolId < 0 || symbolId >= prices.length)
+            {
+                throw new InvalidParameterException ("invalid stock " + weight.getKey ());
+            }
+            if (weight.getValue () == null || !(weight.getValue () > 0) || Double.isInfinite (weight.getValue ()))
+            {
+                throw new InvalidParameterException ("invalid weight " + weight.getValue ());
+            }
+            for (int i = 0; i < n; i++)
+            {
+                if (constituents[i] == symbolId)
+                {
+                    throw new InvalidParameterException ("duplicate stock " + weight.getKey ());
+                }
+            }
+            constituents[n] = symbolId;
+            weights[n] = weight.getValue ();
+            n++;
+        }
+
+        int indexNumber = indices.size ();
+        IndexState index = new IndexState (definition.getType (), constituents, weights);
+        index.rebuild ();
+        indices.add (index);
+        indexNumbers.put (definition.getName (), indexNumber);
+
+        for (int i = 0; i < constituents.length; i++)
+        {
+            int symbolId = constituents[i];
+            int count = memberships[symbolId].length;
+            memberships[symbolId] = Arrays.copyOf (memberships[symbolId], count + 1);
+            membershipWeights[symbolId] = Arrays.copyOf (membershipWeights[symbolId], count + 1);
+            memberships[symbolId][count] = indexNumber;
+            membershipWeights[symbolId][count] = weights[i];
+        }
+    }
+
+    /**
+     * Update the price of a stock, and the indices that contain it.
+     * 
+     * @param symbolId
+     *            The symbol id of the stock.
+     * @param price
+     *            The stock's volume weighted price, or 0 if it hasn't traded within the
+     *            horizon.
+     */
+    public void update (final int symbolId, final double price)
+    {
+        double oldPrice = prices[symbolId];
+        if (oldPrice == price)
+        {
+            return;
+        }
+        prices[symbolId] = price;
+
+        int[] containing = memberships[symbolId];
+        double[] weights = membershipWeights[symbolId];
+        for (int i = 0; i < containing.length; i++)
+        {
+            indices.get (containing[i]).replace (weights[i], oldPrice, price);
+        }
+    }
+
+    /**
+     * @param name
+     *            Name of the index.
+     * @return Value of the index, which will be 0 if none of its constituents have traded
+     *         within the horizon.
+     * @throws InvalidParameterException
+     *             For unrecognised index.
+     */
+    public double calculate (final String name) throws InvalidParameterException
+    {
+        Integer indexNumber = indexNumbers.get (name);
+        if (indexNumber == null)
+        {
+            throw new InvalidParameterException ("invalid index " + name);
+        }
+        return indices.get (indexNumber).value ();
+    }
+
+    /**
+     * @return The names of the defined indices.
+     */
+    public List<String> getIndexNames ()
+    {
+        return new ArrayList<String> (indexNumbers.keySet ());
+    }
+
+    /**
+     * Incrementally maintained state of one index.
+     */
+    private class IndexState
+    {
+
+        private final IndexType type;
+        private final int[]     constituents;
+        private final double[]  weights;
+
+        private double          weightedSum;
+        private double          activeWeight;
+        private int             activeCount;
+        private int             updates;
+
+        IndexState (final IndexType type, final int[] constituents, final double[] weights)
+        {
+            this.type = type;
+            this.constituents = constituents;
+            this.weights = weights;
+        }
+
+        void replace (final double weight, final double oldPrice, final double newPrice)
+        {
+            if (oldPrice > 0)
+            {
+                weightedSum -= weight * term (oldPrice);
+                activeWeight -= weight;
+                activeCount--;
+            }
+            if (newPrice > 0)
+            {
+                weightedSum += weight * term (newPrice);
+                activeWeight += weight;
+                activeCount++;
+            }
+
+            if (++updates >= REBUILD_INTERVAL || activeCount == 0)
+            {
+                rebuild ();
+            }
+        }
+
+        void rebuild ()
+        {
+            weightedSum = 0;
+            activeWeight = 0;
+            activeCount = 0;
+            for (int i = 0; i < constituents.length; i++)
+            {
+                double price = prices[constituents[i]];
+                if (price > 0)
+                {
+                    weightedSum += weights[i] * term (price);
+                    activeWeight += weights[i];
+                    activeCount++;
+                }
+            }
+            updates = 0;
+        }
+
+        double value ()
+        {
+            if (activeCount == 0)
+            {
+                return 0;
+            }
+            double mean = weightedSum / activeWeight;
+            return (type == IndexType.GEOMETRIC) ? Math.exp (mean) : mean;
+        }
+
+        private double term (final double price)
+        {
+            return (type == IndexType.GEOMETRIC) ? Math.log (price) : price;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.jpmorgan.exercise.index;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable definition of an index over a basket of stocks, e.g. a sector index.
+ * 
+ * Like the GBCE all share index, an index is calculated from the volume weighted stock
+ * prices of the constituents traded within the horizon; constituents that haven't traded
+ * are left out, and the weights of the remainder are normalised.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public class IndexDefinition
+{
+
+    private final String                       name;
+    private final IndexType                    type;
+    private final Map<String /* stockIdentifier */, Double> weights;
+
+    /**
+     * @param name
+     *            Name of the index.
+     * @param type
+     *            How the constituent prices are combined.
+     * @param weights
+     *            Weight of each constituent, keyed by stock identifier.
+     */
+    public IndexDefinition (final String name, final IndexType type, final Map<String, Double> weights)
+    {
+        this.name = name;
+        this.type = type;
+        this.weights = Collections.unmodifiableMap (new LinkedHashMap<String, Double> (weights));
+    }
+
+    /**
+     * @param name
+     *            Name of the index.
+     * @param type
+     *            How the constituent prices are combined.
+     * @param stockIdentifiers
+     *            The constituents, each with a weight of 1.
+     * @return Definition of an equally weighted index.
+     */
+    public static IndexDefinition equallyWeighted (final String name,
+                                                   final IndexType type,
+                                                   final String... stockIdentifiers)
+    {
+        Map<String, Double> weights = new LinkedHashMap<String, Double> ();
+        for (String stockIdentifier : stockIdentifiers)
+        {
+            weights.put (stockIdentifier, 1d);
+        }
+        return new IndexDefinition (name, type, weights);
+    }
+
+    public String getName ()
+    {
+        return name;
+    }
+
+    public IndexType getType ()
+    {
+        return type;
+    }
+
+    public Map<String, Double> getWeights ()
+    {
+        return weights;
+    }
+
+    @Override
+    public String toString ()
+    {
+        StringBuilder builder = new StringBuilder ();
+
+        builder.append ("IndexDefinition:[name: ");
+        builder.append (name);
+        builder.append (", type: ");
+        builder.append (type);
+        builder.append (", weights: ");
+        builder.append (weights);
+        builder.append ("]");
+
+        return builder.toString ();
+    }
+}
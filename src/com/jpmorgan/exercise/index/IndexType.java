@@ -0,0 +1,20 @@
+package com.jpmorgan.exercise.index;
+
+/**
+ * How an index combines the volume weighted stock prices of its constituents.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public enum IndexType
+{
+    /**
+     * Weighted geometric mean, as used by the GBCE all share index.
+     */
+    GEOMETRIC,
+
+    /**
+     * Weighted arithmetic mean.
+     */
+    ARITHMETIC,
+}
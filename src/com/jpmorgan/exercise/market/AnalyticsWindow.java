@@ -0,0 +1,87 @@
+package com.jpmorgan.exercise.market;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.jpmorgan.exercise.window.OffHeapWindowStore;
+import com.jpmorgan.exercise.window.WindowAnalytic;
+
+/**
+ * The window of trades over one horizon, with the statistics kept over it.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+class AnalyticsWindow implements AutoCloseable
+{
+
+    private final long                        horizonSeconds;
+
+    private final OffHeapWindowStore          store;
+
+    /**
+     * Statistics, keyed by name, ignoring case.
+     */
+    private final Map<String, WindowAnalytic> analytics = new TreeMap<String, WindowAnalytic> (String.CASE_INSENSITIVE_ORDER);
+
+    AnalyticsWindow (final long horizonSeconds, final OffHeapWindowStore store)
+    {
+        this.horizonSeconds = horizonSeconds;
+        this.store = store;
+    }
+
+    long getHorizonSeconds ()
+    {
+        return horizonSeconds;
+    }
+
+    OffHeapWindowStore getStore ()
+    {
+        return store;
+    }
+
+    WindowAnalytic getAnalytic (final String name)
+    {
+        return analytics.get (name);
+    }
+
+    void addAnalytic (final WindowAnalytic analytic)
+    {
+        analytics.put (analytic.getName (), analytic);
+        store.addAnalytic (analytic);
+    }
+
+    /**
+     * Add the statistics of another window, over the same horizon, resetting them to be
+     * rebuilt from the trades recorded in this window. Used to replace a window with one
+     * rebuilt from the ledger.
+     */
+    void addAnalytics (final AnalyticsWindow window)
+    {
+        for (WindowAnalytic analytic : window.analytics.values ())
+        {
+            analytic.reset ();
+            addAnalytic (analytic);
+        }
+    }
+
+    void record (final int symbolId, final Trade trade)
+    {
+        if (trade.getTimestamp () > store.getHorizon ())
+        {
+            store.record (symbolId, trade.getTimestamp (), trade.getQuantity (), trade.getPrice (),
+                          Market.sideOf (trade.getType ()));
+        }
+    }
+
+    void advance (final long now)
+    {
+        store.expire (now - horizonSeconds);
+    }
+
+    @Override
+    public void close ()
+    {
+        store.close ();
+    }
+}
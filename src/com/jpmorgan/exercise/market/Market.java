@@ -1,16 +1,25 @@
 package com.jpmorgan.exercise.market;
 
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
+import com.jpmorgan.exercise.analytics.QuantileSketch;
+import com.jpmorgan.exercise.analytics.WindowedQuantileSketch;
+import com.jpmorgan.exercise.cache.QueryCache;
+import com.jpmorgan.exercise.dedup.RotatingBloomFilter;
 import com.jpmorgan.exercise.exception.InvalidParameterException;
+import com.jpmorgan.exercise.index.IndexCalculator;
+import com.jpmorgan.exercise.index.IndexDefinition;
 import com.jpmorgan.exercise.environment.Environment;
-import com.jpmorgan.exercise.stock.CommonStockData;
-import com.jpmorgan.exercise.stock.PreferredStockData;
 import com.jpmorgan.exercise.stock.StockData;
+import com.jpmorgan.exercise.window.FixedPoint;
+import com.jpmorgan.exercise.window.OffHeapWindowStore;
+import com.jpmorgan.exercise.window.SymbolTable;
+import com.jpmorgan.exercise.window.WindowAnalytic;
 
 /**
  * Main working class. To provide a "minimal viable product", the <code>Market</code> class
@@ -18,54 +27,263 @@ import com.jpmorgan.exercise.stock.StockData;
  * split into two, with the stock information methods moved to a "Broker" class, leaving
  * just the trading and market information methods.
  * 
+ * The horizon of the VWSP/GBCE (5 minutes by default), and the environment giving the time,
+ * are taken from the <code>MarketConfiguration</code>.
+ * 
  * Note that, also following the "minimal viable product" paradigm, the assumption has been
  * made that the <code>Market</code> will be accessed by a single thread. I.e. the class is
  * not thread-safe. Synchronization will need to be added to address this, if required later,
  * presumably at the same time as the above move of stock related methods.
  * 
+ * The per-stock state of the window used for the VWSP/GBCE is held off the heap, so the
+ * market should be closed when finished with.
+ * 
+ * The market can be configured to use fixed point arithmetic for the prices within the
+ * horizon, in which case prices are rounded to the nearest tick of 1/1,000,000, and the
+ * VWSP is exact and reproducible.
+ * 
+ * The windows are built from the trades' timestamps (event time), rather than the time they
+ * were recorded. Trades may be recorded out of order, with timestamps up to an allowed
+ * lateness behind the latest trade recorded; the watermark, the latest trade's timestamp
+ * less the allowed lateness, decides when the values of a window are final.
+ * 
+ * The GBCE, which is a pass over every stock, is cached with the version of the market it
+ * was calculated from. The version is bumped as trades enter and leave the window, so the
+ * cached result is reused until a stock next changes. The other queries are constant time
+ * (the VWSP and indices are kept as trades enter and leave the window), so aren't cached.
+ * 
  * @author Tony Cruickshank
  */
 
-public class Market
+public class Market implements AutoCloseable
 {
 
     /**
-     * Hard coded horizon for the calculation of the VWSP/GBCE.
+     * Target rate of new trade ids found as possible duplicates, each costing a search of the
+     * ledger, so kept low at the cost of a larger filter.
+     */
+    private static final double TRADE_ID_FALSE_POSITIVE_RATE = 0.001;
+
+    /**
+     * Horizon for the calculation of the VWSP/GBCE, in seconds.
+     */
+    private final long horizonSeconds;
+
+    /**
+     * Environment giving the time, used to stamp trades and move the window on.
+     */
+    private final Environment environment;
+
+    /**
+     * The stocks traded on the market, keyed by stock identifier, ignoring case.
+     */
+    private final Map<String /* stockIdentifier */, StockData> marketData;
+
+    private final PriceArithmetic priceArithmetic;
+
+    private final long allowedLatenessSeconds;
+
+    private final long futureToleranceSeconds;
+
+    /**
+     * Timestamp of the latest trade recorded.
      */
-    private static final long HORIZON_WINDOW_SEC = 5 * 60;
+    private long latestTimestamp = Long.MIN_VALUE;
 
     /**
-     * Hard coded stock information.
+     * Ledger of the trades made on the market, in the order they were recorded.
      * 
-     * Using a TreeMap with CASE_INSENSITIVE_ORDER allows access using non-case
-     * matching keys.
+     * Only the trades within the retention, plus the allowed lateness, are kept; older trades
+     * can't enter any window, so the ledger is bounded by the trade rate rather than growing
+     * for the life of the market. Add a <code>TradeArchiveWriter</code> as a listener to keep
+     * the full history.
+     */
+    private final ArrayDeque<Trade> ledger = new ArrayDeque<Trade> ();
+
+    /**
+     * Period for which trades are kept in the ledger, in seconds: the longest of the horizon
+     * and the horizons of the statistics defined.
+     */
+    private long retentionSeconds;
+
+    /**
+     * Listeners notified of each trade placed in the ledger.
+     */
+    private List<TradeListener> tradeListeners = new ArrayList<TradeListener> ();
+
+    /**
+     * Symbol ids of the stocks, used to address the per-stock state.
+     */
+    private final SymbolTable symbolTable = new SymbolTable ();
+
+    /**
+     * Running sums of the trades within the horizon, for each stock. Updated as each trade
+     * is recorded, and as trades leave the horizon, so that the VWSP/GBCE don't require a
+     * pass through the ledger. Statistics defined over the horizon are kept in the same
+     * store, which is replaced by one rebuilt from the ledger when a statistic is added.
+     */
+    private OffHeapWindowStore windowStore;
+
+    /**
+     * Sketches of the distribution of the price of each stock traded, over the horizon,
+     * indexed by symbol id. Updated as each trade is recorded, so that quantiles don't
+     * require sorting the trades within the horizon.
+     */
+    private final WindowedQuantileSketch[] priceSketches;
+
+    /**
+     * Custom and sector indices, updated as the VWSP of each stock changes.
+     */
+    private final IndexCalculator indexCalculator;
+
+    /**
+     * Windows of the trades over each horizon for which statistics are kept, keyed by horizon.
+     */
+    private final Map<Long, AnalyticsWindow> analyticsWindows = new TreeMap<Long, AnalyticsWindow> ();
+
+    /**
+     * Cache of the GBCE, or null if there's no cache.
+     */
+    private final QueryCache queryCache;
+
+    /**
+     * Filter of the ids of the trades recorded within the horizon and allowed lateness, used
+     * to accept a new id without searching the ledger, which holds the trades themselves.
+     * Created with the first trade recorded with an id.
+     */
+    private RotatingBloomFilter tradeIds;
+
+    private final int expectedTradeIds;
+
+    private long duplicateCount;
+
+    private long tradeIdFalsePositiveCount;
+
+    /**
+     * Version of the market's window, bumped as trades enter and leave the window of any
+     * stock.
      */
-    private static final Map<String /* stockIdentifier */, StockData> MARKET_DATA ()
+    private long marketVersion;
+
+    public Market ()
     {
-        return Collections.unmodifiableMap (new TreeMap<String, StockData> (String.CASE_INSENSITIVE_ORDER)
+        this (new MarketConfiguration ());
+    }
+
+    public Market (final MarketConfiguration configuration)
+    {
+        marketData = configuration.getUniverse ();
+        environment = configuration.getEnvironment ();
+        horizonSeconds = configuration.getHorizonSeconds ();
+        if (horizonSeconds <= 0)
         {
-            private static final long serialVersionUID = -5389107945226081680L;
-            {
-                put ("TEA", new CommonStockData ("TEA", 0, 100));
-                put ("POP", new CommonStockData ("POP", 8, 100));
-                put ("ALE", new CommonStockData ("ALE", 23, 100));
-                put ("GIN", new PreferredStockData ("GIN", 8, 100, 0.02)); // Note 2% => 0.02
-                put ("JOE", new CommonStockData ("JOE", 13, 100));
-            }
-        });
-    };
+            throw new IllegalArgumentException ("invalid horizon " + horizonSeconds);
+        }
+        priceArithmetic = configuration.getPriceArithmetic ();
+        retentionSeconds = horizonSeconds;
+        allowedLatenessSeconds = configuration.getAllowedLatenessSeconds ();
+        if (allowedLatenessSeconds < 0)
+        {
+            throw new IllegalArgumentException ("invalid allowed lateness " + allowedLatenessSeconds);
+        }
+        futureToleranceSeconds = configuration.getFutureToleranceSeconds ();
+        if (futureToleranceSeconds < 0)
+        {
+            throw new IllegalArgumentException ("invalid future tolerance " + futureToleranceSeconds);
+        }
+        expectedTradeIds = configuration.getExpectedTradeIds ();
+        if (expectedTradeIds <= 0)
+        {
+            throw new IllegalArgumentException ("invalid expected trade ids " + expectedTradeIds);
+        }
+        for (String stockIdentifier : marketData.keySet ())
+        {
+            symbolTable.add (stockIdentifier);
+        }
+        windowStore = newWindowStore ();
+        indexCalculator = new IndexCalculator (symbolTable);
+        windowStore.setWindowListener (symbolId -> windowChanged (symbolId));
+        priceSketches = new WindowedQuantileSketch[symbolTable.size ()];
+        queryCache = configuration.isQueryCacheEnabled () ? new QueryCache () : null;
+    }
 
     /**
-     * Ledger of the trades made on the market.
-     * 
-     * Note that, in the current implementation, the ledger is never cleared as offers/bids
-     * are not matched.
+     * @return The horizon for the calculation of the VWSP/GBCE, in seconds.
      */
-    private LinkedList<Trade> ledger = new LinkedList<Trade> ();
+    public long getHorizonSeconds ()
+    {
+        return horizonSeconds;
+    }
 
-    public Market ()
+    /**
+     * @return The environment giving the time on the market.
+     */
+    public Environment getEnvironment ()
+    {
+        return environment;
+    }
+
+    public PriceArithmetic getPriceArithmetic ()
     {
+        return priceArithmetic;
+    }
 
+    public long getAllowedLatenessSeconds ()
+    {
+        return allowedLatenessSeconds;
+    }
+
+    public long getFutureToleranceSeconds ()
+    {
+        return futureToleranceSeconds;
+    }
+
+    /**
+     * @return The stocks traded on the market, keyed by stock identifier, ignoring case.
+     */
+    public Map<String, StockData> getUniverse ()
+    {
+        return marketData;
+    }
+
+    /**
+     * @return The cache of the GBCE, giving the hit rate, or null if there's no cache.
+     */
+    public QueryCache getQueryCache ()
+    {
+        return queryCache;
+    }
+
+    /**
+     * @return The watermark: trades with a timestamp before this are late, and are rejected.
+     *         This is the timestamp of the latest trade recorded, but no later than the
+     *         market's clock, which also moves the window on, less the allowed lateness; or
+     *         <code>Long.MIN_VALUE</code> if no trades have been recorded.
+     */
+    public long getWatermark ()
+    {
+        return (latestTimestamp == Long.MIN_VALUE) ? Long.MIN_VALUE
+                : Math.min (latestTimestamp, environment.getTime ()) - allowedLatenessSeconds;
+    }
+
+    /**
+     * @param windowEnd
+     *            End of a window; trades at or before this time are included.
+     * @return Whether the values of the window are final, i.e. no trade within the window can
+     *         still be recorded.
+     */
+    public boolean isFinal (final long windowEnd)
+    {
+        return getWatermark () > windowEnd;
+    }
+
+    /**
+     * Expire the trades that have left the horizon, rather than leaving the work to the next
+     * trade or query. Used to maintain the windows of a quiet market.
+     */
+    public void expireTrades ()
+    {
+        advanceWindow ();
     }
 
     /*
@@ -80,7 +298,8 @@ public class Market
      * @param stockIdentifier
      *            Three letter identifier for the stock.
      * @param price
-     *            The price to use in the calculation. Must be greater than 0.
+     *            The price to use in the calculation. Must be greater than 0. In fixed point
+     *            mode, this is rounded to the nearest tick.
      * @return Dividend yield.
      * @throws InvalidParameterException
      *             For unrecognised stock identifier or invalid price.
@@ -88,11 +307,11 @@ public class Market
     public double calculateDividendYield (final String stockIdentifier,
                                           final double price) throws InvalidParameterException
     {
-        if (!MARKET_DATA ().containsKey (stockIdentifier))
+        if (!marketData.containsKey (stockIdentifier))
         {
             throw new InvalidParameterException ("invalid stock " + stockIdentifier);
         }
-        return MARKET_DATA ().get (stockIdentifier).calculateDividendYield (price);
+        return marketData.get (stockIdentifier).calculateDividendYield (roundPrice (price));
     }
 
     /**
@@ -102,18 +321,19 @@ public class Market
      * @param stockIdentifier
      *            Three letter identifier for the stock.
      * @param price
-     *            The price to use in the calculation. Must be greater than 0.
+     *            The price to use in the calculation. Must be greater than 0. In fixed point
+     *            mode, this is rounded to the nearest tick.
      * @return P/E Ratio.
      * @throws InvalidParameterException
      *             For unrecognised stock identifier or invalid price.
      */
     public double calculatePERatio (final String stockIdentifier, final double price) throws InvalidParameterException
     {
-        if (!MARKET_DATA ().containsKey (stockIdentifier))
+        if (!marketData.containsKey (stockIdentifier))
         {
             throw new InvalidParameterException ("invalid stock " + stockIdentifier);
         }
-        return MARKET_DATA ().get (stockIdentifier).calculatePERatio (price);
+        return marketData.get (stockIdentifier).calculatePERatio (roundPrice (price));
     }
 
     /*
@@ -132,16 +352,80 @@ public class Market
      * @param price
      *            The price to use in the calculation. Must be greater than 0.
      * @param tradeType
-     *            Buy or sell (currently unused).
+     *            Buy or sell, used for the split of the VWSP by side, or null.
      * @throws InvalidParameterException
-     *             For unrecognised stock identifier, quantity, or invalid price.
+     *             For unrecognised stock identifier, quantity, or invalid price, or if the
+     *             trade is late or too far in the future.
      */
     public void recordTrade (final String stockIdentifier,
                              final int quantity,
                              final double price,
                              final TradeType tradeType) throws InvalidParameterException
     {
-        if (!MARKET_DATA ().containsKey (stockIdentifier))
+        recordTrade (stockIdentifier, quantity, price, tradeType, environment.getTime ());
+    }
+
+    /**
+     * Record a trade with its own timestamp, for example a fill reported by another venue,
+     * placing it in the ledger. The trade is counted in the windows by its timestamp, rather
+     * than the time it's recorded.
+     * 
+     * @param stockIdentifier
+     *            Three letter identifier for the stock.
+     * @param quantity
+     *            The number of stocks in the trade.
+     * @param price
+     *            The price to use in the calculation. Must be greater than 0.
+     * @param tradeType
+     *            Buy or sell, used for the split of the VWSP by side, or null.
+     * @param timestamp
+     *            The time of the trade. Must not be before the watermark, nor further ahead
+     *            of the market's clock than the future tolerance.
+     * @throws InvalidParameterException
+     *             For unrecognised stock identifier, quantity, or invalid price, or if the
+     *             trade is late or too far in the future.
+     */
+    public void recordTrade (final String stockIdentifier,
+                             final int quantity,
+                             final double price,
+                             final TradeType tradeType,
+                             final long timestamp) throws InvalidParameterException
+    {
+        recordTrade (stockIdentifier, quantity, price, tradeType, timestamp, null);
+    }
+
+    /**
+     * Record a trade with its own timestamp and id, placing it in the ledger, unless a trade
+     * with the same id has been recorded within the horizon and allowed lateness. Trade ids
+     * are checked against a Bloom filter, so a new id is accepted without a lookup; only a
+     * possible duplicate is looked for in the trades held by the ledger.
+     * 
+     * @param stockIdentifier
+     *            Three letter identifier for the stock.
+     * @param quantity
+     *            The number of stocks in the trade.
+     * @param price
+     *            The price to use in the calculation. Must be greater than 0.
+     * @param tradeType
+     *            Buy or sell, used for the split of the VWSP by side, or null.
+     * @param timestamp
+     *            The time of the trade. Must not be before the watermark, nor further ahead
+     *            of the market's clock than the future tolerance.
+     * @param tradeId
+     *            The id given to the trade by the venue, or null if it has none.
+     * @return False if the trade is a duplicate, and so wasn't recorded.
+     * @throws InvalidParameterException
+     *             For unrecognised stock identifier, quantity, or invalid price, or if the
+     *             trade is late or too far in the future.
+     */
+    public boolean recordTrade (final String stockIdentifier,
+                                final int quantity,
+                                final double price,
+                                final TradeType tradeType,
+                                final long timestamp,
+                                final String tradeId) throws InvalidParameterException
+    {
+        if (!marketData.containsKey (stockIdentifier))
         {
             throw new InvalidParameterException ("invalid stock " + stockIdentifier);
         }
@@ -149,20 +433,142 @@ public class Market
         {
             throw new InvalidParameterException ("invalid quantity " + stockIdentifier);
         }
-        if (price <= 0)
+        checkPrice (price);
+        checkTimestamp (timestamp);
+        if (tradeId != null && isDuplicate (tradeId, timestamp))
         {
-            throw new InvalidParameterException ("invalid price " + price);
+            duplicateCount++;
+            return false;
+        }
+
+        addTrade (new Trade (stockIdentifier.toUpperCase (),
+                             timestamp,
+                             quantity,
+                             price,
+                             tradeType,
+                             tradeId));
+        return true;
+    }
+
+    /**
+     * Record a trade that has already been timestamped, for example by another market
+     * that this market is replicating, placing it in the ledger. As the trade has already
+     * been accepted, it's not checked against the watermark, but a trade with an id is
+     * checked for a duplicate, as for <code>recordTrade</code>.
+     * 
+     * @param trade
+     *            The trade to record, keeping its timestamp and id.
+     * @return False if the trade is a duplicate, and so wasn't recorded.
+     * @throws InvalidParameterException
+     *             For unrecognised stock identifier, quantity, or invalid price.
+     */
+    public boolean replayTrade (final Trade trade) throws InvalidParameterException
+    {
+        if (!marketData.containsKey (trade.getStockIdentifier ()))
+        {
+            throw new InvalidParameterException ("invalid stock " + trade.getStockIdentifier ());
+        }
+        if (trade.getQuantity () <= 0)
+        {
+            throw new InvalidParameterException ("invalid quantity " + trade.getStockIdentifier ());
+        }
+        checkPrice (trade.getPrice ());
+        if (trade.getTradeId () != null && isDuplicate (trade.getTradeId (), trade.getTimestamp ()))
+        {
+            duplicateCount++;
+            return false;
         }
 
-        ledger.addLast (new Trade (stockIdentifier.toUpperCase (),
-                                   Environment.getEnvironment ().getTime (),
-                                   quantity,
-                                   price,
-                                   tradeType));
+        addTrade (trade);
+        return true;
     }
 
     /**
-     * Calculate the volume weighted stock price over a horizon of 5 seconds.
+     * Record a batch of trades, for example loaded from a file, keeping their timestamps.
+     * The trades may be out of time order, within the allowed lateness. Trades with an id
+     * are checked for duplicates, as for <code>recordTrade</code>; a duplicate is skipped and
+     * counted in the duplicate count.
+     * 
+     * @param batch
+     *            The trades, with stocks identified by the symbol ids of this market's
+     *            symbol table.
+     * @throws InvalidParameterException
+     *             For unrecognised symbol id, quantity, or invalid price, or a late trade.
+     *             The trades before the invalid trade are recorded.
+     */
+    public void recordTrades (final TradeBatch batch) throws InvalidParameterException
+    {
+        for (int i = 0; i < batch.size (); i++)
+        {
+            int symbolId = batch.getSymbolId (i);
+            if (symbolId < 0 || symbolId >= symbolTable.size ())
+            {
+                throw new InvalidParameterException ("invalid symbol id " + symbolId);
+            }
+            if (batch.getQuantity (i) <= 0)
+            {
+                throw new InvalidParameterException ("invalid quantity " + symbolTable.symbolOf (symbolId));
+            }
+            checkPrice (batch.getPrice (i));
+            checkTimestamp (batch.getTimestamp (i));
+            String tradeId = batch.getTradeId (i);
+            if (tradeId != null && isDuplicate (tradeId, batch.getTimestamp (i)))
+            {
+                duplicateCount++;
+                continue;
+            }
+
+            addTrade (new Trade (symbolTable.symbolOf (symbolId),
+                                 batch.getTimestamp (i),
+                                 batch.getQuantity (i),
+                                 batch.getPrice (i),
+                                 batch.getType (i),
+                                 tradeId));
+        }
+    }
+
+    /**
+     * @return The number of trades rejected as duplicates of a trade id.
+     */
+    public long getDuplicateCount ()
+    {
+        return duplicateCount;
+    }
+
+    /**
+     * @return The number of trade ids the filter found as possible duplicates, but weren't
+     *         found in the ledger.
+     */
+    public long getTradeIdFalsePositiveCount ()
+    {
+        return tradeIdFalsePositiveCount;
+    }
+
+    /**
+     * @return The symbol ids of the stocks traded on this market, used to build a
+     *         <code>TradeBatch</code>. The table must not be modified.
+     */
+    public SymbolTable getSymbolTable ()
+    {
+        return symbolTable;
+    }
+
+    /**
+     * @param listener
+     *            Listener to notify of each trade placed in the ledger.
+     */
+    public void addTradeListener (final TradeListener listener)
+    {
+        tradeListeners.add (listener);
+    }
+
+    public void removeTradeListener (final TradeListener listener)
+    {
+        tradeListeners.remove (listener);
+    }
+
+    /**
+     * Calculate the volume weighted stock price over the horizon.
      * 
      * @param stockIdentifier
      *            Three letter identifier for the stock.
@@ -173,36 +579,109 @@ public class Market
      */
     public double calculateVolumeWeightedStockPrice (final String stockIdentifier) throws InvalidParameterException
     {
-        if (!MARKET_DATA ().containsKey (stockIdentifier))
+        if (!marketData.containsKey (stockIdentifier))
         {
             throw new InvalidParameterException ("invalid stock " + stockIdentifier);
         }
 
-        double vwspNominator = 0;
-        double vwspDenominator = 0;
+        advanceWindow ();
+        return windowStore.getVolumeWeightedPrice (symbolTable.idOf (stockIdentifier));
+    }
 
-        long horizon = Environment.getEnvironment ().getTime () - HORIZON_WINDOW_SEC;
-        for (Trade trade : ledger)
+    /**
+     * Calculate the volume weighted stock price of the trades of one side over the
+     * horizon.
+     * 
+     * @param stockIdentifier
+     *            Three letter identifier for the stock.
+     * @param tradeType
+     *            Buy or sell.
+     * @return Volume weighted stock price. Note this will be 0 if there are no trades of the
+     *         side within the horizon.
+     * @throws InvalidParameterException
+     *             For unrecognised stock identifier or missing trade type.
+     */
+    public double calculateVolumeWeightedStockPrice (final String stockIdentifier,
+                                                     final TradeType tradeType) throws InvalidParameterException
+    {
+        int side = checkSide (stockIdentifier, tradeType);
+        advanceWindow ();
+        return windowStore.getVolumeWeightedPrice (symbolTable.idOf (stockIdentifier), side);
+    }
+
+    /**
+     * Calculate the volume traded on one side over the horizon.
+     * 
+     * @param stockIdentifier
+     *            Three letter identifier for the stock.
+     * @param tradeType
+     *            Buy or sell.
+     * @return Sum of the quantities of the trades of the side within the horizon.
+     * @throws InvalidParameterException
+     *             For unrecognised stock identifier or missing trade type.
+     */
+    public long calculateVolume (final String stockIdentifier, final TradeType tradeType) throws InvalidParameterException
+    {
+        int side = checkSide (stockIdentifier, tradeType);
+        advanceWindow ();
+        return windowStore.getVolume (symbolTable.idOf (stockIdentifier), side);
+    }
+
+    /**
+     * Calculate the notional traded on one side over the horizon.
+     * 
+     * @param stockIdentifier
+     *            Three letter identifier for the stock.
+     * @param tradeType
+     *            Buy or sell.
+     * @return Sum of price * quantity of the trades of the side within the horizon.
+     * @throws InvalidParameterException
+     *             For unrecognised stock identifier or missing trade type.
+     */
+    public double calculateNotional (final String stockIdentifier,
+                                     final TradeType tradeType) throws InvalidParameterException
+    {
+        int side = checkSide (stockIdentifier, tradeType);
+        advanceWindow ();
+        return windowStore.getNotional (symbolTable.idOf (stockIdentifier), side);
+    }
+
+    /**
+     * Calculate the order flow imbalance over the horizon: the difference between
+     * the buy and sell volumes, as a proportion of their total. Trades without a trade type
+     * are not included.
+     * 
+     * @param stockIdentifier
+     *            Three letter identifier for the stock.
+     * @return Order flow imbalance, from -1 (all sells) to 1 (all buys). Note this will be 0
+     *         if there are no buys or sells within the horizon.
+     * @throws InvalidParameterException
+     *             For unrecognised stock identifier.
+     */
+    public double calculateOrderFlowImbalance (final String stockIdentifier) throws InvalidParameterException
+    {
+        if (!marketData.containsKey (stockIdentifier))
         {
-            if (trade.getStockIdentifier ().equalsIgnoreCase (stockIdentifier) && trade.getTimestamp () > horizon)
-            {
-                vwspNominator += trade.getPrice () * trade.getQuantity ();
-                vwspDenominator += trade.getQuantity ();
-            }
+            throw new InvalidParameterException ("invalid stock " + stockIdentifier);
         }
 
-        return (vwspDenominator == 0) ? 0 : vwspNominator / vwspDenominator;
+        advanceWindow ();
+        int symbolId = symbolTable.idOf (stockIdentifier);
+        long buyVolume = windowStore.getVolume (symbolId, OffHeapWindowStore.SIDE_BUY);
+        long sellVolume = windowStore.getVolume (symbolId, OffHeapWindowStore.SIDE_SELL);
+        long volume = buyVolume + sellVolume;
+        return (volume == 0) ? 0 : (buyVolume - sellVolume) / (double)volume;
     }
 
     /**
      * Calculate the GBCE all share index, using the volume weighted stock price for all stocks
-     * traded over a horizon of 5 seconds.
+     * traded over the horizon.
      * 
      * Note that <code>double</code> is used for the calculation as for this exercise it's
-     * assumed that it provides the necessary range and precision. To increase the range,
-     * the calculations below could be modified to use log (changing products to sums,
-     * and power roots to multiplications). And/or, use <code>BigDecimal</code> for the
-     * calculations.
+     * assumed that it provides the necessary precision. The root of each price is taken
+     * before multiplying, as the product of the prices overflows for a large number of
+     * stocks. In fixed point mode, the volume weighted stock prices are exact, so the index
+     * is reproducible, though the roots are still <code>double</code>s.
      * 
      * @return GBCE all share index. Note that this will be 0 if there are no trades within the
      *         horizon.
@@ -211,56 +690,506 @@ public class Market
     {
 
         /**
-         * Two options:
-         * 1) Re-use the above method for each stock in turn.
-         * 2) Run through the ledger again, storing the necessary data for each stock.
-         * 
-         * Option 1 is less time efficient, requiring multiple runs through the ledger
-         * which will include stocks that weren't traded within the horizon.
-         * 
-         * Option 2 essentally replicates the calculation, so any code update will need
-         * to be done in two places.
-         * 
-         * I've selected option 2 as, generally speaking, markets can contain many stocks,
-         * and many trades, and avoiding processing the ledger multiple times is worth the
-         * trade-off of code replication.
+         * The running sums for each stock are held in the window store, so this is a single
+         * pass through the stocks, rather than through the ledger.
          */
+        advanceWindow ();
 
-        /**
-         * Maps to hold the calculations required for each trade in the ledger, within the window.
-         */
-        Map<String, Double> vwspNominators = new HashMap<> ();
-        Map<String, Double> vwspDenominators = new HashMap<> ();
+        if (queryCache != null)
+        {
+            double cached = queryCache.get (marketVersion);
+            if (!Double.isNaN (cached))
+            {
+                return cached;
+            }
+        }
 
-        long horizon = Environment.getEnvironment ().getTime () - HORIZON_WINDOW_SEC;
-        for (Trade trade : ledger)
+        int nTrades = 0;
+        for (int symbolId = 0; symbolId < symbolTable.size (); symbolId++)
         {
-            if (trade.getTimestamp () > horizon)
+            if (windowStore.getVolume (symbolId) > 0)
             {
-                String stockIndicator = trade.getStockIdentifier ();
-                if (!vwspNominators.containsKey (stockIndicator))
-                {
-                    vwspNominators.put (stockIndicator, 0d);
-                    vwspDenominators.put (stockIndicator, 0d);
-                }
-                vwspNominators.put (stockIndicator,
-                                    vwspNominators.get (stockIndicator) + trade.getPrice () * trade.getQuantity ());
-                vwspDenominators.put (stockIndicator, vwspDenominators.get (stockIndicator) + trade.getQuantity ());
+                nTrades++;
             }
         }
+
         double gbce = 0;
 
-        int nTrades = vwspNominators.keySet ().size ();
         if (nTrades > 0)
         {
-            double geometricMean = 1;
-            for (String stockIndicator : vwspNominators.keySet ())
+            /*
+             * Take the root of each price before multiplying, so that the product stays
+             * within range for a large number of stocks.
+             */
+            double root = 1 / (double)nTrades;
+            gbce = 1;
+            for (int symbolId = 0; symbolId < symbolTable.size (); symbolId++)
             {
-                geometricMean *= vwspNominators.get (stockIndicator) / vwspDenominators.get (stockIndicator);
+                if (windowStore.getVolume (symbolId) > 0)
+                {
+                    gbce *= Math.pow (windowStore.getVolumeWeightedPrice (symbolId), root);
+                }
             }
-            gbce = Math.pow (geometricMean, 1 / (double)nTrades);
         }
 
+        if (queryCache != null)
+        {
+            queryCache.put (marketVersion, gbce);
+        }
         return gbce;
     }
+
+    /**
+     * Calculate the contribution of the stocks traded on this market to the GBCE all share
+     * index, over the horizon. Used to combine the index across several markets,
+     * each holding a subset of the stocks.
+     * 
+     * @return Sum of the logs of the volume weighted stock prices, with the number of stocks
+     *         traded within the horizon.
+     */
+    public PartialGBCE calculatePartialGBCE ()
+    {
+        advanceWindow ();
+
+        double logVwspSum = 0;
+        int constituentCount = 0;
+        for (int symbolId = 0; symbolId < symbolTable.size (); symbolId++)
+        {
+            if (windowStore.getVolume (symbolId) > 0)
+            {
+                logVwspSum += Math.log (windowStore.getVolumeWeightedPrice (symbolId));
+                constituentCount++;
+            }
+        }
+
+        return new PartialGBCE (logVwspSum, constituentCount);
+    }
+
+    /**
+     * Define a custom or sector index, which is then maintained as trades are recorded and
+     * leave the horizon.
+     * 
+     * @param definition
+     *            The definition of the index.
+     * @throws InvalidParameterException
+     *             For a duplicate index name, unrecognised stock identifier, or invalid weight.
+     */
+    public void defineIndex (final IndexDefinition definition) throws InvalidParameterException
+    {
+        advanceWindow ();
+        indexCalculator.define (definition);
+    }
+
+    /**
+     * Calculate a custom or sector index, over the horizon.
+     * 
+     * @param name
+     *            Name of the index.
+     * @return Index value. Note that this will be 0 if none of its constituents have traded
+     *         within the horizon.
+     * @throws InvalidParameterException
+     *             For unrecognised index.
+     */
+    public double calculateIndex (final String name) throws InvalidParameterException
+    {
+        advanceWindow ();
+        return indexCalculator.calculate (name);
+    }
+
+    /**
+     * Define a statistic to keep for each stock over a horizon, such as TWAP or realized
+     * volatility. The statistic is kept up to date as trades are recorded and leave the
+     * horizon, so that it doesn't require a pass through the ledger. Statistics over the same
+     * horizon share the window of trades, and statistics over the market's own horizon share
+     * the window that the VWSP/GBCE are calculated from.
+     * 
+     * The statistic is first built from the trades in the ledger within the horizon. As the
+     * ledger only keeps the trades within the longest horizon already defined, a statistic over
+     * a longer horizon starts from those trades, and covers its full horizon once that has
+     * passed.
+     * 
+     * @param horizonSeconds
+     *            Horizon of the statistic, in seconds.
+     * @param analytic
+     *            The statistic, which must not be shared with another market or horizon.
+     * @throws InvalidParameterException
+     *             For invalid horizon, or duplicate statistic name for the horizon.
+     */
+    public void defineAnalytic (final long horizonSeconds, final WindowAnalytic analytic) throws InvalidParameterException
+    {
+        if (horizonSeconds <= 0)
+        {
+            throw new InvalidParameterException ("invalid horizon " + horizonSeconds);
+        }
+        AnalyticsWindow window = analyticsWindows.get (horizonSeconds);
+        if (window != null && window.getAnalytic (analytic.getName ()) != null)
+        {
+            throw new InvalidParameterException ("duplicate analytic " + analytic.getName () + " over " + horizonSeconds);
+        }
+
+        /*
+         * Build a new window from the ledger, for the new statistic and the statistics of the
+         * existing window, reset, so that they're all built from the same trades. A statistic
+         * sees only the trades added after it, so the window can't be reused.
+         */
+        long now = environment.getTime ();
+        AnalyticsWindow rebuilt = new AnalyticsWindow (horizonSeconds, newWindowStore ());
+        if (window != null)
+        {
+            rebuilt.addAnalytics (window);
+            window.close ();
+        }
+        rebuilt.addAnalytic (analytic);
+        rebuilt.advance (now);
+        for (Trade trade : tradesSince (now - horizonSeconds))
+        {
+            rebuilt.record (symbolTable.idOf (trade.getStockIdentifier ()), trade);
+        }
+        analyticsWindows.put (horizonSeconds, rebuilt);
+        retentionSeconds = Math.max (retentionSeconds, horizonSeconds);
+
+        /*
+         * The rebuilt window over the market's horizon holds the same trades as the market's
+         * window, so replaces it. The sums may differ in rounding, so the derived state is
+         * updated.
+         */
+        if (horizonSeconds == this.horizonSeconds)
+        {
+            if (window == null)
+            {
+                windowStore.close ();
+            }
+            windowStore = rebuilt.getStore ();
+            windowStore.setWindowListener (symbolId -> windowChanged (symbolId));
+            for (int symbolId = 0; symbolId < symbolTable.size (); symbolId++)
+            {
+                windowChanged (symbolId);
+            }
+        }
+    }
+
+    /**
+     * @return A new, empty, window of the trades of each stock.
+     */
+    private OffHeapWindowStore newWindowStore ()
+    {
+        return new OffHeapWindowStore (symbolTable.size (), priceArithmetic == PriceArithmetic.FIXED_POINT);
+    }
+
+    /**
+     * Calculate a statistic defined for a stock over a horizon.
+     * 
+     * @param stockIdentifier
+     *            Three letter identifier for the stock.
+     * @param horizonSeconds
+     *            Horizon of the statistic, in seconds.
+     * @param name
+     *            Name of the statistic.
+     * @return Value of the statistic. Note this will be 0 if there are no trades within the
+     *         horizon.
+     * @throws InvalidParameterException
+     *             For unrecognised stock identifier, or statistic not defined over the
+     *             horizon.
+     */
+    public double calculateAnalytic (final String stockIdentifier,
+                                     final long horizonSeconds,
+                                     final String name) throws InvalidParameterException
+    {
+        if (!marketData.containsKey (stockIdentifier))
+        {
+            throw new InvalidParameterException ("invalid stock " + stockIdentifier);
+        }
+        AnalyticsWindow window = analyticsWindows.get (horizonSeconds);
+        WindowAnalytic analytic = (window == null) ? null : window.getAnalytic (name);
+        if (analytic == null)
+        {
+            throw new InvalidParameterException ("invalid analytic " + name + " over " + horizonSeconds);
+        }
+
+        advanceWindow ();
+        return analytic.getValue (window.getStore (), symbolTable.idOf (stockIdentifier));
+    }
+
+    /**
+     * Returns a sketch of the distribution of the price of a stock over the horizon,
+     * giving the high, low, median and other quantiles of the price. The horizon is rounded
+     * up to whole buckets of the sketch.
+     * 
+     * @see WindowedQuantileSketch
+     * 
+     * @param stockIdentifier
+     *            Three letter identifier for the stock.
+     * @return Price distribution. Note this will be empty if there are no trades within the
+     *         horizon.
+     * @throws InvalidParameterException
+     *             For unrecognised stock identifier
+     */
+    public QuantileSketch getPriceDistribution (final String stockIdentifier) throws InvalidParameterException
+    {
+        if (!marketData.containsKey (stockIdentifier))
+        {
+            throw new InvalidParameterException ("invalid stock " + stockIdentifier);
+        }
+
+        QuantileSketch distribution = new QuantileSketch ();
+        WindowedQuantileSketch priceSketch = priceSketches[symbolTable.idOf (stockIdentifier)];
+        if (priceSketch != null)
+        {
+            priceSketch.mergeInto (distribution, environment.getTime ());
+        }
+        return distribution;
+    }
+
+    /**
+     * Returns a sketch of the distribution of the price of all trades over the
+     * horizon, merging the distributions of each stock.
+     * 
+     * @return Price distribution. Note this will be empty if there are no trades within the
+     *         horizon.
+     */
+    public QuantileSketch getMarketPriceDistribution ()
+    {
+        QuantileSketch distribution = new QuantileSketch ();
+        long now = environment.getTime ();
+        for (WindowedQuantileSketch priceSketch : priceSketches)
+        {
+            if (priceSketch != null)
+            {
+                priceSketch.mergeInto (distribution, now);
+            }
+        }
+        return distribution;
+    }
+
+    /**
+     * @throws InvalidParameterException
+     *             If the price isn't greater than 0, or in fixed point mode, is out of the
+     *             range of ticks or rounds to 0 ticks.
+     */
+    private void checkPrice (final double price) throws InvalidParameterException
+    {
+        if (price <= 0 || (priceArithmetic == PriceArithmetic.FIXED_POINT
+                           && (price > FixedPoint.MAX_PRICE || FixedPoint.toTicks (price) == 0)))
+        {
+            throw new InvalidParameterException ("invalid price " + price);
+        }
+    }
+
+    /**
+     * @throws InvalidParameterException
+     *             If the timestamp is before the watermark, or further ahead of the market's
+     *             clock than the future tolerance.
+     */
+    private void checkTimestamp (final long timestamp) throws InvalidParameterException
+    {
+        if (timestamp < getWatermark ())
+        {
+            throw new InvalidParameterException ("late trade " + timestamp + " before watermark " + getWatermark ());
+        }
+        long limit = environment.getTime () + futureToleranceSeconds;
+        if (timestamp > limit)
+        {
+            throw new InvalidParameterException ("future trade " + timestamp + " after " + limit);
+        }
+    }
+
+    /**
+     * @return The side of the window store for the trade type.
+     * @throws InvalidParameterException
+     *             For unrecognised stock identifier or missing trade type.
+     */
+    private int checkSide (final String stockIdentifier, final TradeType tradeType) throws InvalidParameterException
+    {
+        if (!marketData.containsKey (stockIdentifier))
+        {
+            throw new InvalidParameterException ("invalid stock " + stockIdentifier);
+        }
+        if (tradeType == null)
+        {
+            throw new InvalidParameterException ("invalid trade type " + tradeType);
+        }
+        return sideOf (tradeType);
+    }
+
+    /**
+     * @return The side of the window store for a trade type, which may be null.
+     */
+    static int sideOf (final TradeType tradeType)
+    {
+        if (tradeType == null)
+        {
+            return OffHeapWindowStore.SIDE_NONE;
+        }
+        return (tradeType == TradeType.BUY) ? OffHeapWindowStore.SIDE_BUY : OffHeapWindowStore.SIDE_SELL;
+    }
+
+    /**
+     * @return The price, rounded to the nearest tick in fixed point mode.
+     */
+    private double roundPrice (final double price)
+    {
+        return (priceArithmetic == PriceArithmetic.FIXED_POINT && price > 0 && price <= FixedPoint.MAX_PRICE)
+                ? FixedPoint.toPrice (FixedPoint.toTicks (price)) : price;
+    }
+
+    /**
+     * Place a validated trade in the ledger, and notify the listeners.
+     */
+    private void addTrade (final Trade trade)
+    {
+        ledger.addLast (trade);
+        latestTimestamp = Math.max (latestTimestamp, trade.getTimestamp ());
+        if (trade.getTradeId () != null)
+        {
+            if (tradeIds == null)
+            {
+                tradeIds = new RotatingBloomFilter (horizonSeconds + allowedLatenessSeconds,
+                                                    expectedTradeIds,
+                                                    TRADE_ID_FALSE_POSITIVE_RATE);
+            }
+            tradeIds.add (RotatingBloomFilter.hash (trade.getTradeId ()), latestTimestamp);
+        }
+
+        int symbolId = symbolTable.idOf (trade.getStockIdentifier ());
+        if (trade.getTimestamp () > advanceWindow ())
+        {
+            windowStore.record (symbolId, trade.getTimestamp (), trade.getQuantity (), trade.getPrice (),
+                                sideOf (trade.getType ()));
+            windowChanged (symbolId);
+        }
+
+        for (AnalyticsWindow window : analyticsWindows.values ())
+        {
+            if (window.getStore () != windowStore)
+            {
+                window.record (symbolId, trade);
+            }
+        }
+
+        WindowedQuantileSketch priceSketch = priceSketches[symbolId];
+        if (priceSketch == null)
+        {
+            priceSketch = new WindowedQuantileSketch (horizonSeconds);
+            priceSketches[symbolId] = priceSketch;
+        }
+        priceSketch.update (trade.getTimestamp (), trade.getPrice ());
+
+        for (TradeListener listener : tradeListeners)
+        {
+            listener.tradeRecorded (trade);
+        }
+    }
+
+    /**
+     * @return Whether a trade with the id has been recorded within the retention of the filter
+     *         of trade ids.
+     */
+    private boolean isDuplicate (final String tradeId, final long timestamp)
+    {
+        if (tradeIds == null || !tradeIds.mightContain (RotatingBloomFilter.hash (tradeId),
+                                                        Math.max (latestTimestamp, timestamp)))
+        {
+            return false;
+        }
+
+        /*
+         * A possible duplicate, so search the ledger for the id, newest first, as a retry is
+         * usually of a recent trade. The ledger keeps at least the retention of the filter,
+         * so holds every trade the filter can find. Replayed trades aren't held to the allowed
+         * lateness, so a false positive searches all of it.
+         */
+        long cutoff = latestTimestamp - tradeIds.getRetention ();
+        Iterator<Trade> iterator = ledger.descendingIterator ();
+        while (iterator.hasNext ())
+        {
+            Trade trade = iterator.next ();
+            if (trade.getTimestamp () > cutoff && tradeId.equals (trade.getTradeId ()))
+            {
+                return true;
+            }
+        }
+        tradeIdFalsePositiveCount++;
+        return false;
+    }
+
+    /**
+     * Update the state derived from a stock's window, after a trade has entered or left it.
+     */
+    private void windowChanged (final int symbolId)
+    {
+        marketVersion++;
+        indexCalculator.update (symbolId, windowStore.getVolumeWeightedPrice (symbolId));
+    }
+
+    /**
+     * Expire the trades that have left the horizon from the window, and drop the trades that
+     * have left the retention from the ledger.
+     * 
+     * @return The start of the horizon; trades at or before this time are outside the window.
+     */
+    private long advanceWindow ()
+    {
+        long now = environment.getTime ();
+        long horizon = now - horizonSeconds;
+        windowStore.expire (horizon);
+        for (AnalyticsWindow window : analyticsWindows.values ())
+        {
+            if (window.getStore () != windowStore)
+            {
+                window.advance (now);
+            }
+        }
+
+        /*
+         * The ledger is in the order the trades were recorded, which is within the allowed
+         * lateness of time order, so a trade may be kept a little past the cutoff, until the
+         * trades recorded before it are dropped. The filter of trade ids retains ids by the
+         * latest timestamp, which may be behind the time.
+         */
+        if (!ledger.isEmpty ())
+        {
+            long cutoff = Math.min (now, latestTimestamp) - retentionSeconds - allowedLatenessSeconds;
+            while (!ledger.isEmpty () && ledger.peekFirst ().getTimestamp () <= cutoff)
+            {
+                ledger.pollFirst ();
+            }
+        }
+        return horizon;
+    }
+
+    /**
+     * @return The trades in the ledger after a time, in the order they were recorded.
+     */
+    private List<Trade> tradesSince (final long since)
+    {
+        /*
+         * Replayed trades aren't held to the allowed lateness, so may be anywhere in the
+         * ledger; it's bounded by the retention, so search all of it.
+         */
+        List<Trade> trades = new ArrayList<Trade> ();
+        for (Trade trade : ledger)
+        {
+            if (trade.getTimestamp () > since)
+            {
+                trades.add (trade);
+            }
+        }
+        return trades;
+    }
+
+    /**
+     * Release the off heap window state. The market can't be used once closed.
+     */
+    @Override
+    public void close ()
+    {
+        windowStore.close ();
+        for (AnalyticsWindow window : analyticsWindows.values ())
+        {
+            if (window.getStore () != windowStore)
+            {
+                window.close ();
+            }
+        }
+    }
 }
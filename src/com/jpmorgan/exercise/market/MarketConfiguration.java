@@ -0,0 +1,183 @@
+package com.jpmorgan.exercise.market;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.jpmorgan.exercise.environment.Environment;
+import com.jpmorgan.exercise.stock.CommonStockData;
+import com.jpmorgan.exercise.stock.PreferredStockData;
+import com.jpmorgan.exercise.stock.StockData;
+
+/**
+ * Bean to hold the configuration of a <code>Market</code>. The defaults give the market
+ * used for the exercise.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public class MarketConfiguration
+{
+
+    /**
+     * Hard coded stock information, used as the default universe.
+     * 
+     * Using a TreeMap with CASE_INSENSITIVE_ORDER allows access using non-case
+     * matching keys.
+     */
+    private static final Map<String /* stockIdentifier */, StockData> MARKET_DATA ()
+    {
+        return Collections.unmodifiableMap (new TreeMap<String, StockData> (String.CASE_INSENSITIVE_ORDER)
+        {
+            private static final long serialVersionUID = -5389107945226081680L;
+            {
+                put ("TEA", new CommonStockData ("TEA", 0, 100));
+                put ("POP", new CommonStockData ("POP", 8, 100));
+                put ("ALE", new CommonStockData ("ALE", 23, 100));
+                put ("GIN", new PreferredStockData ("GIN", 8, 100, 0.02)); // Note 2% => 0.02
+                put ("JOE", new CommonStockData ("JOE", 13, 100));
+            }
+        });
+    };
+
+    private Map<String /* stockIdentifier */, StockData> universe = MARKET_DATA ();
+
+    private PriceArithmetic priceArithmetic = PriceArithmetic.DOUBLE;
+
+    private long allowedLatenessSeconds = 0;
+
+    private long futureToleranceSeconds = 0;
+
+    private boolean queryCacheEnabled = true;
+
+    private Environment environment = Environment.getEnvironment ();
+
+    private long horizonSeconds = 5 * 60;
+
+    private int expectedTradeIds = 1 << 16;
+
+    /**
+     * @return The stocks traded on the market, keyed by stock identifier, ignoring case.
+     */
+    public Map<String, StockData> getUniverse ()
+    {
+        return universe;
+    }
+
+    /**
+     * @param stocks
+     *            The stocks traded on the market.
+     */
+    public void setUniverse (final Iterable<? extends StockData> stocks)
+    {
+        TreeMap<String, StockData> stockMap = new TreeMap<String, StockData> (String.CASE_INSENSITIVE_ORDER);
+        for (StockData stock : stocks)
+        {
+            stockMap.put (stock.getStockIdentifier (), stock);
+        }
+        universe = Collections.unmodifiableMap (stockMap);
+    }
+
+    public PriceArithmetic getPriceArithmetic ()
+    {
+        return priceArithmetic;
+    }
+
+    /**
+     * @param priceArithmetic
+     *            Arithmetic used for the prices and notional of the trades within the
+     *            horizon.
+     */
+    public void setPriceArithmetic (final PriceArithmetic priceArithmetic)
+    {
+        this.priceArithmetic = priceArithmetic;
+    }
+
+    public long getAllowedLatenessSeconds ()
+    {
+        return allowedLatenessSeconds;
+    }
+
+    /**
+     * @param allowedLatenessSeconds
+     *            How far, in seconds, a trade's timestamp may be behind the latest trade
+     *            recorded on the market. Must not be negative.
+     */
+    public void setAllowedLatenessSeconds (final long allowedLatenessSeconds)
+    {
+        this.allowedLatenessSeconds = allowedLatenessSeconds;
+    }
+
+    public long getFutureToleranceSeconds ()
+    {
+        return futureToleranceSeconds;
+    }
+
+    /**
+     * @param futureToleranceSeconds
+     *            How far, in seconds, a trade's timestamp may be ahead of the market's clock,
+     *            e.g. for the skew of a venue's clock. Must not be negative.
+     */
+    public void setFutureToleranceSeconds (final long futureToleranceSeconds)
+    {
+        this.futureToleranceSeconds = futureToleranceSeconds;
+    }
+
+    public boolean isQueryCacheEnabled ()
+    {
+        return queryCacheEnabled;
+    }
+
+    /**
+     * @param queryCacheEnabled
+     *            Whether the market caches the GBCE until a stock's window next changes.
+     */
+    public void setQueryCacheEnabled (final boolean queryCacheEnabled)
+    {
+        this.queryCacheEnabled = queryCacheEnabled;
+    }
+
+    public Environment getEnvironment ()
+    {
+        return environment;
+    }
+
+    /**
+     * @param environment
+     *            Environment giving the time on the market, by default the global environment.
+     */
+    public void setEnvironment (final Environment environment)
+    {
+        this.environment = environment;
+    }
+
+    public long getHorizonSeconds ()
+    {
+        return horizonSeconds;
+    }
+
+    /**
+     * @param horizonSeconds
+     *            Horizon for the calculation of the VWSP/GBCE, in seconds. Must be greater
+     *            than 0.
+     */
+    public void setHorizonSeconds (final long horizonSeconds)
+    {
+        this.horizonSeconds = horizonSeconds;
+    }
+
+    public int getExpectedTradeIds ()
+    {
+        return expectedTradeIds;
+    }
+
+    /**
+     * @param expectedTradeIds
+     *            Expected number of trades with ids recorded within the horizon and allowed
+     *            lateness, used to size the filter of trade ids seen. Must be greater than 0.
+     */
+    public void setExpectedTradeIds (final int expectedTradeIds)
+    {
+        this.expectedTradeIds = expectedTradeIds;
+    }
+}
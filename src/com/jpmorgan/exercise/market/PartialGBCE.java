@@ -0,0 +1,68 @@
+package com.jpmorgan.exercise.market;
+
+/**
+ * Immutable bean to hold the contribution of a subset of stocks to the GBCE all share
+ * index. Holding the sum of the logs of the volume weighted stock prices, rather than
+ * their product, means partial results from several markets can be combined by simple
+ * addition, and avoids the range issues noted on <code>Market.calculateGBCE</code>.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public class PartialGBCE
+{
+
+    public static final PartialGBCE EMPTY = new PartialGBCE (0, 0);
+
+    private final double logVwspSum;
+    private final int    constituentCount;
+
+    public PartialGBCE (final double logVwspSum, final int constituentCount)
+    {
+        this.logVwspSum = logVwspSum;
+        this.constituentCount = constituentCount;
+    }
+
+    public double getLogVwspSum ()
+    {
+        return logVwspSum;
+    }
+
+    public int getConstituentCount ()
+    {
+        return constituentCount;
+    }
+
+    /**
+     * @param other
+     *            The partial result to combine with this one.
+     * @return A partial result covering the constituents of both.
+     */
+    public PartialGBCE combine (final PartialGBCE other)
+    {
+        return new PartialGBCE (logVwspSum + other.logVwspSum, constituentCount + other.constituentCount);
+    }
+
+    /**
+     * @return The GBCE all share index over the constituents. Note that this will be 0 if
+     *         there are no constituents.
+     */
+    public double getGBCE ()
+    {
+        return (constituentCount == 0) ? 0 : Math.exp (logVwspSum / constituentCount);
+    }
+
+    @Override
+    public String toString ()
+    {
+        StringBuilder builder = new StringBuilder ();
+
+        builder.append ("PartialGBCE:[logVwspSum: ");
+        builder.append (logVwspSum);
+        builder.append (", constituentCount: ");
+        builder.append (constituentCount);
+        builder.append ("]");
+
+        return builder.toString ();
+    }
+}
@@ -0,0 +1,22 @@
+package com.jpmorgan.exercise.market;
+
+/**
+ * Arithmetic used by a <code>Market</code> for the prices and notional of the trades within
+ * the horizon.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public enum PriceArithmetic
+{
+    /**
+     * Prices and notional are held as <code>double</code>s.
+     */
+    DOUBLE,
+
+    /**
+     * Prices are held as <code>long</code> ticks of 1/1,000,000, and notional as 128 bit sums
+     * of ticks, so the VWSP is exact and reproducible.
+     */
+    FIXED_POINT,
+}
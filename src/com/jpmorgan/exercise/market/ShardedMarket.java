@@ -0,0 +1,314 @@
+package com.jpmorgan.exercise.market;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.jpmorgan.exercise.analytics.QuantileSketch;
+import com.jpmorgan.exercise.exception.InvalidParameterException;
+import com.jpmorgan.exercise.stock.StockData;
+
+/**
+ * Market that partitions the stocks across a number of <code>Market</code> shards, so that
+ * trades for different stocks can be recorded concurrently.
+ * 
+ * Each stock is routed to a single shard, using a case insensitive hash of the stock
+ * identifier, so the shard holds the complete window for that stock. Each shard is still
+ * a single threaded <code>Market</code>, so access to a shard is synchronized on the shard;
+ * threads recording trades for stocks on different shards do not contend.
+ * 
+ * The GBCE all share index is calculated by scatter-gather: each shard calculates its
+ * partial GBCE (the sum of the logs of its volume weighted stock prices, and the number
+ * of stocks traded) in parallel, and these are combined here.
+ * 
+ * Each shard is configured as the market, but with only the stocks routed to it, so a shard
+ * holds the window state of its own stocks only. The gather threads are daemons, so an
+ * unclosed sharded market doesn't keep the process alive, but closing it releases the
+ * shards' window stores.
+ * 
+ * The shards run as threads within this process. Running shards as separate processes
+ * would need a transport for the trades and partial results, which isn't required yet.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public class ShardedMarket implements AutoCloseable
+{
+
+    private final Market[]        shards;
+
+    /**
+     * Pool used to calculate the partial GBCE of each shard in parallel.
+     */
+    private final ExecutorService gatherPool;
+
+    /**
+     * Create a sharded market with the default configuration.
+     * 
+     * @param shardCount
+     *            The number of shards to partition the stocks across. Must be greater than 0.
+     * @throws InvalidParameterException
+     *             For invalid shard count.
+     */
+    public ShardedMarket (final int shardCount) throws InvalidParameterException
+    {
+        this (shardCount, new MarketConfiguration ());
+    }
+
+    /**
+     * @param shardCount
+     *            The number of shards to partition the stocks across. Must be greater than 0.
+     * @param configuration
+     *            The configuration of the market, whose universe is partitioned across the
+     *            shards.
+     * @throws InvalidParameterException
+     *             For invalid shard count.
+     */
+    public ShardedMarket (final int shardCount, final MarketConfiguration configuration) throws InvalidParameterException
+    {
+        if (shardCount <= 0)
+        {
+            throw new InvalidParameterException ("invalid shard count " + shardCount);
+        }
+
+        shards = new Market[shardCount];
+        List<List<StockData>> universes = new ArrayList<> (shardCount);
+        for (int i = 0; i < shardCount; i++)
+        {
+            universes.add (new ArrayList<StockData> ());
+        }
+        for (StockData stock : configuration.getUniverse ().values ())
+        {
+            universes.get (shardOf (stock.getStockIdentifier ())).add (stock);
+        }
+        for (int i = 0; i < shardCount; i++)
+        {
+            shards[i] = new Market (shardConfiguration (configuration, universes.get (i), shardCount));
+        }
+
+        final AtomicInteger threadCount = new AtomicInteger ();
+        gatherPool = Executors.newFixedThreadPool (shardCount, runnable -> {
+            Thread thread = new Thread (runnable, "market-gather-" + threadCount.incrementAndGet ());
+            thread.setDaemon (true);
+            return thread;
+        });
+    }
+
+    public int getShardCount ()
+    {
+        return shards.length;
+    }
+
+    /**
+     * @param shard
+     *            Index of the shard.
+     * @return The stocks held by the shard.
+     */
+    public Map<String, StockData> getShardUniverse (final int shard)
+    {
+        return shards[shard].getUniverse ();
+    }
+
+    /**
+     * Hash of the stock identifier, ignoring case, that avoids creating the upper case
+     * identifier on every trade.
+     * 
+     * @param stockIdentifier
+     *            Three letter identifier for the stock.
+     * @return The index of the shard that holds the stock.
+     */
+    public int shardOf (final String stockIdentifier)
+    {
+        int hash = 0;
+        for (int i = 0; i < stockIdentifier.length (); i++)
+        {
+            hash = 31 * hash + Character.toUpperCase (stockIdentifier.charAt (i));
+        }
+        hash ^= (hash >>> 16);
+
+        return (hash & Integer.MAX_VALUE) % shards.length;
+    }
+
+    /**
+     * Returns the dividend yield for a stock, from the shard holding the stock.
+     * 
+     * @see Market#calculateDividendYield(String, double)
+     */
+    public double calculateDividendYield (final String stockIdentifier,
+                                          final double price) throws InvalidParameterException
+    {
+        Market shard = shards[shardOf (stockIdentifier)];
+        synchronized (shard)
+        {
+            return shard.calculateDividendYield (stockIdentifier, price);
+        }
+    }
+
+    /**
+     * Returns the P/E Ratio for a stock, from the shard holding the stock.
+     * 
+     * @see Market#calculatePERatio(String, double)
+     */
+    public double calculatePERatio (final String stockIdentifier, final double price) throws InvalidParameterException
+    {
+        Market shard = shards[shardOf (stockIdentifier)];
+        synchronized (shard)
+        {
+            return shard.calculatePERatio (stockIdentifier, price);
+        }
+    }
+
+    /**
+     * Record a trade on the shard holding the stock.
+     * 
+     * @see Market#recordTrade(String, int, double, TradeType)
+     */
+    public void recordTrade (final String stockIdentifier,
+                             final int quantity,
+                             final double price,
+                             final TradeType tradeType) throws InvalidParameterException
+    {
+        Market shard = shards[shardOf (stockIdentifier)];
+        synchronized (shard)
+        {
+            shard.recordTrade (stockIdentifier, quantity, price, tradeType);
+        }
+    }
+
+    /**
+     * Calculate the volume weighted stock price on the shard holding the stock.
+     * 
+     * @see Market#calculateVolumeWeightedStockPrice(String)
+     */
+    public double calculateVolumeWeightedStockPrice (final String stockIdentifier) throws InvalidParameterException
+    {
+        Market shard = shards[shardOf (stockIdentifier)];
+        synchronized (shard)
+        {
+            return shard.calculateVolumeWeightedStockPrice (stockIdentifier);
+        }
+    }
+
+    /**
+     * Calculate the partial GBCE of all shards, in parallel.
+     * 
+     * @return The combined partial GBCE of all shards.
+     */
+    public PartialGBCE calculatePartialGBCE ()
+    {
+        List<Future<PartialGBCE>> partials = new ArrayList<> (shards.length);
+        for (final Market shard : shards)
+        {
+            partials.add (gatherPool.submit ( () -> {
+                synchronized (shard)
+                {
+                    return shard.calculatePartialGBCE ();
+                }
+            }));
+        }
+
+        PartialGBCE combined = PartialGBCE.EMPTY;
+        try
+        {
+            for (Future<PartialGBCE> partial : partials)
+            {
+                combined = combined.combine (partial.get ());
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread ().interrupt ();
+            throw new IllegalStateException ("interrupted calculating GBCE", e);
+        }
+        catch (ExecutionException e)
+        {
+            throw new IllegalStateException ("failed calculating GBCE", e.getCause ());
+        }
+
+        return combined;
+    }
+
+    /**
+     * Calculate the GBCE all share index, over all shards.
+     * 
+     * @return GBCE all share index. Note that this will be 0 if there are no trades within the
+     *         horizon.
+     */
+    public double calculateGBCE ()
+    {
+        return calculatePartialGBCE ().getGBCE ();
+    }
+
+    /**
+     * Returns the distribution of the price of a stock, from the shard holding the stock.
+     * 
+     * @see Market#getPriceDistribution(String)
+     */
+    public QuantileSketch getPriceDistribution (final String stockIdentifier) throws InvalidParameterException
+    {
+        Market shard = shards[shardOf (stockIdentifier)];
+        synchronized (shard)
+        {
+            return shard.getPriceDistribution (stockIdentifier);
+        }
+    }
+
+    /**
+     * Returns the distribution of the price of all trades, merging the distribution of
+     * each shard.
+     * 
+     * @see Market#getMarketPriceDistribution()
+     */
+    public QuantileSketch getMarketPriceDistribution ()
+    {
+        QuantileSketch distribution = new QuantileSketch ();
+        for (Market shard : shards)
+        {
+            synchronized (shard)
+            {
+                distribution.merge (shard.getMarketPriceDistribution ());
+            }
+        }
+        return distribution;
+    }
+
+    /**
+     * @return A copy of the market's configuration for a shard, with only the shard's stocks,
+     *         and its share of the expected trade ids.
+     */
+    private static MarketConfiguration shardConfiguration (final MarketConfiguration configuration,
+                                                           final List<StockData> universe,
+                                                           final int shardCount)
+    {
+        MarketConfiguration shardConfiguration = new MarketConfiguration ();
+        shardConfiguration.setUniverse (universe);
+        shardConfiguration.setPriceArithmetic (configuration.getPriceArithmetic ());
+        shardConfiguration.setAllowedLatenessSeconds (configuration.getAllowedLatenessSeconds ());
+        shardConfiguration.setFutureToleranceSeconds (configuration.getFutureToleranceSeconds ());
+        shardConfiguration.setQueryCacheEnabled (configuration.isQueryCacheEnabled ());
+        shardConfiguration.setEnvironment (configuration.getEnvironment ());
+        shardConfiguration.setHorizonSeconds (configuration.getHorizonSeconds ());
+        int expectedTradeIds = configuration.getExpectedTradeIds ();
+        shardConfiguration.setExpectedTradeIds ((expectedTradeIds > 0) ? (expectedTradeIds + shardCount - 1) / shardCount
+                : expectedTradeIds);
+        return shardConfiguration;
+    }
+
+    @Override
+    public void close ()
+    {
+        gatherPool.shutdown ();
+        for (Market shard : shards)
+        {
+            synchronized (shard)
+            {
+                shard.close ();
+            }
+        }
+    }
+}
@@ -1,7 +1,8 @@
 package com.jpmorgan.exercise.market;
 
 /**
- * Immutable bean to hold trade information.
+ * Immutable bean to hold trade information. A trade may carry an id given by the venue, used
+ * to reject duplicates, such as a fill reported by both a drop copy and a gateway retry.
  * 
  * @author Tony Cruickshank
  *
@@ -14,18 +15,30 @@ public class Trade
     private final int       quantity;
     private final double    price;
     private final TradeType type;
+    private final String    tradeId;
 
     public Trade (final String stockIdentifier,
                   final long timestamp,
                   final int quantity,
                   final double price,
                   final TradeType type)
+    {
+        this (stockIdentifier, timestamp, quantity, price, type, null);
+    }
+
+    public Trade (final String stockIdentifier,
+                  final long timestamp,
+                  final int quantity,
+                  final double price,
+                  final TradeType type,
+                  final String tradeId)
     {
         this.stockIdentifier = stockIdentifier;
         this.timestamp = timestamp;
         this.quantity = quantity;
         this.price = price;
         this.type = type;
+        this.tradeId = tradeId;
     }
 
     public String getStockIdentifier ()
@@ -53,6 +66,14 @@ public class Trade
         return type;
     }
 
+    /**
+     * @return The id given to the trade by the venue, or null if it has none.
+     */
+    public String getTradeId ()
+    {
+        return tradeId;
+    }
+
     @Override
     public String toString ()
     {
@@ -68,6 +89,8 @@ public class Trade
         builder.append (price);
         builder.append (", type: ");
         builder.append (type);
+        builder.append (", tradeId: ");
+        builder.append (tradeId);
         builder.append ("]");
 
         return builder.toString ();
@@ -0,0 +1,177 @@
+package com.jpmorgan.exercise.market;
+
+import java.util.Arrays;
+
+/**
+ * Batch of trades held as columns of primitives, used to record many trades, with their
+ * own timestamps, without creating an object per trade until they're placed in the ledger.
+ * Stocks are identified by the symbol id given by the market's symbol table.
+ * 
+ * The batch grows as needed, and can be cleared and reused.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public class TradeBatch
+{
+
+    private static final TradeType[] TRADE_TYPES = TradeType.values ();
+
+    private int[]                    symbolIds;
+    private long[]                   timestamps;
+    private int[]                    quantities;
+    private double[]                 prices;
+    /**
+     * Trade types, as the ordinal plus one, or 0 for a trade without a type, as in the
+     * archive blocks.
+     */
+    private byte[]                   types;
+
+    /**
+     * Trade ids, or null for a trade without an id. Created with the first trade with an id.
+     */
+    private String[]                 tradeIds;
+
+    private int                      size;
+
+    public TradeBatch ()
+    {
+        this (1024);
+    }
+
+    /**
+     * @param capacity
+     *            Initial number of trades the batch can hold.
+     */
+    public TradeBatch (final int capacity)
+    {
+        int initialCapacity = Math.max (1, capacity);
+        symbolIds = new int[initialCapacity];
+        timestamps = new long[initialCapacity];
+        quantities = new int[initialCapacity];
+        prices = new double[initialCapacity];
+        types = new byte[initialCapacity];
+    }
+
+    /**
+     * Add a trade to the batch.
+     * 
+     * @param symbolId
+     *            Symbol id of the stock.
+     * @param timestamp
+     *            Time of the trade, in seconds.
+     * @param quantity
+     *            The number of stocks in the trade.
+     * @param price
+     *            The price of the trade.
+     * @param tradeType
+     *            Buy or sell, or null if the side isn't known.
+     */
+    public void add (final int symbolId,
+                     final long timestamp,
+                     final int quantity,
+                     final double price,
+                     final TradeType tradeType)
+    {
+        add (symbolId, timestamp, quantity, price, tradeType, null);
+    }
+
+    /**
+     * Add a trade with an id to the batch.
+     * 
+     * @param symbolId
+     *            Symbol id of the stock.
+     * @param timestamp
+     *            Time of the trade, in seconds.
+     * @param quantity
+     *            The number of stocks in the trade.
+     * @param price
+     *            The price of the trade.
+     * @param tradeType
+     *            Buy or sell, or null if the side isn't known.
+     * @param tradeId
+     *            The id given to the trade by the venue, or null if it has none.
+     */
+    public void add (final int symbolId,
+                     final long timestamp,
+                     final int quantity,
+                     final double price,
+                     final TradeType tradeType,
+                     final String tradeId)
+    {
+        if (size == symbolIds.length)
+        {
+            int capacity = size * 2;
+            symbolIds = Arrays.copyOf (symbolIds, capacity);
+            timestamps = Arrays.copyOf (timestamps, capacity);
+            quantities = Arrays.copyOf (quantities, capacity);
+            prices = Arrays.copyOf (prices, capacity);
+            types = Arrays.copyOf (types, capacity);
+            if (tradeIds != null)
+            {
+                tradeIds = Arrays.copyOf (tradeIds, capacity);
+            }
+        }
+        if (tradeId != null && tradeIds == null)
+        {
+            tradeIds = new String[symbolIds.length];
+        }
+
+        symbolIds[size] = symbolId;
+        timestamps[size] = timestamp;
+        quantities[size] = quantity;
+        prices[size] = price;
+        types[size] = (byte)((tradeType == null) ? 0 : tradeType.ordinal () + 1);
+        if (tradeIds != null)
+        {
+            tradeIds[size] = tradeId;
+        }
+        size++;
+    }
+
+    public int size ()
+    {
+        return size;
+    }
+
+    public void clear ()
+    {
+        size = 0;
+    }
+
+    public int getSymbolId (final int index)
+    {
+        return symbolIds[index];
+    }
+
+    public long getTimestamp (final int index)
+    {
+        return timestamps[index];
+    }
+
+    public int getQuantity (final int index)
+    {
+        return quantities[index];
+    }
+
+    public double getPrice (final int index)
+    {
+        return prices[index];
+    }
+
+    /**
+     * @return The type of the trade, or null if it has none.
+     */
+    public TradeType getType (final int index)
+    {
+        return (types[index] == 0) ? null : TRADE_TYPES[types[index] - 1];
+    }
+
+    /**
+     * @return The id of the trade, or null if it has none.
+     */
+    public String getTradeId (final int index)
+    {
+        return (tradeIds == null) ? null : tradeIds[index];
+    }
+}
@@ -0,0 +1,19 @@
+package com.jpmorgan.exercise.market;
+
+/**
+ * Listener notified of each trade accepted by a <code>Market</code>, once the trade has been
+ * placed in the ledger. Used, for example, to stream the trades to a replica market.
+ * 
+ * Listeners are called on the thread recording the trade, so should not block.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public interface TradeListener
+{
+    /**
+     * @param trade
+     *            The trade accepted by the market.
+     */
+    public void tradeRecorded (Trade trade);
+}
@@ -1,9 +1,9 @@
 package com.jpmorgan.exercise.market;
 
 /**
- * Trades are marked as buy/sell using this enumerated type. In the current implementation
- * the trade types aren't used, but using an enumeration (instead of different classes)
- * means that extensions do not have to use <code>instanceof</code>.
+ * Trades are marked as buy/sell using this enumerated type, which splits the VWSP, volume
+ * and notional by side. Using an enumeration (instead of different classes) means that
+ * extensions do not have to use <code>instanceof</code>.
  * 
  * @author Tony Cruickshank
  *
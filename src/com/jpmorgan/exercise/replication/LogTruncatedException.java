@@ -0,0 +1,39 @@
+package com.jpmorgan.exercise.replication;
+
+import java.io.IOException;
+
+/**
+ * Exception raised when trades are requested from a <code>ReplicationLog</code> that have
+ * already been truncated from it, so a replica can't catch up from the log, and must be
+ * rebuilt.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public class LogTruncatedException extends IOException
+{
+
+    private static final long serialVersionUID = 4631928711650327395L;
+
+    private final long        firstSequence;
+
+    /**
+     * @param sequence
+     *            Sequence number of the trade requested.
+     * @param firstSequence
+     *            Sequence number of the first trade still held by the log.
+     */
+    public LogTruncatedException (final long sequence, final long firstSequence)
+    {
+        super ("sequence " + sequence + " truncated from the log, which starts at " + firstSequence);
+        this.firstSequence = firstSequence;
+    }
+
+    /**
+     * @return Sequence number of the first trade still held by the log.
+     */
+    public long getFirstSequence ()
+    {
+        return firstSequence;
+    }
+}
@@ -0,0 +1,162 @@
+package com.jpmorgan.exercise.replication;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.jpmorgan.exercise.market.Trade;
+import com.jpmorgan.exercise.market.TradeListener;
+
+/**
+ * Log of the trades accepted by a primary market, in the order they were accepted. The
+ * position of a trade in the log is its sequence number, starting from 0, which replicas
+ * use to acknowledge the trades they have applied, and to catch up after reconnecting.
+ * 
+ * The log is truncated below the sequence number acknowledged by every connected replica,
+ * and holds at most a retention limit of trades, so its memory is bounded however long the
+ * primary runs. A replica can only catch up from a trade still held; reading from before
+ * the first trade held raises <code>LogTruncatedException</code>. Truncated trades are
+ * removed from the underlying list in bulk, once they are at least half of it, so the
+ * removal is amortised over the trades added.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public class ReplicationLog implements TradeListener
+{
+
+    /**
+     * Default maximum number of trades held.
+     */
+    public static final int   DEFAULT_RETAINED_TRADES = 1 << 20;
+
+    private final int         retainedTrades;
+
+    private final List<Trade> entries                 = new ArrayList<Trade> ();
+
+    /**
+     * Sequence number of the first entry in the list.
+     */
+    private long              offset;
+
+    /**
+     * Sequence number of the first trade held; entries before this have been truncated, but
+     * may not yet be removed from the list.
+     */
+    private long              firstSequence;
+
+    public ReplicationLog ()
+    {
+        this (DEFAULT_RETAINED_TRADES);
+    }
+
+    /**
+     * @param retainedTrades
+     *            Maximum number of trades held. Must be greater than 0.
+     */
+    public ReplicationLog (final int retainedTrades)
+    {
+        if (retainedTrades <= 0)
+        {
+            throw new IllegalArgumentException ("invalid retained trades " + retainedTrades);
+        }
+        this.retainedTrades = retainedTrades;
+    }
+
+    @Override
+    public synchronized void tradeRecorded (final Trade trade)
+    {
+        entries.add (trade);
+        truncate (getNextSequence () - retainedTrades);
+        notifyAll ();
+    }
+
+    /**
+     * @return The sequence number that will be given to the next trade.
+     */
+    public synchronized long getNextSequence ()
+    {
+        return offset + entries.size ();
+    }
+
+    /**
+     * @return The sequence number of the first trade held, from which a replica can catch up.
+     */
+    public synchronized long getFirstSequence ()
+    {
+        return firstSequence;
+    }
+
+    /**
+     * Drop the trades before a sequence number, e.g. once every replica has acknowledged them.
+     * 
+     * @param sequence
+     *            Sequence number of the first trade to keep. Trades not yet added are kept.
+     */
+    public synchronized void truncate (final long sequence)
+    {
+        long truncateTo = Math.min (sequence, getNextSequence ());
+        if (truncateTo <= firstSequence)
+        {
+            return;
+        }
+        firstSequence = truncateTo;
+
+        int removable = (int)(firstSequence - offset);
+        if (removable >= entries.size () / 2)
+        {
+            entries.subList (0, removable).clear ();
+            offset = firstSequence;
+        }
+    }
+
+    /**
+     * Read a batch of trades from the log, waiting for trades to be added if there are none
+     * at the requested position.
+     * 
+     * @param fromSequence
+     *            Sequence number of the first trade to read.
+     * @param maxBatchSize
+     *            Maximum number of trades to read.
+     * @param timeoutMillis
+     *            Maximum time to wait for a trade.
+     * @return The trades, which will be empty if none were added before the timeout.
+     * @throws LogTruncatedException
+     *             If the first trade has been truncated from the log.
+     * @throws InterruptedException
+     *             If interrupted while waiting.
+     */
+    public synchronized List<Trade> read (final long fromSequence,
+                                          final int maxBatchSize,
+                                          final long timeoutMillis) throws LogTruncatedException,
+                                                                     InterruptedException
+    {
+        if (fromSequence < 0 || fromSequence > getNextSequence ())
+        {
+            throw new IllegalArgumentException ("invalid sequence " + fromSequence);
+        }
+        if (fromSequence < firstSequence)
+        {
+            throw new LogTruncatedException (fromSequence, firstSequence);
+        }
+
+        long deadline = System.currentTimeMillis () + timeoutMillis;
+        while (fromSequence == getNextSequence ())
+        {
+            long remaining = deadline - System.currentTimeMillis ();
+            if (remaining <= 0)
+            {
+                return Collections.emptyList ();
+            }
+            wait (remaining);
+        }
+        if (fromSequence < firstSequence)
+        {
+            throw new LogTruncatedException (fromSequence, firstSequence);
+        }
+
+        int from = (int)(fromSequence - offset);
+        int to = Math.min (entries.size (), from + maxBatchSize);
+        return new ArrayList<Trade> (entries.subList (from, to));
+    }
+}
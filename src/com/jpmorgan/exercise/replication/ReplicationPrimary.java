@@ -0,0 +1,205 @@
+package com.jpmorgan.exercise.replication;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.jpmorgan.exercise.market.Market;
+import com.jpmorgan.exercise.market.Trade;
+
+/**
+ * Streams the trades accepted by a primary market to its replicas.
+ * 
+ * The trades are held in a <code>ReplicationLog</code>, which listens to the market, and each
+ * replica connection is served by its own thread, which sends the log in batches of up to
+ * <code>MAX_BATCH_SIZE</code> trades, waiting for the acknowledgement of each batch before
+ * sending the next. Batching means a backlog, for example when a replica is catching up,
+ * is sent with few round trips.
+ * 
+ * The log is truncated below the sequence number acknowledged by every connected replica, and
+ * to its retention limit. A replica asking for a truncated trade is sent
+ * <code>TRUNCATED</code>, and its connection closed, as it can't catch up.
+ * 
+ * The primary listens on the loopback address only.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public class ReplicationPrimary implements AutoCloseable
+{
+
+    /**
+     * Maximum number of trades sent to a replica in one batch.
+     */
+    public static final int           MAX_BATCH_SIZE       = 1024;
+
+    /**
+     * Time to wait for trades before sending an empty batch as a heartbeat.
+     */
+    private static final long         HEARTBEAT_MILLIS     = 100;
+
+    private final ReplicationLog      log;
+
+    private final ServerSocket        serverSocket;
+
+    /**
+     * Sequence number of the next trade needed by each connected replica.
+     */
+    private final Map<Socket, Long>   acknowledgedSequence = new ConcurrentHashMap<Socket, Long> ();
+
+    private volatile boolean          closed;
+
+    /**
+     * Start replicating the trades of a market, with the default retention of the log.
+     * 
+     * @see #ReplicationPrimary(Market, int, int)
+     */
+    public ReplicationPrimary (final Market market, final int port) throws IOException
+    {
+        this (market, port, ReplicationLog.DEFAULT_RETAINED_TRADES);
+    }
+
+    /**
+     * Start replicating the trades of a market. This should be done before any trades are
+     * recorded on the market, as earlier trades won't be replicated.
+     * 
+     * @param market
+     *            The primary market.
+     * @param port
+     *            Loopback port to listen for replicas on, or 0 for any free port.
+     * @param retainedTrades
+     *            Maximum number of trades held in the log for replicas to catch up from.
+     * @throws IOException
+     *             If the port can't be opened.
+     */
+    public ReplicationPrimary (final Market market, final int port, final int retainedTrades) throws IOException
+    {
+        log = new ReplicationLog (retainedTrades);
+        serverSocket = new ServerSocket (port, 0, InetAddress.getLoopbackAddress ());
+        market.addTradeListener (log);
+
+        Thread acceptor = new Thread ( () -> accept (), "replication-acceptor");
+        acceptor.setDaemon (true);
+        acceptor.start ();
+    }
+
+    public int getPort ()
+    {
+        return serverSocket.getLocalPort ();
+    }
+
+    public ReplicationLog getLog ()
+    {
+        return log;
+    }
+
+    /**
+     * @return The number of replicas currently connected.
+     */
+    public int getReplicaCount ()
+    {
+        return acknowledgedSequence.size ();
+    }
+
+    /**
+     * @return The lowest sequence number acknowledged by the connected replicas, i.e. all
+     *         trades before this sequence number are held by every replica. This will be
+     *         -1 if no replicas are connected.
+     */
+    public long getAcknowledgedSequence ()
+    {
+        long lowest = -1;
+        for (long sequence : acknowledgedSequence.values ())
+        {
+            lowest = (lowest < 0) ? sequence : Math.min (lowest, sequence);
+        }
+        return lowest;
+    }
+
+    private void accept ()
+    {
+        while (!closed)
+        {
+            try
+            {
+                final Socket socket = serverSocket.accept ();
+                Thread sender = new Thread ( () -> serve (socket), "replication-sender");
+                sender.setDaemon (true);
+                sender.start ();
+            }
+            catch (IOException e)
+            {
+                // Closed, or failed to accept a replica, which will retry.
+            }
+        }
+    }
+
+    private void serve (final Socket socket)
+    {
+        try (Socket connection = socket;
+             DataInputStream in = new DataInputStream (new BufferedInputStream (connection.getInputStream ()));
+             DataOutputStream out = new DataOutputStream (new BufferedOutputStream (connection.getOutputStream ())))
+        {
+            connection.setTcpNoDelay (true);
+
+            long sequence = in.readLong ();
+            if (sequence < 0 || sequence > log.getNextSequence ())
+            {
+                throw new IOException ("invalid sequence " + sequence);
+            }
+            acknowledgedSequence.put (connection, sequence);
+
+            while (!closed)
+            {
+                List<Trade> batch;
+                try
+                {
+                    batch = log.read (sequence, MAX_BATCH_SIZE, HEARTBEAT_MILLIS);
+                }
+                catch (LogTruncatedException e)
+                {
+                    TradeCodec.writeTruncated (out, e.getFirstSequence ());
+                    throw e;
+                }
+                TradeCodec.writeBatch (out, sequence, batch);
+
+                long acknowledged = in.readLong ();
+                if (acknowledged != sequence + batch.size ())
+                {
+                    throw new IOException ("expected acknowledgement " + (sequence + batch.size ()) + ", received "
+                                           + acknowledged);
+                }
+                sequence = acknowledged;
+                acknowledgedSequence.put (connection, sequence);
+                log.truncate (getAcknowledgedSequence ());
+            }
+        }
+        catch (IOException e)
+        {
+            // Replica disconnected; it will catch up from its last sequence on reconnecting.
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread ().interrupt ();
+        }
+        finally
+        {
+            acknowledgedSequence.remove (socket);
+        }
+    }
+
+    @Override
+    public void close () throws IOException
+    {
+        closed = true;
+        serverSocket.close ();
+    }
+}
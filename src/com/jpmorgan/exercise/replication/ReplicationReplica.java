@@ -0,0 +1,338 @@
+package com.jpmorgan.exercise.replication;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.List;
+
+import com.jpmorgan.exercise.exception.InvalidParameterException;
+import com.jpmorgan.exercise.market.Market;
+import com.jpmorgan.exercise.market.MarketConfiguration;
+import com.jpmorgan.exercise.market.Trade;
+
+/**
+ * Hot standby copy of a primary market, kept up to date by applying the trades streamed by a
+ * <code>ReplicationPrimary</code>, with their original timestamps.
+ * 
+ * The replica serves read-only queries, taking query load off the primary. If the primary
+ * fails, the replica can be promoted, handing over its market to take new trades.
+ * 
+ * The market is only accessed while synchronized on it, as trades are applied on the
+ * receiving thread, while queries are made on the caller's thread.
+ * 
+ * The replica's market must be configured as the primary's (universe, horizon, arithmetic),
+ * or the two diverge. A trade the replica can't apply stops replication: the connection is
+ * closed, so the primary sees the replica drop, and the failure is kept for
+ * <code>getFailure</code>. Replication also stops if the replica has fallen so far behind
+ * that the trades it needs have been truncated from the primary's log.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public class ReplicationReplica implements AutoCloseable
+{
+
+    private final Market      market;
+
+    private final int         primaryPort;
+
+    /**
+     * Sequence number of the next trade needed from the primary. Guarded by the market.
+     */
+    private long              nextSequence;
+
+    private volatile Socket   socket;
+
+    private volatile boolean  promoted;
+
+    private volatile boolean  closed;
+
+    /**
+     * The trade that couldn't be applied, stopping replication, or null.
+     */
+    private volatile InvalidParameterException failure;
+
+    /**
+     * Replica of a primary market with the default configuration.
+     * 
+     * @param primaryPort
+     *            Loopback port the primary is listening on.
+     */
+    public ReplicationReplica (final int primaryPort)
+    {
+        this (new MarketConfiguration (), primaryPort);
+    }
+
+    /**
+     * @param configuration
+     *            Configuration of the replica's market, which must match the primary's.
+     * @param primaryPort
+     *            Loopback port the primary is listening on.
+     */
+    public ReplicationReplica (final MarketConfiguration configuration, final int primaryPort)
+    {
+        this.market = new Market (configuration);
+        this.primaryPort = primaryPort;
+    }
+
+    /**
+     * Connect to the primary, catching up from the last trade applied. May be called again
+     * after the connection is lost.
+     * 
+     * @throws IOException
+     *             If the primary can't be reached.
+     */
+    public synchronized void connect () throws IOException
+    {
+        if (promoted || closed)
+        {
+            throw new IllegalStateException ("replica has been promoted or closed");
+        }
+        if (failure != null)
+        {
+            throw new IllegalStateException ("replication failed", failure);
+        }
+        if (isConnected ())
+        {
+            return;
+        }
+
+        final Socket connection = new Socket (InetAddress.getLoopbackAddress (), primaryPort);
+        connection.setTcpNoDelay (true);
+
+        DataOutputStream out = new DataOutputStream (new BufferedOutputStream (connection.getOutputStream ()));
+        out.writeLong (getNextSequence ());
+        out.flush ();
+
+        socket = connection;
+        Thread receiver = new Thread ( () -> receive (connection, out), "replication-receiver");
+        receiver.setDaemon (true);
+        receiver.start ();
+    }
+
+    public boolean isConnected ()
+    {
+        Socket connection = socket;
+        return connection != null && !connection.isClosed ();
+    }
+
+    /**
+     * @return The trade the replica couldn't apply, for example as the universe doesn't match
+     *         the primary's, or the sequence number the primary no longer holds, which stopped
+     *         replication, or null if replication hasn't failed.
+     */
+    public InvalidParameterException getFailure ()
+    {
+        return failure;
+    }
+
+    /**
+     * @return The sequence number of the next trade needed from the primary, i.e. the number
+     *         of trades applied.
+     */
+    public long getNextSequence ()
+    {
+        synchronized (market)
+        {
+            return nextSequence;
+        }
+    }
+
+    /**
+     * Wait until the replica has applied the trades up to a sequence number.
+     * 
+     * @param sequence
+     *            The sequence number of the next trade needed.
+     * @param timeoutMillis
+     *            Maximum time to wait.
+     * @return Whether the trades have been applied. False if replication fails first.
+     * @throws InterruptedException
+     *             If interrupted while waiting.
+     */
+    public boolean awaitSequence (final long sequence, final long timeoutMillis) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis () + timeoutMillis;
+        synchronized (market)
+        {
+            while (nextSequence < sequence)
+            {
+                if (failure != null)
+                {
+                    return false;
+                }
+                long remaining = deadline - System.currentTimeMillis ();
+                if (remaining <= 0)
+                {
+                    return false;
+                }
+                market.wait (remaining);
+            }
+            return true;
+        }
+    }
+
+    private void receive (final Socket connection, final DataOutputStream out)
+    {
+        try (DataInputStream in = new DataInputStream (new BufferedInputStream (connection.getInputStream ())))
+        {
+            while (!promoted)
+            {
+                List<Trade> batch = TradeCodec.readBatch (in, getNextSequence ());
+
+                long acknowledged;
+                synchronized (market)
+                {
+                    if (connection != socket || closed)
+                    {
+                        /*
+                         * Replaced by a newer connection, which will resend the batch.
+                         */
+                        break;
+                    }
+                    for (Trade trade : batch)
+                    {
+                        market.replayTrade (trade);
+                        nextSequence++;
+                    }
+                    acknowledged = nextSequence;
+                    market.notifyAll ();
+                }
+
+                out.writeLong (acknowledged);
+                out.flush ();
+            }
+        }
+        catch (LogTruncatedException e)
+        {
+            InvalidParameterException truncated = new InvalidParameterException (e.getMessage ());
+            truncated.initCause (e);
+            fail (connection, truncated);
+        }
+        catch (IOException e)
+        {
+            // Primary disconnected; the replica can reconnect, and catch up.
+        }
+        catch (InvalidParameterException e)
+        {
+            /*
+             * The primary only sends trades it has accepted, so either the stream is corrupt,
+             * or the replica isn't configured as the primary.
+             */
+            fail (connection, e);
+        }
+    }
+
+    /**
+     * Stop replication: drop the connection, so the primary sees it, and wake any waiters.
+     */
+    private void fail (final Socket connection, final InvalidParameterException e)
+    {
+        synchronized (market)
+        {
+            failure = e;
+            market.notifyAll ();
+        }
+        try
+        {
+            connection.close ();
+        }
+        catch (IOException closeFailure)
+        {
+            e.addSuppressed (closeFailure);
+        }
+    }
+
+    /*
+     * ********************************************************************************
+     * READ-ONLY QUERY METHODS
+     */
+
+    public double calculateDividendYield (final String stockIdentifier,
+                                          final double price) throws InvalidParameterException
+    {
+        synchronized (market)
+        {
+            return market.calculateDividendYield (stockIdentifier, price);
+        }
+    }
+
+    public double calculatePERatio (final String stockIdentifier, final double price) throws InvalidParameterException
+    {
+        synchronized (market)
+        {
+            return market.calculatePERatio (stockIdentifier, price);
+        }
+    }
+
+    public double calculateVolumeWeightedStockPrice (final String stockIdentifier) throws InvalidParameterException
+    {
+        synchronized (market)
+        {
+            return market.calculateVolumeWeightedStockPrice (stockIdentifier);
+        }
+    }
+
+    public double calculateGBCE ()
+    {
+        synchronized (market)
+        {
+            return market.calculateGBCE ();
+        }
+    }
+
+    /**
+     * Stop replicating, and hand over the market so that it can take over from a failed
+     * primary.
+     * 
+     * @return The market, holding all trades applied from the primary.
+     * @throws IOException
+     *             If the connection fails to close.
+     */
+    public Market promote () throws IOException
+    {
+        promoted = true;
+        disconnect ();
+        synchronized (market)
+        {
+            return market;
+        }
+    }
+
+    /**
+     * Drop the connection to the primary. The replica keeps the trades applied, and catches
+     * up from them on connecting again.
+     * 
+     * @throws IOException
+     *             If the connection fails to close.
+     */
+    public void disconnect () throws IOException
+    {
+        Socket connection = socket;
+        if (connection != null)
+        {
+            connection.close ();
+        }
+    }
+
+    /**
+     * Drop the connection to the primary, and release the market, unless it has been handed
+     * over by <code>promote</code>.
+     */
+    @Override
+    public void close () throws IOException
+    {
+        closed = true;
+        disconnect ();
+        if (!promoted)
+        {
+            synchronized (market)
+            {
+                market.close ();
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.jpmorgan.exercise.replication;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.jpmorgan.exercise.market.Trade;
+import com.jpmorgan.exercise.market.TradeType;
+
+/**
+ * Wire format for the replication stream.
+ * 
+ * A replica opens the stream by sending the sequence number of the first trade it needs.
+ * The primary then sends batches, each being the sequence number of the first trade, the
+ * number of trades, and the trades. An empty batch is sent as a heartbeat when there are
+ * no new trades. Each trade's id is preceded by a flag, as trades needn't have one, so that
+ * a promoted replica rejects duplicates of trades recorded on the primary. The replica
+ * acknowledges each batch with the sequence number of the next
+ * trade it needs. If the trades the replica needs have been truncated from the primary's log,
+ * the primary sends <code>TRUNCATED</code> in place of a batch, followed by the sequence number
+ * of the first trade it holds, and closes the stream.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+final class TradeCodec
+{
+
+    /**
+     * Sent in place of the sequence number of a batch when the trades needed are truncated.
+     */
+    static final long                TRUNCATED   = -1;
+
+    private static final TradeType[] TRADE_TYPES = TradeType.values ();
+
+    private TradeCodec ()
+    {
+
+    }
+
+    static void writeBatch (final DataOutputStream out,
+                            final long firstSequence,
+                            final List<Trade> trades) throws IOException
+    {
+        out.writeLong (firstSequence);
+        out.writeInt (trades.size ());
+        for (Trade trade : trades)
+        {
+            out.writeUTF (trade.getStockIdentifier ());
+            out.writeLong (trade.getTimestamp ());
+            out.writeInt (trade.getQuantity ());
+            out.writeDouble (trade.getPrice ());
+            out.writeByte (trade.getType () == null ? -1 : trade.getType ().ordinal ());
+            out.writeBoolean (trade.getTradeId () != null);
+            if (trade.getTradeId () != null)
+            {
+                out.writeUTF (trade.getTradeId ());
+            }
+        }
+        out.flush ();
+    }
+
+    static void writeTruncated (final DataOutputStream out, final long firstSequence) throws IOException
+    {
+        out.writeLong (TRUNCATED);
+        out.writeLong (firstSequence);
+        out.flush ();
+    }
+
+    /**
+     * Read a batch, checking that it starts at the expected sequence number.
+     * 
+     * @throws LogTruncatedException
+     *             If the primary no longer holds the trades from the expected sequence number.
+     */
+    static List<Trade> readBatch (final DataInputStream in, final long expectedSequence) throws IOException
+    {
+        long firstSequence = in.readLong ();
+        if (firstSequence == TRUNCATED)
+        {
+            throw new LogTruncatedException (expectedSequence, in.readLong ());
+        }
+        if (firstSequence != expectedSequence)
+        {
+            throw new IOException ("expected sequence " + expectedSequence + ", received " + firstSequence);
+        }
+
+        int count = in.readInt ();
+        List<Trade> trades = new ArrayList<Trade> (count);
+        for (int i = 0; i < count; i++)
+        {
+            String stockIdentifier = in.readUTF ();
+            long timestamp = in.readLong ();
+            int quantity = in.readInt ();
+            double price = in.readDouble ();
+            byte type = in.readByte ();
+            String tradeId = in.readBoolean () ? in.readUTF () : null;
+            trades.add (new Trade (stockIdentifier,
+                                   timestamp,
+                                   quantity,
+                                   price,
+                                   type < 0 ? null : TRADE_TYPES[type],
+                                   tradeId));
+        }
+        return trades;
+    }
+}
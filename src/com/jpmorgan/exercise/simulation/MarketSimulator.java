@@ -0,0 +1,324 @@
+package com.jpmorgan.exercise.simulation;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import com.jpmorgan.exercise.analytics.QuantileSketch;
+import com.jpmorgan.exercise.environment.Environment;
+import com.jpmorgan.exercise.exception.InvalidParameterException;
+import com.jpmorgan.exercise.market.Market;
+import com.jpmorgan.exercise.market.MarketConfiguration;
+import com.jpmorgan.exercise.market.Trade;
+import com.jpmorgan.exercise.market.TradeType;
+import com.jpmorgan.exercise.stock.CommonStockData;
+import com.jpmorgan.exercise.stock.StockData;
+
+/**
+ * Deterministic simulator of the trade flow on a market, used as a soak test before each
+ * release.
+ * 
+ * The simulator generates a universe of stocks, and drives a <code>Market</code> with
+ * synthetic trades: activity across the stocks follows a Zipf distribution, some seconds
+ * are bursts of activity, and each stock's price follows a random walk. The environment
+ * clock is advanced one second at a time, and at intervals the VWSP of a rotating sample
+ * of stocks, and the GBCE, are checked against a simple reference implementation.
+ * 
+ * All randomness comes from a seeded generator, so a run is repeatable for the same
+ * configuration, apart from the timings.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public class MarketSimulator
+{
+
+    /**
+     * Time one in this many trades on its own, for the latency distribution; the rest are
+     * timed a second's trades at a time, for the throughput, to limit the cost of timing.
+     */
+    private static final int              LATENCY_SAMPLE_INTERVAL = 64;
+
+    private static final TradeType[]      TRADE_TYPES             = TradeType.values ();
+
+    private final SimulationConfiguration configuration;
+
+    private final String[]                stockIdentifiers;
+
+    /**
+     * Cumulative Zipf distribution of activity across the stocks.
+     */
+    private final double[]                activity;
+
+    private final double[]                prices;
+
+    private final SplittableRandom        random;
+
+    /*
+     * The trades of the current second, generated before any are recorded, so that only the
+     * time in the market is counted.
+     */
+    private final int[]                   tradeStocks;
+    private final int[]                   tradeQuantities;
+    private final double[]                tradePrices;
+    private final TradeType[]             tradeTypes;
+
+    public MarketSimulator (final SimulationConfiguration configuration)
+    {
+        this.configuration = configuration;
+
+        int stockCount = configuration.getStockCount ();
+        stockIdentifiers = new String[stockCount];
+        activity = new double[stockCount];
+        prices = new double[stockCount];
+        random = new SplittableRandom (configuration.getSeed ());
+
+        int maxTrades = configuration.getTradesPerSecond () * Math.max (1, configuration.getBurstMultiplier ());
+        tradeStocks = new int[maxTrades];
+        tradeQuantities = new int[maxTrades];
+        tradePrices = new double[maxTrades];
+        tradeTypes = new TradeType[maxTrades];
+
+        double total = 0;
+        for (int i = 0; i < stockCount; i++)
+        {
+            stockIdentifiers[i] = String.format ("S%05d", i);
+            total += 1 / Math.pow (i + 1, configuration.getZipfExponent ());
+            activity[i] = total;
+            prices[i] = 10 + random.nextInt (990);
+        }
+        for (int i = 0; i < stockCount; i++)
+        {
+            activity[i] /= total;
+        }
+    }
+
+    /**
+     * @return The configuration of a market trading the simulated universe.
+     */
+    public MarketConfiguration getMarketConfiguration ()
+    {
+        List<StockData> universe = new ArrayList<StockData> ();
+        for (int i = 0; i < stockIdentifiers.length; i++)
+        {
+            universe.add (new CommonStockData (stockIdentifiers[i], 1 + i % 20, 100));
+        }
+
+        MarketConfiguration marketConfiguration = new MarketConfiguration ();
+        marketConfiguration.setUniverse (universe);
+        return marketConfiguration;
+    }
+
+    /**
+     * Run the simulation against a new market.
+     * 
+     * @return The report of the run.
+     * @throws InvalidParameterException
+     *             If the market rejects a simulated trade.
+     */
+    public SimulationReport run () throws InvalidParameterException
+    {
+        try (Market market = new Market (getMarketConfiguration ()))
+        {
+            return run (market);
+        }
+    }
+
+    /**
+     * Run the simulation against a market trading the simulated universe.
+     * 
+     * @param market
+     *            The market under test.
+     * @return The report of the run.
+     * @throws InvalidParameterException
+     *             If the market rejects a simulated trade.
+     */
+    public SimulationReport run (final Market market) throws InvalidParameterException
+    {
+        Environment environment = market.getEnvironment ();
+        ReferenceMarket reference = new ReferenceMarket (market.getHorizonSeconds ());
+        QuantileSketch latencies = new QuantileSketch ();
+
+        long tradeCount = 0;
+        long elapsedNanos = 0;
+        long checkCount = 0;
+        long mismatchCount = 0;
+        int nextCheckedStock = 0;
+
+        List<MemoryPoolMXBean> heapPools = new ArrayList<MemoryPoolMXBean> ();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans ())
+        {
+            if (pool.getType () == MemoryType.HEAP && pool.isValid ())
+            {
+                pool.resetPeakUsage ();
+                heapPools.add (pool);
+            }
+        }
+
+        for (int second = 1; second <= configuration.getDurationSeconds (); second++)
+        {
+            environment.tick (1);
+            long now = environment.getTime ();
+
+            int trades = configuration.getTradesPerSecond ();
+            if (random.nextDouble () < configuration.getBurstProbability ())
+            {
+                trades *= configuration.getBurstMultiplier ();
+            }
+
+            for (int i = 0; i < trades; i++)
+            {
+                tradeStocks[i] = nextStock ();
+                tradePrices[i] = nextPrice (tradeStocks[i]);
+                tradeQuantities[i] = 1 + random.nextInt (1000);
+                tradeTypes[i] = TRADE_TYPES[random.nextInt (TRADE_TYPES.length)];
+            }
+
+            /*
+             * Only the time in the market is counted, not generating the trades, nor the
+             * reference.
+             */
+            long secondStart = System.nanoTime ();
+            for (int i = 0; i < trades; i++, tradeCount++)
+            {
+                if (tradeCount % LATENCY_SAMPLE_INTERVAL == 0)
+                {
+                    long tradeStart = System.nanoTime ();
+                    market.recordTrade (stockIdentifiers[tradeStocks[i]], tradeQuantities[i], tradePrices[i], tradeTypes[i]);
+                    latencies.update (System.nanoTime () - tradeStart);
+                }
+                else
+                {
+                    market.recordTrade (stockIdentifiers[tradeStocks[i]], tradeQuantities[i], tradePrices[i], tradeTypes[i]);
+                }
+            }
+            elapsedNanos += System.nanoTime () - secondStart;
+
+            for (int i = 0; i < trades; i++)
+            {
+                reference.recordTrade (new Trade (stockIdentifiers[tradeStocks[i]],
+                                                  now,
+                                                  tradeQuantities[i],
+                                                  tradePrices[i],
+                                                  tradeTypes[i]));
+            }
+
+            if (second % configuration.getCheckIntervalSeconds () == 0
+                || second == configuration.getDurationSeconds ())
+            {
+                reference.advance (now);
+                for (int i = 0; i < configuration.getCheckedStocksPerCheck (); i++)
+                {
+                    String stockIdentifier = stockIdentifiers[nextCheckedStock];
+                    nextCheckedStock = (nextCheckedStock + 1) % stockIdentifiers.length;
+
+                    checkCount++;
+                    if (!matches (market.calculateVolumeWeightedStockPrice (stockIdentifier),
+                                  reference.calculateVolumeWeightedStockPrice (stockIdentifier)))
+                    {
+                        mismatchCount++;
+                    }
+                }
+
+                checkCount++;
+                if (!matches (market.calculateGBCE (), reference.calculateGBCE ()))
+                {
+                    mismatchCount++;
+                }
+            }
+        }
+
+        long peakHeapBytes = 0;
+        for (MemoryPoolMXBean pool : heapPools)
+        {
+            peakHeapBytes += pool.getPeakUsage ().getUsed ();
+        }
+
+        return new SimulationReport (tradeCount,
+                                     elapsedNanos,
+                                     latencies.getMedian (),
+                                     latencies.getQuantile (0.99),
+                                     latencies.getQuantile (0.999),
+                                     latencies.getMax (),
+                                     peakHeapBytes,
+                                     checkCount,
+                                     mismatchCount,
+                                     market.calculateGBCE ());
+    }
+
+    /**
+     * @return A stock, chosen by the Zipf distribution of activity.
+     */
+    private int nextStock ()
+    {
+        double u = random.nextDouble ();
+        int low = 0;
+        int high = activity.length - 1;
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (activity[mid] < u)
+            {
+                low = mid + 1;
+            }
+            else
+            {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return The next price of a stock, taking a step of its random walk, rounded to a
+     *         hundredth.
+     */
+    private double nextPrice (final int stock)
+    {
+        double step = (2 * random.nextDouble () - 1) * configuration.getVolatility ();
+        prices[stock] = Math.max (0.01, prices[stock] * (1 + step));
+        return Math.max (0.01, Math.round (prices[stock] * 100) / 100.0);
+    }
+
+    private boolean matches (final double actual, final double expected)
+    {
+        return Math.abs (actual - expected) <= configuration.getTolerance () * Math.max (1, Math.abs (expected));
+    }
+
+    /**
+     * Run the soak test, printing the report.
+     * 
+     * @param args
+     *            Optional stock count, duration in seconds, trades per second and seed.
+     */
+    public static void main (final String[] args) throws Exception
+    {
+        SimulationConfiguration configuration = new SimulationConfiguration ();
+        if (args.length > 0)
+        {
+            configuration.setStockCount (Integer.parseInt (args[0]));
+        }
+        if (args.length > 1)
+        {
+            configuration.setDurationSeconds (Integer.parseInt (args[1]));
+        }
+        if (args.length > 2)
+        {
+            configuration.setTradesPerSecond (Integer.parseInt (args[2]));
+        }
+        if (args.length > 3)
+        {
+            configuration.setSeed (Long.parseLong (args[3]));
+        }
+
+        SimulationReport report = new MarketSimulator (configuration).run ();
+        System.out.println (report);
+        if (report.getMismatchCount () > 0)
+        {
+            System.exit (1);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.jpmorgan.exercise.simulation;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.jpmorgan.exercise.market.Trade;
+
+/**
+ * Deliberately simple implementation of the VWSP/GBCE calculations, used to check the
+ * results of the <code>Market</code> under simulation. Holds the trades within the horizon
+ * in time order, and recalculates from them on every call.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+class ReferenceMarket
+{
+
+    private final long         horizonSeconds;
+
+    private final Deque<Trade> window = new ArrayDeque<Trade> ();
+
+    ReferenceMarket (final long horizonSeconds)
+    {
+        this.horizonSeconds = horizonSeconds;
+    }
+
+    void recordTrade (final Trade trade)
+    {
+        window.addLast (trade);
+    }
+
+    /**
+     * Drop the trades outside the horizon ending at the current time.
+     */
+    void advance (final long now)
+    {
+        while (!window.isEmpty () && window.peekFirst ().getTimestamp () <= now - horizonSeconds)
+        {
+            window.removeFirst ();
+        }
+    }
+
+    double calculateVolumeWeightedStockPrice (final String stockIdentifier)
+    {
+        double nominator = 0;
+        long denominator = 0;
+        for (Trade trade : window)
+        {
+            if (trade.getStockIdentifier ().equals (stockIdentifier))
+            {
+                nominator += trade.getPrice () * trade.getQuantity ();
+                denominator += trade.getQuantity ();
+            }
+        }
+        return (denominator == 0) ? 0 : nominator / denominator;
+    }
+
+    double calculateGBCE ()
+    {
+        Map<String, double[]> sums = new HashMap<String, double[]> ();
+        for (Trade trade : window)
+        {
+            double[] sum = sums.get (trade.getStockIdentifier ());
+            if (sum == null)
+            {
+                sum = new double[2];
+                sums.put (trade.getStockIdentifier (), sum);
+            }
+            sum[0] += trade.getPrice () * trade.getQuantity ();
+            sum[1] += trade.getQuantity ();
+        }
+        if (sums.isEmpty ())
+        {
+            return 0;
+        }
+
+        double logSum = 0;
+        for (double[] sum : sums.values ())
+        {
+            logSum += Math.log (sum[0] / sum[1]);
+        }
+        return Math.exp (logSum / sums.size ());
+    }
+}
@@ -0,0 +1,170 @@
+package com.jpmorgan.exercise.simulation;
+
+/**
+ * Bean to hold the configuration of a <code>MarketSimulator</code> run. The defaults give
+ * a short run suitable for a smoke test; the soak test before a release should increase
+ * the number of stocks and the duration.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public class SimulationConfiguration
+{
+
+    private int    stockCount             = 100;
+    private int    durationSeconds        = 600;
+    private int    tradesPerSecond        = 10000;
+    private double zipfExponent           = 1.0;
+    private double burstProbability       = 0.05;
+    private int    burstMultiplier        = 10;
+    private double volatility             = 0.001;
+    private long   seed                   = 1;
+    private int    checkIntervalSeconds   = 60;
+    private int    checkedStocksPerCheck  = 10;
+    private double tolerance              = 1e-9;
+
+    /**
+     * @return The number of stocks in the simulated universe.
+     */
+    public int getStockCount ()
+    {
+        return stockCount;
+    }
+
+    public void setStockCount (final int stockCount)
+    {
+        this.stockCount = stockCount;
+    }
+
+    /**
+     * @return The number of simulated seconds to run for.
+     */
+    public int getDurationSeconds ()
+    {
+        return durationSeconds;
+    }
+
+    public void setDurationSeconds (final int durationSeconds)
+    {
+        this.durationSeconds = durationSeconds;
+    }
+
+    /**
+     * @return The number of trades in each simulated second, outside of bursts.
+     */
+    public int getTradesPerSecond ()
+    {
+        return tradesPerSecond;
+    }
+
+    public void setTradesPerSecond (final int tradesPerSecond)
+    {
+        this.tradesPerSecond = tradesPerSecond;
+    }
+
+    /**
+     * @return Exponent of the Zipf distribution of activity across the stocks. 0 gives
+     *         uniform activity; larger values concentrate the trades on fewer stocks.
+     */
+    public double getZipfExponent ()
+    {
+        return zipfExponent;
+    }
+
+    public void setZipfExponent (final double zipfExponent)
+    {
+        this.zipfExponent = zipfExponent;
+    }
+
+    /**
+     * @return Probability of a simulated second being a burst of activity.
+     */
+    public double getBurstProbability ()
+    {
+        return burstProbability;
+    }
+
+    public void setBurstProbability (final double burstProbability)
+    {
+        this.burstProbability = burstProbability;
+    }
+
+    /**
+     * @return Multiple of the trades per second made during a burst.
+     */
+    public int getBurstMultiplier ()
+    {
+        return burstMultiplier;
+    }
+
+    public void setBurstMultiplier (final int burstMultiplier)
+    {
+        this.burstMultiplier = burstMultiplier;
+    }
+
+    /**
+     * @return Maximum relative change of a stock's price from one trade to the next.
+     */
+    public double getVolatility ()
+    {
+        return volatility;
+    }
+
+    public void setVolatility (final double volatility)
+    {
+        this.volatility = volatility;
+    }
+
+    /**
+     * @return Seed of the random trade flow; the same seed gives the same trades.
+     */
+    public long getSeed ()
+    {
+        return seed;
+    }
+
+    public void setSeed (final long seed)
+    {
+        this.seed = seed;
+    }
+
+    /**
+     * @return Number of simulated seconds between checks against the reference.
+     */
+    public int getCheckIntervalSeconds ()
+    {
+        return checkIntervalSeconds;
+    }
+
+    public void setCheckIntervalSeconds (final int checkIntervalSeconds)
+    {
+        this.checkIntervalSeconds = checkIntervalSeconds;
+    }
+
+    /**
+     * @return Number of stocks whose VWSP is checked against the reference at each check,
+     *         rotating through the universe.
+     */
+    public int getCheckedStocksPerCheck ()
+    {
+        return checkedStocksPerCheck;
+    }
+
+    public void setCheckedStocksPerCheck (final int checkedStocksPerCheck)
+    {
+        this.checkedStocksPerCheck = checkedStocksPerCheck;
+    }
+
+    /**
+     * @return Relative difference from the reference allowed for the VWSP/GBCE.
+     */
+    public double getTolerance ()
+    {
+        return tolerance;
+    }
+
+    public void setTolerance (final double tolerance)
+    {
+        this.tolerance = tolerance;
+    }
+}
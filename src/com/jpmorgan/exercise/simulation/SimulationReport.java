@@ -0,0 +1,145 @@
+package com.jpmorgan.exercise.simulation;
+
+/**
+ * Immutable bean to hold the results of a <code>MarketSimulator</code> run.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public class SimulationReport
+{
+
+    private final long   tradeCount;
+    private final long   elapsedNanos;
+    private final double latencyMedianNanos;
+    private final double latency99Nanos;
+    private final double latency999Nanos;
+    private final double latencyMaxNanos;
+    private final long   peakHeapBytes;
+    private final long   checkCount;
+    private final long   mismatchCount;
+    private final double finalGBCE;
+
+    public SimulationReport (final long tradeCount,
+                             final long elapsedNanos,
+                             final double latencyMedianNanos,
+                             final double latency99Nanos,
+                             final double latency999Nanos,
+                             final double latencyMaxNanos,
+                             final long peakHeapBytes,
+                             final long checkCount,
+                             final long mismatchCount,
+                             final double finalGBCE)
+    {
+        this.tradeCount = tradeCount;
+        this.elapsedNanos = elapsedNanos;
+        this.latencyMedianNanos = latencyMedianNanos;
+        this.latency99Nanos = latency99Nanos;
+        this.latency999Nanos = latency999Nanos;
+        this.latencyMaxNanos = latencyMaxNanos;
+        this.peakHeapBytes = peakHeapBytes;
+        this.checkCount = checkCount;
+        this.mismatchCount = mismatchCount;
+        this.finalGBCE = finalGBCE;
+    }
+
+    public long getTradeCount ()
+    {
+        return tradeCount;
+    }
+
+    /**
+     * @return Wall clock time spent in the market recording trades, excluding generating the
+     *         trades, the reference, and the checks.
+     */
+    public long getElapsedNanos ()
+    {
+        return elapsedNanos;
+    }
+
+    public double getTradesPerSecond ()
+    {
+        return (elapsedNanos == 0) ? 0 : tradeCount * 1e9 / elapsedNanos;
+    }
+
+    public double getLatencyMedianNanos ()
+    {
+        return latencyMedianNanos;
+    }
+
+    public double getLatency99Nanos ()
+    {
+        return latency99Nanos;
+    }
+
+    public double getLatency999Nanos ()
+    {
+        return latency999Nanos;
+    }
+
+    public double getLatencyMaxNanos ()
+    {
+        return latencyMaxNanos;
+    }
+
+    /**
+     * @return The peak heap in use during the run, summed over the heap's memory pools, so
+     *         including garbage not yet collected.
+     */
+    public long getPeakHeapBytes ()
+    {
+        return peakHeapBytes;
+    }
+
+    /**
+     * @return The number of VWSP/GBCE values checked against the reference.
+     */
+    public long getCheckCount ()
+    {
+        return checkCount;
+    }
+
+    /**
+     * @return The number of VWSP/GBCE values that differed from the reference.
+     */
+    public long getMismatchCount ()
+    {
+        return mismatchCount;
+    }
+
+    /**
+     * @return The GBCE at the end of the run; the same configuration gives the same value.
+     */
+    public double getFinalGBCE ()
+    {
+        return finalGBCE;
+    }
+
+    @Override
+    public String toString ()
+    {
+        StringBuilder builder = new StringBuilder ();
+
+        builder.append ("SimulationReport:[trades: ");
+        builder.append (tradeCount);
+        builder.append (", tradesPerSecond: ");
+        builder.append (String.format ("%.0f", getTradesPerSecond ()));
+        builder.append (", latencyNanos (p50/p99/p99.9/max): ");
+        builder.append (String.format ("%.0f/%.0f/%.0f/%.0f",
+                                       latencyMedianNanos,
+                                       latency99Nanos,
+                                       latency999Nanos,
+                                       latencyMaxNanos));
+        builder.append (", peakHeapBytes: ");
+        builder.append (peakHeapBytes);
+        builder.append (", checks: ");
+        builder.append (checkCount);
+        builder.append (", mismatches: ");
+        builder.append (mismatchCount);
+        builder.append (", finalGBCE: ");
+        builder.append (finalGBCE);
+        builder.append ("]");
+
+        return builder.toString ();
+    }
+}
@@ -0,0 +1,122 @@
+package com.jpmorgan.exercise.window;
+
+/**
+ * Fixed point arithmetic for prices, held as a <code>long</code> number of ticks of
+ * 1/1,000,000, so that sums of prices are exact and don't depend on the order in which
+ * trades are added and removed.
+ * 
+ * The notional of a trade, ticks * quantity, can exceed the range of a <code>long</code>,
+ * and sums of notional certainly can, so notional is held as a 128 bit unsigned integer
+ * in two <code>long</code>s: a high and a low word. The methods work on the words
+ * directly, so that nothing is allocated.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public final class FixedPoint
+{
+
+    /**
+     * Number of ticks per unit of price.
+     */
+    public static final long   TICKS_PER_UNIT = 1000000;
+
+    /**
+     * Largest price that can be held as ticks.
+     */
+    public static final double MAX_PRICE      = (double)(Long.MAX_VALUE / TICKS_PER_UNIT);
+
+    private static final long  LOW_32_BITS    = 0xFFFFFFFFL;
+
+    private FixedPoint ()
+    {
+    }
+
+    /**
+     * @return The price rounded to the nearest tick.
+     */
+    public static long toTicks (final double price)
+    {
+        return Math.round (price * TICKS_PER_UNIT);
+    }
+
+    /**
+     * @return The <code>double</code> nearest to the price in ticks.
+     */
+    public static double toPrice (final long ticks)
+    {
+        return ticks / (double)TICKS_PER_UNIT;
+    }
+
+    /**
+     * @return The high word of the 128 bit product of a non-negative number of ticks and a
+     *         non-negative quantity. The low word is simply <code>ticks * quantity</code>.
+     */
+    public static long multiplyHigh (final long ticks, final int quantity)
+    {
+        /*
+         * ticks * quantity = (upper * 2^32 + lower) * quantity, where neither partial
+         * product can overflow as quantity < 2^31.
+         */
+        long upper = (ticks >>> 32) * quantity;
+        long lower = (ticks & LOW_32_BITS) * quantity;
+        return (upper + (lower >>> 32)) >>> 32;
+    }
+
+    /**
+     * @return The high word of the sum of two 128 bit values, given the low word of the sum.
+     */
+    public static long addHigh (final long high, final long low, final long addendHigh, final long sumLow)
+    {
+        return high + addendHigh + ((Long.compareUnsigned (sumLow, low) < 0) ? 1 : 0);
+    }
+
+    /**
+     * @return The high word of the difference of two 128 bit values, given the low word of
+     *         the minuend.
+     */
+    public static long subtractHigh (final long high, final long low, final long subtrahendHigh, final long subtrahendLow)
+    {
+        return high - subtrahendHigh - ((Long.compareUnsigned (low, subtrahendLow) < 0) ? 1 : 0);
+    }
+
+    /**
+     * Divide a 128 bit value by a positive <code>long</code>, rounding half up, where the
+     * quotient fits in a <code>long</code> (as it does for the notional of a set of trades
+     * divided by their volume).
+     * 
+     * @return The rounded quotient.
+     */
+    public static long divideRounded (final long high, final long low, final long divisor)
+    {
+        long quotient;
+        long remainder;
+        if (high == 0 && low >= 0)
+        {
+            quotient = low / divisor;
+            remainder = low - quotient * divisor;
+        }
+        else
+        {
+            /*
+             * Long division, a bit at a time. The remainder is always below the divisor, so
+             * below 2^63, but shifting it may carry out of the top bit.
+             */
+            quotient = 0;
+            remainder = high;
+            for (int bit = 63; bit >= 0; bit--)
+            {
+                boolean carry = remainder < 0;
+                remainder = (remainder << 1) | ((low >>> bit) & 1);
+                quotient <<= 1;
+                if (carry || Long.compareUnsigned (remainder, divisor) >= 0)
+                {
+                    remainder -= divisor;
+                    quotient |= 1;
+                }
+            }
+        }
+
+        return (remainder >= divisor - remainder) ? quotient + 1 : quotient;
+    }
+}
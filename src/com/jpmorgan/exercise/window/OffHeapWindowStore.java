@@ -0,0 +1,983 @@
+package com.jpmorgan.exercise.window;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Per-stock window state held off the heap, in direct memory, so that a universe of tens
+ * of thousands of stocks adds no objects for the garbage collector to trace.
+ * 
+ * The store holds two regions, both addressed by integer, rather than by object reference:
+ * <ul>
+ * <li>A slot per symbol id, holding the running sums of the trades within the window
+ * (notional and volume), for all trades and for each of the buy and sell sides, the trade
+ * count, and pointers to the symbol's oldest and newest trade within the window.</li>
+ * <li>A ring of the trades within the window, in the order they were recorded. Each trade
+ * is addressed by its sequence number, and holds the sequence numbers of the symbol's
+ * previous and next trades, so the trades of a symbol form a chain through the ring, in
+ * time order.</li>
+ * </ul>
+ * Trades may be recorded out of time order, for example when a fill arrives late from a
+ * slow venue, as long as they're after the last horizon expired. Each trade is also linked
+ * into a bucket for its second, so when the window moves on, the trades of the seconds
+ * leaving the window are found without sorting or scanning the ring, and subtracted from the
+ * running sums. The VWSP of a stock is therefore available without passing through its
+ * trades. The ring's slots are reclaimed from its head, once the trades there have expired.
+ * Other statistics can be kept in the same way by adding a <code>WindowAnalytic</code>.
+ * 
+ * In fixed point mode, prices are held as ticks (see <code>FixedPoint</code>), and the
+ * notional as a 128 bit sum of ticks, so the VWSP is exact, and doesn't depend on the order
+ * in which trades were recorded and expired.
+ * 
+ * Both regions grow as needed: the symbol slots when a larger symbol id is used (or
+ * explicitly, via <code>ensureSymbolCapacity</code>), and the ring when it's full. The
+ * store must be closed when finished with, after which it can't be used. Note that before
+ * Java 9 there is no supported way to free direct memory explicitly, so closing the store
+ * releases the memory to the garbage collector.
+ * 
+ * Note that the store is not thread-safe.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public class OffHeapWindowStore implements AutoCloseable
+{
+
+    /**
+     * Sequence number used as a null pointer.
+     */
+    public static final long    NO_TRADE               = -1;
+
+    /*
+     * Sides of a trade.
+     */
+    public static final int     SIDE_NONE              = 0;
+    public static final int     SIDE_BUY               = 1;
+    public static final int     SIDE_SELL              = 2;
+
+    /*
+     * Layout of a set of running sums. In fixed point mode, the notional is the low word of
+     * the notional in ticks, and the notional high the high word.
+     */
+    private static final int    SUM_NOTIONAL           = 0;
+    private static final int    SUM_NOTIONAL_HIGH      = 8;
+    private static final int    SUM_VOLUME             = 16;
+    private static final int    SUM_BYTES              = 24;
+
+    /*
+     * Layout of a symbol slot.
+     */
+    private static final int    SLOT_TOTAL             = 0;
+    private static final int    SLOT_BUY               = SLOT_TOTAL + SUM_BYTES;
+    private static final int    SLOT_SELL              = SLOT_BUY + SUM_BYTES;
+    private static final int    SLOT_COUNT             = SLOT_SELL + SUM_BYTES;
+    private static final int    SLOT_OLDEST            = SLOT_COUNT + 8;
+    private static final int    SLOT_NEWEST            = SLOT_OLDEST + 8;
+    private static final int    SLOT_BYTES             = SLOT_NEWEST + 8;
+
+    /*
+     * Layout of a trade in the ring.
+     */
+    private static final int    TRADE_TIMESTAMP        = 0;
+    private static final int    TRADE_PRICE            = 8;
+    private static final int    TRADE_QUANTITY         = 16;
+    private static final int    TRADE_SYMBOL           = 20;
+    private static final int    TRADE_NEXT             = 24;
+    private static final int    TRADE_PREVIOUS         = 32;
+    private static final int    TRADE_BUCKET_NEXT      = 40;
+    private static final int    TRADE_SIDE             = 48;
+    private static final int    TRADE_BYTES            = 56;
+
+    /**
+     * Symbol id marking a trade that has expired, but is still in the ring.
+     */
+    private static final int    EXPIRED                = -1;
+
+    private static final int    MIN_RING_CAPACITY      = 1024;
+
+    private static final int    MIN_BUCKET_CAPACITY    = 1024;
+
+    /**
+     * Buckets are not grown beyond 2^17 seconds (about a day and a half), after which a bucket
+     * may hold the trades of more than one second.
+     */
+    private static final int    MAX_BUCKET_CAPACITY    = 1 << 17;
+
+    /**
+     * Whether prices are held as ticks, rather than <code>double</code>s.
+     */
+    private final boolean       fixedPoint;
+
+    private ByteBuffer          slots;
+
+    private int                 symbolCapacity;
+
+    private ByteBuffer          ring;
+
+    /**
+     * Number of trades the ring can hold; always a power of 2.
+     */
+    private int                 ringCapacity;
+
+    /**
+     * Sequence number of the oldest trade in the ring.
+     */
+    private long                head;
+
+    /**
+     * Sequence number of the next trade to be recorded.
+     */
+    private long                tail;
+
+    /**
+     * Number of trades within the window; the ring also holds expired trades, until they
+     * reach its head.
+     */
+    private long                windowSize;
+
+    /**
+     * Sequence number of the newest trade in the bucket of each second, indexed by the second
+     * modulo the capacity, which is a power of 2.
+     */
+    private long[]              buckets;
+
+    /**
+     * Last horizon expired; trades must be after it.
+     */
+    private long                horizon                = Long.MIN_VALUE;
+
+    /**
+     * Lower and upper bound of the timestamps of the trades within the window.
+     */
+    private long                minTimestamp;
+    private long                maxTimestamp;
+
+    private WindowListener      windowListener;
+
+    private WindowAnalytic[]    analytics              = new WindowAnalytic[0];
+
+    /**
+     * @param symbolCapacity
+     *            Initial number of symbol slots.
+     */
+    public OffHeapWindowStore (final int symbolCapacity)
+    {
+        this (symbolCapacity, false);
+    }
+
+    /**
+     * @param symbolCapacity
+     *            Initial number of symbol slots.
+     * @param fixedPoint
+     *            Whether to hold prices as ticks, for exact sums.
+     */
+    public OffHeapWindowStore (final int symbolCapacity, final boolean fixedPoint)
+    {
+        this.fixedPoint = fixedPoint;
+        this.symbolCapacity = Math.max (1, symbolCapacity);
+        slots = allocate ((long)this.symbolCapacity * SLOT_BYTES);
+        clearSlots (0, this.symbolCapacity);
+
+        ringCapacity = MIN_RING_CAPACITY;
+        ring = allocate ((long)ringCapacity * TRADE_BYTES);
+
+        buckets = new long[MIN_BUCKET_CAPACITY];
+        Arrays.fill (buckets, NO_TRADE);
+    }
+
+    /**
+     * @param listener
+     *            Listener to notify as each trade is expired, or null.
+     */
+    public void setWindowListener (final WindowListener listener)
+    {
+        windowListener = listener;
+    }
+
+    /**
+     * Add a statistic to keep up to date as trades are added to and removed from the window.
+     * The statistic sees only the trades added after it.
+     * 
+     * @param analytic
+     *            The statistic.
+     */
+    public void addAnalytic (final WindowAnalytic analytic)
+    {
+        analytics = Arrays.copyOf (analytics, analytics.length + 1);
+        analytics[analytics.length - 1] = analytic;
+    }
+
+    /**
+     * @return The last horizon expired; trades must be after it.
+     */
+    public long getHorizon ()
+    {
+        return horizon;
+    }
+
+    public boolean isFixedPoint ()
+    {
+        return fixedPoint;
+    }
+
+    public int getSymbolCapacity ()
+    {
+        return symbolCapacity;
+    }
+
+    /**
+     * Grow the symbol slots, if needed, to hold a number of symbols.
+     * 
+     * @param capacity
+     *            The number of symbols.
+     */
+    public void ensureSymbolCapacity (final int capacity)
+    {
+        checkOpen ();
+        if (capacity <= symbolCapacity)
+        {
+            return;
+        }
+
+        int newCapacity = Math.max (capacity, symbolCapacity + (symbolCapacity >> 1));
+        ByteBuffer newSlots = allocate ((long)newCapacity * SLOT_BYTES);
+        slots.clear ();
+        newSlots.put (slots);
+        slots = newSlots;
+        clearSlots (symbolCapacity, newCapacity);
+        symbolCapacity = newCapacity;
+    }
+
+    /**
+     * Record a trade within the window, of neither side.
+     * 
+     * @param symbolId
+     *            The trade's symbol id.
+     * @param timestamp
+     *            The trade's timestamp.
+     * @param quantity
+     *            The trade's quantity.
+     * @param price
+     *            The trade's price. In fixed point mode, this is rounded to the nearest tick.
+     * @throws IllegalArgumentException
+     *             If the trade is at or before the last horizon expired.
+     */
+    public void record (final int symbolId, final long timestamp, final int quantity, final double price)
+    {
+        record (symbolId, timestamp, quantity, price, SIDE_NONE);
+    }
+
+    /**
+     * Record a trade within the window.
+     * 
+     * @param symbolId
+     *            The trade's symbol id.
+     * @param timestamp
+     *            The trade's timestamp.
+     * @param quantity
+     *            The trade's quantity.
+     * @param price
+     *            The trade's price. In fixed point mode, this is rounded to the nearest tick.
+     * @param side
+     *            The trade's side: <code>SIDE_BUY</code>, <code>SIDE_SELL</code> or
+     *            <code>SIDE_NONE</code>.
+     * @throws IllegalArgumentException
+     *             If the trade is at or before the last horizon expired.
+     */
+    public void record (final int symbolId,
+                        final long timestamp,
+                        final int quantity,
+                        final double price,
+                        final int side)
+    {
+        if (fixedPoint)
+        {
+            recordTicks (symbolId, timestamp, quantity, FixedPoint.toTicks (price), side);
+        }
+        else
+        {
+            add (symbolId, timestamp, quantity, Double.doubleToRawLongBits (price), side);
+        }
+    }
+
+    /**
+     * Record a trade within the window, of neither side, with its price in ticks. Only valid
+     * in fixed point mode.
+     * 
+     * @param symbolId
+     *            The trade's symbol id.
+     * @param timestamp
+     *            The trade's timestamp.
+     * @param quantity
+     *            The trade's quantity.
+     * @param priceTicks
+     *            The trade's price, in ticks.
+     * @throws IllegalArgumentException
+     *             If the trade is at or before the last horizon expired.
+     */
+    public void recordTicks (final int symbolId, final long timestamp, final int quantity, final long priceTicks)
+    {
+        recordTicks (symbolId, timestamp, quantity, priceTicks, SIDE_NONE);
+    }
+
+    /**
+     * Record a trade within the window, with its price in ticks. Only valid in fixed point
+     * mode.
+     * 
+     * @param symbolId
+     *            The trade's symbol id.
+     * @param timestamp
+     *            The trade's timestamp.
+     * @param quantity
+     *            The trade's quantity.
+     * @param priceTicks
+     *            The trade's price, in ticks.
+     * @param side
+     *            The trade's side: <code>SIDE_BUY</code>, <code>SIDE_SELL</code> or
+     *            <code>SIDE_NONE</code>.
+     * @throws IllegalArgumentException
+     *             If the trade is at or before the last horizon expired.
+     */
+    public void recordTicks (final int symbolId,
+                             final long timestamp,
+                             final int quantity,
+                             final long priceTicks,
+                             final int side)
+    {
+        checkFixedPoint ();
+        add (symbolId, timestamp, quantity, priceTicks, side);
+    }
+
+    /**
+     * Add a trade to the window, and to the running sums.
+     */
+    private void add (final int symbolId, final long timestamp, final int quantity, final long priceBits, final int side)
+    {
+        if (side < SIDE_NONE || side > SIDE_SELL)
+        {
+            throw new IllegalArgumentException ("invalid side " + side);
+        }
+
+        long sequence = append (symbolId, timestamp, quantity, priceBits, side);
+
+        int slot = slotOffset (symbolId);
+        addToSums (slot + SLOT_TOTAL, priceBits, quantity);
+        if (side != SIDE_NONE)
+        {
+            addToSums (slot + sideOffset (side), priceBits, quantity);
+        }
+        slots.putLong (slot + SLOT_COUNT, slots.getLong (slot + SLOT_COUNT) + 1);
+
+        for (WindowAnalytic analytic : analytics)
+        {
+            analytic.tradeAdded (this, symbolId, sequence);
+        }
+    }
+
+    private void addToSums (final int sums, final long priceBits, final int quantity)
+    {
+        if (fixedPoint)
+        {
+            long low = slots.getLong (sums + SUM_NOTIONAL);
+            long sumLow = low + priceBits * quantity;
+            slots.putLong (sums + SUM_NOTIONAL_HIGH,
+                           FixedPoint.addHigh (slots.getLong (sums + SUM_NOTIONAL_HIGH), low,
+                                               FixedPoint.multiplyHigh (priceBits, quantity), sumLow));
+            slots.putLong (sums + SUM_NOTIONAL, sumLow);
+        }
+        else
+        {
+            double price = Double.longBitsToDouble (priceBits);
+            slots.putDouble (sums + SUM_NOTIONAL, slots.getDouble (sums + SUM_NOTIONAL) + price * quantity);
+        }
+        slots.putLong (sums + SUM_VOLUME, slots.getLong (sums + SUM_VOLUME) + quantity);
+    }
+
+    private void subtractFromSums (final int sums, final long priceBits, final int quantity)
+    {
+        long volume = slots.getLong (sums + SUM_VOLUME) - quantity;
+        if (volume == 0)
+        {
+            /*
+             * Reset, rather than subtract, so that rounding errors don't accumulate.
+             */
+            clearSums (sums);
+            return;
+        }
+
+        if (fixedPoint)
+        {
+            long low = slots.getLong (sums + SUM_NOTIONAL);
+            long notional = priceBits * quantity;
+            slots.putLong (sums + SUM_NOTIONAL_HIGH,
+                           FixedPoint.subtractHigh (slots.getLong (sums + SUM_NOTIONAL_HIGH), low,
+                                                    FixedPoint.multiplyHigh (priceBits, quantity), notional));
+            slots.putLong (sums + SUM_NOTIONAL, low - notional);
+        }
+        else
+        {
+            double price = Double.longBitsToDouble (priceBits);
+            slots.putDouble (sums + SUM_NOTIONAL, slots.getDouble (sums + SUM_NOTIONAL) - price * quantity);
+        }
+        slots.putLong (sums + SUM_VOLUME, volume);
+    }
+
+    private void clearSums (final int sums)
+    {
+        slots.putLong (sums + SUM_NOTIONAL, 0);
+        slots.putLong (sums + SUM_NOTIONAL_HIGH, 0);
+        slots.putLong (sums + SUM_VOLUME, 0);
+    }
+
+    /**
+     * Add a trade to the ring, to its second's bucket, and to its symbol's chain.
+     * 
+     * @return The trade's sequence number.
+     */
+    private long append (final int symbolId,
+                         final long timestamp,
+                         final int quantity,
+                         final long priceBits,
+                         final int side)
+    {
+        checkOpen ();
+        if (timestamp <= horizon)
+        {
+            throw new IllegalArgumentException ("trade at " + timestamp + " is not after horizon " + horizon);
+        }
+
+        ensureSymbolCapacity (symbolId + 1);
+        if (tail - head == ringCapacity)
+        {
+            reclaim ();
+            if (tail - head == ringCapacity)
+            {
+                growRing ();
+            }
+        }
+
+        if (windowSize == 0)
+        {
+            minTimestamp = timestamp;
+            maxTimestamp = timestamp;
+        }
+        else
+        {
+            minTimestamp = Math.min (minTimestamp, timestamp);
+            maxTimestamp = Math.max (maxTimestamp, timestamp);
+        }
+        if (maxTimestamp - minTimestamp >= buckets.length && buckets.length < MAX_BUCKET_CAPACITY)
+        {
+            growBuckets ();
+        }
+
+        long sequence = tail++;
+        int trade = tradeOffset (sequence);
+        ring.putLong (trade + TRADE_TIMESTAMP, timestamp);
+        ring.putLong (trade + TRADE_PRICE, priceBits);
+        ring.putInt (trade + TRADE_QUANTITY, quantity);
+        ring.putInt (trade + TRADE_SYMBOL, symbolId);
+        ring.putInt (trade + TRADE_SIDE, side);
+
+        int bucket = bucketOf (timestamp);
+        ring.putLong (trade + TRADE_BUCKET_NEXT, buckets[bucket]);
+        buckets[bucket] = sequence;
+
+        /*
+         * Insert into the symbol's chain after the newest trade at or before this one, which
+         * for a trade that's in time order is the newest trade.
+         */
+        int slot = slotOffset (symbolId);
+        long previous = slots.getLong (slot + SLOT_NEWEST);
+        while (previous != NO_TRADE && ring.getLong (tradeOffset (previous) + TRADE_TIMESTAMP) > timestamp)
+        {
+            previous = ring.getLong (tradeOffset (previous) + TRADE_PREVIOUS);
+        }
+        long next = (previous == NO_TRADE) ? slots.getLong (slot + SLOT_OLDEST)
+                                           : ring.getLong (tradeOffset (previous) + TRADE_NEXT);
+        link (slot, previous, sequence);
+        link (slot, sequence, next);
+
+        windowSize++;
+        return sequence;
+    }
+
+    /**
+     * Expire the trades at or before the start of the window, removing them from the running
+     * sums. Trades can't then be recorded at or before the horizon.
+     * 
+     * @param horizon
+     *            Trades with a timestamp at or before the horizon are expired.
+     */
+    public void expire (final long horizon)
+    {
+        checkOpen ();
+        if (horizon <= this.horizon)
+        {
+            return;
+        }
+        this.horizon = horizon;
+
+        if (windowSize > 0 && minTimestamp <= horizon)
+        {
+            long to = Math.min (horizon, maxTimestamp);
+            if (to - minTimestamp >= buckets.length)
+            {
+                for (int bucket = 0; bucket < buckets.length; bucket++)
+                {
+                    expireBucket (bucket, horizon);
+                }
+            }
+            else
+            {
+                for (long second = minTimestamp; second <= to; second++)
+                {
+                    expireBucket (bucketOf (second), horizon);
+                }
+            }
+            minTimestamp = to + 1;
+        }
+        reclaim ();
+    }
+
+    /**
+     * Expire the trades of a bucket that are at or before the horizon.
+     */
+    private void expireBucket (final int bucket, final long horizon)
+    {
+        long sequence = buckets[bucket];
+        long kept = NO_TRADE;
+        buckets[bucket] = NO_TRADE;
+        while (sequence != NO_TRADE)
+        {
+            int trade = tradeOffset (sequence);
+            long next = ring.getLong (trade + TRADE_BUCKET_NEXT);
+            if (ring.getLong (trade + TRADE_TIMESTAMP) <= horizon)
+            {
+                expireTrade (sequence);
+            }
+            else
+            {
+                /*
+                 * The bucket also holds a later second; keep its trades, in any order.
+                 */
+                ring.putLong (trade + TRADE_BUCKET_NEXT, kept);
+                kept = sequence;
+            }
+            sequence = next;
+        }
+        buckets[bucket] = kept;
+    }
+
+    /**
+     * Remove a trade from the running sums and its symbol's chain.
+     */
+    private void expireTrade (final long sequence)
+    {
+        int trade = tradeOffset (sequence);
+        int symbolId = ring.getInt (trade + TRADE_SYMBOL);
+        for (WindowAnalytic analytic : analytics)
+        {
+            analytic.tradeRemoved (this, symbolId, sequence);
+        }
+
+        int slot = slotOffset (symbolId);
+        long count = slots.getLong (slot + SLOT_COUNT) - 1;
+        if (count == 0)
+        {
+            clearSums (slot + SLOT_TOTAL);
+            clearSums (slot + SLOT_BUY);
+            clearSums (slot + SLOT_SELL);
+            slots.putLong (slot + SLOT_OLDEST, NO_TRADE);
+            slots.putLong (slot + SLOT_NEWEST, NO_TRADE);
+        }
+        else
+        {
+            long priceBits = ring.getLong (trade + TRADE_PRICE);
+            int quantity = ring.getInt (trade + TRADE_QUANTITY);
+            int side = ring.getInt (trade + TRADE_SIDE);
+            subtractFromSums (slot + SLOT_TOTAL, priceBits, quantity);
+            if (side != SIDE_NONE)
+            {
+                subtractFromSums (slot + sideOffset (side), priceBits, quantity);
+            }
+            link (slot, ring.getLong (trade + TRADE_PREVIOUS), ring.getLong (trade + TRADE_NEXT));
+        }
+        slots.putLong (slot + SLOT_COUNT, count);
+        ring.putInt (trade + TRADE_SYMBOL, EXPIRED);
+        windowSize--;
+
+        if (windowListener != null)
+        {
+            windowListener.tradeExpired (symbolId);
+        }
+    }
+
+    /**
+     * Link two trades of a symbol's chain, either of which may be <code>NO_TRADE</code> for
+     * the start or end of the chain.
+     */
+    private void link (final int slot, final long previous, final long next)
+    {
+        if (previous == NO_TRADE)
+        {
+            slots.putLong (slot + SLOT_OLDEST, next);
+        }
+        else
+        {
+            ring.putLong (tradeOffset (previous) + TRADE_NEXT, next);
+        }
+        if (next == NO_TRADE)
+        {
+            slots.putLong (slot + SLOT_NEWEST, previous);
+        }
+        else
+        {
+            ring.putLong (tradeOffset (next) + TRADE_PREVIOUS, previous);
+        }
+    }
+
+    /**
+     * Move the head of the ring past the expired trades.
+     */
+    private void reclaim ()
+    {
+        while (head < tail && ring.getInt (tradeOffset (head) + TRADE_SYMBOL) == EXPIRED)
+        {
+            head++;
+        }
+    }
+
+    /**
+     * @return The sum of price * quantity of the symbol's trades within the window. In fixed
+     *         point mode, this is the nearest <code>double</code> to the exact sum.
+     */
+    public double getNotional (final int symbolId)
+    {
+        return (symbolId < symbolCapacity) ? getNotionalOf (slotOffset (symbolId) + SLOT_TOTAL) : 0;
+    }
+
+    /**
+     * @param side
+     *            <code>SIDE_BUY</code> or <code>SIDE_SELL</code>.
+     * @return The sum of price * quantity of the symbol's trades of the side within the
+     *         window. In fixed point mode, this is the nearest <code>double</code> to the
+     *         exact sum.
+     */
+    public double getNotional (final int symbolId, final int side)
+    {
+        return (symbolId < symbolCapacity) ? getNotionalOf (slotOffset (symbolId) + sideOffset (side)) : 0;
+    }
+
+    /**
+     * @return The sum of the quantity of the symbol's trades within the window.
+     */
+    public long getVolume (final int symbolId)
+    {
+        return (symbolId < symbolCapacity) ? slots.getLong (slotOffset (symbolId) + SLOT_TOTAL + SUM_VOLUME) : 0;
+    }
+
+    /**
+     * @param side
+     *            <code>SIDE_BUY</code> or <code>SIDE_SELL</code>.
+     * @return The sum of the quantity of the symbol's trades of the side within the window.
+     */
+    public long getVolume (final int symbolId, final int side)
+    {
+        int sums = sideOffset (side);
+        return (symbolId < symbolCapacity) ? slots.getLong (slotOffset (symbolId) + sums + SUM_VOLUME) : 0;
+    }
+
+    /**
+     * @return The number of the symbol's trades within the window.
+     */
+    public long getTradeCount (final int symbolId)
+    {
+        return (symbolId < symbolCapacity) ? slots.getLong (slotOffset (symbolId) + SLOT_COUNT) : 0;
+    }
+
+    /**
+     * @return The volume weighted price of the symbol's trades within the window, or 0 if
+     *         there are none.
+     */
+    public double getVolumeWeightedPrice (final int symbolId)
+    {
+        return (symbolId < symbolCapacity) ? getVolumeWeightedPriceOf (slotOffset (symbolId) + SLOT_TOTAL) : 0;
+    }
+
+    /**
+     * @param side
+     *            <code>SIDE_BUY</code> or <code>SIDE_SELL</code>.
+     * @return The volume weighted price of the symbol's trades of the side within the window,
+     *         or 0 if there are none.
+     */
+    public double getVolumeWeightedPrice (final int symbolId, final int side)
+    {
+        int sums = sideOffset (side);
+        return (symbolId < symbolCapacity) ? getVolumeWeightedPriceOf (slotOffset (symbolId) + sums) : 0;
+    }
+
+    /**
+     * Only valid in fixed point mode.
+     * 
+     * @return The volume weighted price of the symbol's trades within the window, rounded
+     *         half up to the nearest tick, or 0 if there are none.
+     */
+    public long getVolumeWeightedTicks (final int symbolId)
+    {
+        checkFixedPoint ();
+        return (symbolId < symbolCapacity) ? getVolumeWeightedTicksOf (slotOffset (symbolId) + SLOT_TOTAL) : 0;
+    }
+
+    /**
+     * Only valid in fixed point mode.
+     * 
+     * @param side
+     *            <code>SIDE_BUY</code> or <code>SIDE_SELL</code>.
+     * @return The volume weighted price of the symbol's trades of the side within the window,
+     *         rounded half up to the nearest tick, or 0 if there are none.
+     */
+    public long getVolumeWeightedTicks (final int symbolId, final int side)
+    {
+        checkFixedPoint ();
+        int sums = sideOffset (side);
+        return (symbolId < symbolCapacity) ? getVolumeWeightedTicksOf (slotOffset (symbolId) + sums) : 0;
+    }
+
+    private double getNotionalOf (final int sums)
+    {
+        if (fixedPoint)
+        {
+            long low = slots.getLong (sums + SUM_NOTIONAL);
+            double ticks = slots.getLong (sums + SUM_NOTIONAL_HIGH) * 0x1p64 + (low >>> 1) * 2.0d + (low & 1);
+            return ticks / FixedPoint.TICKS_PER_UNIT;
+        }
+        return slots.getDouble (sums + SUM_NOTIONAL);
+    }
+
+    private double getVolumeWeightedPriceOf (final int sums)
+    {
+        if (fixedPoint)
+        {
+            return FixedPoint.toPrice (getVolumeWeightedTicksOf (sums));
+        }
+        long volume = slots.getLong (sums + SUM_VOLUME);
+        return (volume == 0) ? 0 : slots.getDouble (sums + SUM_NOTIONAL) / volume;
+    }
+
+    private long getVolumeWeightedTicksOf (final int sums)
+    {
+        long volume = slots.getLong (sums + SUM_VOLUME);
+        return (volume == 0) ? 0
+                : FixedPoint.divideRounded (slots.getLong (sums + SUM_NOTIONAL_HIGH), slots.getLong (sums + SUM_NOTIONAL),
+                                            volume);
+    }
+
+    /**
+     * @return Sequence number of the symbol's oldest trade within the window, or
+     *         <code>NO_TRADE</code>.
+     */
+    public long getOldestTrade (final int symbolId)
+    {
+        return (symbolId < symbolCapacity) ? slots.getLong (slotOffset (symbolId) + SLOT_OLDEST) : NO_TRADE;
+    }
+
+    /**
+     * @return Sequence number of the symbol's newest trade within the window, or
+     *         <code>NO_TRADE</code>.
+     */
+    public long getNewestTrade (final int symbolId)
+    {
+        return (symbolId < symbolCapacity) ? slots.getLong (slotOffset (symbolId) + SLOT_NEWEST) : NO_TRADE;
+    }
+
+    /**
+     * @return Sequence number of the next trade of the same symbol, in time order, or
+     *         <code>NO_TRADE</code>.
+     */
+    public long getNextTrade (final long sequence)
+    {
+        return ring.getLong (tradeOffset (sequence) + TRADE_NEXT);
+    }
+
+    public long getTradeTimestamp (final long sequence)
+    {
+        return ring.getLong (tradeOffset (sequence) + TRADE_TIMESTAMP);
+    }
+
+    public double getTradePrice (final long sequence)
+    {
+        int trade = tradeOffset (sequence);
+        return fixedPoint ? FixedPoint.toPrice (ring.getLong (trade + TRADE_PRICE)) : ring.getDouble (trade + TRADE_PRICE);
+    }
+
+    public int getTradeQuantity (final long sequence)
+    {
+        return ring.getInt (tradeOffset (sequence) + TRADE_QUANTITY);
+    }
+
+    /**
+     * @return The trade's side: <code>SIDE_BUY</code>, <code>SIDE_SELL</code> or
+     *         <code>SIDE_NONE</code>.
+     */
+    public int getTradeSide (final long sequence)
+    {
+        return ring.getInt (tradeOffset (sequence) + TRADE_SIDE);
+    }
+
+    /**
+     * @return Sequence number of the previous trade of the same symbol, in time order, or
+     *         <code>NO_TRADE</code>.
+     */
+    public long getPreviousTrade (final long sequence)
+    {
+        return ring.getLong (tradeOffset (sequence) + TRADE_PREVIOUS);
+    }
+
+    /**
+     * @return The number of trades within the window.
+     */
+    public long getWindowSize ()
+    {
+        return windowSize;
+    }
+
+    /**
+     * @return The direct memory used by the store, in bytes.
+     */
+    public long getMemoryBytes ()
+    {
+        return (slots == null) ? 0 : (long)slots.capacity () + ring.capacity () + (long)buckets.length * 8;
+    }
+
+    @Override
+    public void close ()
+    {
+        slots = null;
+        ring = null;
+        buckets = null;
+        symbolCapacity = 0;
+        ringCapacity = 0;
+        head = 0;
+        tail = 0;
+        windowSize = 0;
+    }
+
+    private void checkFixedPoint ()
+    {
+        if (!fixedPoint)
+        {
+            throw new IllegalStateException ("store is not fixed point");
+        }
+    }
+
+    private void checkOpen ()
+    {
+        if (slots == null)
+        {
+            throw new IllegalStateException ("store is closed");
+        }
+    }
+
+    private static ByteBuffer allocate (final long bytes)
+    {
+        if (bytes > Integer.MAX_VALUE)
+        {
+            throw new IllegalArgumentException ("store too large " + bytes);
+        }
+        return ByteBuffer.allocateDirect ((int)bytes).order (ByteOrder.nativeOrder ());
+    }
+
+    private void clearSlots (final int from, final int to)
+    {
+        for (int symbolId = from; symbolId < to; symbolId++)
+        {
+            int slot = slotOffset (symbolId);
+            clearSums (slot + SLOT_TOTAL);
+            clearSums (slot + SLOT_BUY);
+            clearSums (slot + SLOT_SELL);
+            slots.putLong (slot + SLOT_COUNT, 0);
+            slots.putLong (slot + SLOT_OLDEST, NO_TRADE);
+            slots.putLong (slot + SLOT_NEWEST, NO_TRADE);
+        }
+    }
+
+    /**
+     * Double the ring, copying each trade to its position in the larger ring. As trades are
+     * addressed by sequence number, the pointers between them remain valid.
+     */
+    private void growRing ()
+    {
+        int newCapacity = ringCapacity * 2;
+        ByteBuffer newRing = allocate ((long)newCapacity * TRADE_BYTES);
+        for (long sequence = head; sequence < tail; sequence++)
+        {
+            int from = tradeOffset (sequence);
+            int to = (int)(sequence & (newCapacity - 1)) * TRADE_BYTES;
+            for (int i = 0; i < TRADE_BYTES; i += 8)
+            {
+                newRing.putLong (to + i, ring.getLong (from + i));
+            }
+        }
+        ring = newRing;
+        ringCapacity = newCapacity;
+    }
+
+    /**
+     * Grow the buckets to cover the seconds of the trades within the window, relinking the
+     * trades into the larger buckets.
+     */
+    private void growBuckets ()
+    {
+        int newCapacity = buckets.length;
+        while (newCapacity <= maxTimestamp - minTimestamp && newCapacity < MAX_BUCKET_CAPACITY)
+        {
+            newCapacity *= 2;
+        }
+        buckets = new long[newCapacity];
+        Arrays.fill (buckets, NO_TRADE);
+
+        for (long sequence = head; sequence < tail; sequence++)
+        {
+            int trade = tradeOffset (sequence);
+            if (ring.getInt (trade + TRADE_SYMBOL) != EXPIRED)
+            {
+                int bucket = bucketOf (ring.getLong (trade + TRADE_TIMESTAMP));
+                ring.putLong (trade + TRADE_BUCKET_NEXT, buckets[bucket]);
+                buckets[bucket] = sequence;
+            }
+        }
+    }
+
+    private int bucketOf (final long timestamp)
+    {
+        return (int)(timestamp & (buckets.length - 1));
+    }
+
+    /**
+     * @return Offset within a slot of the sums of a side.
+     */
+    private static int sideOffset (final int side)
+    {
+        switch (side)
+        {
+            case SIDE_BUY:
+                return SLOT_BUY;
+            case SIDE_SELL:
+                return SLOT_SELL;
+            default:
+                throw new IllegalArgumentException ("invalid side " + side);
+        }
+    }
+
+    private static int slotOffset (final int symbolId)
+    {
+        return symbolId * SLOT_BYTES;
+    }
+
+    private int tradeOffset (final long sequence)
+    {
+        return (int)(sequence & (ringCapacity - 1)) * TRADE_BYTES;
+    }
+}
@@ -0,0 +1,168 @@
+package com.jpmorgan.exercise.window;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns each stock identifier a dense integer identifier, starting from 0, so that
+ * per-stock state can be held in arrays rather than maps. Identifiers are matched
+ * ignoring case.
+ * 
+ * Note that the table is not thread-safe.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public class SymbolTable
+{
+
+    private final Map<String, Integer> ids     = new HashMap<String, Integer> ();
+
+    private final List<String>         symbols = new ArrayList<String> ();
+
+    /**
+     * Upper case ASCII bytes of each identifier, indexed by symbol id.
+     */
+    private byte[][]                   symbolBytes = new byte[0][];
+
+    /**
+     * Open addressing hash table of symbol id + 1, keyed by the identifier bytes; 0 for an
+     * empty slot. The length is a power of 2, at least twice the number of identifiers.
+     */
+    private int[]                      byteSlots   = new int[16];
+
+    /**
+     * @param stockIdentifier
+     *            Identifier to add, if not already in the table.
+     * @return The identifier's symbol id.
+     */
+    public int add (final String stockIdentifier)
+    {
+        String symbol = stockIdentifier.toUpperCase ();
+        Integer id = ids.get (symbol);
+        if (id == null)
+        {
+            id = symbols.size ();
+            ids.put (symbol, id);
+            symbols.add (symbol);
+
+            byte[] bytes = symbol.getBytes (StandardCharsets.US_ASCII);
+            symbolBytes = Arrays.copyOf (symbolBytes, id + 1);
+            symbolBytes[id] = bytes;
+            if (2 * symbols.size () > byteSlots.length)
+            {
+                byteSlots = new int[byteSlots.length * 2];
+                for (int i = 0; i < symbolBytes.length; i++)
+                {
+                    insertBytes (i);
+                }
+            }
+            else
+            {
+                insertBytes (id);
+            }
+        }
+        return id;
+    }
+
+    /**
+     * @param stockIdentifier
+     *            Identifier to look up.
+     * @return The identifier's symbol id, or -1 if it's not in the table.
+     */
+    public int idOf (final String stockIdentifier)
+    {
+        Integer id = ids.get (stockIdentifier.toUpperCase ());
+        return (id == null) ? -1 : id;
+    }
+
+    /**
+     * @param buffer
+     *            Buffer holding the identifier as ASCII bytes.
+     * @param offset
+     *            Absolute position of the identifier in the buffer.
+     * @param length
+     *            Length of the identifier.
+     * @return The identifier's symbol id, or -1 if it's not in the table.
+     */
+    public int idOf (final ByteBuffer buffer, final int offset, final int length)
+    {
+        int hash = 0;
+        for (int i = 0; i < length; i++)
+        {
+            hash = 31 * hash + upperCase (buffer.get (offset + i));
+        }
+
+        int mask = byteSlots.length - 1;
+        for (int slot = mix (hash) & mask;; slot = (slot + 1) & mask)
+        {
+            int entry = byteSlots[slot];
+            if (entry == 0)
+            {
+                return -1;
+            }
+
+            byte[] bytes = symbolBytes[entry - 1];
+            if (bytes.length == length)
+            {
+                int i = 0;
+                while (i < length && bytes[i] == upperCase (buffer.get (offset + i)))
+                {
+                    i++;
+                }
+                if (i == length)
+                {
+                    return entry - 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param id
+     *            A symbol id.
+     * @return The upper case stock identifier for the symbol id.
+     */
+    public String symbolOf (final int id)
+    {
+        return symbols.get (id);
+    }
+
+    public int size ()
+    {
+        return symbols.size ();
+    }
+
+    private void insertBytes (final int id)
+    {
+        byte[] bytes = symbolBytes[id];
+        int hash = 0;
+        for (byte b : bytes)
+        {
+            hash = 31 * hash + b;
+        }
+
+        int mask = byteSlots.length - 1;
+        int slot = mix (hash) & mask;
+        while (byteSlots[slot] != 0)
+        {
+            slot = (slot + 1) & mask;
+        }
+        byteSlots[slot] = id + 1;
+    }
+
+    private static int mix (final int hash)
+    {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static byte upperCase (final byte b)
+    {
+        return (b >= 'a' && b <= 'z') ? (byte)(b - ('a' - 'A')) : b;
+    }
+}
@@ -0,0 +1,63 @@
+package com.jpmorgan.exercise.window;
+
+/**
+ * Statistic of the trades of each symbol within the window held by an
+ * <code>OffHeapWindowStore</code>, kept up to date as trades are added to and removed from
+ * the window, rather than recalculated from the trades.
+ * 
+ * Implementations hold their own state for each symbol, indexed by symbol id, and should
+ * update it in constant time. Where the statistic depends on the order of the trades, the
+ * trade's neighbours in its symbol's chain, which is in time order, are available from the
+ * store.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public interface WindowAnalytic
+{
+    /**
+     * @return Name of the statistic, e.g. "TWAP".
+     */
+    public String getName ();
+
+    /**
+     * Called after a trade has been added to the window, and linked into its symbol's chain.
+     * 
+     * @param store
+     *            The store holding the window.
+     * @param symbolId
+     *            The symbol id of the trade.
+     * @param sequence
+     *            The sequence number of the trade.
+     */
+    public void tradeAdded (OffHeapWindowStore store, int symbolId, long sequence);
+
+    /**
+     * Called before a trade is removed from the window, while it's still linked into its
+     * symbol's chain, and counted in its symbol's trade count.
+     * 
+     * @param store
+     *            The store holding the window.
+     * @param symbolId
+     *            The symbol id of the trade.
+     * @param sequence
+     *            The sequence number of the trade.
+     */
+    public void tradeRemoved (OffHeapWindowStore store, int symbolId, long sequence);
+
+    /**
+     * Clear the state for every symbol, as if no trade had been added, before the statistic
+     * is rebuilt from the trades in a new window.
+     */
+    public void reset ();
+
+    /**
+     * @param store
+     *            The store holding the window.
+     * @param symbolId
+     *            The symbol id.
+     * @return The value of the statistic for the symbol's trades within the window, or 0 if
+     *         there are none.
+     */
+    public double getValue (OffHeapWindowStore store, int symbolId);
+}
@@ -0,0 +1,19 @@
+package com.jpmorgan.exercise.window;
+
+/**
+ * Listener notified when trades leave the window held by an <code>OffHeapWindowStore</code>,
+ * so that state derived from the window, such as indices, can be kept up to date.
+ * 
+ * @author Tony Cruickshank
+ *
+ */
+public interface WindowListener
+{
+    /**
+     * Called after a trade has been expired, and removed from the running sums of its symbol.
+     * 
+     * @param symbolId
+     *            The symbol id of the expired trade.
+     */
+    public void tradeExpired (int symbolId);
+}
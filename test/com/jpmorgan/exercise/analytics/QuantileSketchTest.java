@@ -0,0 +1,98 @@
+package com.jpmorgan.exercise.analytics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class QuantileSketchTest
+{
+
+    @Test
+    public void testEmpty ()
+    {
+        QuantileSketch sketch = new QuantileSketch ();
+
+        assertTrue (sketch.isEmpty ());
+        assertEquals (0.0d, sketch.getMedian (), 0.0d);
+        assertEquals (0.0d, sketch.getMin (), 0.0d);
+        assertEquals (0.0d, sketch.getMax (), 0.0d);
+    }
+
+    @Test
+    public void testExactWhenSmall ()
+    {
+        QuantileSketch sketch = new QuantileSketch ();
+        for (int i = 1; i <= 99; i++)
+        {
+            sketch.update (i);
+        }
+
+        assertEquals (99, sketch.getCount ());
+        assertEquals (1.0d, sketch.getMin (), 0.0d);
+        assertEquals (99.0d, sketch.getMax (), 0.0d);
+        assertEquals (50.0d, sketch.getMedian (), 0.0d);
+    }
+
+    @Test
+    public void testBoundedMemoryAndRankError ()
+    {
+        QuantileSketch sketch = new QuantileSketch ();
+        Random random = new Random (1);
+        int n = 1000000;
+        for (int i = 0; i < n; i++)
+        {
+            sketch.update (random.nextDouble ());
+        }
+
+        assertTrue (sketch.getRetainedCount () < 1000);
+        assertEquals (0.05d, sketch.getQuantile (0.05), 0.02d);
+        assertEquals (0.5d, sketch.getMedian (), 0.02d);
+        assertEquals (0.95d, sketch.getQuantile (0.95), 0.02d);
+    }
+
+    @Test
+    public void testResetMatchesNewSketch ()
+    {
+        QuantileSketch reused = new QuantileSketch ();
+        Random random = new Random (1);
+        for (int i = 0; i < 100000; i++)
+        {
+            reused.update (random.nextDouble () * 1000);
+        }
+        reused.reset ();
+        assertTrue (reused.isEmpty ());
+
+        QuantileSketch fresh = new QuantileSketch ();
+        for (int i = 0; i < 10000; i++)
+        {
+            double value = random.nextDouble ();
+            reused.update (value);
+            fresh.update (value);
+        }
+        assertEquals (fresh.getRetainedCount (), reused.getRetainedCount ());
+        assertEquals (fresh.getMedian (), reused.getMedian (), 0.0d);
+        assertEquals (fresh.getMax (), reused.getMax (), 0.0d);
+    }
+
+    @Test
+    public void testMerge ()
+    {
+        QuantileSketch low = new QuantileSketch ();
+        QuantileSketch high = new QuantileSketch ();
+        for (int i = 0; i < 100000; i++)
+        {
+            low.update (i % 1000);
+            high.update (1000 + i % 1000);
+        }
+
+        low.merge (high);
+
+        assertEquals (200000, low.getCount ());
+        assertEquals (0.0d, low.getMin (), 0.0d);
+        assertEquals (1999.0d, low.getMax (), 0.0d);
+        assertEquals (1000.0d, low.getMedian (), 40.0d);
+    }
+}
@@ -0,0 +1,97 @@
+package com.jpmorgan.exercise.analytics;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import com.jpmorgan.exercise.window.OffHeapWindowStore;
+
+public class RealizedVolatilityAnalyticTest
+{
+
+    @Test
+    public void testRealizedVolatility ()
+    {
+        try (OffHeapWindowStore store = new OffHeapWindowStore (1))
+        {
+            RealizedVolatilityAnalytic volatility = new RealizedVolatilityAnalytic ();
+            store.addAnalytic (volatility);
+
+            store.record (0, 10, 1, 100);
+            assertEquals (0.0d, volatility.getValue (store, 0), 0.0d);
+
+            store.record (0, 12, 1, 100 * Math.E);
+            assertEquals (1.0d, volatility.getValue (store, 0), 1e-12d);
+
+            /*
+             * A late trade between the two.
+             */
+            store.record (0, 11, 1, 100);
+            assertEquals (1.0d, volatility.getValue (store, 0), 1e-12d);
+
+            store.record (0, 13, 1, 100);
+            assertEquals (Math.sqrt (2), volatility.getValue (store, 0), 1e-12d);
+
+            store.expire (12);
+            assertEquals (0.0d, volatility.getValue (store, 0), 0.0d);
+        }
+    }
+
+    @Test
+    public void testAgainstRecalculation ()
+    {
+        SplittableRandom random = new SplittableRandom (5);
+        try (OffHeapWindowStore store = new OffHeapWindowStore (1))
+        {
+            RealizedVolatilityAnalytic volatility = new RealizedVolatilityAnalytic ();
+            TradeCountAnalytic count = new TradeCountAnalytic ();
+            LastPriceAnalytic lastPrice = new LastPriceAnalytic ();
+            NotionalAnalytic notional = new NotionalAnalytic ();
+            store.addAnalytic (volatility);
+            store.addAnalytic (count);
+            store.addAnalytic (lastPrice);
+            store.addAnalytic (notional);
+
+            /*
+             * Trades keyed by time; times are distinct, so the order is unambiguous.
+             */
+            TreeMap<Long, Double> trades = new TreeMap<Long, Double> ();
+            long now = 0;
+            for (int i = 0; i < 5000; i++)
+            {
+                now += 3;
+                store.expire (now - 100);
+                trades.headMap (now - 100, true).clear ();
+
+                long timestamp = now - random.nextInt (30) * 3 + 1;
+                if (trades.containsKey (timestamp) || timestamp <= now - 100)
+                {
+                    continue;
+                }
+                double price = 50 + random.nextInt (100);
+                store.record (0, timestamp, 2, price);
+                trades.put (timestamp, price);
+
+                double sum = 0;
+                double notionalSum = 0;
+                Double previous = null;
+                for (double tradePrice : trades.values ())
+                {
+                    if (previous != null)
+                    {
+                        sum += Math.pow (Math.log (tradePrice / previous), 2);
+                    }
+                    notionalSum += tradePrice * 2;
+                    previous = tradePrice;
+                }
+                assertEquals (Math.sqrt (sum), volatility.getValue (store, 0), 1e-9d);
+                assertEquals (trades.size (), count.getValue (store, 0), 0.0d);
+                assertEquals (trades.lastEntry ().getValue (), lastPrice.getValue (store, 0), 0.0d);
+                assertEquals (notionalSum, notional.getValue (store, 0), 1e-6d);
+            }
+        }
+    }
+}
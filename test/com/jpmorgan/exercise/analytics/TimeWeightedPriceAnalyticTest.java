@@ -0,0 +1,43 @@
+package com.jpmorgan.exercise.analytics;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.jpmorgan.exercise.window.OffHeapWindowStore;
+
+public class TimeWeightedPriceAnalyticTest
+{
+
+    @Test
+    public void testTimeWeightedPrice ()
+    {
+        try (OffHeapWindowStore store = new OffHeapWindowStore (1))
+        {
+            TimeWeightedPriceAnalytic twap = new TimeWeightedPriceAnalytic ();
+            store.addAnalytic (twap);
+
+            store.record (0, 10, 5, 100);
+            assertEquals (100.0d, twap.getValue (store, 0), 0.0d);
+
+            /*
+             * Trades at the same time are weighted equally.
+             */
+            store.record (0, 10, 1, 50);
+            assertEquals (75.0d, twap.getValue (store, 0), 0.0d);
+
+            /*
+             * 100 and 50 at 10 (the second has the weight), then 80 from 20 to 30.
+             */
+            store.record (0, 30, 1, 40);
+            store.record (0, 20, 1, 80);
+            assertEquals ((50.0d * 10 + 80.0d * 10) / 20, twap.getValue (store, 0), 0.0d);
+
+            store.expire (10);
+            assertEquals (80.0d, twap.getValue (store, 0), 0.0d);
+
+            store.expire (30);
+            assertEquals (0.0d, twap.getValue (store, 0), 0.0d);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.jpmorgan.exercise.analytics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class WindowedQuantileSketchTest
+{
+
+    @Test
+    public void testBucketSpan ()
+    {
+        assertEquals (15, new WindowedQuantileSketch (300).getBucketSpan ());
+        assertEquals (1, new WindowedQuantileSketch (5).getBucketSpan ());
+        assertEquals (2, new WindowedQuantileSketch (21).getBucketSpan ());
+    }
+
+    @Test
+    public void testValuesRetiredWithWindow ()
+    {
+        WindowedQuantileSketch sketch = new WindowedQuantileSketch (300);
+
+        sketch.update (990, 10);
+        sketch.update (1100, 20);
+        sketch.update (1289, 30);
+
+        QuantileSketch distribution = sketch.snapshot (1289);
+        assertEquals (3, distribution.getCount ());
+        assertEquals (10.0d, distribution.getMin (), 0.0d);
+        assertEquals (30.0d, distribution.getMax (), 0.0d);
+        assertEquals (20.0d, distribution.getMedian (), 0.0d);
+
+        /*
+         * The first value's bucket, 990 to 1004, is partly within the window, so still counts.
+         */
+        assertEquals (3, sketch.snapshot (1300).getCount ());
+
+        /*
+         * First value's bucket now outside the window.
+         */
+        distribution = sketch.snapshot (1304);
+        assertEquals (2, distribution.getCount ());
+        assertEquals (20.0d, distribution.getMin (), 0.0d);
+
+        assertTrue (sketch.snapshot (1600).isEmpty ());
+    }
+
+    @Test
+    public void testSlotReusedForLaterBucket ()
+    {
+        WindowedQuantileSketch sketch = new WindowedQuantileSketch (300);
+
+        /*
+         * The ring has 21 buckets of 15 seconds, so the slot is reused 315 seconds later.
+         */
+        sketch.update (990, 10);
+        sketch.update (1305, 40);
+
+        QuantileSketch distribution = sketch.snapshot (1305);
+        assertEquals (1, distribution.getCount ());
+        assertEquals (40.0d, distribution.getMin (), 0.0d);
+
+        /*
+         * A value for the retired bucket is ignored.
+         */
+        sketch.update (990, 10);
+        assertEquals (1, sketch.snapshot (1305).getCount ());
+    }
+
+    @Test
+    public void testMergedKeptUpToDate ()
+    {
+        WindowedQuantileSketch sketch = new WindowedQuantileSketch (300);
+
+        sketch.update (990, 10);
+        sketch.update (1005, 20);
+        assertEquals (2, sketch.snapshot (1005).getCount ());
+
+        /*
+         * Values added since the last merge, for the same time, are included.
+         */
+        sketch.update (1005, 30);
+        assertEquals (3, sketch.snapshot (1005).getCount ());
+        assertEquals (30.0d, sketch.snapshot (1005).getMax (), 0.0d);
+
+        /*
+         * Retiring a bucket within the merged window, for a value ahead of the time, drops
+         * its values.
+         */
+        sketch.update (1305, 40);
+        QuantileSketch distribution = sketch.snapshot (1005);
+        assertEquals (3, distribution.getCount ());
+        assertEquals (20.0d, distribution.getMin (), 0.0d);
+        assertEquals (40.0d, distribution.getMax (), 0.0d);
+    }
+
+    @Test
+    public void testMemoryBoundedByBuckets ()
+    {
+        WindowedQuantileSketch sketch = new WindowedQuantileSketch (300);
+
+        for (long second = 0; second < 600; second++)
+        {
+            for (int i = 0; i < 1000; i++)
+            {
+                sketch.update (second, i);
+            }
+        }
+
+        QuantileSketch distribution = sketch.snapshot (599);
+        assertEquals (300000, distribution.getCount ());
+        assertTrue (distribution.getRetainedCount () < 3 * QuantileSketch.DEFAULT_K);
+    }
+}
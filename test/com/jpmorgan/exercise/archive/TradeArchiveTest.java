@@ -0,0 +1,138 @@
+package com.jpmorgan.exercise.archive;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+import com.jpmorgan.exercise.market.TradeType;
+
+public class TradeArchiveTest
+{
+
+    private static Path createArchive () throws Exception
+    {
+        Path file = Files.createTempFile ("trades", ".tarc");
+        file.toFile ().deleteOnExit ();
+        return file;
+    }
+
+    @Test
+    public void testRoundTrip () throws Exception
+    {
+        Path file = createArchive ();
+        SplittableRandom random = new SplittableRandom (42);
+
+        Map<String, List<String>> expected = new HashMap<String, List<String>> ();
+        try (TradeArchiveWriter writer = new TradeArchiveWriter (file, 100))
+        {
+            long timestamp = 1000;
+            double price = 100;
+            for (int i = 0; i < 1000; i++)
+            {
+                timestamp += random.nextInt (3);
+                price = Math.max (0.01, price + (random.nextInt (21) - 10) / 100.0d);
+                int quantity = 1 + random.nextInt (500);
+                TradeType type = (i % 7 == 0) ? null : (i % 2 == 0) ? TradeType.BUY : TradeType.SELL;
+                String symbol = (i % 3 == 0) ? "TEA" : "GIN";
+                writer.append (symbol, timestamp, quantity, price, type);
+                expected.computeIfAbsent (symbol, key -> new ArrayList<String> ())
+                        .add (timestamp + "," + quantity + "," + price + "," + type);
+            }
+        }
+
+        try (TradeArchiveReader reader = new TradeArchiveReader (file))
+        {
+            assertEquals (1000, reader.getTradeCount ());
+            assertEquals (11, reader.getBlockCount ());
+
+            /*
+             * Trades are visited stock by stock, in the order they were archived for each stock.
+             */
+            Map<String, List<String>> actual = new HashMap<String, List<String>> ();
+            reader.forEachTrade (Long.MIN_VALUE, Long.MAX_VALUE, (symbol, ts, qty, price, type) -> {
+                actual.computeIfAbsent (symbol, key -> new ArrayList<String> ())
+                      .add (ts + "," + qty + "," + price + "," + type);
+            });
+
+            assertEquals (expected, actual);
+        }
+    }
+
+    @Test
+    public void testVolumeWeightedStockPrice () throws Exception
+    {
+        Path file = createArchive ();
+        try (TradeArchiveWriter writer = new TradeArchiveWriter (file, 2))
+        {
+            writer.append ("POP", 10, 1, 100, TradeType.BUY);
+            writer.append ("POP", 20, 3, 50, TradeType.SELL);
+            writer.append ("POP", 30, 2, 20, TradeType.BUY);
+            writer.append ("POP", 40, 2, 10, TradeType.BUY);
+            writer.append ("ALE", 30, 4, 25, TradeType.SELL);
+        }
+
+        try (TradeArchiveReader reader = new TradeArchiveReader (file))
+        {
+            assertEquals (62.5d, reader.calculateVolumeWeightedStockPrice ("pop", 0, 20), 0.0d);
+            assertEquals (38.0d, reader.calculateVolumeWeightedStockPrice ("POP", 10, 30), 0.0d);
+            assertEquals (15.0d, reader.calculateVolumeWeightedStockPrice ("POP", 20, 40), 0.0d);
+            assertEquals (0.0d, reader.calculateVolumeWeightedStockPrice ("POP", 40, 100), 0.0d);
+            assertEquals (0.0d, reader.calculateVolumeWeightedStockPrice ("TEA", 0, 100), 0.0d);
+
+            assertEquals (Math.sqrt (20 * 25), reader.calculateGBCE (20, 30), 1e-9d);
+            assertEquals (10.0d, reader.calculateGBCE (30, 40), 0.0d);
+            assertEquals (0.0d, reader.calculateGBCE (100, 200), 0.0d);
+        }
+    }
+
+    @Test
+    public void testSkipsBlocksOutsideWindow () throws Exception
+    {
+        Path file = createArchive ();
+        try (TradeArchiveWriter writer = new TradeArchiveWriter (file, 10))
+        {
+            for (int i = 0; i < 100; i++)
+            {
+                writer.append ("JOE", i, 1, i, TradeType.BUY);
+            }
+        }
+
+        try (TradeArchiveReader reader = new TradeArchiveReader (file))
+        {
+            assertEquals (10, reader.getBlockCount ());
+
+            /*
+             * Trades 50 to 59 are all in the sixth block.
+             */
+            assertEquals (54.5d, reader.calculateVolumeWeightedStockPrice ("JOE", 49, 59), 0.0d);
+            assertEquals (1, reader.getDecodedBlockCount ());
+        }
+    }
+
+    @Test
+    public void testCompression () throws Exception
+    {
+        Path file = createArchive ();
+        try (TradeArchiveWriter writer = new TradeArchiveWriter (file))
+        {
+            for (int i = 0; i < 10000; i++)
+            {
+                writer.append ("TEA", 1000 + i / 10, 100, 99.5 + (i % 4) * 0.25, TradeType.BUY);
+            }
+        }
+
+        /*
+         * Uncompressed, each trade is at least 8 + 4 + 8 + 1 bytes.
+         */
+        assertTrue (Files.size (file) * 5 < 10000 * 21);
+    }
+}
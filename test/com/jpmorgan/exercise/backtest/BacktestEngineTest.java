@@ -0,0 +1,141 @@
+package com.jpmorgan.exercise.backtest;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import com.jpmorgan.exercise.archive.TradeArchiveReader;
+import com.jpmorgan.exercise.archive.TradeArchiveWriter;
+import com.jpmorgan.exercise.exception.InvalidParameterException;
+import com.jpmorgan.exercise.index.IndexDefinition;
+import com.jpmorgan.exercise.index.IndexType;
+import com.jpmorgan.exercise.market.PriceArithmetic;
+import com.jpmorgan.exercise.market.TradeType;
+import com.jpmorgan.exercise.stock.CommonStockData;
+
+public class BacktestEngineTest
+{
+
+    private static final String[] STOCKS = { "TEA", "POP", "ALE", "GIN", "JOE" };
+
+    private static Path createArchive () throws Exception
+    {
+        Path file = Files.createTempFile ("trades", ".tarc");
+        file.toFile ().deleteOnExit ();
+
+        SplittableRandom random = new SplittableRandom (7);
+        try (TradeArchiveWriter writer = new TradeArchiveWriter (file, 64))
+        {
+            long timestamp = 1000;
+            for (int i = 0; i < 5000; i++)
+            {
+                timestamp += random.nextInt (2);
+                writer.append (STOCKS[random.nextInt (STOCKS.length)],
+                               timestamp,
+                               1 + random.nextInt (100),
+                               50 + random.nextInt (5000) / 100.0d,
+                               random.nextBoolean () ? TradeType.BUY : TradeType.SELL);
+            }
+        }
+        return file;
+    }
+
+    @Test
+    public void testRunsMatchArchive () throws Exception
+    {
+        Path file = createArchive ();
+        try (TradeArchiveReader reader = new TradeArchiveReader (file))
+        {
+            BacktestData data = BacktestData.fromArchive (reader, 999, 3999);
+            assertEquals (reader.getTradeCount (), data.getTradeCount ());
+
+            BacktestRun shortHorizon = new BacktestRun ("short");
+            shortHorizon.setHorizonSeconds (60);
+            shortHorizon.setSampleIntervalSeconds (30);
+            shortHorizon.addIndex (IndexDefinition.equallyWeighted ("DRINKS", IndexType.ARITHMETIC, "TEA", "POP", "ALE"));
+
+            BacktestRun longHorizon = new BacktestRun ("long");
+            longHorizon.setSampleIntervalSeconds (45);
+
+            BacktestRun fixedPoint = new BacktestRun ("fixed");
+            fixedPoint.setPriceArithmetic (PriceArithmetic.FIXED_POINT);
+
+            List<BacktestResult> results = new BacktestEngine (new ForkJoinPool (3))
+                            .run (data, Arrays.asList (shortHorizon, longHorizon, fixedPoint));
+
+            assertEquals (3, results.size ());
+            assertEquals ("short", results.get (0).getName ());
+            assertEquals (100, results.get (0).getSampleCount ());
+            assertEquals (67, results.get (1).getSampleCount ());
+            assertEquals (3999, results.get (1).getSampleTime (66));
+
+            /*
+             * The archive calculates the VWSP/GBCE over historical windows independently of
+             * the market, so each sample is checked against it.
+             */
+            long[] horizons = { 60, 300, 300 };
+            for (int run = 0; run < 3; run++)
+            {
+                BacktestResult result = results.get (run);
+                assertEquals (data.getTradeCount (), result.getTradeCount ());
+                for (int sample = 0; sample < result.getSampleCount (); sample++)
+                {
+                    long to = result.getSampleTime (sample);
+                    long from = to - horizons[run];
+                    for (String stock : STOCKS)
+                    {
+                        assertEquals (reader.calculateVolumeWeightedStockPrice (stock, from, to),
+                                      result.getVolumeWeightedStockPrice (stock, sample),
+                                      1e-6);
+                    }
+                    assertEquals (reader.calculateGBCE (from, to), result.getGBCE (sample), 1e-6);
+                }
+            }
+
+            BacktestResult result = results.get (0);
+            for (int sample = 0; sample < result.getSampleCount (); sample++)
+            {
+                double expected = (result.getVolumeWeightedStockPrice ("TEA", sample)
+                                   + result.getVolumeWeightedStockPrice ("POP", sample)
+                                   + result.getVolumeWeightedStockPrice ("ALE", sample)) / 3;
+                assertEquals (expected, result.getIndex ("drinks", sample), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testSkipsStocksOutsideUniverse () throws Exception
+    {
+        Path file = createArchive ();
+        try (TradeArchiveReader reader = new TradeArchiveReader (file))
+        {
+            BacktestData data = BacktestData.fromArchive (reader, 2000, 2100);
+
+            BacktestRun run = new BacktestRun ("tea");
+            run.setUniverse (Arrays.asList (new CommonStockData ("TEA", 0, 100)));
+            run.setSampleIntervalSeconds (100);
+
+            BacktestResult result = BacktestEngine.replay (data, run);
+            assertEquals (1, result.getSampleCount ());
+            assertEquals (Arrays.asList ("TEA"), result.getStockIdentifiers ());
+            assertEquals (reader.calculateVolumeWeightedStockPrice ("TEA", 2000, 2100),
+                          result.getGBCE (0),
+                          1e-9);
+        }
+    }
+
+    @Test (expected = InvalidParameterException.class)
+    public void testInvalidSampleInterval () throws Exception
+    {
+        BacktestRun run = new BacktestRun ("invalid");
+        run.setSampleIntervalSeconds (0);
+        new BacktestEngine ().run (new BacktestData (0, 10, Arrays.asList ()), Arrays.asList (run));
+    }
+}
@@ -0,0 +1,32 @@
+package com.jpmorgan.exercise.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class QueryCacheTest
+{
+
+    @Test
+    public void testVersion ()
+    {
+        QueryCache cache = new QueryCache ();
+
+        assertTrue (Double.isNaN (cache.get (1)));
+        cache.put (1, 62.5);
+        assertEquals (62.5d, cache.get (1), 0.0d);
+
+        /*
+         * A later version misses, until its result replaces the earlier one.
+         */
+        assertTrue (Double.isNaN (cache.get (2)));
+        cache.put (2, 0.4);
+        assertTrue (Double.isNaN (cache.get (1)));
+        assertEquals (0.4d, cache.get (2), 0.0d);
+
+        assertEquals (2, cache.getHitCount ());
+        assertEquals (3, cache.getMissCount ());
+        assertEquals (0.4d, cache.getHitRate (), 0.0d);
+    }
+}
@@ -0,0 +1,75 @@
+package com.jpmorgan.exercise.dedup;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class RotatingBloomFilterTest
+{
+
+    @Test
+    public void testNoFalseNegatives ()
+    {
+        RotatingBloomFilter filter = new RotatingBloomFilter (300, 10000, 0.01);
+        for (int i = 0; i < 10000; i++)
+        {
+            filter.add (RotatingBloomFilter.hash ("ID-" + i), 1000 + i / 100);
+        }
+        for (int i = 0; i < 10000; i++)
+        {
+            assertTrue (filter.mightContain (RotatingBloomFilter.hash ("ID-" + i), 1100));
+        }
+    }
+
+    @Test
+    public void testFalsePositiveRate ()
+    {
+        RotatingBloomFilter filter = new RotatingBloomFilter (300, 10000, 0.01);
+        assertEquals (1 << 17, filter.getBitCount ());
+        for (int i = 0; i < 10000; i++)
+        {
+            filter.add (RotatingBloomFilter.hash ("ID-" + i), 1000);
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 100000; i++)
+        {
+            if (filter.mightContain (RotatingBloomFilter.hash ("OTHER-" + i), 1000))
+            {
+                falsePositives++;
+            }
+        }
+
+        /*
+         * The filter is rounded up to a power of 2 bits, so beats the target rate.
+         */
+        assertTrue (falsePositives < 1000);
+    }
+
+    @Test
+    public void testRetention ()
+    {
+        RotatingBloomFilter filter = new RotatingBloomFilter (10, 100, 0.01);
+        long hash = RotatingBloomFilter.hash ("ID");
+
+        filter.add (hash, 19);
+
+        /*
+         * Kept for at least the retention, and at most twice the retention.
+         */
+        assertTrue (filter.mightContain (hash, 29));
+        assertFalse (filter.mightContain (hash, 30));
+
+        filter.add (hash, 30);
+        assertTrue (filter.mightContain (hash, 30));
+        assertFalse (filter.mightContain (hash, 60));
+    }
+
+    @Test (expected = IllegalArgumentException.class)
+    public void testInvalidRate ()
+    {
+        new RotatingBloomFilter (10, 100, 1);
+    }
+}
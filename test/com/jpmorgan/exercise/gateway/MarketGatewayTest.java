@@ -0,0 +1,281 @@
+package com.jpmorgan.exercise.gateway;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import com.jpmorgan.exercise.environment.ArtificialClock;
+import com.jpmorgan.exercise.environment.Environment;
+import com.jpmorgan.exercise.exception.InvalidParameterException;
+import com.jpmorgan.exercise.exception.QueryRejectedException;
+import com.jpmorgan.exercise.market.Market;
+import com.jpmorgan.exercise.market.MarketConfiguration;
+
+import static com.jpmorgan.exercise.market.TradeType.*;
+
+public class MarketGatewayTest
+{
+
+    @Test
+    public void testTradesBeforeQueries () throws Exception
+    {
+        try (Market market = new Market ();
+             MarketGateway gateway = new MarketGateway (market, new GatewayConfiguration ()))
+        {
+            assertTrue (gateway.recordTrade ("POP", 1, 100, BUY, null));
+            assertTrue (gateway.recordTrade ("POP", 3, 50, SELL, null));
+            assertTrue (gateway.recordTrade ("XXX", 3, 50, SELL, null));
+
+            assertEquals (62.5d, gateway.calculateVolumeWeightedStockPrice ("dashboard", "POP"), 0.0d);
+            assertEquals (62.5d, gateway.calculateGBCE ("dashboard"), 0.0d);
+            assertEquals (1, gateway.getFailedTradeCount ());
+            assertEquals (0, gateway.getShedQueryCount ());
+        }
+    }
+
+    @Test (expected = InvalidParameterException.class)
+    public void testInvalidStock () throws Exception
+    {
+        try (Market market = new Market ();
+             MarketGateway gateway = new MarketGateway (market, new GatewayConfiguration ()))
+        {
+            gateway.calculateVolumeWeightedStockPrice ("dashboard", "XXX");
+        }
+    }
+
+    @Test
+    public void testFailedTradeKeepsWorker () throws Exception
+    {
+        try (Market market = new Market ())
+        {
+            market.addTradeListener (trade -> {
+                if (trade.getQuantity () == 13)
+                {
+                    throw new IllegalStateException ("listener failed");
+                }
+            });
+
+            try (MarketGateway gateway = new MarketGateway (market, new GatewayConfiguration ()))
+            {
+                assertTrue (gateway.recordTrade ("POP", 13, 100, BUY, null));
+                assertTrue (gateway.recordTrade ("POP", 1, 100, BUY, null));
+                assertEquals (100.0d, gateway.calculateVolumeWeightedStockPrice ("dashboard", "POP"), 0.0d);
+                assertEquals (1, gateway.getFailedTradeCount ());
+            }
+        }
+    }
+
+    @Test
+    public void testQueryTimeout () throws Exception
+    {
+        CountDownLatch entered = new CountDownLatch (1);
+        CountDownLatch release = new CountDownLatch (1);
+
+        GatewayConfiguration configuration = new GatewayConfiguration ();
+        configuration.setQueryTimeoutMillis (50);
+
+        try (Market market = new Market ())
+        {
+            market.addTradeListener (trade -> {
+                entered.countDown ();
+                try
+                {
+                    release.await ();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread ().interrupt ();
+                }
+            });
+
+            try (MarketGateway gateway = new MarketGateway (market, configuration))
+            {
+                gateway.recordTrade ("POP", 1, 100, BUY, null);
+                entered.await ();
+                try
+                {
+                    gateway.calculateGBCE ("dashboard");
+                    fail ();
+                }
+                catch (QueryRejectedException e)
+                {
+                    assertEquals (1, gateway.getTimedOutQueryCount ());
+                }
+                release.countDown ();
+
+                assertEquals (100.0d, gateway.calculateGBCE ("dashboard"), 0.0d);
+            }
+        }
+    }
+
+    @Test
+    public void testPublishesWhileIdle () throws Exception
+    {
+        ArtificialClock clock = new ArtificialClock (1000);
+        MarketConfiguration marketConfiguration = new MarketConfiguration ();
+        marketConfiguration.setEnvironment (new Environment (clock));
+        marketConfiguration.setHorizonSeconds (10);
+
+        GatewayConfiguration configuration = new GatewayConfiguration ();
+        configuration.setPublishIntervalMillis (5);
+
+        try (Market market = new Market (marketConfiguration);
+             MarketGateway gateway = new MarketGateway (market, configuration))
+        {
+            gateway.recordTrade ("POP", 1, 100, BUY, null);
+            assertEquals (100.0d, gateway.calculateVolumeWeightedStockPrice ("dashboard", "POP"), 0.0d);
+            awaitPublished (gateway, 100.0d);
+
+            /*
+             * The trade leaves the horizon without another trade, and the idle worker
+             * publishes the change.
+             */
+            clock.tick (10);
+            awaitPublished (gateway, 0.0d);
+        }
+    }
+
+    @Test
+    public void testIdleClientsEvicted () throws Exception
+    {
+        GatewayConfiguration configuration = new GatewayConfiguration ();
+        configuration.setClientQueriesPerSecond (1000);
+        configuration.setClientQueryBurst (1);
+
+        try (Market market = new Market ();
+             MarketGateway gateway = new MarketGateway (market, configuration))
+        {
+            gateway.calculateGBCE ("dashboard");
+            assertEquals (1, gateway.getClientCount ());
+
+            /*
+             * The bucket refills within a millisecond, so is dropped at the next eviction.
+             */
+            long deadline = System.currentTimeMillis () + 5000;
+            while (gateway.getClientCount () > 0 && System.currentTimeMillis () < deadline)
+            {
+                Thread.sleep (10);
+            }
+            assertEquals (0, gateway.getClientCount ());
+        }
+    }
+
+    @Test
+    public void testRateLimit () throws Exception
+    {
+        GatewayConfiguration configuration = new GatewayConfiguration ();
+        configuration.setClientQueriesPerSecond (0);
+        configuration.setClientQueryBurst (3);
+
+        try (Market market = new Market ();
+             MarketGateway gateway = new MarketGateway (market, configuration))
+        {
+            for (int i = 0; i < 3; i++)
+            {
+                gateway.calculateGBCE ("dashboard");
+            }
+            try
+            {
+                gateway.calculateGBCE ("dashboard");
+                fail ();
+            }
+            catch (QueryRejectedException e)
+            {
+                assertEquals (1, gateway.getRateLimitedCount ());
+            }
+
+            /*
+             * Each client has its own limit.
+             */
+            gateway.calculateGBCE ("risk");
+            assertEquals (1, gateway.getRateLimitedCount ());
+        }
+    }
+
+    @Test
+    public void testShedsQueriesWhenOverloaded () throws Exception
+    {
+        CountDownLatch entered = new CountDownLatch (1);
+        CountDownLatch release = new CountDownLatch (1);
+
+        /*
+         * A listener that holds up the worker on a trade of 999, to back the trades up.
+         */
+        Market market = new Market ();
+        market.addTradeListener (trade -> {
+            if (trade.getQuantity () == 999)
+            {
+                entered.countDown ();
+                try
+                {
+                    release.await ();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread ().interrupt ();
+                }
+            }
+        });
+
+        GatewayConfiguration configuration = new GatewayConfiguration ();
+        configuration.setTradeQueueCapacity (3);
+        configuration.setOverloadTradeQueueDepth (2);
+        configuration.setPublishIntervalMillis (0);
+
+        try
+        {
+            try (MarketGateway gateway = new MarketGateway (market, configuration))
+            {
+                gateway.recordTrade ("POP", 1, 100, BUY, null);
+                assertEquals (100.0d, gateway.calculateVolumeWeightedStockPrice ("dashboard", "POP"), 0.0d);
+                assertEquals (100.0d, gateway.getPublishedAggregates ().getVolumeWeightedStockPrice ("POP"), 0.0d);
+
+                gateway.recordTrade ("POP", 999, 10, BUY, null);
+                entered.await ();
+                assertTrue (gateway.recordTrade ("POP", 1, 10, BUY, null));
+                assertTrue (gateway.recordTrade ("POP", 1, 10, BUY, null));
+                assertEquals (2, gateway.getTradeQueueDepth ());
+
+                /*
+                 * Overloaded, so answered from the aggregates published before the backlog.
+                 */
+                assertEquals (100.0d, gateway.calculateVolumeWeightedStockPrice ("dashboard", "POP"), 0.0d);
+                assertEquals (100.0d, gateway.calculateGBCE ("dashboard"), 0.0d);
+                assertEquals (2, gateway.getShedQueryCount ());
+
+                assertTrue (gateway.recordTrade ("POP", 1, 10, BUY, null));
+                assertFalse (gateway.recordTrade ("POP", 1, 10, BUY, null));
+                assertEquals (1, gateway.getRejectedTradeCount ());
+
+                release.countDown ();
+                while (gateway.getTradeQueueDepth () > 0)
+                {
+                    Thread.yield ();
+                }
+                double expected = (100 + 999 * 10 + 3 * 10) / 1003.0d;
+                assertEquals (expected, gateway.calculateVolumeWeightedStockPrice ("dashboard", "POP"), 1e-9);
+                assertEquals (2, gateway.getShedQueryCount ());
+            }
+        }
+        finally
+        {
+            market.close ();
+        }
+    }
+
+    private static void awaitPublished (final MarketGateway gateway, final double price) throws Exception
+    {
+        long deadline = System.currentTimeMillis () + 5000;
+        while (gateway.getPublishedAggregates ().getVolumeWeightedStockPrice ("POP") != price
+               && System.currentTimeMillis () < deadline)
+        {
+            Thread.sleep (5);
+        }
+        assertEquals (price, gateway.getPublishedAggregates ().getVolumeWeightedStockPrice ("POP"), 0.0d);
+    }
+}
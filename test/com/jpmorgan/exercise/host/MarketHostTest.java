@@ -0,0 +1,251 @@
+package com.jpmorgan.exercise.host;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Test;
+
+import com.jpmorgan.exercise.environment.ArtificialClock;
+import com.jpmorgan.exercise.environment.Environment;
+import com.jpmorgan.exercise.exception.InvalidParameterException;
+import com.jpmorgan.exercise.market.MarketConfiguration;
+import com.jpmorgan.exercise.stock.CommonStockData;
+
+import static com.jpmorgan.exercise.market.TradeType.*;
+
+public class MarketHostTest
+{
+
+    private static MarketConfiguration configuration (final ArtificialClock clock,
+                                                      final long horizonSeconds,
+                                                      final String... stocks)
+    {
+        MarketConfiguration configuration = new MarketConfiguration ();
+        configuration.setEnvironment (new Environment (clock));
+        configuration.setHorizonSeconds (horizonSeconds);
+        List<CommonStockData> universe = new ArrayList<CommonStockData> ();
+        for (String stock : stocks)
+        {
+            universe.add (new CommonStockData (stock, 1, 100));
+        }
+        configuration.setUniverse (universe);
+        return configuration;
+    }
+
+    /**
+     * Hold the market's worker until the latch is released.
+     */
+    private static CompletableFuture<Void> block (final HostedMarket market, final CountDownLatch latch)
+    {
+        return market.submit (m -> {
+            try
+            {
+                latch.await ();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread ().interrupt ();
+            }
+            return null;
+        });
+    }
+
+    @Test
+    public void testIndependentMarkets () throws Exception
+    {
+        ArtificialClock londonClock = new ArtificialClock (1000);
+        ArtificialClock parisClock = new ArtificialClock (5000);
+
+        try (MarketHost host = new MarketHost (2, 100, 10))
+        {
+            HostedMarket london = host.addMarket ("LON", configuration (londonClock, 60, "TEA", "GIN"));
+            HostedMarket paris = host.addMarket ("PAR", configuration (parisClock, 10, "TEA", "VIN"));
+            assertEquals (Arrays.asList ("LON", "PAR"), host.getMarketNames ());
+
+            assertTrue (london.recordTrade ("TEA", 1, 100, BUY));
+            assertTrue (paris.recordTrade ("TEA", 1, 200, SELL));
+            assertTrue (paris.recordTrade ("VIN", 1, 50, SELL));
+
+            /*
+             * GIN isn't traded in Paris; the trade is queued, but fails.
+             */
+            assertTrue (paris.recordTrade ("GIN", 1, 50, SELL));
+
+            assertEquals (100.0d, london.submit (m -> m.calculateVolumeWeightedStockPrice ("TEA")).get (), 0.0d);
+            assertEquals (200.0d, paris.submit (m -> m.calculateVolumeWeightedStockPrice ("TEA")).get (), 0.0d);
+            try
+            {
+                paris.submit (m -> m.calculateVolumeWeightedStockPrice ("GIN")).get ();
+                fail ("query of a stock not traded");
+            }
+            catch (ExecutionException e)
+            {
+                assertTrue (e.getCause () instanceof InvalidParameterException);
+            }
+
+            /*
+             * Each task is counted once, as completed or failed, after it has run, so the
+             * counts are read by the market's next task. Passes over the windows are counted
+             * as completed too, as the host schedules them.
+             */
+            assertEquals (2L, (long)paris.submit (m -> paris.getFailedCount ()).get ());
+            assertTrue (paris.submit (m -> paris.getCompletedCount ()).get () >= 4);
+            assertEquals (0L, (long)london.submit (m -> london.getFailedCount ()).get ());
+            assertTrue (london.submit (m -> london.getCompletedCount ()).get () >= 3);
+
+            /*
+             * Each market follows its own clock and horizon.
+             */
+            parisClock.tick (10);
+            londonClock.tick (10);
+            host.maintain ();
+            assertEquals (0.0d, paris.submit (m -> m.calculateGBCE ()).get (), 0.0d);
+            assertEquals (100.0d, london.submit (m -> m.calculateGBCE ()).get (), 0.0d);
+
+            assertEquals (london, host.getMarket ("lon"));
+        }
+    }
+
+    @Test
+    public void testRoundRobin () throws Exception
+    {
+        List<String> order = Collections.synchronizedList (new ArrayList<String> ());
+        CountDownLatch latch = new CountDownLatch (1);
+
+        try (MarketHost host = new MarketHost (1, 1000, 1))
+        {
+            HostedMarket busy = host.addMarket ("BUSY", configuration (new ArtificialClock (), 60, "TEA"));
+            HostedMarket quiet = host.addMarket ("QUIET", configuration (new ArtificialClock (), 60, "TEA"));
+
+            block (busy, latch);
+            for (int i = 0; i < 100; i++)
+            {
+                busy.submit (m -> order.add ("BUSY"));
+            }
+            CompletableFuture<Boolean> last = null;
+            for (int i = 0; i < 3; i++)
+            {
+                last = quiet.submit (m -> order.add ("QUIET"));
+            }
+            latch.countDown ();
+            last.get ();
+
+            /*
+             * The quiet market's tasks run in turn with the busy market's, rather than
+             * waiting for its backlog.
+             */
+            assertTrue (order.lastIndexOf ("QUIET") < 6);
+        }
+    }
+
+    @Test
+    public void testBoundedQueue () throws Exception
+    {
+        CountDownLatch latch = new CountDownLatch (1);
+
+        try (MarketHost host = new MarketHost (2, 2, 10))
+        {
+            HostedMarket flooded = host.addMarket ("FLOOD", configuration (new ArtificialClock (), 60, "TEA"));
+            HostedMarket other = host.addMarket ("OTHER", configuration (new ArtificialClock (), 60, "TEA"));
+
+            CompletableFuture<Void> blocked = block (flooded, latch);
+            while (flooded.getQueueDepth () > 0)
+            {
+                Thread.yield ();
+            }
+
+            assertTrue (flooded.recordTrade ("TEA", 1, 10, BUY));
+            assertTrue (flooded.recordTrade ("TEA", 1, 20, BUY));
+            assertFalse (flooded.recordTrade ("TEA", 1, 30, BUY));
+            assertEquals (1, flooded.getRejectedCount ());
+
+            CompletableFuture<Double> rejected = flooded.submit (m -> m.calculateGBCE ());
+            assertTrue (rejected.isCompletedExceptionally ());
+            try
+            {
+                rejected.get ();
+            }
+            catch (ExecutionException e)
+            {
+                assertTrue (e.getCause () instanceof RejectedExecutionException);
+            }
+
+            /*
+             * The other market still has a worker.
+             */
+            assertTrue (other.recordTrade ("TEA", 1, 40, BUY));
+            assertEquals (40.0d, other.submit (m -> m.calculateGBCE ()).get (), 0.0d);
+
+            /*
+             * Wait for the backlog to be run, so the queue has room for the query.
+             */
+            latch.countDown ();
+            blocked.get ();
+            while (flooded.getQueueDepth () > 0)
+            {
+                Thread.yield ();
+            }
+            assertEquals (15.0d, flooded.submit (m -> m.calculateVolumeWeightedStockPrice ("TEA")).get (), 0.0d);
+        }
+    }
+
+    @Test
+    public void testMaintenanceOutsideQueue () throws Exception
+    {
+        CountDownLatch latch = new CountDownLatch (1);
+
+        try (MarketHost host = new MarketHost (1, 2, 10))
+        {
+            HostedMarket market = host.addMarket ("LON", configuration (new ArtificialClock (), 60, "TEA"));
+
+            CompletableFuture<Void> blocked = block (market, latch);
+            while (market.getQueueDepth () > 0)
+            {
+                Thread.yield ();
+            }
+            assertTrue (market.recordTrade ("TEA", 1, 10, BUY));
+
+            /*
+             * Maintenance requested while one is pending is dropped, and doesn't take the
+             * capacity left for trades.
+             */
+            host.maintain ();
+            host.maintain ();
+            assertEquals (1, market.getQueueDepth ());
+            assertTrue (market.recordTrade ("TEA", 1, 20, BUY));
+            assertEquals (0, market.getRejectedCount ());
+
+            /*
+             * Wait for the backlog to be run, so the queue has room for the query.
+             */
+            latch.countDown ();
+            blocked.get ();
+            while (market.getQueueDepth () > 0)
+            {
+                Thread.yield ();
+            }
+            assertEquals (15.0d, market.submit (m -> m.calculateVolumeWeightedStockPrice ("TEA")).get (), 0.0d);
+        }
+    }
+
+    @Test (expected = InvalidParameterException.class)
+    public void testDuplicateMarket () throws Exception
+    {
+        try (MarketHost host = new MarketHost (1, 10, 10))
+        {
+            host.addMarket ("LON", new MarketConfiguration ());
+            host.addMarket ("lon", new MarketConfiguration ());
+        }
+    }
+}
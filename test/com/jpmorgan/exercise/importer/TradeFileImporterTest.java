@@ -0,0 +1,125 @@
+package com.jpmorgan.exercise.importer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+import com.jpmorgan.exercise.environment.Environment;
+import com.jpmorgan.exercise.exception.InvalidParameterException;
+import com.jpmorgan.exercise.market.Market;
+import com.jpmorgan.exercise.market.TradeType;
+
+public class TradeFileImporterTest
+{
+
+    private static Path write (final String content) throws Exception
+    {
+        Path file = Files.createTempFile ("trades", ".txt");
+        file.toFile ().deleteOnExit ();
+        Files.write (file, content.getBytes (StandardCharsets.US_ASCII));
+        return file;
+    }
+
+    @Test
+    public void testImportCsv () throws Exception
+    {
+        long now = Environment.getEnvironment ().getTime ();
+
+        StringBuilder content = new StringBuilder ("stock,timestamp,quantity,price,type\n");
+        content.append ("POP,").append (now - 2).append (",1,100,BUY\n");
+        content.append ("pop,").append (now - 1).append (",3,50.0,SELL\r\n");
+        content.append ("\n");
+        content.append (" GIN , ").append (now).append (" , 2 , 12.25 , S");
+
+        try (Market market = new Market ())
+        {
+            /*
+             * Small chunks, so that lines cross chunk boundaries.
+             */
+            TradeFileImporter importer = new TradeFileImporter (TradeFileFormat.CSV, true, 3, 7);
+            assertEquals (3, importer.importFile (write (content.toString ()), market));
+
+            assertEquals (62.5d, market.calculateVolumeWeightedStockPrice ("POP"), 0.0d);
+            assertEquals (12.25d, market.calculateVolumeWeightedStockPrice ("GIN"), 0.0d);
+        }
+    }
+
+    @Test
+    public void testImportFixedWidth () throws Exception
+    {
+        long now = Environment.getEnvironment ().getTime ();
+
+        StringBuilder content = new StringBuilder ();
+        content.append (String.format ("%-8s%12d%10d%16s%-4s\n", "ALE", now, 4, "20.5", "BUY"));
+        content.append (String.format ("%-8s%12d%10d%16s%-4s\n", "ALE", now, 1, "8", "SELL"));
+
+        try (Market market = new Market ())
+        {
+            TradeFileImporter importer = new TradeFileImporter (TradeFileFormat.FIXED_WIDTH, false);
+            assertEquals (2, importer.importFile (write (content.toString ()), market));
+
+            assertEquals (18.0d, market.calculateVolumeWeightedStockPrice ("ALE"), 0.0d);
+        }
+    }
+
+    @Test
+    public void testKeepsFileTimestamps () throws Exception
+    {
+        long now = Environment.getEnvironment ().getTime ();
+        try (Market market = new Market ())
+        {
+            /*
+             * First trade is outside the horizon, so only the second counts.
+             */
+            String content = "JOE," + (now - market.getHorizonSeconds ()) + ",1,100,B\nJOE," + now + ",1,10,B\n";
+            new TradeFileImporter (TradeFileFormat.CSV, false).importFile (write (content), market);
+
+            assertEquals (10.0d, market.calculateVolumeWeightedStockPrice ("JOE"), 0.0d);
+        }
+    }
+
+    @Test (expected = InvalidParameterException.class)
+    public void testInvalidStock () throws Exception
+    {
+        try (Market market = new Market ())
+        {
+            new TradeFileImporter (TradeFileFormat.CSV, false).importFile (write ("XXX,1,1,1,BUY\n"), market);
+        }
+    }
+
+    @Test (expected = InvalidParameterException.class)
+    public void testMalformedLine () throws Exception
+    {
+        try (Market market = new Market ())
+        {
+            new TradeFileImporter (TradeFileFormat.CSV, false).importFile (write ("POP,1,x,1,BUY\n"), market);
+        }
+    }
+
+    @Test
+    public void testTradeTypes () throws Exception
+    {
+        long now = Environment.getEnvironment ().getTime ();
+        String content = "POP," + now + ",1,10,b\nPOP," + now + ",1,10,Sell\nPOP," + now + ",1,10,buy\n";
+
+        try (Market market = new Market ())
+        {
+            assertEquals (3, new TradeFileImporter (TradeFileFormat.CSV, false).importFile (write (content), market));
+            assertEquals (2, market.calculateVolume ("POP", TradeType.BUY));
+            assertEquals (1, market.calculateVolume ("POP", TradeType.SELL));
+        }
+    }
+
+    @Test (expected = InvalidParameterException.class)
+    public void testInvalidTradeType () throws Exception
+    {
+        try (Market market = new Market ())
+        {
+            new TradeFileImporter (TradeFileFormat.CSV, false).importFile (write ("POP,1,1,1,BOGUS\n"), market);
+        }
+    }
+}
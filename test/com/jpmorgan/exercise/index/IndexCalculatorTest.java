@@ -0,0 +1,106 @@
+package com.jpmorgan.exercise.index;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.jpmorgan.exercise.exception.InvalidParameterException;
+import com.jpmorgan.exercise.window.SymbolTable;
+
+public class IndexCalculatorTest
+{
+
+    private static SymbolTable symbols ()
+    {
+        SymbolTable symbolTable = new SymbolTable ();
+        symbolTable.add ("TEA");
+        symbolTable.add ("POP");
+        symbolTable.add ("ALE");
+        return symbolTable;
+    }
+
+    @Test
+    public void testGeometricIndex () throws Exception
+    {
+        IndexCalculator calculator = new IndexCalculator (symbols ());
+        calculator.define (IndexDefinition.equallyWeighted ("DRINKS", IndexType.GEOMETRIC, "TEA", "POP"));
+
+        assertEquals (0.0d, calculator.calculate ("DRINKS"), 0.0d);
+
+        calculator.update (0, 4);
+        assertEquals (4.0d, calculator.calculate ("DRINKS"), 0.000001d);
+
+        calculator.update (1, 16);
+        assertEquals (8.0d, calculator.calculate ("DRINKS"), 0.000001d);
+
+        /*
+         * Stock outside the index doesn't change it.
+         */
+        calculator.update (2, 1000);
+        assertEquals (8.0d, calculator.calculate ("DRINKS"), 0.000001d);
+
+        /*
+         * Constituent leaves the horizon.
+         */
+        calculator.update (0, 0);
+        assertEquals (16.0d, calculator.calculate ("DRINKS"), 0.000001d);
+    }
+
+    @Test
+    public void testWeightedArithmeticIndex () throws Exception
+    {
+        Map<String, Double> weights = new LinkedHashMap<String, Double> ();
+        weights.put ("pop", 3d);
+        weights.put ("ALE", 1d);
+
+        IndexCalculator calculator = new IndexCalculator (symbols ());
+        calculator.update (1, 10);
+        calculator.update (2, 50);
+        calculator.define (new IndexDefinition ("WEIGHTED", IndexType.ARITHMETIC, weights));
+
+        assertEquals (20.0d, calculator.calculate ("WEIGHTED"), 0.000001d);
+
+        calculator.update (2, 90);
+        assertEquals (30.0d, calculator.calculate ("WEIGHTED"), 0.000001d);
+    }
+
+    @Test
+    public void testManyUpdatesStayAccurate () throws Exception
+    {
+        IndexCalculator calculator = new IndexCalculator (symbols ());
+        calculator.define (IndexDefinition.equallyWeighted ("ALL", IndexType.GEOMETRIC, "TEA", "POP", "ALE"));
+
+        for (int i = 0; i < 3 * IndexCalculator.REBUILD_INTERVAL; i++)
+        {
+            calculator.update (i % 3, 1 + (i % 1000) * 0.01);
+        }
+        calculator.update (0, 2);
+        calculator.update (1, 4);
+        calculator.update (2, 8);
+
+        assertEquals (4.0d, calculator.calculate ("ALL"), 0.0000001d);
+    }
+
+    @Test (expected = InvalidParameterException.class)
+    public void testUnknownIndex () throws Exception
+    {
+        new IndexCalculator (symbols ()).calculate ("missing");
+    }
+
+    @Test (expected = InvalidParameterException.class)
+    public void testInvalidConstituent () throws Exception
+    {
+        new IndexCalculator (symbols ()).define (IndexDefinition.equallyWeighted ("BAD", IndexType.GEOMETRIC, "XXX"));
+    }
+
+    @Test (expected = InvalidParameterException.class)
+    public void testDuplicateIndex () throws Exception
+    {
+        IndexCalculator calculator = new IndexCalculator (symbols ());
+        calculator.define (IndexDefinition.equallyWeighted ("TWICE", IndexType.GEOMETRIC, "TEA"));
+        calculator.define (IndexDefinition.equallyWeighted ("TWICE", IndexType.GEOMETRIC, "POP"));
+    }
+}
@@ -1,11 +1,31 @@
 package com.jpmorgan.exercise.market;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
 import org.junit.Test;
 
+import com.jpmorgan.exercise.analytics.LastPriceAnalytic;
+import com.jpmorgan.exercise.analytics.NotionalAnalytic;
+import com.jpmorgan.exercise.analytics.QuantileSketch;
+import com.jpmorgan.exercise.analytics.TimeWeightedPriceAnalytic;
+import com.jpmorgan.exercise.analytics.TradeCountAnalytic;
+import com.jpmorgan.exercise.analytics.WindowedQuantileSketch;
+import com.jpmorgan.exercise.cache.QueryCache;
+import com.jpmorgan.exercise.environment.ArtificialClock;
 import com.jpmorgan.exercise.environment.Environment;
 import com.jpmorgan.exercise.exception.InvalidParameterException;
+import com.jpmorgan.exercise.index.IndexDefinition;
+import com.jpmorgan.exercise.index.IndexType;
+import com.jpmorgan.exercise.window.FixedPoint;
 
 import static com.jpmorgan.exercise.market.TradeType.*;
 
@@ -16,10 +36,30 @@ public class MarketTest
      */
     private static final long HORIZON_WINDOW_SEC = 5 * 60;
 
+    /**
+     * Markets opened by the test, closed after it, to release their off heap state.
+     */
+    private final List<Market> markets = new ArrayList<Market> ();
+
+    private Market open (final Market market)
+    {
+        markets.add (market);
+        return market;
+    }
+
+    @After
+    public void closeMarkets ()
+    {
+        for (Market market : markets)
+        {
+            market.close ();
+        }
+    }
+
     @Test
     public void testCalculateDividendYieldAllStocks () throws Exception
     {
-        Market market = new Market ();
+        Market market = open (new Market ());
 
         double price = 10;
 
@@ -33,7 +73,7 @@ public class MarketTest
     @Test (expected = InvalidParameterException.class)
     public void testCalculateDividendYieldInvalidStock () throws Exception
     {
-        Market market = new Market ();
+        Market market = open (new Market ());
 
         market.calculateDividendYield ("invalid", 10);
     }
@@ -41,7 +81,7 @@ public class MarketTest
     @Test (expected = InvalidParameterException.class)
     public void testCalculateDividendYieldZeroPrice () throws Exception
     {
-        Market market = new Market ();
+        Market market = open (new Market ());
 
         market.calculateDividendYield ("POP", 0);
     }
@@ -49,7 +89,7 @@ public class MarketTest
     @Test (expected = InvalidParameterException.class)
     public void testCalculateDividendYieldNegativePrice () throws Exception
     {
-        Market market = new Market ();
+        Market market = open (new Market ());
 
         market.calculateDividendYield ("POP", -10);
     }
@@ -57,7 +97,7 @@ public class MarketTest
     @Test
     public void testCalculatePERatio () throws Exception
     {
-        Market market = new Market ();
+        Market market = open (new Market ());
 
         double price = 10;
 
@@ -71,7 +111,7 @@ public class MarketTest
     @Test (expected = InvalidParameterException.class)
     public void testCalculatePERatioInvalidStock () throws Exception
     {
-        Market market = new Market ();
+        Market market = open (new Market ());
 
         market.calculatePERatio ("invalid", 10);
     }
@@ -79,7 +119,7 @@ public class MarketTest
     @Test (expected = InvalidParameterException.class)
     public void testCalculatePERatioZeroPrice () throws Exception
     {
-        Market market = new Market ();
+        Market market = open (new Market ());
 
         market.calculatePERatio ("POP", 0);
     }
@@ -87,7 +127,7 @@ public class MarketTest
     @Test (expected = InvalidParameterException.class)
     public void testCalculatePERatioNegativePrice () throws Exception
     {
-        Market market = new Market ();
+        Market market = open (new Market ());
 
         market.calculatePERatio ("POP", -10);
     }
@@ -95,7 +135,7 @@ public class MarketTest
     @Test
     public void testMixedCaseStockIdentifier () throws Exception
     {
-        Market market = new Market ();
+        Market market = open (new Market ());
 
         double price = 10;
 
@@ -111,7 +151,7 @@ public class MarketTest
     @Test
     public void testCalculateVolumeWeightedStockPrice () throws Exception
     {
-        Market market = new Market ();
+        Market market = open (new Market ());
 
         /*
          * One trade within horizon.
@@ -142,7 +182,7 @@ public class MarketTest
     @Test
     public void testCalculateVolumeWeightedStockPriceNoTrades () throws Exception
     {
-        Market market = new Market ();
+        Market market = open (new Market ());
 
         assertEquals (0.0d, market.calculateVolumeWeightedStockPrice ("POP"), 0.0d);
 
@@ -163,7 +203,7 @@ public class MarketTest
     @Test (expected = InvalidParameterException.class)
     public void testCalculateVolumeWeightedStockPriceInvalidStock () throws Exception
     {
-        Market market = new Market ();
+        Market market = open (new Market ());
 
         market.recordTrade ("invalid", 1, 100, BUY);
     }
@@ -171,7 +211,7 @@ public class MarketTest
     @Test (expected = InvalidParameterException.class)
     public void testCalculateVolumeWeightedStockPriceZeroQuantity () throws Exception
     {
-        Market market = new Market ();
+        Market market = open (new Market ());
 
         market.recordTrade ("POP", 0, 100, BUY);
     }
@@ -179,7 +219,7 @@ public class MarketTest
     @Test (expected = InvalidParameterException.class)
     public void testCalculateVolumeWeightedStockPriceNegativeQuantity () throws Exception
     {
-        Market market = new Market ();
+        Market market = open (new Market ());
 
         market.recordTrade ("POP", -1, 100, BUY);
     }
@@ -187,7 +227,7 @@ public class MarketTest
     @Test (expected = InvalidParameterException.class)
     public void testCalculateVolumeWeightedStockPriceZeroPrice () throws Exception
     {
-        Market market = new Market ();
+        Market market = open (new Market ());
 
         market.recordTrade ("POP", 1, 0, BUY);
     }
@@ -195,7 +235,7 @@ public class MarketTest
     @Test (expected = InvalidParameterException.class)
     public void testCalculateVolumeWeightedStockPriceNegativePrice () throws Exception
     {
-        Market market = new Market ();
+        Market market = open (new Market ());
 
         market.recordTrade ("POP", 1, -100, BUY);
     }
@@ -208,7 +248,7 @@ public class MarketTest
          * single stock.
          */
 
-        Market market = new Market ();
+        Market market = open (new Market ());
 
         /*
          * One trade within horizon.
@@ -239,7 +279,7 @@ public class MarketTest
     @Test
     public void testCalculateGBCE () throws Exception
     {
-        Market market = new Market ();
+        Market market = open (new Market ());
         
         /**
          * Add three trades, with different stocks, calculate GBCE after each one.
@@ -257,7 +297,7 @@ public class MarketTest
     @Test
     public void testCalculateGBCENoTrades () throws Exception
     {
-        Market market = new Market ();
+        Market market = open (new Market ());
 
         assertEquals (0.0d, market.calculateGBCE (), 0.0d);
 
@@ -268,4 +308,496 @@ public class MarketTest
         Environment.getEnvironment ().tick (HORIZON_WINDOW_SEC);
         assertEquals (0.0d, market.calculateGBCE (), 0.0d);
     }
+
+    @Test
+    public void testGetPriceDistribution () throws Exception
+    {
+        Market market = open (new Market ());
+
+        assertEquals (0, market.getPriceDistribution ("POP").getCount ());
+
+        market.recordTrade ("POP", 1, 100, BUY);
+        market.recordTrade ("POP", 3, 50, SELL);
+        market.recordTrade ("pop", 2, 75, SELL);
+        market.recordTrade ("GIN", 2, 10, SELL);
+
+        QuantileSketch distribution = market.getPriceDistribution ("Pop");
+        assertEquals (3, distribution.getCount ());
+        assertEquals (50.0d, distribution.getMin (), 0.0d);
+        assertEquals (100.0d, distribution.getMax (), 0.0d);
+        assertEquals (75.0d, distribution.getMedian (), 0.0d);
+
+        assertEquals (4, market.getMarketPriceDistribution ().getCount ());
+        assertEquals (10.0d, market.getMarketPriceDistribution ().getMin (), 0.0d);
+
+        /*
+         * Advance the clock so that all trades are outside the horizon, rounded up to the
+         * sketch's buckets.
+         */
+        Environment.getEnvironment ().tick (HORIZON_WINDOW_SEC);
+        Environment.getEnvironment ().tick (new WindowedQuantileSketch (HORIZON_WINDOW_SEC).getBucketSpan ());
+        assertTrue (market.getPriceDistribution ("POP").isEmpty ());
+        assertTrue (market.getMarketPriceDistribution ().isEmpty ());
+    }
+
+    @Test (expected = InvalidParameterException.class)
+    public void testGetPriceDistributionInvalidStock () throws Exception
+    {
+        Market market = open (new Market ());
+
+        market.getPriceDistribution ("invalid");
+    }
+
+    @Test
+    public void testCalculateIndex () throws Exception
+    {
+        Market market = open (new Market ());
+
+        market.defineIndex (IndexDefinition.equallyWeighted ("ALL", IndexType.GEOMETRIC, "TEA", "POP", "ALE", "GIN",
+                                                             "JOE"));
+        market.defineIndex (IndexDefinition.equallyWeighted ("POPGIN", IndexType.ARITHMETIC, "POP", "GIN"));
+
+        market.recordTrade ("POP", 1, 40, BUY);
+        market.recordTrade ("GIN", 2, 10, SELL);
+        market.recordTrade ("JOE", 3, 25, BUY);
+
+        /*
+         * An equally weighted geometric index over all stocks is the GBCE.
+         */
+        assertEquals (market.calculateGBCE (), market.calculateIndex ("ALL"), 0.000001d);
+        assertEquals (25.0d, market.calculateIndex ("POPGIN"), 0.000001d);
+
+        /*
+         * Advance the clock so that the trades leave the horizon.
+         */
+        Environment.getEnvironment ().tick (HORIZON_WINDOW_SEC - 1);
+        market.recordTrade ("GIN", 1, 20, BUY);
+        Environment.getEnvironment ().tick (1);
+        assertEquals (20.0d, market.calculateIndex ("POPGIN"), 0.000001d);
+        assertEquals (20.0d, market.calculateIndex ("ALL"), 0.000001d);
+    }
+
+    @Test (expected = InvalidParameterException.class)
+    public void testCalculateIndexInvalidIndex () throws Exception
+    {
+        Market market = open (new Market ());
+
+        market.calculateIndex ("invalid");
+    }
+
+    @Test
+    public void testFixedPointVolumeWeightedStockPrice () throws Exception
+    {
+        MarketConfiguration configuration = new MarketConfiguration ();
+        configuration.setPriceArithmetic (PriceArithmetic.FIXED_POINT);
+        Market market = open (new Market (configuration));
+
+        /*
+         * The sum of these prices isn't exact as a double.
+         */
+        market.recordTrade ("POP", 1, 0.1, BUY);
+        market.recordTrade ("POP", 1, 0.2, SELL);
+        market.recordTrade ("POP", 1, 0.3, BUY);
+        assertEquals (0.2d, market.calculateVolumeWeightedStockPrice ("POP"), 0.0d);
+
+        /*
+         * Add a large trade, then advance the clock so that the trades above leave the
+         * horizon. The result is exactly the VWSP of the remaining trades.
+         */
+        Environment.getEnvironment ().tick (HORIZON_WINDOW_SEC - 1);
+        market.recordTrade ("POP", Integer.MAX_VALUE, 1e9, BUY);
+        market.recordTrade ("POP", 3, 0.7, SELL);
+        Environment.getEnvironment ().tick (1);
+        market.recordTrade ("POP", 1, 0.000001, SELL);
+        BigInteger notional = BigInteger.valueOf (1000000000L * FixedPoint.TICKS_PER_UNIT)
+                                        .multiply (BigInteger.valueOf (Integer.MAX_VALUE))
+                                        .add (BigInteger.valueOf (3 * 700000 + 1));
+        BigInteger volume = BigInteger.valueOf (Integer.MAX_VALUE + 4L);
+        BigInteger[] vwsp = notional.divideAndRemainder (volume);
+        long vwspTicks = vwsp[0].longValue () + (vwsp[1].shiftLeft (1).compareTo (volume) >= 0 ? 1 : 0);
+        assertEquals (FixedPoint.toPrice (vwspTicks), market.calculateVolumeWeightedStockPrice ("POP"), 0.0d);
+        assertEquals (0.4d, market.calculatePERatio ("POP", 3.2000001), 0.0d);
+    }
+
+    @Test (expected = InvalidParameterException.class)
+    public void testFixedPointPriceBelowTick () throws Exception
+    {
+        MarketConfiguration configuration = new MarketConfiguration ();
+        configuration.setPriceArithmetic (PriceArithmetic.FIXED_POINT);
+        Market market = open (new Market (configuration));
+
+        market.recordTrade ("POP", 1, 0.0000001, BUY);
+    }
+
+    @Test
+    public void testConfiguredHorizonAndClock () throws Exception
+    {
+        ArtificialClock clock = new ArtificialClock (1000);
+        MarketConfiguration configuration = new MarketConfiguration ();
+        configuration.setEnvironment (new Environment (clock));
+        configuration.setHorizonSeconds (10);
+        Market market = open (new Market (configuration));
+        assertEquals (10, market.getHorizonSeconds ());
+
+        market.recordTrade ("POP", 1, 100, BUY);
+        clock.tick (9);
+        market.recordTrade ("POP", 1, 50, BUY);
+        assertEquals (75.0d, market.calculateVolumeWeightedStockPrice ("POP"), 0.0d);
+
+        /*
+         * The market follows its own clock, not the global environment.
+         */
+        clock.tick (1);
+        assertEquals (50.0d, market.calculateVolumeWeightedStockPrice ("POP"), 0.0d);
+    }
+
+    @Test
+    public void testDuplicateTradeIds () throws Exception
+    {
+        Market market = open (new Market ());
+        long now = Environment.getEnvironment ().getTime ();
+
+        assertTrue (market.recordTrade ("TEA", 1, 100, BUY, now, "FILL-1"));
+        assertTrue (market.recordTrade ("TEA", 3, 50, SELL, now, "FILL-2"));
+        assertFalse (market.recordTrade ("TEA", 1, 100, BUY, now, "FILL-1"));
+        assertEquals (62.5d, market.calculateVolumeWeightedStockPrice ("TEA"), 0.0d);
+        assertEquals (1, market.getDuplicateCount ());
+
+        /*
+         * Trades without ids aren't checked.
+         */
+        market.recordTrade ("TEA", 4, 50, SELL, now);
+        market.recordTrade ("TEA", 4, 50, SELL, now);
+        assertEquals (1, market.getDuplicateCount ());
+
+        /*
+         * Many new ids are accepted; any found by the filter are checked against the recent ids.
+         */
+        for (int i = 0; i < 10000; i++)
+        {
+            assertTrue (market.recordTrade ("GIN", 1, 10, BUY, now, "NEW-" + i));
+        }
+        assertEquals (1, market.getDuplicateCount ());
+        assertTrue (market.getTradeIdFalsePositiveCount () < 500);
+    }
+
+    @Test
+    public void testDuplicateTradeIdsReplayedAndBatched () throws Exception
+    {
+        Market market = open (new Market ());
+        long now = Environment.getEnvironment ().getTime ();
+
+        assertTrue (market.replayTrade (new Trade ("TEA", now, 1, 100, BUY, "FILL-1")));
+        assertFalse (market.replayTrade (new Trade ("TEA", now, 1, 100, BUY, "FILL-1")));
+
+        TradeBatch batch = new TradeBatch ();
+        batch.add (market.getSymbolTable ().idOf ("TEA"), now, 3, 50, SELL, "FILL-2");
+        batch.add (market.getSymbolTable ().idOf ("TEA"), now, 1, 100, BUY, "FILL-1");
+        batch.add (market.getSymbolTable ().idOf ("TEA"), now, 3, 50, SELL);
+        market.recordTrades (batch);
+
+        assertEquals (2, market.getDuplicateCount ());
+        assertEquals (400.0d / 7, market.calculateVolumeWeightedStockPrice ("TEA"), 1e-9);
+    }
+
+    @Test
+    public void testBatchTradeWithoutType () throws Exception
+    {
+        Market market = open (new Market ());
+        long now = Environment.getEnvironment ().getTime ();
+
+        TradeBatch batch = new TradeBatch ();
+        batch.add (market.getSymbolTable ().idOf ("TEA"), now, 1, 100, null);
+        batch.add (market.getSymbolTable ().idOf ("TEA"), now, 1, 50, SELL);
+        assertNull (batch.getType (0));
+        assertEquals (SELL, batch.getType (1));
+
+        market.recordTrades (batch);
+        assertEquals (75.0d, market.calculateVolumeWeightedStockPrice ("TEA"), 1e-9);
+    }
+
+    @Test
+    public void testTradeIdsExpire () throws Exception
+    {
+        Market market = open (new Market ());
+        long now = Environment.getEnvironment ().getTime ();
+
+        assertTrue (market.recordTrade ("TEA", 1, 100, BUY, now, "FILL-1"));
+        Environment.getEnvironment ().tick (HORIZON_WINDOW_SEC + market.getAllowedLatenessSeconds () + 1);
+        long later = Environment.getEnvironment ().getTime ();
+
+        /*
+         * The id has left the retention once the latest trade has moved on, so is accepted
+         * again.
+         */
+        assertTrue (market.recordTrade ("TEA", 1, 100, BUY, later, "FILL-2"));
+        assertTrue (market.recordTrade ("TEA", 1, 100, BUY, later, "FILL-1"));
+        assertFalse (market.recordTrade ("TEA", 1, 100, BUY, later, "FILL-2"));
+        assertEquals (1, market.getDuplicateCount ());
+    }
+
+    @Test
+    public void testEventTimeWindow () throws Exception
+    {
+        MarketConfiguration configuration = new MarketConfiguration ();
+        configuration.setAllowedLatenessSeconds (10);
+        Market market = open (new Market (configuration));
+        long now = Environment.getEnvironment ().getTime ();
+
+        market.recordTrade ("POP", 1, 100, BUY, now);
+        assertEquals (now - 10, market.getWatermark ());
+        assertFalse (market.isFinal (now - 10));
+        assertTrue (market.isFinal (now - 11));
+
+        /*
+         * A late fill, within the allowed lateness, counts in the window by its own time.
+         */
+        market.recordTrade ("POP", 3, 50, SELL, now - 5);
+        assertEquals (62.5d, market.calculateVolumeWeightedStockPrice ("POP"), 0.0d);
+        assertEquals (now - 10, market.getWatermark ());
+
+        /*
+         * Advance the clock so that the late fill, but not the first trade, leaves the horizon.
+         */
+        Environment.getEnvironment ().tick (HORIZON_WINDOW_SEC - 5);
+        assertEquals (100.0d, market.calculateVolumeWeightedStockPrice ("POP"), 0.0d);
+        Environment.getEnvironment ().tick (5);
+        assertEquals (0.0d, market.calculateVolumeWeightedStockPrice ("POP"), 0.0d);
+    }
+
+    @Test (expected = InvalidParameterException.class)
+    public void testEventTimeLateTrade () throws Exception
+    {
+        MarketConfiguration configuration = new MarketConfiguration ();
+        configuration.setAllowedLatenessSeconds (10);
+        Market market = open (new Market (configuration));
+        long now = Environment.getEnvironment ().getTime ();
+
+        market.recordTrade ("POP", 1, 100, BUY, now);
+        market.recordTrade ("POP", 1, 100, BUY, now - 11);
+    }
+
+    @Test
+    public void testEventTimeFutureTrade () throws Exception
+    {
+        MarketConfiguration configuration = new MarketConfiguration ();
+        configuration.setFutureToleranceSeconds (2);
+        Market market = open (new Market (configuration));
+        long now = Environment.getEnvironment ().getTime ();
+
+        market.recordTrade ("POP", 1, 100, BUY, now + 2);
+        try
+        {
+            market.recordTrade ("POP", 1, 50, BUY, now + 1000000000L);
+            fail ("future trade accepted");
+        }
+        catch (InvalidParameterException e)
+        {
+            // expected
+        }
+
+        /*
+         * The watermark is held to the clock, so trades stamped now are still accepted, and
+         * the rejected trade hasn't moved the window.
+         */
+        assertEquals (now, market.getWatermark ());
+        market.recordTrade ("POP", 1, 200, BUY);
+        assertEquals (150.0d, market.calculateVolumeWeightedStockPrice ("POP"), 0.0d);
+    }
+
+    @Test
+    public void testCalculateAnalytic () throws Exception
+    {
+        Market market = open (new Market ());
+        market.defineAnalytic (60, new TradeCountAnalytic ());
+
+        market.recordTrade ("POP", 1, 100, BUY);
+        Environment.getEnvironment ().tick (30);
+        market.recordTrade ("POP", 3, 50, SELL);
+
+        /*
+         * Analytics defined later are built from the ledger.
+         */
+        market.defineAnalytic (60, new NotionalAnalytic ());
+        market.defineAnalytic (HORIZON_WINDOW_SEC, new TradeCountAnalytic ());
+        market.defineAnalytic (HORIZON_WINDOW_SEC, new LastPriceAnalytic ());
+
+        assertEquals (2.0d, market.calculateAnalytic ("POP", 60, TradeCountAnalytic.NAME), 0.0d);
+        assertEquals (250.0d, market.calculateAnalytic ("pop", 60, NotionalAnalytic.NAME), 0.0d);
+        assertEquals (50.0d, market.calculateAnalytic ("POP", HORIZON_WINDOW_SEC, LastPriceAnalytic.NAME), 0.0d);
+
+        /*
+         * Advance the clock so that the first trade leaves the shorter horizon only.
+         */
+        Environment.getEnvironment ().tick (30);
+        assertEquals (1.0d, market.calculateAnalytic ("POP", 60, TradeCountAnalytic.NAME), 0.0d);
+        assertEquals (150.0d, market.calculateAnalytic ("POP", 60, NotionalAnalytic.NAME), 0.0d);
+        assertEquals (2.0d, market.calculateAnalytic ("POP", HORIZON_WINDOW_SEC, TradeCountAnalytic.NAME), 0.0d);
+        assertEquals (0.0d, market.calculateAnalytic ("GIN", HORIZON_WINDOW_SEC, TradeCountAnalytic.NAME), 0.0d);
+    }
+
+    @Test
+    public void testAnalyticOverMarketHorizon () throws Exception
+    {
+        Market market = open (new Market ());
+
+        market.recordTrade ("POP", 1, 100, BUY);
+        market.recordTrade ("GIN", 2, 10, SELL);
+        Environment.getEnvironment ().tick (30);
+
+        /*
+         * Statistics over the market's horizon share its window, which is rebuilt from the
+         * ledger, leaving the VWSP/GBCE as they were.
+         */
+        double gbce = market.calculateGBCE ();
+        market.defineAnalytic (HORIZON_WINDOW_SEC, new TimeWeightedPriceAnalytic ());
+        market.recordTrade ("POP", 3, 50, SELL);
+        market.defineAnalytic (HORIZON_WINDOW_SEC, new NotionalAnalytic ());
+
+        assertEquals (62.5d, market.calculateVolumeWeightedStockPrice ("POP"), 0.0d);
+        assertEquals (100.0d, market.calculateAnalytic ("POP", HORIZON_WINDOW_SEC, TimeWeightedPriceAnalytic.NAME), 0.0d);
+        assertEquals (250.0d, market.calculateAnalytic ("POP", HORIZON_WINDOW_SEC, NotionalAnalytic.NAME), 0.0d);
+        assertTrue (gbce != market.calculateGBCE ());
+
+        Environment.getEnvironment ().tick (HORIZON_WINDOW_SEC - 30);
+        assertEquals (50.0d, market.calculateVolumeWeightedStockPrice ("POP"), 0.0d);
+        assertEquals (150.0d, market.calculateAnalytic ("POP", HORIZON_WINDOW_SEC, NotionalAnalytic.NAME), 0.0d);
+        assertEquals (0.0d, market.calculateAnalytic ("GIN", HORIZON_WINDOW_SEC, NotionalAnalytic.NAME), 0.0d);
+    }
+
+    @Test
+    public void testDefineAnalyticAfterReplayOutOfOrder () throws Exception
+    {
+        Market market = open (new Market ());
+        long now = Environment.getEnvironment ().getTime ();
+        market.defineAnalytic (60, new TradeCountAnalytic ());
+
+        market.recordTrade ("POP", 2, 100, BUY);
+        market.replayTrade (new Trade ("POP", now - 1000, 1, 50, SELL));
+
+        /*
+         * The trade replayed long before the horizon doesn't hide the trade recorded before
+         * it, and the existing statistic is rebuilt with the new one.
+         */
+        market.defineAnalytic (60, new NotionalAnalytic ());
+        assertEquals (200.0d, market.calculateAnalytic ("POP", 60, NotionalAnalytic.NAME), 0.0d);
+        assertEquals (1.0d, market.calculateAnalytic ("POP", 60, TradeCountAnalytic.NAME), 0.0d);
+
+        Environment.getEnvironment ().tick (60);
+        assertEquals (0.0d, market.calculateAnalytic ("POP", 60, NotionalAnalytic.NAME), 0.0d);
+        assertEquals (0.0d, market.calculateAnalytic ("POP", 60, TradeCountAnalytic.NAME), 0.0d);
+    }
+
+    @Test
+    public void testLedgerBoundedByRetention () throws Exception
+    {
+        Market market = open (new Market ());
+        market.recordTrade ("POP", 1, 100, BUY);
+        Environment.getEnvironment ().tick (HORIZON_WINDOW_SEC + market.getAllowedLatenessSeconds () + 1);
+        market.recordTrade ("POP", 1, 50, BUY);
+
+        /*
+         * The first trade has left the ledger, so isn't found by a statistic over a longer
+         * horizon defined later.
+         */
+        market.defineAnalytic (2 * HORIZON_WINDOW_SEC, new TradeCountAnalytic ());
+        assertEquals (1.0d, market.calculateAnalytic ("POP", 2 * HORIZON_WINDOW_SEC, TradeCountAnalytic.NAME), 0.0d);
+        assertEquals (50.0d, market.calculateVolumeWeightedStockPrice ("POP"), 0.0d);
+    }
+
+    @Test (expected = InvalidParameterException.class)
+    public void testCalculateAnalyticInvalidAnalytic () throws Exception
+    {
+        Market market = open (new Market ());
+        market.defineAnalytic (60, new TradeCountAnalytic ());
+
+        market.calculateAnalytic ("POP", 120, TradeCountAnalytic.NAME);
+    }
+
+    @Test (expected = InvalidParameterException.class)
+    public void testDefineAnalyticDuplicate () throws Exception
+    {
+        Market market = open (new Market ());
+        market.defineAnalytic (60, new TradeCountAnalytic ());
+
+        market.defineAnalytic (60, new TradeCountAnalytic ());
+    }
+
+    @Test
+    public void testSideSplit () throws Exception
+    {
+        Market market = open (new Market ());
+
+        market.recordTrade ("POP", 1, 100, BUY);
+        market.recordTrade ("POP", 3, 50, SELL);
+        market.recordTrade ("POP", 1, 40, BUY);
+        market.recordTrade ("POP", 5, 10, null);
+
+        assertEquals (70.0d, market.calculateVolumeWeightedStockPrice ("POP", BUY), 0.0d);
+        assertEquals (50.0d, market.calculateVolumeWeightedStockPrice ("pop", SELL), 0.0d);
+        assertEquals (2, market.calculateVolume ("POP", BUY));
+        assertEquals (3, market.calculateVolume ("POP", SELL));
+        assertEquals (140.0d, market.calculateNotional ("POP", BUY), 0.0d);
+        assertEquals (150.0d, market.calculateNotional ("POP", SELL), 0.0d);
+        assertEquals (-0.2d, market.calculateOrderFlowImbalance ("POP"), 1e-12d);
+        assertEquals (0.0d, market.calculateOrderFlowImbalance ("GIN"), 0.0d);
+
+        /*
+         * Advance the clock so that the first trades leave the horizon.
+         */
+        Environment.getEnvironment ().tick (HORIZON_WINDOW_SEC - 1);
+        market.recordTrade ("POP", 2, 30, BUY);
+        Environment.getEnvironment ().tick (1);
+        assertEquals (30.0d, market.calculateVolumeWeightedStockPrice ("POP", BUY), 0.0d);
+        assertEquals (0.0d, market.calculateVolumeWeightedStockPrice ("POP", SELL), 0.0d);
+        assertEquals (1.0d, market.calculateOrderFlowImbalance ("POP"), 0.0d);
+    }
+
+    @Test (expected = InvalidParameterException.class)
+    public void testSideSplitMissingTradeType () throws Exception
+    {
+        Market market = open (new Market ());
+
+        market.calculateVolume ("POP", null);
+    }
+
+    @Test
+    public void testQueryCache () throws Exception
+    {
+        Market market = open (new Market ());
+        QueryCache cache = market.getQueryCache ();
+
+        market.recordTrade ("POP", 1, 100, BUY);
+        assertEquals (100.0d, market.calculateGBCE (), 0.0d);
+        assertEquals (100.0d, market.calculateGBCE (), 0.0d);
+        assertEquals (1, cache.getHitCount ());
+
+        /*
+         * A trade on another stock changes the GBCE.
+         */
+        market.recordTrade ("GIN", 1, 25, SELL);
+        assertEquals (50.0d, market.calculateGBCE (), 0.0d);
+        assertEquals (50.0d, market.calculateGBCE (), 0.0d);
+        assertEquals (2, cache.getHitCount ());
+
+        /*
+         * As do the trades leaving the horizon.
+         */
+        Environment.getEnvironment ().tick (HORIZON_WINDOW_SEC);
+        assertEquals (0.0d, market.calculateGBCE (), 0.0d);
+        assertEquals (2, cache.getHitCount ());
+        assertEquals (3, cache.getMissCount ());
+    }
+
+    @Test
+    public void testNoQueryCache () throws Exception
+    {
+        MarketConfiguration configuration = new MarketConfiguration ();
+        configuration.setQueryCacheEnabled (false);
+        Market market = open (new Market (configuration));
+
+        market.recordTrade ("POP", 1, 100, BUY);
+        assertEquals (100.0d, market.calculateVolumeWeightedStockPrice ("POP"), 0.0d);
+        assertNull (market.getQueryCache ());
+    }
 }
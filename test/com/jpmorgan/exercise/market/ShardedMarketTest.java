@@ -0,0 +1,117 @@
+package com.jpmorgan.exercise.market;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.jpmorgan.exercise.environment.Environment;
+import com.jpmorgan.exercise.exception.InvalidParameterException;
+
+import static com.jpmorgan.exercise.market.TradeType.*;
+
+public class ShardedMarketTest
+{
+    /**
+     * Hard coded horizon for the calculation of the VWSP/GBCE.
+     */
+    private static final long HORIZON_WINDOW_SEC = 5 * 60;
+
+    @Test
+    public void testShardOfIgnoresCase () throws Exception
+    {
+        try (ShardedMarket market = new ShardedMarket (4))
+        {
+            int shard = market.shardOf ("POP");
+
+            assertTrue (shard >= 0 && shard < 4);
+            assertEquals (shard, market.shardOf ("pop"));
+            assertEquals (shard, market.shardOf ("pOp"));
+        }
+    }
+
+    @Test
+    public void testShardsHoldOwnStocks () throws Exception
+    {
+        MarketConfiguration configuration = new MarketConfiguration ();
+        configuration.setHorizonSeconds (60);
+        try (ShardedMarket market = new ShardedMarket (3, configuration))
+        {
+            int stockCount = 0;
+            for (int shard = 0; shard < market.getShardCount (); shard++)
+            {
+                for (String stockIdentifier : market.getShardUniverse (shard).keySet ())
+                {
+                    assertEquals (shard, market.shardOf (stockIdentifier));
+                    stockCount++;
+                }
+            }
+            assertEquals (configuration.getUniverse ().size (), stockCount);
+
+            /*
+             * The shards take the market's horizon.
+             */
+            market.recordTrade ("POP", 1, 100, BUY);
+            Environment.getEnvironment ().tick (60);
+            assertEquals (0.0d, market.calculateVolumeWeightedStockPrice ("POP"), 0.0d);
+        }
+    }
+
+    @Test
+    public void testCalculateVolumeWeightedStockPrice () throws Exception
+    {
+        try (ShardedMarket market = new ShardedMarket (3))
+        {
+            market.recordTrade ("POP", 1, 100, BUY);
+            market.recordTrade ("pop", 3, 50, SELL);
+
+            assertEquals (62.5d, market.calculateVolumeWeightedStockPrice ("POP"), 0.0d);
+        }
+    }
+
+    @Test
+    public void testCalculateGBCEMatchesSingleMarket () throws Exception
+    {
+        try (Market single = new Market ();
+             ShardedMarket market = new ShardedMarket (3))
+        {
+            String[] stocks = { "TEA", "POP", "ALE", "GIN", "JOE" };
+            for (int i = 0; i < stocks.length; i++)
+            {
+                single.recordTrade (stocks[i], i + 1, 10 * (i + 1), BUY);
+                market.recordTrade (stocks[i], i + 1, 10 * (i + 1), BUY);
+            }
+
+            assertEquals (5, market.calculatePartialGBCE ().getConstituentCount ());
+            assertEquals (single.calculateGBCE (), market.calculateGBCE (), 0.000001d);
+        }
+    }
+
+    @Test
+    public void testCalculateGBCENoTrades () throws Exception
+    {
+        try (ShardedMarket market = new ShardedMarket (2))
+        {
+            assertEquals (0.0d, market.calculateGBCE (), 0.0d);
+
+            market.recordTrade ("POP", 1, 50, SELL);
+            Environment.getEnvironment ().tick (HORIZON_WINDOW_SEC);
+            assertEquals (0.0d, market.calculateGBCE (), 0.0d);
+        }
+    }
+
+    @Test (expected = InvalidParameterException.class)
+    public void testInvalidShardCount () throws Exception
+    {
+        new ShardedMarket (0);
+    }
+
+    @Test (expected = InvalidParameterException.class)
+    public void testRecordTradeInvalidStock () throws Exception
+    {
+        try (ShardedMarket market = new ShardedMarket (2))
+        {
+            market.recordTrade ("invalid", 1, 100, BUY);
+        }
+    }
+}
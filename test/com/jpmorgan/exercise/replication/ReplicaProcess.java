@@ -0,0 +1,36 @@
+package com.jpmorgan.exercise.replication;
+
+import com.jpmorgan.exercise.environment.ArtificialClock;
+import com.jpmorgan.exercise.environment.Environment;
+import com.jpmorgan.exercise.market.MarketConfiguration;
+
+/**
+ * Replica run in its own process by <code>ReplicationTest</code>, with its own clock.
+ * 
+ * Arguments: primary port, time, sequence to wait for, stock. Prints the VWSP of the stock
+ * and the GBCE once the trades up to the sequence are applied, and exits with 1 if they
+ * aren't applied in time.
+ */
+public class ReplicaProcess
+{
+
+    public static void main (final String[] args) throws Exception
+    {
+        int port = Integer.parseInt (args[0]);
+        long time = Long.parseLong (args[1]);
+        long sequence = Long.parseLong (args[2]);
+
+        MarketConfiguration configuration = new MarketConfiguration ();
+        configuration.setEnvironment (new Environment (new ArtificialClock (time)));
+
+        try (ReplicationReplica replica = new ReplicationReplica (configuration, port))
+        {
+            replica.connect ();
+            if (!replica.awaitSequence (sequence, 10000))
+            {
+                System.exit (1);
+            }
+            System.out.println (replica.calculateVolumeWeightedStockPrice (args[3]) + " " + replica.calculateGBCE ());
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package com.jpmorgan.exercise.replication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.jpmorgan.exercise.environment.ArtificialClock;
+import com.jpmorgan.exercise.environment.Environment;
+import com.jpmorgan.exercise.market.Market;
+import com.jpmorgan.exercise.market.MarketConfiguration;
+import com.jpmorgan.exercise.market.Trade;
+import com.jpmorgan.exercise.stock.CommonStockData;
+
+import static com.jpmorgan.exercise.market.TradeType.*;
+
+public class ReplicationTest
+{
+    /**
+     * Maximum time to wait for the replica to apply trades.
+     */
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    @Test
+    public void testReplicaFollowsPrimary () throws Exception
+    {
+        try (Market primary = new Market ();
+             ReplicationPrimary replication = new ReplicationPrimary (primary, 0);
+             ReplicationReplica replica = new ReplicationReplica (replication.getPort ()))
+        {
+            primary.recordTrade ("POP", 1, 100, BUY);
+            primary.recordTrade ("POP", 3, 50, SELL);
+
+            replica.connect ();
+            assertTrue (replica.awaitSequence (2, TIMEOUT_MILLIS));
+            assertEquals (62.5d, replica.calculateVolumeWeightedStockPrice ("POP"), 0.0d);
+
+            primary.recordTrade ("GIN", 2, 50, BUY);
+            assertTrue (replica.awaitSequence (3, TIMEOUT_MILLIS));
+            assertEquals (primary.calculateGBCE (), replica.calculateGBCE (), 0.0d);
+        }
+    }
+
+    @Test
+    public void testReplicaCatchesUpAfterReconnecting () throws Exception
+    {
+        try (Market primary = new Market ();
+             ReplicationPrimary replication = new ReplicationPrimary (primary, 0);
+             ReplicationReplica replica = new ReplicationReplica (replication.getPort ()))
+        {
+            replica.connect ();
+            primary.recordTrade ("POP", 1, 100, BUY);
+            assertTrue (replica.awaitSequence (1, TIMEOUT_MILLIS));
+
+            /*
+             * Trades made while disconnected are sent when the replica reconnects.
+             */
+            replica.disconnect ();
+            for (int i = 0; i < 3 * ReplicationPrimary.MAX_BATCH_SIZE; i++)
+            {
+                primary.recordTrade ("JOE", 1, 10, SELL);
+            }
+
+            replica.connect ();
+            assertTrue (replica.awaitSequence (replication.getLog ().getNextSequence (), TIMEOUT_MILLIS));
+            assertEquals (10.0d, replica.calculateVolumeWeightedStockPrice ("JOE"), 0.0d);
+            assertEquals (primary.calculateGBCE (), replica.calculateGBCE (), 0.0d);
+        }
+    }
+
+    @Test
+    public void testLogTruncatedWhenAcknowledged () throws Exception
+    {
+        try (Market primary = new Market ();
+             ReplicationPrimary replication = new ReplicationPrimary (primary, 0);
+             ReplicationReplica replica = new ReplicationReplica (replication.getPort ()))
+        {
+            replica.connect ();
+            primary.recordTrade ("POP", 1, 100, BUY);
+            primary.recordTrade ("POP", 3, 50, SELL);
+            assertTrue (replica.awaitSequence (2, TIMEOUT_MILLIS));
+
+            /*
+             * The log is truncated once the primary has the acknowledgement.
+             */
+            long deadline = System.currentTimeMillis () + TIMEOUT_MILLIS;
+            while (replication.getLog ().getFirstSequence () < 2 && System.currentTimeMillis () < deadline)
+            {
+                Thread.sleep (1);
+            }
+            assertEquals (2, replication.getLog ().getFirstSequence ());
+            assertEquals (2, replication.getLog ().getNextSequence ());
+        }
+    }
+
+    @Test
+    public void testLogRetentionLimit () throws Exception
+    {
+        ReplicationLog log = new ReplicationLog (2);
+        Trade trade = new Trade ("POP", 1000, 1, 100, BUY);
+        for (int i = 0; i < 5; i++)
+        {
+            log.tradeRecorded (trade);
+        }
+
+        assertEquals (3, log.getFirstSequence ());
+        assertEquals (2, log.read (3, 10, 0).size ());
+        try
+        {
+            log.read (2, 10, 0);
+            fail ("read truncated trade");
+        }
+        catch (LogTruncatedException e)
+        {
+            assertEquals (3, e.getFirstSequence ());
+        }
+    }
+
+    @Test
+    public void testReplicaBehindTruncationFails () throws Exception
+    {
+        try (Market primary = new Market ();
+             ReplicationPrimary replication = new ReplicationPrimary (primary, 0, 4);
+             ReplicationReplica replica = new ReplicationReplica (replication.getPort ()))
+        {
+            replica.connect ();
+            primary.recordTrade ("POP", 1, 100, BUY);
+            assertTrue (replica.awaitSequence (1, TIMEOUT_MILLIS));
+
+            /*
+             * More trades are made while disconnected than the log holds, so the replica
+             * can't catch up, and says why.
+             */
+            replica.disconnect ();
+            for (int i = 0; i < 10; i++)
+            {
+                primary.recordTrade ("JOE", 1, 10, SELL);
+            }
+
+            replica.connect ();
+            assertFalse (replica.awaitSequence (11, TIMEOUT_MILLIS));
+            assertNotNull (replica.getFailure ());
+            assertTrue (replica.getFailure ().getMessage ().contains ("truncated"));
+            assertEquals (1, replica.getNextSequence ());
+        }
+    }
+
+    @Test
+    public void testConfiguredReplica () throws Exception
+    {
+        ArtificialClock primaryClock = new ArtificialClock (1000);
+        MarketConfiguration primaryConfiguration = new MarketConfiguration ();
+        primaryConfiguration.setEnvironment (new Environment (primaryClock));
+        primaryConfiguration.setHorizonSeconds (10);
+
+        ArtificialClock replicaClock = new ArtificialClock (1000);
+        MarketConfiguration replicaConfiguration = new MarketConfiguration ();
+        replicaConfiguration.setEnvironment (new Environment (replicaClock));
+        replicaConfiguration.setHorizonSeconds (10);
+
+        try (Market primary = new Market (primaryConfiguration);
+             ReplicationPrimary replication = new ReplicationPrimary (primary, 0);
+             ReplicationReplica replica = new ReplicationReplica (replicaConfiguration, replication.getPort ()))
+        {
+            replica.connect ();
+            primary.recordTrade ("POP", 1, 100, BUY);
+            primaryClock.tick (5);
+            primary.recordTrade ("POP", 1, 50, BUY);
+            assertTrue (replica.awaitSequence (2, TIMEOUT_MILLIS));
+
+            /*
+             * The replica keeps the primary's horizon, following its own clock.
+             */
+            primaryClock.tick (5);
+            replicaClock.tick (10);
+            assertEquals (50.0d, primary.calculateVolumeWeightedStockPrice ("POP"), 0.0d);
+            assertEquals (50.0d, replica.calculateVolumeWeightedStockPrice ("POP"), 0.0d);
+        }
+    }
+
+    @Test
+    public void testMismatchedReplicaFails () throws Exception
+    {
+        MarketConfiguration replicaConfiguration = new MarketConfiguration ();
+        replicaConfiguration.setUniverse (Arrays.asList (new CommonStockData ("TEA", 0, 100)));
+
+        try (Market primary = new Market ();
+             ReplicationPrimary replication = new ReplicationPrimary (primary, 0);
+             ReplicationReplica replica = new ReplicationReplica (replicaConfiguration, replication.getPort ()))
+        {
+            replica.connect ();
+            primary.recordTrade ("POP", 1, 100, BUY);
+
+            /*
+             * The replica can't apply the trade, so replication stops, and says why.
+             */
+            assertFalse (replica.awaitSequence (1, TIMEOUT_MILLIS));
+            assertNotNull (replica.getFailure ());
+            assertFalse (replica.isConnected ());
+        }
+    }
+
+    @Test
+    public void testReplicaInSeparateProcess () throws Exception
+    {
+        long now = Environment.getEnvironment ().getTime ();
+
+        try (Market primary = new Market ();
+             ReplicationPrimary replication = new ReplicationPrimary (primary, 0))
+        {
+            primary.recordTrade ("POP", 1, 100, BUY);
+            primary.recordTrade ("POP", 3, 50, SELL);
+            primary.recordTrade ("GIN", 2, 50, BUY);
+
+            String java = System.getProperty ("java.home") + File.separator + "bin" + File.separator + "java";
+            Process process = new ProcessBuilder (java,
+                                                  "-cp",
+                                                  System.getProperty ("java.class.path"),
+                                                  ReplicaProcess.class.getName (),
+                                                  Integer.toString (replication.getPort ()),
+                                                  Long.toString (now),
+                                                  "3",
+                                                  "POP").redirectErrorStream (true).start ();
+
+            String output;
+            try (BufferedReader reader = new BufferedReader (new InputStreamReader (process.getInputStream (),
+                                                                                    StandardCharsets.UTF_8)))
+            {
+                output = reader.readLine ();
+            }
+            assertTrue (process.waitFor (30, TimeUnit.SECONDS));
+            assertEquals (0, process.exitValue ());
+            assertEquals ("62.5 " + primary.calculateGBCE (), output);
+        }
+    }
+
+    @Test
+    public void testPromoteAfterPrimaryFails () throws Exception
+    {
+        ReplicationReplica replica;
+        try (Market primary = new Market ();
+             ReplicationPrimary replication = new ReplicationPrimary (primary, 0))
+        {
+            replica = new ReplicationReplica (replication.getPort ());
+            replica.connect ();
+            primary.recordTrade ("ALE", 2, 40, BUY);
+            assertTrue (replica.awaitSequence (1, TIMEOUT_MILLIS));
+        }
+
+        try (Market promoted = replica.promote ())
+        {
+            assertEquals (40.0d, promoted.calculateVolumeWeightedStockPrice ("ALE"), 0.0d);
+
+            promoted.recordTrade ("ALE", 2, 20, SELL);
+            assertEquals (30.0d, promoted.calculateVolumeWeightedStockPrice ("ALE"), 0.0d);
+        }
+    }
+
+    @Test
+    public void testPromotedReplicaRejectsDuplicateTradeIds () throws Exception
+    {
+        long now = Environment.getEnvironment ().getTime ();
+
+        ReplicationReplica replica;
+        try (Market primary = new Market ();
+             ReplicationPrimary replication = new ReplicationPrimary (primary, 0))
+        {
+            replica = new ReplicationReplica (replication.getPort ());
+            replica.connect ();
+            assertTrue (primary.recordTrade ("TEA", 1, 40, BUY, now, "FILL-1"));
+            assertTrue (replica.awaitSequence (1, TIMEOUT_MILLIS));
+        }
+
+        /*
+         * A gateway retry of the fill, after fail over.
+         */
+        try (Market promoted = replica.promote ())
+        {
+            assertFalse (promoted.recordTrade ("TEA", 1, 40, BUY, now, "FILL-1"));
+            assertTrue (promoted.recordTrade ("TEA", 1, 20, BUY, now, "FILL-2"));
+            assertEquals (30.0d, promoted.calculateVolumeWeightedStockPrice ("TEA"), 0.0d);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.jpmorgan.exercise.simulation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.jpmorgan.exercise.environment.ArtificialClock;
+import com.jpmorgan.exercise.environment.Environment;
+import com.jpmorgan.exercise.market.Market;
+import com.jpmorgan.exercise.market.MarketConfiguration;
+
+public class MarketSimulatorTest
+{
+
+    private static SimulationConfiguration smallConfiguration ()
+    {
+        SimulationConfiguration configuration = new SimulationConfiguration ();
+        configuration.setStockCount (20);
+        configuration.setDurationSeconds (400);
+        configuration.setTradesPerSecond (50);
+        configuration.setCheckIntervalSeconds (50);
+        configuration.setCheckedStocksPerCheck (5);
+        return configuration;
+    }
+
+    @Test
+    public void testMatchesReference () throws Exception
+    {
+        SimulationReport report = new MarketSimulator (smallConfiguration ()).run ();
+
+        assertTrue (report.getTradeCount () >= 400 * 50);
+        assertTrue (report.getCheckCount () > 0);
+        assertEquals (0, report.getMismatchCount ());
+        assertTrue (report.getFinalGBCE () > 0);
+    }
+
+    @Test
+    public void testMarketWithOwnClock () throws Exception
+    {
+        MarketSimulator simulator = new MarketSimulator (smallConfiguration ());
+        MarketConfiguration configuration = simulator.getMarketConfiguration ();
+        ArtificialClock clock = new ArtificialClock (5000);
+        configuration.setEnvironment (new Environment (clock));
+
+        try (Market market = new Market (configuration))
+        {
+            SimulationReport report = simulator.run (market);
+
+            /*
+             * The simulation moves the market's own clock on, not the global one.
+             */
+            assertEquals (5400, clock.getTime ());
+            assertEquals (0, report.getMismatchCount ());
+            assertTrue (report.getElapsedNanos () > 0);
+            assertTrue (report.getLatencyMaxNanos () > 0);
+            assertTrue (report.getPeakHeapBytes () > 0);
+        }
+    }
+
+    @Test
+    public void testDeterministic () throws Exception
+    {
+        SimulationReport first = new MarketSimulator (smallConfiguration ()).run ();
+        SimulationReport second = new MarketSimulator (smallConfiguration ()).run ();
+
+        assertEquals (first.getTradeCount (), second.getTradeCount ());
+        assertEquals (first.getFinalGBCE (), second.getFinalGBCE (), 0.0d);
+    }
+}
@@ -0,0 +1,83 @@
+package com.jpmorgan.exercise.window;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigInteger;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+public class FixedPointTest
+{
+
+    private static final BigInteger TWO_64 = BigInteger.ONE.shiftLeft (64);
+
+    private static BigInteger toBigInteger (final long high, final long low)
+    {
+        return BigInteger.valueOf (high).shiftLeft (64).add (BigInteger.valueOf (low).mod (TWO_64));
+    }
+
+    @Test
+    public void testTicks ()
+    {
+        assertEquals (100000, FixedPoint.toTicks (0.1));
+        assertEquals (1, FixedPoint.toTicks (0.0000005));
+        assertEquals (0.3d, FixedPoint.toPrice (FixedPoint.toTicks (0.1) + FixedPoint.toTicks (0.2)), 0.0d);
+    }
+
+    @Test
+    public void testMultiplyAddSubtract ()
+    {
+        SplittableRandom random = new SplittableRandom (7);
+        long high = 0;
+        long low = 0;
+        BigInteger expected = BigInteger.ZERO;
+        long[] ticks = new long[1000];
+        int[] quantities = new int[ticks.length];
+
+        for (int i = 0; i < ticks.length; i++)
+        {
+            ticks[i] = random.nextLong (Long.MAX_VALUE);
+            quantities[i] = random.nextInt (Integer.MAX_VALUE);
+            long product = ticks[i] * quantities[i];
+            long sumLow = low + product;
+            high = FixedPoint.addHigh (high, low, FixedPoint.multiplyHigh (ticks[i], quantities[i]), sumLow);
+            low = sumLow;
+            expected = expected.add (BigInteger.valueOf (ticks[i]).multiply (BigInteger.valueOf (quantities[i])));
+            assertEquals (expected, toBigInteger (high, low));
+        }
+
+        for (int i = 0; i < ticks.length; i++)
+        {
+            long product = ticks[i] * quantities[i];
+            high = FixedPoint.subtractHigh (high, low, FixedPoint.multiplyHigh (ticks[i], quantities[i]), product);
+            low -= product;
+        }
+        assertEquals (0, high);
+        assertEquals (0, low);
+    }
+
+    @Test
+    public void testDivideRounded ()
+    {
+        assertEquals (3, FixedPoint.divideRounded (0, 5, 2));
+        assertEquals (2, FixedPoint.divideRounded (0, 9, 4));
+
+        SplittableRandom random = new SplittableRandom (11);
+        for (int i = 0; i < 1000; i++)
+        {
+            long divisor = 1 + random.nextLong (Long.MAX_VALUE);
+            long quotient = random.nextLong (Long.MAX_VALUE / 2);
+            BigInteger dividend = BigInteger.valueOf (quotient)
+                                            .multiply (BigInteger.valueOf (divisor))
+                                            .add (BigInteger.valueOf (random.nextLong (divisor)));
+
+            BigInteger[] expected = dividend.divideAndRemainder (BigInteger.valueOf (divisor));
+            long rounded = expected[0].longValue ()
+                           + (expected[1].shiftLeft (1).compareTo (BigInteger.valueOf (divisor)) >= 0 ? 1 : 0);
+
+            assertEquals (rounded, FixedPoint.divideRounded (dividend.shiftRight (64).longValue (),
+                                                             dividend.longValue (), divisor));
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.jpmorgan.exercise.window;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+public class OffHeapWindowStoreTest
+{
+
+    @Test
+    public void testRecordAndExpire ()
+    {
+        try (OffHeapWindowStore store = new OffHeapWindowStore (2))
+        {
+            store.record (0, 10, 1, 100);
+            store.record (1, 10, 2, 30);
+            store.record (0, 20, 3, 50);
+
+            assertEquals (62.5d, store.getVolumeWeightedPrice (0), 0.0d);
+            assertEquals (30.0d, store.getVolumeWeightedPrice (1), 0.0d);
+            assertEquals (2, store.getTradeCount (0));
+            assertEquals (3, store.getWindowSize ());
+
+            store.expire (10);
+            assertEquals (50.0d, store.getVolumeWeightedPrice (0), 0.0d);
+            assertEquals (0.0d, store.getVolumeWeightedPrice (1), 0.0d);
+            assertEquals (0, store.getVolume (1));
+            assertEquals (1, store.getWindowSize ());
+
+            store.expire (20);
+            assertEquals (0.0d, store.getVolumeWeightedPrice (0), 0.0d);
+            assertEquals (0, store.getWindowSize ());
+        }
+    }
+
+    @Test
+    public void testSymbolChain ()
+    {
+        try (OffHeapWindowStore store = new OffHeapWindowStore (2))
+        {
+            store.record (0, 10, 1, 100);
+            store.record (1, 10, 1, 200);
+            store.record (0, 11, 1, 101);
+            store.record (0, 12, 1, 102);
+
+            long sequence = store.getOldestTrade (0);
+            assertEquals (100.0d, store.getTradePrice (sequence), 0.0d);
+            sequence = store.getNextTrade (sequence);
+            assertEquals (101.0d, store.getTradePrice (sequence), 0.0d);
+            sequence = store.getNextTrade (sequence);
+            assertEquals (store.getNewestTrade (0), sequence);
+            assertEquals (OffHeapWindowStore.NO_TRADE, store.getNextTrade (sequence));
+
+            store.expire (10);
+            assertEquals (101.0d, store.getTradePrice (store.getOldestTrade (0)), 0.0d);
+            assertEquals (OffHeapWindowStore.NO_TRADE, store.getOldestTrade (1));
+        }
+    }
+
+    @Test
+    public void testGrowth ()
+    {
+        try (OffHeapWindowStore store = new OffHeapWindowStore (1))
+        {
+            int trades = 10000;
+            for (int i = 0; i < trades; i++)
+            {
+                store.record (i % 100, i, 1, i % 100);
+            }
+
+            assertTrue (store.getSymbolCapacity () >= 100);
+            assertEquals (trades, store.getWindowSize ());
+            assertEquals (trades / 100, store.getTradeCount (42));
+            assertEquals (42.0d, store.getVolumeWeightedPrice (42), 0.0d);
+
+            store.ensureSymbolCapacity (1000);
+            assertEquals (1000, store.getSymbolCapacity ());
+            assertEquals (42.0d, store.getVolumeWeightedPrice (42), 0.0d);
+            assertEquals (0, store.getVolume (999));
+        }
+    }
+
+    @Test (expected = IllegalStateException.class)
+    public void testClosed ()
+    {
+        OffHeapWindowStore store = new OffHeapWindowStore (1);
+        store.close ();
+
+        store.record (0, 10, 1, 100);
+    }
+
+    @Test
+    public void testFixedPoint ()
+    {
+        try (OffHeapWindowStore store = new OffHeapWindowStore (1, true))
+        {
+            store.record (0, 10, 1, 0.1);
+            store.record (0, 11, 1, 0.2);
+            store.recordTicks (0, 12, Integer.MAX_VALUE, Long.MAX_VALUE / 2);
+            store.record (0, 13, 1, 0.3);
+
+            assertEquals (0.2d, store.getTradePrice (store.getOldestTrade (0) + 1), 0.0d);
+
+            /*
+             * Once the large trade has expired, the sums are exact again.
+             */
+            store.expire (12);
+            assertEquals (300000, store.getVolumeWeightedTicks (0));
+            assertEquals (0.3d, store.getVolumeWeightedPrice (0), 0.0d);
+            assertEquals (0.3d, store.getNotional (0), 0.0d);
+
+            store.expire (13);
+            assertEquals (0, store.getVolumeWeightedTicks (0));
+        }
+    }
+
+    @Test
+    public void testOutOfOrder ()
+    {
+        try (OffHeapWindowStore store = new OffHeapWindowStore (1))
+        {
+            store.record (0, 20, 1, 100);
+            store.record (0, 10, 1, 50);
+            store.record (0, 15, 2, 10);
+            store.record (0, 30, 1, 40);
+
+            /*
+             * The symbol's chain is in time order.
+             */
+            long sequence = store.getOldestTrade (0);
+            assertEquals (50.0d, store.getTradePrice (sequence), 0.0d);
+            sequence = store.getNextTrade (sequence);
+            assertEquals (10.0d, store.getTradePrice (sequence), 0.0d);
+            sequence = store.getNextTrade (sequence);
+            assertEquals (100.0d, store.getTradePrice (sequence), 0.0d);
+            assertEquals (40.0d, store.getTradePrice (store.getNewestTrade (0)), 0.0d);
+            assertEquals (sequence, store.getPreviousTrade (store.getNewestTrade (0)));
+
+            store.expire (15);
+            assertEquals (70.0d, store.getVolumeWeightedPrice (0), 0.0d);
+            assertEquals (2, store.getWindowSize ());
+            assertEquals (100.0d, store.getTradePrice (store.getOldestTrade (0)), 0.0d);
+
+            store.record (0, 16, 2, 10);
+            assertEquals (40.0d, store.getVolumeWeightedPrice (0), 0.0d);
+
+            store.expire (29);
+            assertEquals (40.0d, store.getVolumeWeightedPrice (0), 0.0d);
+            assertEquals (1, store.getWindowSize ());
+        }
+    }
+
+    @Test (expected = IllegalArgumentException.class)
+    public void testRecordAtHorizon ()
+    {
+        try (OffHeapWindowStore store = new OffHeapWindowStore (1))
+        {
+            store.expire (10);
+            store.record (0, 10, 1, 100);
+        }
+    }
+
+    @Test
+    public void testOutOfOrderAgainstReference ()
+    {
+        SplittableRandom random = new SplittableRandom (3);
+        try (OffHeapWindowStore store = new OffHeapWindowStore (4))
+        {
+            List<long[]> trades = new ArrayList<long[]> ();
+            long now = 0;
+            for (int i = 0; i < 100000; i++)
+            {
+                now += random.nextInt (2);
+                long horizon = now - 300;
+                store.expire (horizon);
+
+                /*
+                 * Up to 60 seconds late, and occasionally a long way in the future, so that
+                 * the buckets grow.
+                 */
+                long timestamp = (i % 10000 == 0) ? now + 5000 : Math.max (horizon + 1, now - random.nextInt (60));
+                int symbolId = random.nextInt (4);
+                int quantity = 1 + random.nextInt (100);
+                store.record (symbolId, timestamp, quantity, 1 + random.nextInt (1000));
+                trades.add (new long[] { symbolId, timestamp, quantity });
+
+                if (i % 997 == 0)
+                {
+                    long volume = 0;
+                    for (long[] trade : trades)
+                    {
+                        if (trade[0] == symbolId && trade[1] > horizon)
+                        {
+                            volume += trade[2];
+                        }
+                    }
+                    assertEquals (volume, store.getVolume (symbolId));
+                    trades.removeIf (trade -> trade[1] <= horizon);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSides ()
+    {
+        try (OffHeapWindowStore store = new OffHeapWindowStore (1, true))
+        {
+            store.record (0, 10, 1, 0.1, OffHeapWindowStore.SIDE_BUY);
+            store.record (0, 11, 2, 0.4, OffHeapWindowStore.SIDE_SELL);
+            store.record (0, 12, 1, 0.2, OffHeapWindowStore.SIDE_BUY);
+            store.record (0, 13, 4, 1.0, OffHeapWindowStore.SIDE_NONE);
+
+            assertEquals (0.15d, store.getVolumeWeightedPrice (0, OffHeapWindowStore.SIDE_BUY), 0.0d);
+            assertEquals (0.4d, store.getVolumeWeightedPrice (0, OffHeapWindowStore.SIDE_SELL), 0.0d);
+            assertEquals (2, store.getVolume (0, OffHeapWindowStore.SIDE_BUY));
+            assertEquals (8, store.getVolume (0));
+            assertEquals (0.8d, store.getNotional (0, OffHeapWindowStore.SIDE_SELL), 0.0d);
+            assertEquals (OffHeapWindowStore.SIDE_SELL, store.getTradeSide (store.getNextTrade (store.getOldestTrade (0))));
+
+            store.expire (11);
+            assertEquals (0.2d, store.getVolumeWeightedPrice (0, OffHeapWindowStore.SIDE_BUY), 0.0d);
+            assertEquals (0, store.getVolume (0, OffHeapWindowStore.SIDE_SELL));
+            assertEquals (0.0d, store.getNotional (0, OffHeapWindowStore.SIDE_SELL), 0.0d);
+        }
+    }
+}